@@ -0,0 +1,146 @@
+package org.bigredbands.mb.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.bigredbands.mb.controllers.BinaryDrillGenerator;
+import org.bigredbands.mb.controllers.BinaryDrillParser;
+import org.bigredbands.mb.controllers.LazyXMLParser;
+import org.bigredbands.mb.controllers.PDFGenerator;
+import org.bigredbands.mb.controllers.ParallelXMLParser;
+import org.bigredbands.mb.controllers.StreamingXMLGenerator;
+import org.bigredbands.mb.controllers.StreamingXMLParser;
+import org.bigredbands.mb.controllers.XMLGenerator;
+import org.bigredbands.mb.controllers.XMLParser;
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.LazyMoveList;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Times loading and saving a show, and printing it to a PDF.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmark {
+
+    @Param({ "12", "48", "144" })
+    public int ranks;
+
+    @Param({ "10", "40" })
+    public int moves;
+
+    private DrillInfo drillInfo;
+
+    // The saved show that is loaded, as XML and in the binary format
+    private File projectFile;
+    private File binaryProjectFile;
+
+    // The files written by saving and printing
+    private File saveFile;
+    private File pdfFile;
+
+    @Setup(Level.Trial)
+    public void createShow() throws IOException {
+        drillInfo = new ShowGenerator().generate(ranks, moves);
+        projectFile = File.createTempFile("benchmark", ".pnd");
+        binaryProjectFile = File.createTempFile("benchmark", ".pndb");
+        saveFile = File.createTempFile("benchmark-save", ".pnd");
+        pdfFile = File.createTempFile("benchmark", ".pdf");
+        new XMLGenerator().save(drillInfo, projectFile);
+        new BinaryDrillGenerator().save(drillInfo, binaryProjectFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        projectFile.delete();
+        binaryProjectFile.delete();
+        saveFile.delete();
+        pdfFile.delete();
+    }
+
+    @Benchmark
+    public DrillInfo load() throws ParserConfigurationException, SAXException, IOException, DrillXMLException {
+        return new XMLParser().load(projectFile);
+    }
+
+    @Benchmark
+    public DrillInfo loadStreaming() throws SAXException, IOException, DrillXMLException {
+        return new StreamingXMLParser().load(projectFile);
+    }
+
+    @Benchmark
+    public DrillInfo loadParallel() throws SAXException, IOException, DrillXMLException {
+        return new ParallelXMLParser().load(projectFile);
+    }
+
+    @Benchmark
+    public DrillInfo loadLazy() throws SAXException, IOException, DrillXMLException {
+        DrillInfo lazyDrillInfo = new LazyXMLParser().load(projectFile);
+        ((LazyMoveList) lazyDrillInfo.getMoves()).close();
+        return lazyDrillInfo;
+    }
+
+    @Benchmark
+    public DrillInfo loadBinary() throws IOException, DrillXMLException {
+        return new BinaryDrillParser().load(binaryProjectFile);
+    }
+
+    @Benchmark
+    public File save() {
+        new XMLGenerator().save(drillInfo, saveFile);
+        return saveFile;
+    }
+
+    @Benchmark
+    public File saveStreaming() throws IOException {
+        // change every move, so that none is copied from the last save
+        for (Move move : drillInfo.getMoves()) {
+            move.setComments(move.getComments());
+        }
+        new StreamingXMLGenerator().save(drillInfo, saveFile);
+        return saveFile;
+    }
+
+    @Benchmark
+    public File saveStreamingAfterEdit() throws IOException {
+        Move move = drillInfo.getMoves().get(drillInfo.getMoves().size() / 2);
+        move.setComments(move.getComments());
+        new StreamingXMLGenerator().save(drillInfo, saveFile);
+        return saveFile;
+    }
+
+    @Benchmark
+    public File saveBinary() throws IOException {
+        new BinaryDrillGenerator().save(drillInfo, saveFile);
+        return saveFile;
+    }
+
+    @Benchmark
+    public File createPDF() throws IOException {
+        new PDFGenerator().createPDF(drillInfo, pdfFile);
+        return pdfFile;
+    }
+}
@@ -0,0 +1,69 @@
+package org.bigredbands.mb.benchmarks;
+
+import java.awt.Shape;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.MoveState;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.bigredbands.mb.views.FootballField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times turning the ranks of a move into the shapes drawn on the field, both from the
+ * stored positions shown while editing and from the values evaluated during playback.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FootballFieldBenchmark {
+
+    // The scale and offset of a field drawn about the size of a laptop screen
+    private static final float SCALE_FACTOR = 8;
+    private static final int TOP_LEFT = 20;
+
+    @Param({ "12", "48", "144" })
+    public int ranks;
+
+    private HashMap<String, RankPosition> positions;
+
+    private MoveState state;
+
+    // The positions of the ranks half way through the move
+    private float[] values;
+
+    @Setup(Level.Trial)
+    public void createShow() {
+        DrillInfo drillInfo = new ShowGenerator().generate(ranks, 2);
+        positions = drillInfo.getMoves().get(1).getEndPositions();
+        state = drillInfo.getMoves().get(1).getState();
+        values = new float[state.getValueCount()];
+        state.evaluate(drillInfo.getMoves().get(1).getCounts() / 2.0f + 0.5f, values);
+    }
+
+    @Benchmark
+    public HashMap<String, Shape> createShapesFromPositions() {
+        return FootballField.createShapes(positions, TOP_LEFT, TOP_LEFT, SCALE_FACTOR);
+    }
+
+    @Benchmark
+    public HashMap<String, Shape> createShapesFromState() {
+        return FootballField.createShapes(state, values, TOP_LEFT, TOP_LEFT, SCALE_FACTOR);
+    }
+}
@@ -0,0 +1,58 @@
+package org.bigredbands.mb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.bigredbands.mb.controllers.MainController;
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times finding the commands shared by every rank of a move, as when the whole band is
+ * selected.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MainControllerBenchmark {
+
+    @Param({ "12", "48", "144" })
+    public int ranks;
+
+    private MainController mainController;
+
+    private HashSet<String> rankNames;
+
+    private HashMap<String, ArrayList<CommandPair>> commands;
+
+    @Setup(Level.Trial)
+    public void createShow() {
+        DrillInfo drillInfo = new ShowGenerator().generate(ranks, 2);
+        mainController = new MainController();
+        commands = drillInfo.getMoves().get(1).getCommands();
+        rankNames = new HashSet<String>(commands.keySet());
+    }
+
+    @Benchmark
+    public ArrayList<CommandPair> getSharedCommands() {
+        return mainController.getSharedCommands(rankNames, commands);
+    }
+}
@@ -0,0 +1,102 @@
+package org.bigredbands.mb.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times playing back a move and carrying a change in position through the moves after it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+
+    // The frames drawn per count during playback
+    private static final int FRAMES_PER_COUNT = 4;
+
+    @Param({ "12", "48", "144" })
+    public int ranks;
+
+    @Param({ "10", "40" })
+    public int moves;
+
+    private DrillInfo drillInfo;
+
+    // The move played back, from the middle of the show
+    private Move move;
+
+    // The positions playback is written to, reused between frames as by the view
+    private HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+
+    // The start of every rank in the second move, and the same moved a yard over
+    private HashMap<String, RankPosition> starts;
+    private HashMap<String, RankPosition> shiftedStarts;
+
+    private boolean shifted;
+
+    @Setup(Level.Trial)
+    public void createShow() {
+        drillInfo = new ShowGenerator().generate(ranks, moves);
+        move = drillInfo.getMoves().get(moves / 2);
+
+        starts = drillInfo.getMoves().get(1).getStartPositions();
+        shiftedStarts = new HashMap<String, RankPosition>();
+        for (String rankName : starts.keySet()) {
+            RankPosition position = new RankPosition(starts.get(rankName));
+            position.incrementPointsXValue(1);
+            shiftedStarts.put(rankName, position);
+        }
+        starts = new HashMap<String, RankPosition>(starts);
+    }
+
+    /**
+     * Plays back every frame of one move
+     */
+    @Benchmark
+    public HashMap<String, RankPosition> getIntermediatePositions() {
+        for (int frame = 0; frame <= move.getCounts() * FRAMES_PER_COUNT; frame++) {
+            move.getIntermediatePositions((float) frame / FRAMES_PER_COUNT, positions);
+        }
+        return positions;
+    }
+
+    /**
+     * Moves every rank at the start of the show and carries the change through every move
+     * after it, alternating between two starting positions
+     */
+    @Benchmark
+    public List<Move> updatePositionsChain() {
+        HashMap<String, RankPosition> start = shifted ? starts : shiftedStarts;
+        shifted = !shifted;
+
+        List<Move> showMoves = drillInfo.getMoves();
+        for (String rankName : start.keySet()) {
+            showMoves.get(1).updatePositions(rankName, start.get(rankName));
+            for (int i = 2; i < showMoves.size(); i++) {
+                showMoves.get(i).updatePositions(rankName, showMoves.get(i - 1).getEndPositions().get(rankName));
+            }
+        }
+        return showMoves;
+    }
+}
@@ -0,0 +1,68 @@
+package org.bigredbands.mb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bigredbands.mb.controllers.MainController;
+import org.bigredbands.mb.controllers.SharedCommandsScan;
+import org.bigredbands.mb.models.CommandPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times finding the commands shared by a large selection of ranks that mostly march
+ * together, with the count-aligned sweep and with the scan it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedCommandsBenchmark {
+
+    // The chance of each command of a rank differing from the rest of the block
+    private static final float DIFFERENCE = 0.02f;
+
+    @Param({ "10", "40", "160" })
+    public int ranks;
+
+    @Param({ "16", "64" })
+    public int commands;
+
+    private MainController mainController;
+    private HashMap<String, ArrayList<CommandPair>> rankCommands;
+    private HashSet<String> rankNames;
+    private String[] rankArray;
+
+    @Setup(Level.Trial)
+    public void createCommands() {
+        mainController = new MainController();
+        rankCommands = SharedCommandsScan.createCommands(new Random(1), ranks, commands, DIFFERENCE);
+        rankNames = new HashSet<String>(rankCommands.keySet());
+        rankArray = rankNames.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public ArrayList<CommandPair> sweep() {
+        return mainController.getSharedCommands(rankNames, rankCommands);
+    }
+
+    @Benchmark
+    public ArrayList<CommandPair> scan() {
+        return SharedCommandsScan.scanSharedCommands(rankArray, rankCommands);
+    }
+}
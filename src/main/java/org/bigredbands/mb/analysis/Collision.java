@@ -0,0 +1,66 @@
+package org.bigredbands.mb.analysis;
+
+/**
+ * Two ranks that cross through each other, or come closer than the minimum interval, at a
+ * count of a move.
+ */
+public class Collision {
+
+    public enum Type { CROSSING, SPACING };
+
+    private final int moveNumber;
+    private final int count;
+    private final String firstRank;
+    private final String secondRank;
+    private final Type type;
+    private final float distance;
+
+    /**
+     * Creates a collision between two ranks
+     *
+     * @param moveNumber - the move the collision happens in
+     * @param count - the count of the move the collision happens at
+     * @param firstRank - the name of one rank, before the other in order of name
+     * @param secondRank - the name of the other rank
+     * @param type - whether the ranks cross or are only too close
+     * @param distance - the closest distance between the ranks, in feet
+     */
+    public Collision(int moveNumber, int count, String firstRank, String secondRank, Type type, float distance) {
+        this.moveNumber = moveNumber;
+        this.count = count;
+        this.firstRank = firstRank;
+        this.secondRank = secondRank;
+        this.type = type;
+        this.distance = distance;
+    }
+
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public String getFirstRank() {
+        return firstRank;
+    }
+
+    public String getSecondRank() {
+        return secondRank;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public float getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return "Move " + moveNumber + ", count " + count + ": " + firstRank + " and " + secondRank
+                + (type == Type.CROSSING ? " cross" : " are " + distance + " feet apart");
+    }
+}
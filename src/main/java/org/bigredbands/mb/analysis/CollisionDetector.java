@@ -0,0 +1,313 @@
+package org.bigredbands.mb.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.MoveState;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.RankProgram;
+
+/**
+ * Finds ranks that cross through each other, or pass closer than a minimum interval, at any
+ * count of a show.
+ *
+ * At every count each rank is evaluated from its move and split into straight segments,
+ * one for a line, two for a corner and several along a curve.  The segments are placed in a
+ * uniform grid of square cells measured in feet, and only segments of different ranks that
+ * share a cell are compared, so the work at a count grows with the number of ranks rather
+ * than with its square.  The moves are checked in parallel.
+ */
+public class CollisionDetector {
+
+    // The distance ranks should keep from each other, in feet, if none is given
+    public static final float DEFAULT_MINIMUM_INTERVAL = 2.0f;
+
+    // The smallest side of a grid cell, in feet
+    private static final float MINIMUM_CELL_SIZE = 10.0f;
+
+    // Rank positions are in yards
+    private static final float FEET_PER_YARD = 3.0f;
+
+    // The number of straight segments a curved rank is split into
+    private static final int CURVE_SEGMENTS = 8;
+
+    // Keeps grid coordinates positive when packed into the 16 bits each has in a cell key.  Cells
+    // further out than that are clamped to the edge, which only puts more segments in them
+    private static final int CELL_OFFSET = 1 << 15;
+    private static final int CELL_MASK = 0xFFFF;
+
+    // The number of moves checked in parallel at once, so that a show read lazily only has
+    // that many moves read at a time
+    private static final int BATCH_SIZE = 64;
+
+    private final float minimumInterval;
+    private final float cellSize;
+
+    /**
+     * Checks a move, keeping the collisions it finds until they are collected by analyze
+     */
+    private class MoveCheck extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int moveNumber;
+        private Move move;
+        private List<Collision> collisions;
+
+        private MoveCheck(int moveNumber, Move move) {
+            this.moveNumber = moveNumber;
+            this.move = move;
+        }
+
+        @Override
+        protected void compute() {
+            collisions = analyzeMove(moveNumber, move);
+            // the move is let go, so a show read lazily only holds the moves being checked
+            move = null;
+        }
+    }
+
+    public CollisionDetector() {
+        this(DEFAULT_MINIMUM_INTERVAL);
+    }
+
+    /**
+     * Creates a detector with the given minimum interval
+     *
+     * @param minimumInterval - the closest two ranks may come without being reported, in feet
+     */
+    public CollisionDetector(float minimumInterval) {
+        this.minimumInterval = minimumInterval;
+        this.cellSize = Math.max(minimumInterval, MINIMUM_CELL_SIZE);
+    }
+
+    /**
+     * Checks every count of every move in the show.  The positions of the show must be up
+     * to date.
+     *
+     * @param drillInfo - the show to check
+     * @return the collisions found in each move
+     */
+    public CollisionReport analyze(DrillInfo drillInfo) {
+        List<Move> moves = drillInfo.getMoves();
+        List<List<Collision>> moveCollisions = new ArrayList<List<Collision>>();
+        ArrayList<MoveCheck> checks = new ArrayList<MoveCheck>();
+        for (int first = 0; first < moves.size(); first += BATCH_SIZE) {
+            checks.clear();
+            for (int i = first; i < Math.min(first + BATCH_SIZE, moves.size()); i++) {
+                checks.add(new MoveCheck(i, moves.get(i)));
+            }
+            ForkJoinTask.invokeAll(checks);
+            for (MoveCheck check : checks) {
+                moveCollisions.add(check.collisions);
+            }
+        }
+        return new CollisionReport(moveCollisions);
+    }
+
+    /**
+     * Checks every count of one move.  The first move is also checked at count 0, where the
+     * ranks are first set; every other move starts where the one before it ends.
+     *
+     * @param moveNumber - the index of the move in the show
+     * @param move - the move to check
+     * @return the collisions found, in order of count
+     */
+    public List<Collision> analyzeMove(int moveNumber, Move move) {
+        MoveState state = move.getState();
+        int rankCount = state.getRankCount();
+        float[] values = new float[state.getValueCount()];
+
+        // the segments of every rank, in feet
+        int maxSegments = rankCount * CURVE_SEGMENTS;
+        float[] x1 = new float[maxSegments];
+        float[] y1 = new float[maxSegments];
+        float[] x2 = new float[maxSegments];
+        float[] y2 = new float[maxSegments];
+        int[] segmentRanks = new int[maxSegments];
+
+        // the first grid cell each segment is in, across and down
+        int[] firstCellX = new int[maxSegments];
+        int[] firstCellY = new int[maxSegments];
+
+        // each entry is the key of a grid cell in the high 32 bits above the index of a segment in it
+        long[] entries = new long[maxSegments * 4];
+
+        // the closest distance found between each pair of ranks at the count, and the pairs found
+        float[] pairDistances = new float[rankCount * rankCount];
+        Arrays.fill(pairDistances, Float.POSITIVE_INFINITY);
+        int[] pairs = new int[16];
+
+        List<Collision> collisions = new ArrayList<Collision>();
+        for (int count = moveNumber == 0 ? 0 : 1; count <= move.getCounts(); count++) {
+            state.evaluate(count, values);
+
+            int segmentCount = 0;
+            for (int rankId = 0; rankId < rankCount; rankId++) {
+                segmentCount = addSegments(values, rankId, segmentCount, x1, y1, x2, y2, segmentRanks);
+            }
+
+            int entryCount = 0;
+            float margin = minimumInterval / 2;
+            for (int i = 0; i < segmentCount; i++) {
+                int minX = cell(Math.min(x1[i], x2[i]) - margin);
+                int maxX = cell(Math.max(x1[i], x2[i]) + margin);
+                int minY = cell(Math.min(y1[i], y2[i]) - margin);
+                int maxY = cell(Math.max(y1[i], y2[i]) + margin);
+                firstCellX[i] = minX;
+                firstCellY[i] = minY;
+                int cells = (maxX - minX + 1) * (maxY - minY + 1);
+                if (entryCount + cells > entries.length) {
+                    entries = Arrays.copyOf(entries, Math.max(entries.length * 2, entryCount + cells));
+                }
+                for (int cx = minX; cx <= maxX; cx++) {
+                    for (int cy = minY; cy <= maxY; cy++) {
+                        entries[entryCount++] = ((long) cellKey(cx, cy) << 32) | i;
+                    }
+                }
+            }
+            Arrays.sort(entries, 0, entryCount);
+
+            // compare the segments of different ranks within each cell
+            int pairCount = 0;
+            for (int start = 0, end; start < entryCount; start = end) {
+                long key = entries[start] >>> 32;
+                for (end = start + 1; end < entryCount && entries[end] >>> 32 == key; end++);
+                int cx = (int) (key >>> 16) - CELL_OFFSET;
+                int cy = (int) (key & CELL_MASK) - CELL_OFFSET;
+
+                for (int a = start; a < end; a++) {
+                    int i = (int) entries[a];
+                    for (int b = a + 1; b < end; b++) {
+                        int j = (int) entries[b];
+                        int rankI = segmentRanks[i];
+                        int rankJ = segmentRanks[j];
+                        if (rankI == rankJ) {
+                            continue;
+                        }
+                        int pair = Math.min(rankI, rankJ) * rankCount + Math.max(rankI, rankJ);
+                        if (pairDistances[pair] == 0) {
+                            continue;
+                        }
+                        // two segments sharing several cells are only compared in the first of them
+                        if (Math.max(firstCellX[i], firstCellX[j]) != cx || Math.max(firstCellY[i], firstCellY[j]) != cy) {
+                            continue;
+                        }
+                        float distance = segmentDistance(x1[i], y1[i], x2[i], y2[i], x1[j], y1[j], x2[j], y2[j]);
+                        if (distance < minimumInterval || distance == 0) {
+                            if (pairDistances[pair] == Float.POSITIVE_INFINITY) {
+                                if (pairCount == pairs.length) {
+                                    pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                                }
+                                pairs[pairCount++] = pair;
+                            }
+                            pairDistances[pair] = Math.min(pairDistances[pair], distance);
+                        }
+                    }
+                }
+            }
+
+            Arrays.sort(pairs, 0, pairCount);
+            for (int p = 0; p < pairCount; p++) {
+                int pair = pairs[p];
+                float distance = pairDistances[pair];
+                collisions.add(new Collision(moveNumber, count,
+                        state.getRankName(pair / rankCount), state.getRankName(pair % rankCount),
+                        distance == 0 ? Collision.Type.CROSSING : Collision.Type.SPACING, distance));
+                pairDistances[pair] = Float.POSITIVE_INFINITY;
+            }
+        }
+        return collisions;
+    }
+
+    // Splits a rank into straight segments in feet, returning the new number of segments
+    private static int addSegments(float[] values, int rankId, int segmentCount,
+            float[] x1, float[] y1, float[] x2, float[] y2, int[] segmentRanks) {
+        int offset = rankId * RankProgram.STRIDE;
+        float frontX = values[offset + RankProgram.FRONT_X] * FEET_PER_YARD;
+        float frontY = values[offset + RankProgram.FRONT_Y] * FEET_PER_YARD;
+        float midX = values[offset + RankProgram.MID_X] * FEET_PER_YARD;
+        float midY = values[offset + RankProgram.MID_Y] * FEET_PER_YARD;
+        float endX = values[offset + RankProgram.END_X] * FEET_PER_YARD;
+        float endY = values[offset + RankProgram.END_Y] * FEET_PER_YARD;
+
+        switch ((int) values[offset + RankProgram.LINE_TYPE]) {
+            case RankPosition.CURVE:
+                // the curve is a quadratic through the midpoint, as drawn on the field
+                float controlX = 2 * midX - (frontX + endX) / 2;
+                float controlY = 2 * midY - (frontY + endY) / 2;
+                float lastX = frontX;
+                float lastY = frontY;
+                for (int i = 1; i <= CURVE_SEGMENTS; i++) {
+                    float t = (float) i / CURVE_SEGMENTS;
+                    float s = 1 - t;
+                    float x = s * s * frontX + 2 * s * t * controlX + t * t * endX;
+                    float y = s * s * frontY + 2 * s * t * controlY + t * t * endY;
+                    segmentCount = addSegment(lastX, lastY, x, y, rankId, segmentCount, x1, y1, x2, y2, segmentRanks);
+                    lastX = x;
+                    lastY = y;
+                }
+                return segmentCount;
+            case RankPosition.CORNER:
+                segmentCount = addSegment(frontX, frontY, midX, midY, rankId, segmentCount, x1, y1, x2, y2, segmentRanks);
+                return addSegment(midX, midY, endX, endY, rankId, segmentCount, x1, y1, x2, y2, segmentRanks);
+            default:
+                return addSegment(frontX, frontY, endX, endY, rankId, segmentCount, x1, y1, x2, y2, segmentRanks);
+        }
+    }
+
+    private static int addSegment(float ax, float ay, float bx, float by, int rankId, int segmentCount,
+            float[] x1, float[] y1, float[] x2, float[] y2, int[] segmentRanks) {
+        x1[segmentCount] = ax;
+        y1[segmentCount] = ay;
+        x2[segmentCount] = bx;
+        y2[segmentCount] = by;
+        segmentRanks[segmentCount] = rankId;
+        return segmentCount + 1;
+    }
+
+    private int cell(float feet) {
+        float cell = (float) Math.floor(feet / cellSize);
+        return (int) Math.max(-CELL_OFFSET, Math.min(CELL_OFFSET - 1, cell));
+    }
+
+    private static int cellKey(int cx, int cy) {
+        return ((cx + CELL_OFFSET) << 16) | (cy + CELL_OFFSET);
+    }
+
+    /**
+     * Returns the closest distance between two segments, or 0 if they cross
+     */
+    static float segmentDistance(float ax, float ay, float bx, float by, float cx, float cy, float dx, float dy) {
+        float d1 = cross(cx, cy, dx, dy, ax, ay);
+        float d2 = cross(cx, cy, dx, dy, bx, by);
+        float d3 = cross(ax, ay, bx, by, cx, cy);
+        float d4 = cross(ax, ay, bx, by, dx, dy);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return 0;
+        }
+        return Math.min(Math.min(pointDistance(ax, ay, cx, cy, dx, dy), pointDistance(bx, by, cx, cy, dx, dy)),
+                Math.min(pointDistance(cx, cy, ax, ay, bx, by), pointDistance(dx, dy, ax, ay, bx, by)));
+    }
+
+    // The cross product of b - a and p - a, which is positive if p is left of the line a to b
+    private static float cross(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    // The distance from a point to the closest point on a segment
+    private static float pointDistance(float px, float py, float ax, float ay, float bx, float by) {
+        float lengthSquared = (bx - ax) * (bx - ax) + (by - ay) * (by - ay);
+        float t = 0;
+        if (lengthSquared > 0) {
+            t = Math.max(0, Math.min(1, ((px - ax) * (bx - ax) + (py - ay) * (by - ay)) / lengthSquared));
+        }
+        float x = ax + t * (bx - ax) - px;
+        float y = ay + t * (by - ay) - py;
+        return (float) Math.sqrt(x * x + y * y);
+    }
+}
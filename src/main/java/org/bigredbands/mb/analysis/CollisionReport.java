@@ -0,0 +1,85 @@
+package org.bigredbands.mb.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The collisions found in a show, grouped by move and in order of count within each move.
+ */
+public class CollisionReport {
+
+    // The collisions of each move
+    private final List<List<Collision>> moveCollisions;
+
+    /**
+     * Creates a report from the collisions of each move
+     *
+     * @param moveCollisions - the collisions of each move, in order of count
+     */
+    public CollisionReport(List<List<Collision>> moveCollisions) {
+        this.moveCollisions = moveCollisions;
+    }
+
+    /**
+     * Returns the number of moves that were checked
+     *
+     * @return the number of moves
+     */
+    public int getMoveCount() {
+        return moveCollisions.size();
+    }
+
+    /**
+     * Returns the collisions in a move
+     *
+     * @param moveNumber - the move to get the collisions of
+     * @return the collisions, in order of count
+     */
+    public List<Collision> getCollisions(int moveNumber) {
+        return Collections.unmodifiableList(moveCollisions.get(moveNumber));
+    }
+
+    /**
+     * Returns every collision in the show
+     *
+     * @return the collisions, in order of move and count
+     */
+    public List<Collision> getCollisions() {
+        ArrayList<Collision> collisions = new ArrayList<Collision>();
+        for (List<Collision> move : moveCollisions) {
+            collisions.addAll(move);
+        }
+        return collisions;
+    }
+
+    /**
+     * Returns the ranks that collide at any count of a move, for highlighting on the field
+     *
+     * @param moveNumber - the move to get the ranks of
+     * @return the names of the ranks
+     */
+    public HashSet<String> getOffendingRanks(int moveNumber) {
+        HashSet<String> rankNames = new HashSet<String>();
+        for (Collision collision : moveCollisions.get(moveNumber)) {
+            rankNames.add(collision.getFirstRank());
+            rankNames.add(collision.getSecondRank());
+        }
+        return rankNames;
+    }
+
+    /**
+     * Returns true if no ranks collide anywhere in the show
+     *
+     * @return true if there are no collisions
+     */
+    public boolean isEmpty() {
+        for (List<Collision> move : moveCollisions) {
+            if (!move.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,240 @@
+package org.bigredbands.mb.analysis;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.MarcherEngine;
+import org.bigredbands.mb.models.MarchingConstants;
+import org.bigredbands.mb.models.Move;
+
+/**
+ * Finds the counts of a show where a marcher of a rank steps further or shorter
+ * than the stride limits, by default anything larger than 8 to 5 or smaller than 16 to 5.
+ * Marking time and halting are not steps, and are never reported as too small.
+ *
+ * The results of each move are kept along with the revision of the move they came from,
+ * so analyzing the show again only repeats the work for moves that have changed, and
+ * those are analyzed in parallel.  The moves themselves are only held weakly, and are
+ * checked a batch at a time, so that a show read lazily is never read into memory whole.
+ */
+public class StrideAnalyzer {
+
+    // The longest step allowed if none is given, in yards: 8 to 5
+    public static final float DEFAULT_LARGEST_STEP = MarchingConstants.STANDARD_STEP_SIZE;
+
+    // The shortest step allowed if none is given, in yards: 16 to 5
+    public static final float DEFAULT_SMALLEST_STEP = getStepSize(16);
+
+    // The number of marchers in a rank if none is given
+    public static final int DEFAULT_MARCHERS = 8;
+
+    // Movement in a count shorter than this is taken as standing still, in yards
+    private static final float STANDING_STILL = 1e-3f;
+
+    // Steps this close to a limit are within it, allowing for rounding, in yards
+    private static final float TOLERANCE = 1e-4f;
+
+    // The number of moves checked in parallel at once
+    private static final int BATCH_SIZE = 64;
+
+    private final float largestStep;
+    private final float smallestStep;
+    private final Map<String, Integer> marcherCounts;
+    private final int defaultMarchers;
+
+    // The checks of the moves analyzed, by the identity hash code of their move, as a move is
+    // only the same move while it is the same object
+    private HashMap<Integer, List<MoveCheck>> results = new HashMap<Integer, List<MoveCheck>>();
+
+    // The number of moves analyzed again by the last call to analyze
+    private int movesAnalyzed;
+
+    /**
+     * Checks a move, keeping the violations it finds along with the revision it checked
+     */
+    private class MoveCheck extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final WeakReference<Move> move;
+        private final int revision;
+        private List<StrideViolation> violations;
+
+        // The move until it has been checked
+        private Move pending;
+
+        private MoveCheck(Move move) {
+            this.move = new WeakReference<Move>(move);
+            this.revision = move.getRevision();
+            this.pending = move;
+        }
+
+        private boolean isFor(Move move) {
+            return this.move.get() == move && revision == move.getRevision();
+        }
+
+        @Override
+        protected void compute() {
+            violations = analyzeMove(pending);
+            pending = null;
+        }
+    }
+
+    /**
+     * Returns the length of a step taking the given number of steps to cover five yards
+     *
+     * @param stepsPerFiveYards - the number of steps, as in 8 for 8 to 5
+     * @return the length of the step in yards
+     */
+    public static float getStepSize(float stepsPerFiveYards) {
+        return 5.0f / stepsPerFiveYards;
+    }
+
+    public StrideAnalyzer() {
+        this(DEFAULT_LARGEST_STEP, DEFAULT_SMALLEST_STEP);
+    }
+
+    /**
+     * Creates an analyzer with the given limits, for ranks of the default number of marchers
+     *
+     * @param largestStep - the longest step allowed, in yards
+     * @param smallestStep - the shortest step allowed, in yards
+     */
+    public StrideAnalyzer(float largestStep, float smallestStep) {
+        this(largestStep, smallestStep, new HashMap<String, Integer>(), DEFAULT_MARCHERS);
+    }
+
+    /**
+     * Creates an analyzer with the given limits
+     *
+     * @param largestStep - the longest step allowed, in yards
+     * @param smallestStep - the shortest step allowed, in yards
+     * @param marcherCounts - the number of marchers in each rank, by rank name
+     * @param defaultMarchers - the number of marchers in a rank missing from the counts
+     */
+    public StrideAnalyzer(float largestStep, float smallestStep, Map<String, Integer> marcherCounts,
+            int defaultMarchers) {
+        this.largestStep = largestStep;
+        this.smallestStep = smallestStep;
+        this.marcherCounts = new HashMap<String, Integer>(marcherCounts);
+        this.defaultMarchers = defaultMarchers;
+    }
+
+    /**
+     * Checks every count of every move in the show, reusing the results for moves that have
+     * not changed since the last call.  The positions of the show must be up to date.
+     *
+     * @param drillInfo - the show to check
+     * @return the violations found in each move
+     */
+    public synchronized StrideReport analyze(DrillInfo drillInfo) {
+        List<Move> moves = drillInfo.getMoves();
+        HashMap<Integer, List<MoveCheck>> current = new HashMap<Integer, List<MoveCheck>>();
+        List<MoveCheck> moveChecks = new ArrayList<MoveCheck>(moves.size());
+        ArrayList<MoveCheck> checks = new ArrayList<MoveCheck>();
+        movesAnalyzed = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            Move move = moves.get(i);
+            Integer key = System.identityHashCode(move);
+            MoveCheck check = find(results.get(key), move);
+            if (check == null) {
+                check = find(current.get(key), move);
+            }
+            if (check == null) {
+                check = new MoveCheck(move);
+                checks.add(check);
+            }
+            List<MoveCheck> sameKey = current.get(key);
+            if (sameKey == null) {
+                sameKey = new ArrayList<MoveCheck>(1);
+                current.put(key, sameKey);
+            }
+            if (!sameKey.contains(check)) {
+                sameKey.add(check);
+            }
+            moveChecks.add(check);
+
+            if (checks.size() == BATCH_SIZE || i == moves.size() - 1) {
+                ForkJoinTask.invokeAll(checks);
+                movesAnalyzed += checks.size();
+                checks.clear();
+            }
+        }
+
+        // moves that have been removed from the show are dropped
+        results = current;
+
+        List<List<StrideViolation>> moveViolations = new ArrayList<List<StrideViolation>>();
+        for (MoveCheck check : moveChecks) {
+            moveViolations.add(check.violations);
+        }
+        return new StrideReport(moveViolations);
+    }
+
+    private static MoveCheck find(List<MoveCheck> checks, Move move) {
+        if (checks != null) {
+            for (MoveCheck check : checks) {
+                if (check.isFor(move)) {
+                    return check;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of moves the last call to analyze had to check again
+     *
+     * @return the number of moves checked
+     */
+    public synchronized int getMovesAnalyzed() {
+        return movesAnalyzed;
+    }
+
+    /**
+     * Checks the step taken by every marcher of every rank on every count of a move
+     *
+     * @param move - the move to check
+     * @return the violations found, in order of count, then rank name and then marcher
+     */
+    public List<StrideViolation> analyzeMove(Move move) {
+        MarcherEngine engine = new MarcherEngine(move.getState(), marcherCounts, defaultMarchers);
+        float[] before = new float[engine.getValueCount()];
+        float[] after = new float[engine.getValueCount()];
+
+        List<StrideViolation> violations = new ArrayList<StrideViolation>();
+        engine.evaluate(0, before);
+        for (int count = 1; count <= move.getCounts(); count++) {
+            engine.evaluate(count, after);
+            for (int rankId = 0; rankId < move.getState().getRankCount(); rankId++) {
+                int marchers = engine.getRankMarchers(rankId);
+                int offset = 2 * engine.getMarcherOffset(rankId);
+                for (int marcher = 0; marcher < marchers; marcher++) {
+                    int x = offset + 2 * marcher;
+                    check(violations, count, move.getState().getRankName(rankId), marcher, marchers,
+                            before[x], before[x + 1], after[x], after[x + 1]);
+                }
+            }
+            float[] swap = before;
+            before = after;
+            after = swap;
+        }
+        return violations;
+    }
+
+    private void check(List<StrideViolation> violations, int count, String rankName, int marcher, int marchers,
+            float x1, float y1, float x2, float y2) {
+        float step = (float) Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+        if (step > largestStep + TOLERANCE) {
+            violations.add(new StrideViolation(count, rankName, marcher, marchers, StrideViolation.Type.TOO_LARGE, step));
+        }
+        else if (step > STANDING_STILL && step < smallestStep - TOLERANCE) {
+            violations.add(new StrideViolation(count, rankName, marcher, marchers, StrideViolation.Type.TOO_SMALL, step));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.bigredbands.mb.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The steps outside the stride limits in a show, grouped by move and in order of count
+ * within each move.
+ */
+public class StrideReport {
+
+    // The violations of each move
+    private final List<List<StrideViolation>> moveViolations;
+
+    /**
+     * Creates a report from the violations of each move
+     *
+     * @param moveViolations - the violations of each move, in order of count
+     */
+    public StrideReport(List<List<StrideViolation>> moveViolations) {
+        this.moveViolations = moveViolations;
+    }
+
+    /**
+     * Returns the number of moves that were checked
+     *
+     * @return the number of moves
+     */
+    public int getMoveCount() {
+        return moveViolations.size();
+    }
+
+    /**
+     * Returns the violations in a move
+     *
+     * @param moveNumber - the move to get the violations of
+     * @return the violations, in order of count
+     */
+    public List<StrideViolation> getViolations(int moveNumber) {
+        return Collections.unmodifiableList(moveViolations.get(moveNumber));
+    }
+
+    /**
+     * Returns every violation in the show
+     *
+     * @return the violations, in order of move and count
+     */
+    public List<StrideViolation> getViolations() {
+        ArrayList<StrideViolation> violations = new ArrayList<StrideViolation>();
+        for (List<StrideViolation> move : moveViolations) {
+            violations.addAll(move);
+        }
+        return violations;
+    }
+
+    /**
+     * Returns the ranks that step outside the limits at any count of a move, for
+     * highlighting on the field
+     *
+     * @param moveNumber - the move to get the ranks of
+     * @return the names of the ranks
+     */
+    public HashSet<String> getOffendingRanks(int moveNumber) {
+        HashSet<String> rankNames = new HashSet<String>();
+        for (StrideViolation violation : moveViolations.get(moveNumber)) {
+            rankNames.add(violation.getRankName());
+        }
+        return rankNames;
+    }
+
+    /**
+     * Returns true if every step in the show is within the limits
+     *
+     * @return true if there are no violations
+     */
+    public boolean isEmpty() {
+        for (List<StrideViolation> move : moveViolations) {
+            if (!move.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package org.bigredbands.mb.analysis;
+
+import org.bigredbands.mb.models.MarchingConstants.PART;
+
+/**
+ * A marcher of a rank taking steps larger or smaller than the stride limits during a count.
+ */
+public class StrideViolation {
+
+    public enum Type { TOO_LARGE, TOO_SMALL };
+
+    private final int count;
+    private final String rankName;
+    private final int marcher;
+    private final int marchers;
+    private final Type type;
+    private final float stepSize;
+
+    /**
+     * Creates a violation of the stride limits
+     *
+     * @param count - the count of the move ending the step
+     * @param rankName - the name of the rank
+     * @param marcher - the marcher taking the step, counting from 0 at the front of the rank
+     * @param marchers - the number of marchers in the rank
+     * @param type - whether the step is too large or too small
+     * @param stepSize - the length of the step, in yards
+     */
+    public StrideViolation(int count, String rankName, int marcher, int marchers, Type type, float stepSize) {
+        this.count = count;
+        this.rankName = rankName;
+        this.marcher = marcher;
+        this.marchers = marchers;
+        this.type = type;
+        this.stepSize = stepSize;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public String getRankName() {
+        return rankName;
+    }
+
+    public int getMarcher() {
+        return marcher;
+    }
+
+    /**
+     * Returns the end of the rank the marcher is at
+     *
+     * @return HEAD for the front marcher, TAIL for the end marcher, or null for one between them
+     */
+    public PART getPart() {
+        if (marcher == 0) {
+            return PART.HEAD;
+        }
+        return marcher == marchers - 1 ? PART.TAIL : null;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public float getStepSize() {
+        return stepSize;
+    }
+
+    /**
+     * Returns the step as the number of steps it would take to cover five yards
+     *
+     * @return the steps per five yards, as in 8 for 8 to 5
+     */
+    public float getStepsPerFiveYards() {
+        return 5.0f / stepSize;
+    }
+
+    @Override
+    public String toString() {
+        PART part = getPart();
+        String who = part == PART.HEAD ? "front" : part == PART.TAIL ? "end" : "marcher " + (marcher + 1);
+        return "Count " + count + ": " + who + " of " + rankName
+                + " takes " + getStepsPerFiveYards() + " to 5 steps";
+    }
+}
@@ -0,0 +1,202 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bigredbands.mb.models.BinaryConstants;
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.utils.FileWriteUtils;
+import org.bigredbands.mb.utils.ProgressListener;
+
+/**
+ *
+ * Saves a project in the binary format laid out in BinaryConstants.
+ *
+ * Everything is written in the order the XML format stores it, and only what the XML
+ * format stores, so a show converted from one format to the other and back loads the same.
+ *
+ */
+public class BinaryDrillGenerator {
+
+    // The size of the buffer in front of the file
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The strings written so far, in order, and the index of each
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+    // Told as each move is written, if set
+    private ProgressListener progressListener;
+
+    public BinaryDrillGenerator() {
+
+    }
+
+    /**
+     * Sets what is told how many moves have been written as a show is saved.
+     *
+     * @param progressListener - told after each move, or null for nothing
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Saves drill information into a binary file that can later be accessed
+     * and edited in RankPanda 2.0.
+     * @param drillInfo - contains information from currently written drill.
+     * @param file - file where the drill information will be saved.
+     * @throws IOException if the file cannot be written
+     */
+    public void save(final DrillInfo drillInfo, File file) throws IOException {
+        FileWriteUtils.replace(file, new FileWriteUtils.ChannelWriter() {
+            @Override
+            public void write(FileChannel channel) throws IOException {
+                BinaryDrillGenerator.this.write(drillInfo, channel);
+            }
+        });
+    }
+
+    private void write(DrillInfo drillInfo, FileChannel channel) throws IOException {
+        strings.clear();
+        stringIndexes.clear();
+
+        ByteBuffer header = ByteBuffer.allocate(BinaryConstants.HEADER_SIZE);
+        header.put(BinaryConstants.MAGIC);
+        header.putShort(BinaryConstants.VERSION);
+        header.putInt(BinaryConstants.SONG_NAME, getStringIndex(drillInfo.getSongName()));
+
+        // the header is filled in as the sections are written and then written over the
+        // space left for it at the start
+        channel.position(BinaryConstants.HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+
+        header.putInt(BinaryConstants.SONG_CONSTANTS_OFFSET, getOffset(out));
+        header.putInt(BinaryConstants.TEMPO_COUNT, drillInfo.getTempoHashMap().size());
+        header.putInt(BinaryConstants.COUNTS_COUNT, drillInfo.getCountsHashMap().size());
+        writeSongConstants(out, drillInfo.getTempoHashMap());
+        writeSongConstants(out, drillInfo.getCountsHashMap());
+
+        List<Move> moves = drillInfo.getMoves();
+        int[] moveOffsets = new int[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            moveOffsets[i] = getOffset(out);
+            writeMove(out, moves.get(i));
+            if (progressListener != null) {
+                progressListener.progress(i + 1, moves.size());
+            }
+        }
+
+        header.putInt(BinaryConstants.MOVE_INDEX_OFFSET, getOffset(out));
+        header.putInt(BinaryConstants.MOVE_COUNT, moveOffsets.length);
+        for (int moveOffset : moveOffsets) {
+            out.writeInt(moveOffset);
+        }
+
+        header.putInt(BinaryConstants.STRING_TABLE_OFFSET, getOffset(out));
+        header.putInt(BinaryConstants.STRING_COUNT, strings.size());
+        for (String string : strings) {
+            out.writeInt(string.length());
+            out.writeChars(string);
+        }
+        out.flush();
+
+        header.rewind();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static int getOffset(DataOutputStream out) throws IOException {
+        // offsets are stored as ints, and the size written saturates at the largest int
+        if (out.size() > Integer.MAX_VALUE - BinaryConstants.HEADER_SIZE) {
+            throw new IOException("The show is too large to save as a binary project.");
+        }
+        return BinaryConstants.HEADER_SIZE + out.size();
+    }
+
+    private static void writeSongConstants(DataOutputStream out, HashMap<Integer, Integer> hashMap) throws IOException {
+        for (Map.Entry<Integer, Integer> entry : hashMap.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private void writeMove(DataOutputStream out, Move move) throws IOException {
+        out.writeInt(move.getCounts());
+        out.writeInt(getStringIndex(move.getComments()));
+        out.writeInt(move.getStartPositions().size());
+
+        //TODO: NOTE: assuming that each hashmap has the same ranks, as the XML format does
+        for (String rankName : move.getStartPositions().keySet()) {
+            ArrayList<CommandPair> commandList = move.getCommands().get(rankName);
+            out.writeInt(getStringIndex(rankName));
+            writePosition(out, move.getStartPositions().get(rankName));
+            writePosition(out, move.getEndPositions().get(rankName));
+            out.writeInt(commandList.size());
+            for (CommandPair command : commandList) {
+                writeCommand(out, command);
+            }
+        }
+    }
+
+    private void writeCommand(DataOutputStream out, CommandPair command) throws IOException {
+        out.writeInt(command.getCommand());
+        out.writeInt(command.getCounts());
+        out.writeInt(getStringIndex(command.getName()));
+        writePosition(out, command.getDestination());
+
+        // an FTA without waypoints is saved without them, as in the XML format
+        List<Point> waypoints = command.getWaypoints();
+        if (waypoints == null || waypoints.isEmpty()) {
+            out.writeInt(BinaryConstants.NONE);
+            return;
+        }
+        out.writeInt(waypoints.size());
+        for (Point waypoint : waypoints) {
+            out.writeFloat(waypoint.X());
+            out.writeFloat(waypoint.Y());
+        }
+    }
+
+    private static void writePosition(DataOutputStream out, RankPosition position) throws IOException {
+        if (position == null) {
+            out.writeInt(BinaryConstants.NONE);
+            for (int i = 0; i < 6; i++) {
+                out.writeFloat(0);
+            }
+            return;
+        }
+        out.writeInt(position.getLineType());
+        out.writeFloat(position.getFront().X());
+        out.writeFloat(position.getFront().Y());
+        out.writeFloat(position.getMidpoint().X());
+        out.writeFloat(position.getMidpoint().Y());
+        out.writeFloat(position.getEnd().X());
+        out.writeFloat(position.getEnd().Y());
+    }
+
+    private int getStringIndex(String string) {
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndexes.put(string, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,232 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.BinaryConstants;
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.XMLConstants;
+
+/**
+ *
+ * Reads a project saved in the binary format laid out in BinaryConstants.
+ *
+ * The file is mapped into memory and its records are read straight into the models: there
+ * is no text to parse and no tree of nodes to build, and each string in the string table
+ * is decoded once and shared by every move that uses it.  The checks made on what is read
+ * are those the XML parsers make, so a show loads the same from either format.
+ *
+ */
+public class BinaryDrillParser implements DrillParser {
+
+    public BinaryDrillParser() {
+
+    }
+
+    /**
+     * Returns whether a file holds a binary project, by its first bytes
+     *
+     * @param file - the file to check
+     * @return true if the file starts with the binary project magic bytes
+     * @throws IOException
+     */
+    public static boolean isBinaryProject(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(BinaryConstants.MAGIC.length);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+            }
+            return !magic.hasRemaining() && Arrays.equals(magic.array(), BinaryConstants.MAGIC);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Loads the models based on the information stored in a binary save file.
+     *
+     * @param file - the save file stored in the binary format
+     * @return the drill read from the save file
+     * @throws IOException
+     * @throws DrillXMLException
+     */
+    @Override
+    public DrillInfo load(File file) throws IOException, DrillXMLException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        } finally {
+            // the mapping stays valid until the buffer is collected
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a drill from a buffer holding a binary save file.
+     *
+     * @param buffer - the contents of the save file
+     * @return the drill read
+     * @throws DrillXMLException
+     */
+    public DrillInfo read(ByteBuffer buffer) throws DrillXMLException {
+        try {
+            return readDrill(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new DrillXMLException("DrillXMLException: the binary project file ends part way through a record.");
+        } catch (IndexOutOfBoundsException e) {
+            throw new DrillXMLException("DrillXMLException: the binary project file ends part way through a record.");
+        } catch (IllegalArgumentException e) {
+            throw new DrillXMLException("DrillXMLException: an offset in the binary project file is outside of the file.");
+        }
+    }
+
+    private DrillInfo readDrill(ByteBuffer buffer) throws DrillXMLException {
+        for (int i = 0; i < BinaryConstants.MAGIC.length; i++) {
+            if (buffer.get(i) != BinaryConstants.MAGIC[i]) {
+                throw new DrillXMLException("DrillXMLException: the file is not a binary project file.");
+            }
+        }
+        if (buffer.getShort(BinaryConstants.MAGIC.length) != BinaryConstants.VERSION) {
+            throw new DrillXMLException("DrillXMLException: the binary project file was saved by an unknown version, "
+                    + buffer.getShort(BinaryConstants.MAGIC.length) + ".");
+        }
+
+        String[] strings = readStrings(buffer);
+        DrillInfo drillInfo = new DrillInfo();
+
+        buffer.position(buffer.getInt(BinaryConstants.SONG_CONSTANTS_OFFSET));
+        readSongConstants(buffer, drillInfo.getTempoHashMap(), buffer.getInt(BinaryConstants.TEMPO_COUNT), XMLConstants.TEMPO);
+        readSongConstants(buffer, drillInfo.getCountsHashMap(), buffer.getInt(BinaryConstants.COUNTS_COUNT), XMLConstants.COUNT_PER_MEASURE);
+
+        int moveIndexOffset = buffer.getInt(BinaryConstants.MOVE_INDEX_OFFSET);
+        buffer.position(moveIndexOffset);
+        int moveCount = getCount(buffer.getInt(BinaryConstants.MOVE_COUNT), 4, buffer);
+        for (int i = 0; i < moveCount; i++) {
+            buffer.position(buffer.getInt(moveIndexOffset + 4 * i));
+            XMLParser.addMove(drillInfo.getMoves(), readMove(buffer, strings), i);
+        }
+
+        drillInfo.setSongName(getString(strings, buffer.getInt(BinaryConstants.SONG_NAME)));
+        return drillInfo;
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) throws DrillXMLException {
+        buffer.position(buffer.getInt(BinaryConstants.STRING_TABLE_OFFSET));
+        String[] strings = new String[getCount(buffer.getInt(BinaryConstants.STRING_COUNT), 4, buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() / 2) {
+                throw new DrillXMLException("DrillXMLException: a string in the binary project file ends outside of the file.");
+            }
+            char[] chars = new char[length];
+            buffer.asCharBuffer().get(chars);
+            buffer.position(buffer.position() + 2 * length);
+            strings[i] = new String(chars);
+        }
+        return strings;
+    }
+
+    private static void readSongConstants(ByteBuffer buffer, HashMap<Integer, Integer> hashMap, int count,
+            String valueTagName) throws DrillXMLException {
+        getCount(count, 8, buffer);
+        for (int i = 0; i < count; i++) {
+            int measure = buffer.getInt();
+            int value = buffer.getInt();
+            XMLParser.addSongConstant(hashMap, measure, value, valueTagName);
+        }
+    }
+
+    private static Move readMove(ByteBuffer buffer, String[] strings) throws DrillXMLException {
+        Move move = new Move();
+        move.setCounts(buffer.getInt());
+        move.setComments(getString(strings, buffer.getInt()));
+
+        int rankCount = getCount(buffer.getInt(), BinaryConstants.RANK_SIZE, buffer);
+        for (int i = 0; i < rankCount; i++) {
+            String rankName = getString(strings, buffer.getInt());
+            RankPosition startPosition = readRankPosition(buffer);
+            RankPosition endPosition = readRankPosition(buffer);
+
+            int commandCount = getCount(buffer.getInt(), BinaryConstants.COMMAND_SIZE, buffer);
+            ArrayList<CommandPair> commands = new ArrayList<CommandPair>(commandCount);
+            for (int j = 0; j < commandCount; j++) {
+                readCommand(buffer, strings, commands, j);
+            }
+
+            move.getCommands().put(rankName, commands);
+            move.getStartPositions().put(rankName, startPosition);
+            move.getEndPositions().put(rankName, endPosition);
+        }
+        return move;
+    }
+
+    private static void readCommand(ByteBuffer buffer, String[] strings, ArrayList<CommandPair> commands,
+            int commandIndex) throws DrillXMLException {
+        int commandType = buffer.getInt();
+        int counts = buffer.getInt();
+        String commandName = getString(strings, buffer.getInt());
+        RankPosition DTPDest = readDestination(buffer);
+
+        ArrayList<Point> waypoints = null;
+        int waypointCount = buffer.getInt();
+        if (waypointCount != BinaryConstants.NONE) {
+            waypoints = new ArrayList<Point>(getCount(waypointCount, BinaryConstants.WAYPOINT_SIZE, buffer));
+            for (int i = 0; i < waypointCount; i++) {
+                waypoints.add(new Point(buffer.getFloat(), buffer.getFloat()));
+            }
+        }
+
+        XMLParser.addCommand(commands, commandIndex, commandType, counts, commandName, DTPDest, waypoints);
+    }
+
+    private static RankPosition readRankPosition(ByteBuffer buffer) throws DrillXMLException {
+        int lineType = buffer.getInt();
+        Point front = new Point(buffer.getFloat(), buffer.getFloat());
+        Point midpoint = new Point(buffer.getFloat(), buffer.getFloat());
+        Point end = new Point(buffer.getFloat(), buffer.getFloat());
+        return XMLParser.createRankPosition(front, midpoint, end, lineType);
+    }
+
+    private static RankPosition readDestination(ByteBuffer buffer) {
+        int lineType = buffer.getInt();
+        if (lineType == BinaryConstants.NONE) {
+            buffer.position(buffer.position() + BinaryConstants.POSITION_SIZE - 4);
+            return null;
+        }
+        // destinations are kept exactly as they were saved, as in the XML format
+        Point front = new Point(buffer.getFloat(), buffer.getFloat());
+        Point midpoint = new Point(buffer.getFloat(), buffer.getFloat());
+        Point end = new Point(buffer.getFloat(), buffer.getFloat());
+        return new RankPosition(front, midpoint, end, lineType);
+    }
+
+    private static String getString(String[] strings, int index) throws DrillXMLException {
+        if (index < 0 || index >= strings.length) {
+            throw new DrillXMLException("DrillXMLException: a string index in the binary project file is outside of the string table.");
+        }
+        return strings[index];
+    }
+
+    // Checks a count of records against the space left in the file, so that a corrupt count
+    // is reported rather than allocated
+    private static int getCount(int count, int recordSize, ByteBuffer buffer) throws DrillXMLException {
+        if (count < 0 || count > buffer.remaining() / recordSize) {
+            throw new DrillXMLException("DrillXMLException: a count in the binary project file runs past the end of the file.");
+        }
+        return count;
+    }
+}
@@ -5,8 +5,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 
+import org.bigredbands.mb.analysis.CollisionReport;
+import org.bigredbands.mb.analysis.StrideReport;
 import org.bigredbands.mb.models.CommandPair;
 import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.MoveState;
 import org.bigredbands.mb.models.RankPosition;
 
 /**
@@ -219,6 +222,21 @@ public interface ControllerInterface {
      */
     public HashMap<String, RankPosition> getPlaybackPositions();
 
+    /**
+     * Gets the state of the move currently being played back
+     *
+     * @return - the state of every rank in the move being played back
+     */
+    public MoveState getPlaybackState();
+
+    /**
+     * Gets the count within the move currently being played back, including how far
+     * playback is towards the next count
+     *
+     * @return - the number of counts into the move being played back
+     */
+    public float getPlaybackCount();
+
     /**
      * Renames the specified command to a new name, but keep the same functionality.
      * Updates the display afterwards.
@@ -328,4 +346,28 @@ public interface ControllerInterface {
      */
     public ArrayList<CommandPair> getSharedCommands(HashSet<String> rankNames, HashMap<String, ArrayList<CommandPair>> commands);
 
+    /**
+     * Checks every count of the show for ranks that cross through each other or come
+     * closer than the minimum interval.
+     *
+     * @return - the collisions found in each move
+     */
+    public CollisionReport getCollisionReport();
+
+    /**
+     * Returns the ranks that cross through another rank or come closer than the minimum interval
+     * at any count of the current move, so that the field can highlight them.
+     *
+     * @return - the names of the colliding ranks
+     */
+    public HashSet<String> getCollidingRanks();
+
+    /**
+     * Checks every count of the show for ranks stepping larger or smaller than the stride
+     * limits.  Only the moves changed since the last check are checked again.
+     *
+     * @return - the stride violations found in each move
+     */
+    public StrideReport getStrideReport();
+
 }
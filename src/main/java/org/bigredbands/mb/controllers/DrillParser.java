@@ -0,0 +1,32 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.DrillInfo;
+import org.xml.sax.SAXException;
+
+/**
+ *
+ * A way of reading a saved project.  Every parser accepts the same files and fails on
+ * the same files with the same errors, except that LazyXMLParser only finds an error inside
+ * a move once the move is first used.
+ *
+ */
+public interface DrillParser {
+
+    /**
+     * Loads the models based on the information stored in a save file.
+     *
+     * @param file - the save file
+     * @return the drill read from the file
+     * @throws ParserConfigurationException
+     * @throws SAXException if the file is not well formed XML
+     * @throws IOException
+     * @throws DrillXMLException if the file does not describe a drill
+     */
+    public DrillInfo load(File file) throws ParserConfigurationException, SAXException, IOException, DrillXMLException;
+}
@@ -0,0 +1,904 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.utils.FileWriteUtils;
+
+/**
+ *
+ * Records each edit made to a saved project in a file next to it, so that edits that have not
+ * been saved can be recovered if the program stops before they are.
+ *
+ * The journal starts from the project as it was last saved.  Each edit is appended as a short
+ * record of the ControllerInterface call that made it, after a record of the move and ranks it
+ * was made on when those have changed, and the file is forced to disk once a batch of records
+ * has built up or shortly after the last one.  Once enough records have built up, the project is
+ * written to a checkpoint in the binary format and the records before it are dropped, so that
+ * replaying the journal never takes long.  The checkpoint is written to whichever of two files
+ * the journal does not follow, so that the journal can be read whenever the program stops.
+ * Saving the project drops every record made before the save.
+ *
+ * A journal file is laid out as:
+ *   header      MAGIC, VERSION, the length and time modified of the project file, then which
+ *               of the two checkpoint files the records follow, or -1 for neither, and its
+ *               length and time modified
+ *   records     int length, byte type, the arguments of the call, then the CRC32 of the type
+ *               and arguments; a record cut short or that does not match its CRC ends the journal
+ *
+ */
+public class EditJournal implements Closeable {
+
+    // The first bytes of every journal file
+    private static final byte[] MAGIC = { 'P', 'N', 'D', 'J' };
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 2 + 4 * 8 + 4;
+
+    // The extensions added to the name of the project file for its journal and checkpoint
+    public static final String EXTENSION = ".journal";
+    public static final String CHECKPOINT_EXTENSION = ".checkpoint";
+
+    // The types of records, one for each call that edits the project
+    private static final byte CONTEXT = 0;
+    private static final byte ADD_MOVE = 1;
+    private static final byte DELETE_MOVE = 2;
+    private static final byte ADD_RANK = 3;
+    private static final byte DELETE_RANK = 4;
+    private static final byte UPDATE_INITIAL_POSITION = 5;
+    private static final byte ASSIGN_COMMAND = 6;
+    private static final byte REMOVE_COMMANDS = 7;
+    private static final byte RENAME_COMMAND = 8;
+    private static final byte MOVE_COMMANDS_UP = 9;
+    private static final byte MOVE_COMMANDS_DOWN = 10;
+    private static final byte MERGE_COMMANDS = 11;
+    private static final byte SPLIT_COMMAND = 12;
+    private static final byte SET_SONG_CONSTANTS = 13;
+    private static final byte SET_MOVE_COMMENT = 14;
+
+    // A string or position that is not set
+    private static final int NONE = -1;
+
+    // The number of records written before the journal is forced to disk, and the longest a
+    // record waits to be forced otherwise
+    private static final int SYNC_BATCH = 64;
+    private static final long SYNC_DELAY_MILLIS = 1000;
+
+    // The number of records kept before the project is written to a checkpoint
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 4096;
+
+    // Forces the journals of every project to disk in the background
+    private static final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "journal-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // The project the journal records the edits of, or null if edits are not recorded
+    private final File projectFile;
+
+    // The journal file while it is open, or null while the records are only kept in memory,
+    // until the project has first been written
+    private FileChannel channel;
+
+    // What the records follow: the project file as it was saved, and the checkpoint if any
+    private long projectLength = NONE;
+    private long projectModified = NONE;
+    private int checkpoint = NONE;
+    private long checkpointLength = NONE;
+    private long checkpointModified = NONE;
+
+    // The records in the journal, in order, and the number of records dropped before them
+    private ArrayList<byte[]> records = new ArrayList<byte[]>();
+    private long firstSequence = 0;
+
+    // The move and ranks the last edit was made on
+    private int contextMove = NONE;
+    private HashSet<String> contextRanks = new HashSet<String>();
+
+    // The number of records written but not yet forced to disk, whether a force is scheduled for
+    // a while after the last record, and whether one is scheduled now for a full batch
+    private int unsynced = 0;
+    private boolean syncScheduled = false;
+    private boolean batchSyncScheduled = false;
+
+    private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private boolean compacting = false;
+
+    // The record being built
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(recordBytes);
+
+    /**
+     * Creates a journal that records nothing, for a project that has not been saved.
+     */
+    public EditJournal() {
+        this.projectFile = null;
+    }
+
+    /**
+     * Creates a journal for a project that is being saved for the first time, or saved at a new
+     * location.  The edits are kept in memory until rebase is called once the project is written.
+     *
+     * @param projectFile - the location the project is being saved at
+     */
+    public EditJournal(File projectFile) {
+        this.projectFile = projectFile;
+    }
+
+    /**
+     * Reads the journal of a project that is being opened.  The records are kept if they follow
+     * the project file as it is now, and otherwise dropped.  Nothing is written until start is
+     * called, after the records have been replayed.
+     *
+     * @param projectFile - the project being opened
+     * @return the journal of the project
+     * @throws IOException if the journal cannot be read
+     */
+    public static EditJournal open(File projectFile) throws IOException {
+        EditJournal journal = new EditJournal(projectFile);
+        File journalFile = getJournalFile(projectFile);
+        if (journalFile.exists() && !journal.read(ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath())))) {
+            journal.records.clear();
+            journal.checkpoint = NONE;
+        }
+        journal.projectLength = projectFile.length();
+        journal.projectModified = projectFile.lastModified();
+        return journal;
+    }
+
+    /**
+     * Returns the journal file of a project
+     *
+     * @param projectFile - the project file
+     * @return the file next to the project that its edits are recorded in
+     */
+    public static File getJournalFile(File projectFile) {
+        return new File(projectFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Returns one of the two checkpoint files of a project
+     *
+     * @param projectFile - the project file
+     * @param checkpoint - which checkpoint file, 0 or 1
+     * @return a file next to the project that the project is written to as it is compacted
+     */
+    public static File getCheckpointFile(File projectFile, int checkpoint) {
+        return new File(projectFile.getPath() + CHECKPOINT_EXTENSION + checkpoint);
+    }
+
+    /**
+     * Returns the project the journal records the edits of
+     *
+     * @return the project file, or null if edits are not recorded
+     */
+    public File getProjectFile() {
+        return projectFile;
+    }
+
+    /**
+     * Returns the checkpoint the records of a journal that has just been opened follow, which
+     * should be loaded in place of the project file.
+     *
+     * @return the checkpoint file, or null if the records follow the project file
+     */
+    public synchronized File getCheckpoint() {
+        return checkpoint == NONE ? null : getCheckpointFile(projectFile, checkpoint);
+    }
+
+    /**
+     * Returns whether the journal holds edits that have not been saved.
+     *
+     * @return true if there are edits to recover
+     */
+    public synchronized boolean hasEdits() {
+        if (checkpoint != NONE) {
+            return true;
+        }
+        for (byte[] record : records) {
+            if (record[4] != CONTEXT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the number of records kept before the project is written to a checkpoint.
+     *
+     * @param compactionThreshold - the number of records
+     */
+    public synchronized void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Makes the calls recorded in the journal again, to recover the edits they made.  Replaying
+     * stops at the first call that cannot be made, and it and the records after it are dropped.
+     *
+     * @param controller - the controller of the project, which must not record the calls again
+     * @return the number of edits replayed
+     */
+    public synchronized int replay(ControllerInterface controller) {
+        int replayed = 0;
+        for (int i = 0; i < records.size(); i++) {
+            byte[] record = records.get(i);
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 5, record.length - 9));
+                if (apply(record[4], in, controller) && record[4] != CONTEXT) {
+                    replayed++;
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                records.subList(i, records.size()).clear();
+                break;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Writes the journal file and goes on to record edits in it.  Called once the journal of a
+     * project that has been opened has been replayed.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void start() throws IOException {
+        if (projectFile != null) {
+            rewrite(firstSequence);
+        }
+    }
+
+    /**
+     * Returns a mark of the edits recorded so far, to drop once the project as it is now has been
+     * written.
+     *
+     * @return the number of edits recorded so far
+     */
+    public synchronized long mark() {
+        return firstSequence + records.size();
+    }
+
+    /**
+     * Drops the edits before a mark, once the project as it was at the mark has been saved to the
+     * project file, and writes the journal file from there.  Called on the save thread.
+     *
+     * @param mark - the mark taken when the project was saved
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void rebase(long mark) throws IOException {
+        if (projectFile == null) {
+            return;
+        }
+        projectLength = projectFile.length();
+        projectModified = projectFile.lastModified();
+        checkpoint = NONE;
+        rewrite(mark);
+        deleteCheckpoints();
+    }
+
+    /**
+     * Returns whether enough records have built up to write the project to a checkpoint.  Once
+     * this has returned true it returns false until the compaction has been done.
+     *
+     * @return true if compact should be called
+     */
+    public synchronized boolean isCompactionDue() {
+        if (compacting || channel == null || records.size() < compactionThreshold) {
+            return false;
+        }
+        compacting = true;
+        return true;
+    }
+
+    /**
+     * Writes the project to the checkpoint and drops the records before it.  Called on the save
+     * thread.
+     *
+     * @param snapshot - a copy of the project as it was at the mark
+     * @param mark - the mark taken when the copy was made
+     * @throws IOException if the checkpoint or the journal cannot be written
+     */
+    public void compact(DrillInfo snapshot, long mark) throws IOException {
+        try {
+            // only the save thread changes which checkpoint the journal follows
+            int nextCheckpoint;
+            synchronized (this) {
+                nextCheckpoint = checkpoint == 0 ? 1 : 0;
+            }
+
+            // the project is written without holding the journal, so that edits go on being recorded
+            File checkpointFile = getCheckpointFile(projectFile, nextCheckpoint);
+            new BinaryDrillGenerator().save(snapshot, checkpointFile);
+            synchronized (this) {
+                if (channel == null) {
+                    return;
+                }
+                checkpoint = nextCheckpoint;
+                checkpointLength = checkpointFile.length();
+                checkpointModified = checkpointFile.lastModified();
+                rewrite(mark);
+                Files.deleteIfExists(getCheckpointFile(projectFile, 1 - nextCheckpoint).toPath());
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Forces the records written so far to disk.
+     */
+    public synchronized void sync() {
+        syncScheduled = false;
+        batchSyncScheduled = false;
+        if (channel == null || unsynced == 0) {
+            return;
+        }
+        try {
+            channel.force(false);
+            unsynced = 0;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Closes the journal, leaving it next to the project if it holds edits that have not been saved.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        boolean hasEdits = hasEdits();
+        closeChannel();
+        if (projectFile != null && !hasEdits) {
+            Files.deleteIfExists(getJournalFile(projectFile).toPath());
+        }
+    }
+
+    /**
+     * Closes the journal and deletes it, dropping any edits that have not been saved.
+     *
+     * @throws IOException if the journal cannot be deleted
+     */
+    public synchronized void discard() throws IOException {
+        closeChannel();
+        records.clear();
+        if (projectFile != null) {
+            Files.deleteIfExists(getJournalFile(projectFile).toPath());
+            deleteCheckpoints();
+        }
+    }
+
+    /**
+     * Sets the move and the ranks the next edit is made on, recording them if they have changed.
+     *
+     * @param currentMove - the number of the current move
+     * @param selectedRanks - the names of the selected ranks
+     * @return this journal, to record the edit in
+     */
+    public synchronized EditJournal at(int currentMove, Set<String> selectedRanks) {
+        if (projectFile == null || (currentMove == contextMove && selectedRanks.equals(contextRanks))) {
+            return this;
+        }
+        contextMove = currentMove;
+        contextRanks = new HashSet<String>(selectedRanks);
+        try {
+            begin(CONTEXT);
+            out.writeInt(currentMove);
+            writeStrings(selectedRanks);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+        return this;
+    }
+
+    public synchronized void addMove(int counts) {
+        try {
+            begin(ADD_MOVE);
+            out.writeInt(counts);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void deleteMove(int moveNum) {
+        try {
+            begin(DELETE_MOVE);
+            out.writeInt(moveNum);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void addRank(String rankName, RankPosition rankPosition) {
+        try {
+            begin(ADD_RANK);
+            writeString(rankName);
+            writePosition(rankPosition);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void deleteRank(Set<String> rankNames) {
+        try {
+            begin(DELETE_RANK);
+            writeStrings(rankNames);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void updateInitialPosition(String rankName, RankPosition newPos) {
+        try {
+            begin(UPDATE_INITIAL_POSITION);
+            writeString(rankName);
+            writePosition(newPos);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void assignCommand(String rankName, CommandPair commandPair) {
+        try {
+            begin(ASSIGN_COMMAND);
+            writeString(rankName);
+            out.writeInt(commandPair.getCommand());
+            out.writeInt(commandPair.getCounts());
+            writeString(commandPair.getName());
+            writePosition(commandPair.getDestination());
+            List<Point> waypoints = commandPair.getWaypoints();
+            out.writeInt(waypoints == null ? NONE : waypoints.size());
+            if (waypoints != null) {
+                for (Point waypoint : waypoints) {
+                    out.writeFloat(waypoint.X());
+                    out.writeFloat(waypoint.Y());
+                }
+            }
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void removeCommands(int[] commandIndices) {
+        writeIndices(REMOVE_COMMANDS, commandIndices);
+    }
+
+    public synchronized void renameCommand(int index, String name) {
+        try {
+            begin(RENAME_COMMAND);
+            out.writeInt(index);
+            writeString(name);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void moveCommandsUp(int[] commandIndices) {
+        writeIndices(MOVE_COMMANDS_UP, commandIndices);
+    }
+
+    public synchronized void moveCommandsDown(int[] commandIndices) {
+        writeIndices(MOVE_COMMANDS_DOWN, commandIndices);
+    }
+
+    public synchronized void mergeCommands(int[] commandIndices) {
+        writeIndices(MERGE_COMMANDS, commandIndices);
+    }
+
+    public synchronized void splitCommand(int index, int count) {
+        try {
+            begin(SPLIT_COMMAND);
+            out.writeInt(index);
+            out.writeInt(count);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void setSongConstants(HashMap<Integer, Integer> tempoHashMap,
+            HashMap<Integer, Integer> countsHashMap, String songName) {
+        try {
+            begin(SET_SONG_CONSTANTS);
+            writeSongConstants(tempoHashMap);
+            writeSongConstants(countsHashMap);
+            writeString(songName);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void setMoveComment(String comment) {
+        try {
+            begin(SET_MOVE_COMMENT);
+            writeString(comment);
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Makes the call a record was written for, returning false for a record whose call
+    // returned an error, which is replayed the same as it was made
+    private static boolean apply(byte type, DataInputStream in, ControllerInterface controller) throws IOException {
+        String errorMessage = "";
+        switch (type) {
+        case CONTEXT:
+            int moveNumber = in.readInt();
+            HashSet<String> rankNames = readStrings(in);
+            controller.changeMoves(moveNumber);
+            controller.deselectAll();
+            for (String rankName : rankNames) {
+                controller.addSelectedRank(rankName, false);
+            }
+            break;
+        case ADD_MOVE:
+            controller.addMove(in.readInt());
+            break;
+        case DELETE_MOVE:
+            controller.deleteMove(in.readInt());
+            break;
+        case ADD_RANK:
+            errorMessage = controller.addRank(readString(in), readPosition(in));
+            break;
+        case DELETE_RANK:
+            controller.deleteRank(readStrings(in));
+            break;
+        case UPDATE_INITIAL_POSITION:
+            controller.updateInitialPosition(readString(in), readPosition(in));
+            break;
+        case ASSIGN_COMMAND:
+            String rankName = readString(in);
+            CommandPair commandPair = new CommandPair(in.readInt(), in.readInt(), readString(in));
+            commandPair.setDestination(readPosition(in));
+            int waypointCount = in.readInt();
+            if (waypointCount != NONE) {
+                ArrayList<Point> waypoints = new ArrayList<Point>(waypointCount);
+                for (int i = 0; i < waypointCount; i++) {
+                    waypoints.add(new Point(in.readFloat(), in.readFloat()));
+                }
+                commandPair.setWaypoints(waypoints);
+            }
+            errorMessage = controller.assignCommand(rankName, commandPair);
+            break;
+        case REMOVE_COMMANDS:
+            errorMessage = controller.removeCommands(readIndices(in));
+            break;
+        case RENAME_COMMAND:
+            errorMessage = controller.renameCommand(in.readInt(), readString(in));
+            break;
+        case MOVE_COMMANDS_UP:
+            errorMessage = controller.moveCommandsUp(readIndices(in));
+            break;
+        case MOVE_COMMANDS_DOWN:
+            errorMessage = controller.moveCommandsDown(readIndices(in));
+            break;
+        case MERGE_COMMANDS:
+            errorMessage = controller.mergeCommands(readIndices(in));
+            break;
+        case SPLIT_COMMAND:
+            errorMessage = controller.splitCommand(in.readInt(), in.readInt());
+            break;
+        case SET_SONG_CONSTANTS:
+            HashMap<Integer, Integer> tempoHashMap = readSongConstants(in);
+            HashMap<Integer, Integer> countsHashMap = readSongConstants(in);
+            controller.setSongConstants(tempoHashMap, countsHashMap, readString(in));
+            break;
+        case SET_MOVE_COMMENT:
+            controller.setMoveComment(readString(in));
+            break;
+        default:
+            throw new IOException("Unknown journal record type " + type + ".");
+        }
+        return errorMessage.isEmpty();
+    }
+
+    // Reads the header and records of a journal file, returning false if it does not follow the
+    // project file as it is now
+    private boolean read(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.getShort() != VERSION) {
+            return false;
+        }
+        long savedLength = buffer.getLong();
+        long savedModified = buffer.getLong();
+        checkpoint = buffer.getInt();
+        checkpointLength = buffer.getLong();
+        checkpointModified = buffer.getLong();
+        if (savedLength != projectFile.length() || savedModified != projectFile.lastModified()) {
+            return false;
+        }
+        if (checkpoint != NONE) {
+            File checkpointFile = getCheckpointFile(projectFile, checkpoint);
+            if ((checkpoint != 0 && checkpoint != 1) || checkpointLength != checkpointFile.length()
+                    || checkpointModified != checkpointFile.lastModified()) {
+                return false;
+            }
+        }
+
+        // the records end at the first one that was not written in full
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 1 || length > buffer.remaining() - 8) {
+                break;
+            }
+            byte[] record = new byte[length + 8];
+            buffer.get(record);
+            crc.reset();
+            crc.update(record, 4, length);
+            if ((int) crc.getValue() != ByteBuffer.wrap(record).getInt(length + 4)) {
+                break;
+            }
+            records.add(record);
+        }
+        return true;
+    }
+
+    private void begin(byte type) throws IOException {
+        recordBytes.reset();
+        out.writeInt(0);
+        out.writeByte(type);
+    }
+
+    private void end() throws IOException {
+        if (projectFile == null) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        byte[] record = Arrays.copyOf(recordBytes.toByteArray(), recordBytes.size() + 4);
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(0, record.length - 8);
+        crc.update(record, 4, record.length - 8);
+        buffer.putInt(record.length - 4, (int) crc.getValue());
+        records.add(record);
+
+        if (channel != null) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            unsynced++;
+            if (unsynced >= SYNC_BATCH && !batchSyncScheduled) {
+                // the records are forced in the background, never on the thread making the edit
+                batchSyncScheduled = true;
+                scheduleSync(0);
+            }
+            else if (!syncScheduled) {
+                syncScheduled = true;
+                scheduleSync(SYNC_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void scheduleSync(long delayMillis) {
+        syncExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Writes the journal file with the records from the given sequence on, led by the move and
+    // ranks they were made on, and opens it to record edits in
+    private void rewrite(long from) throws IOException {
+        int start = (int) Math.max(0, Math.min(from - firstSequence, records.size()));
+        ArrayList<byte[]> kept = new ArrayList<byte[]>();
+        for (int i = start - 1; i >= 0; i--) {
+            if (records.get(i)[4] == CONTEXT) {
+                kept.add(records.get(i));
+                break;
+            }
+        }
+        kept.addAll(records.subList(start, records.size()));
+        firstSequence = firstSequence + start - (kept.size() - (records.size() - start));
+        records = kept;
+
+        closeChannel();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putShort(VERSION);
+        header.putLong(projectLength);
+        header.putLong(projectModified);
+        header.putInt(checkpoint);
+        header.putLong(checkpointLength);
+        header.putLong(checkpointModified);
+        header.flip();
+        final File journalFile = getJournalFile(projectFile);
+        FileWriteUtils.replace(journalFile, new FileWriteUtils.ChannelWriter() {
+            @Override
+            public void write(FileChannel channel) throws IOException {
+                channel.write(header);
+                for (byte[] record : records) {
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            }
+        });
+        channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        unsynced = 0;
+    }
+
+    private void deleteCheckpoints() throws IOException {
+        Files.deleteIfExists(getCheckpointFile(projectFile, 0).toPath());
+        Files.deleteIfExists(getCheckpointFile(projectFile, 1).toPath());
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Stops writing the journal once it cannot be written, keeping the edits in memory
+    private void fail(IOException e) {
+        e.printStackTrace();
+        try {
+            closeChannel();
+        } catch (IOException closeException) {
+            closeException.printStackTrace();
+        }
+    }
+
+    private void writeIndices(byte type, int[] indices) {
+        try {
+            begin(type);
+            out.writeInt(indices.length);
+            for (int index : indices) {
+                out.writeInt(index);
+            }
+            end();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private static int[] readIndices(DataInputStream in) throws IOException {
+        int[] indices = new int[readCount(in, 4)];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = in.readInt();
+        }
+        return indices;
+    }
+
+    private void writeString(String string) throws IOException {
+        if (string == null) {
+            out.writeInt(NONE);
+            return;
+        }
+        out.writeInt(string.length());
+        out.writeChars(string);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NONE) {
+            return null;
+        }
+        char[] chars = new char[readCount(length, in, 2)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+
+    private void writeStrings(Set<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(string);
+        }
+    }
+
+    private static HashSet<String> readStrings(DataInputStream in) throws IOException {
+        int count = readCount(in, 4);
+        HashSet<String> strings = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private void writePosition(RankPosition position) throws IOException {
+        if (position == null) {
+            out.writeInt(NONE);
+            return;
+        }
+        out.writeInt(position.getLineType());
+        out.writeFloat(position.getFront().X());
+        out.writeFloat(position.getFront().Y());
+        out.writeFloat(position.getMidpoint().X());
+        out.writeFloat(position.getMidpoint().Y());
+        out.writeFloat(position.getEnd().X());
+        out.writeFloat(position.getEnd().Y());
+    }
+
+    private static RankPosition readPosition(DataInputStream in) throws IOException {
+        int lineType = in.readInt();
+        if (lineType == NONE) {
+            return null;
+        }
+        Point front = new Point(in.readFloat(), in.readFloat());
+        Point midpoint = new Point(in.readFloat(), in.readFloat());
+        Point end = new Point(in.readFloat(), in.readFloat());
+        return new RankPosition(front, midpoint, end, lineType);
+    }
+
+    private void writeSongConstants(HashMap<Integer, Integer> hashMap) throws IOException {
+        out.writeInt(hashMap.size());
+        for (Map.Entry<Integer, Integer> entry : hashMap.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private static HashMap<Integer, Integer> readSongConstants(DataInputStream in) throws IOException {
+        int count = readCount(in, 8);
+        HashMap<Integer, Integer> hashMap = new HashMap<Integer, Integer>();
+        for (int i = 0; i < count; i++) {
+            hashMap.put(in.readInt(), in.readInt());
+        }
+        return hashMap;
+    }
+
+    private static int readCount(DataInputStream in, int recordSize) throws IOException {
+        return readCount(in.readInt(), in, recordSize);
+    }
+
+    // Checks a count against what is left of the record, so that a corrupt count is reported
+    // rather than allocated
+    private static int readCount(int count, DataInputStream in, int recordSize) throws IOException {
+        if (count < 0 || count > in.available() / recordSize) {
+            throw new EOFException("A count in the journal runs past the end of its record.");
+        }
+        return count;
+    }
+}
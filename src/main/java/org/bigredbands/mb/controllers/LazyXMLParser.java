@@ -0,0 +1,563 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.LazyMoveList;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.XMLConstants;
+import org.xml.sax.SAXException;
+
+/**
+ *
+ * Reads a saved project without reading its moves.  The file is scanned once for where
+ * each move starts and ends and the number it was saved with, and everything around the
+ * moves is read as StreamingXMLParser reads it.  Each move is then read from its place in
+ * the file the first time it is used, and the file is kept open for that until the list
+ * of moves is closed.
+ *
+ * The scan only follows files laid out as they are saved, with every move directly inside
+ * the root and holding a single plain move number.  Anything else, such as a comment,
+ * CDATA section or document type, or a move, song change or song name inside a move, is
+ * read in full by StreamingXMLParser instead, with the same result and the same errors.
+ *
+ * An error inside a move read lazily is only found when the move is first used, and is
+ * then thrown as a MoveLoadException.
+ *
+ */
+public class LazyXMLParser implements DrillParser {
+
+    // The number of unchanged moves kept in memory by default
+    public static final int DEFAULT_CAPACITY = 32;
+
+    // The size of the buffer the file is scanned and copied through
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Finds the encoding in the XML declaration
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    private final int capacity;
+
+    public LazyXMLParser() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a parser whose moves keep at most the given number of unchanged moves in memory.
+     *
+     * @param capacity - the number of unchanged moves to keep
+     */
+    public LazyXMLParser(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Loads the models based on the information stored in a save XML file, leaving the moves
+     * to be read when they are first used.
+     *
+     * @param file - the save file stored in XML format
+     * @return the drill read from the save XML file
+     * @throws SAXException if the file is not well formed XML
+     * @throws IOException
+     * @throws DrillXMLException
+     */
+    @Override
+    public DrillInfo load(File file) throws SAXException, IOException, DrillXMLException {
+        String systemId = file.toURI().toString();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        boolean keepOpen = false;
+        try {
+            Index index = new Scanner().scan(channel);
+            if (index == null) {
+                return new StreamingXMLParser().load(file);
+            }
+
+            // read everything but the moves, which is all that is left of the file without them
+            DrillInfo drillInfo = new StreamingXMLParser().load(
+                    new ByteArrayInputStream(readAround(channel, index)), systemId);
+
+            FileSource source = new FileSource(channel, index, systemId);
+            LazyMoveList moves = new LazyMoveList(source, capacity);
+            for (int i = 0; i < index.count; i++) {
+                while (index.numbers[i] > moves.size()) {
+                    moves.add(new Move());
+                }
+                if (moves.isEmpty()) {
+                    // the first move is always kept, so it is read now and any error in it is thrown here
+                    moves.add(source.parse(i));
+                }
+                else {
+                    moves.addFromSource(i, index.numbers[i]);
+                }
+            }
+            drillInfo.setMoves(moves);
+            keepOpen = true;
+            return drillInfo;
+        } finally {
+            if (!keepOpen) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the parts of the file between the moves.
+     */
+    private static byte[] readAround(FileChannel channel, Index index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long position = 0;
+        for (int i = 0; i < index.count; i++) {
+            copy(channel, position, index.starts[i], out);
+            position = index.ends[i];
+        }
+        copy(channel, position, channel.size(), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Copies a range of the file to a stream
+     */
+    private static void copy(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, end - start));
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The file ended before the end of a move, it may have changed since it was loaded.");
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * Reads a move on its own, from the bytes of the move as they are in the file
+     */
+    static Move parseMove(byte[] bytes, String systemId) throws SAXException, IOException, DrillXMLException {
+        return parseMove(bytes, 0, bytes.length, systemId);
+    }
+
+    /**
+     * Reads a move on its own, from the given range of a buffer holding the bytes of the move
+     */
+    static Move parseMove(byte[] bytes, int offset, int length, String systemId)
+            throws SAXException, IOException, DrillXMLException {
+        List<Move> moves = new StreamingXMLParser().load(new ByteArrayInputStream(bytes, offset, length), systemId)
+                .getMoves();
+        return moves.get(moves.size() - 1);
+    }
+
+    /**
+     * Where each move is in the file, in the order they are found, along with its number and
+     * its counts, or -1 for counts that are not a plain number
+     */
+    static class Index {
+        int count;
+        long[] starts = new long[16];
+        long[] ends = new long[16];
+        int[] numbers = new int[16];
+        int[] counts = new int[16];
+
+        private void add(long start, long end, int number, int moveCounts) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+                numbers = Arrays.copyOf(numbers, 2 * count);
+                counts = Arrays.copyOf(counts, 2 * count);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            numbers[count] = number;
+            counts[count] = moveCounts;
+            count++;
+        }
+    }
+
+    /**
+     * Reads the moves from their places in the file
+     */
+    private static class FileSource implements LazyMoveList.Source {
+        private final FileChannel channel;
+        private final Index index;
+        private final String systemId;
+
+        private FileSource(FileChannel channel, Index index, String systemId) {
+            this.channel = channel;
+            this.index = index;
+            this.systemId = systemId;
+        }
+
+        /**
+         * Reads a move on its own, as a file holding just the move
+         */
+        private Move parse(int sourceIndex) throws SAXException, IOException, DrillXMLException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    (int) (index.ends[sourceIndex] - index.starts[sourceIndex]));
+            copy(sourceIndex, bytes);
+            return parseMove(bytes.toByteArray(), systemId);
+        }
+
+        @Override
+        public Move read(int sourceIndex) throws IOException {
+            try {
+                return parse(sourceIndex);
+            } catch (SAXException e) {
+                throw new IOException(e.getMessage(), e);
+            } catch (DrillXMLException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void copy(int sourceIndex, OutputStream out) throws IOException {
+            LazyXMLParser.copy(channel, index.starts[sourceIndex], index.ends[sourceIndex], out);
+        }
+
+        @Override
+        public int getCounts(int sourceIndex) {
+            return index.counts[sourceIndex];
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Finds the moves in a file by its tags alone, without reading any text but the move
+     * numbers and counts.  Gives up on anything it does not follow, so that the file is read
+     * in full.
+     */
+    static class Scanner {
+        private static final int TEXT = 0;
+        private static final int OPEN = 1;
+        private static final int START_NAME = 2;
+        private static final int IN_TAG = 3;
+        private static final int QUOTED = 4;
+        private static final int END_NAME = 5;
+        private static final int AFTER_END_NAME = 6;
+        private static final int INSTRUCTION = 7;
+
+        // The longest XML declaration looked at for an encoding
+        private static final int MAX_DECLARATION = 256;
+
+        private static final byte[] MOVE = XMLConstants.MOVE.getBytes(StandardCharsets.UTF_8);
+        private static final byte[] MOVE_NUMBER = XMLConstants.MOVE_NUMBER.getBytes(StandardCharsets.UTF_8);
+        private static final byte[] MOVE_COUNTS = XMLConstants.MOVE_COUNTS.getBytes(StandardCharsets.UTF_8);
+        private static final byte[][] NOT_IN_MOVE = {
+            XMLConstants.TEMPO_CHANGE.getBytes(StandardCharsets.UTF_8),
+            XMLConstants.COUNT_PER_MEASURE_CHANGE.getBytes(StandardCharsets.UTF_8),
+            XMLConstants.SONG_NAME.getBytes(StandardCharsets.UTF_8),
+        };
+
+        private final Index index = new Index();
+
+        private int state = TEXT;
+        private int quote;
+        private boolean slash;
+        private byte previous;
+
+        // The name of the tag being read; longer names than the buffer only need to not match
+        private final byte[] name = new byte[32];
+        private int nameLength;
+
+        // Where the current tag started, and where the document starts after any byte order mark
+        private long tagStart;
+        private long documentStart;
+        private final ByteArrayOutputStream declaration = new ByteArrayOutputStream();
+
+        // The depth of the elements open, the move being read and its number
+        private int depth;
+        private long moveStart = -1;
+        private boolean inNumber;
+        private int numberDigits;
+        private int moveNumber;
+
+        // The counts of the move being read, -1 until they are found and if they are not plain digits
+        private boolean inCounts;
+        private int countsDigits;
+        private int moveCounts;
+
+        /**
+         * Scans a whole file
+         *
+         * @return where the moves are, or null if the file must be read in full
+         */
+        Index scan(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = 0;
+            if (!checkStart(channel)) {
+                return null;
+            }
+            int read;
+            while ((read = channel.read(buffer, position)) >= 0) {
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < read; i++) {
+                    if (!next(bytes[i], position + i)) {
+                        return null;
+                    }
+                }
+                position += read;
+                buffer.clear();
+            }
+            if (state != TEXT || depth != 0 || moveStart >= 0) {
+                return null;
+            }
+            return index;
+        }
+
+        /**
+         * Checks that the file starts as a UTF-8 document would, skipping a byte order mark
+         */
+        private boolean checkStart(FileChannel channel) throws IOException {
+            ByteBuffer start = ByteBuffer.allocate(3);
+            while (start.hasRemaining() && channel.read(start, start.position()) >= 0) {
+            }
+            byte[] bytes = start.array();
+            if (start.position() == 3 && (bytes[0] & 0xff) == 0xef && (bytes[1] & 0xff) == 0xbb && (bytes[2] & 0xff) == 0xbf) {
+                documentStart = 3;
+                return true;
+            }
+            // anything but markup or space first is another encoding, or not XML at all
+            return start.position() == 0 || bytes[0] == '<' || isSpace(bytes[0]);
+        }
+
+        private boolean next(byte b, long position) {
+            if (position < documentStart) {
+                return true;
+            }
+            switch (state) {
+                case TEXT:
+                    if (b == '<') {
+                        tagStart = position;
+                        state = OPEN;
+                    }
+                    else if (inNumber) {
+                        // only a plain number is read here; anything else is left for the full read to report
+                        if (b < '0' || b > '9' || numberDigits == 9) {
+                            return false;
+                        }
+                        moveNumber = 10 * moveNumber + (b - '0');
+                        numberDigits++;
+                    }
+                    else if (inCounts && moveCounts >= 0) {
+                        // counts that are not a plain number are found by reading the move
+                        if (b < '0' || b > '9' || countsDigits == 9) {
+                            moveCounts = -1;
+                        }
+                        else {
+                            moveCounts = 10 * moveCounts + (b - '0');
+                            countsDigits++;
+                        }
+                    }
+                    return true;
+                case OPEN:
+                    if (b == '!') {
+                        return false;
+                    }
+                    nameLength = 0;
+                    slash = false;
+                    if (b == '/') {
+                        state = END_NAME;
+                    }
+                    else if (b == '?') {
+                        declaration.reset();
+                        previous = 0;
+                        state = INSTRUCTION;
+                    }
+                    else {
+                        appendName(b);
+                        state = START_NAME;
+                    }
+                    return true;
+                case START_NAME:
+                    if (b == '>') {
+                        return startTag();
+                    }
+                    if (b == '/') {
+                        slash = true;
+                        state = IN_TAG;
+                    }
+                    else if (isSpace(b)) {
+                        state = IN_TAG;
+                    }
+                    else {
+                        appendName(b);
+                    }
+                    return true;
+                case IN_TAG:
+                    if (b == '>') {
+                        return startTag();
+                    }
+                    if (b == '"' || b == '\'') {
+                        quote = b;
+                        state = QUOTED;
+                    }
+                    else if (!isSpace(b)) {
+                        slash = b == '/';
+                    }
+                    return true;
+                case QUOTED:
+                    if (b == quote) {
+                        state = IN_TAG;
+                    }
+                    return true;
+                case END_NAME:
+                    if (b == '>') {
+                        return endTag(position);
+                    }
+                    if (isSpace(b)) {
+                        state = AFTER_END_NAME;
+                    }
+                    else {
+                        appendName(b);
+                    }
+                    return true;
+                case AFTER_END_NAME:
+                    if (b == '>') {
+                        return endTag(position);
+                    }
+                    return isSpace(b);
+                case INSTRUCTION:
+                    if (tagStart == documentStart && declaration.size() < MAX_DECLARATION) {
+                        declaration.write(b);
+                    }
+                    if (b == '>' && previous == '?') {
+                        state = TEXT;
+                        if (tagStart == documentStart && !checkDeclaration()) {
+                            return false;
+                        }
+                    }
+                    previous = b;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean startTag() {
+            state = TEXT;
+            int elementDepth = depth + 1;
+            if (nameIs(MOVE)) {
+                // a move is only followed directly inside the root, and never inside another move
+                if (moveStart >= 0 || elementDepth != 2 || slash) {
+                    return false;
+                }
+                moveStart = tagStart;
+                moveNumber = -1;
+                moveCounts = -1;
+            }
+            else if (moveStart >= 0) {
+                if (inNumber || inCounts) {
+                    return false;
+                }
+                for (byte[] songTag : NOT_IN_MOVE) {
+                    if (nameIs(songTag)) {
+                        return false;
+                    }
+                }
+                if (nameIs(MOVE_NUMBER) && elementDepth == 3) {
+                    if (moveNumber != -1 || slash) {
+                        return false;
+                    }
+                    inNumber = true;
+                    moveNumber = 0;
+                    numberDigits = 0;
+                }
+                else if (nameIs(MOVE_COUNTS) && elementDepth == 3 && !slash) {
+                    inCounts = true;
+                    moveCounts = 0;
+                    countsDigits = 0;
+                }
+            }
+            if (!slash) {
+                depth++;
+            }
+            return true;
+        }
+
+        private boolean endTag(long position) {
+            state = TEXT;
+            if (inNumber) {
+                if (!nameIs(MOVE_NUMBER) || numberDigits == 0) {
+                    return false;
+                }
+                inNumber = false;
+            }
+            else if (inCounts) {
+                if (!nameIs(MOVE_COUNTS)) {
+                    return false;
+                }
+                if (countsDigits == 0) {
+                    moveCounts = -1;
+                }
+                inCounts = false;
+            }
+            else if (nameIs(MOVE)) {
+                if (moveStart < 0 || depth != 2 || moveNumber == -1) {
+                    return false;
+                }
+                index.add(moveStart, position + 1, moveNumber, moveCounts);
+                moveStart = -1;
+            }
+            depth--;
+            return depth >= 0;
+        }
+
+        /**
+         * Checks that the XML declaration does not name an encoding other than UTF-8
+         */
+        private boolean checkDeclaration() {
+            String text = new String(declaration.toByteArray(), StandardCharsets.ISO_8859_1);
+            if (!text.startsWith("xml") || !isSpace((byte) text.charAt(3))) {
+                // a processing instruction rather than a declaration
+                return true;
+            }
+            if (!text.endsWith("?>")) {
+                // too long to have been looked at in full
+                return false;
+            }
+            Matcher matcher = ENCODING.matcher(text);
+            return !matcher.find() || matcher.group(1).equalsIgnoreCase("UTF-8");
+        }
+
+        private void appendName(byte b) {
+            if (nameLength < name.length) {
+                name[nameLength] = b;
+            }
+            nameLength++;
+        }
+
+        private boolean nameIs(byte[] tagName) {
+            if (nameLength != tagName.length) {
+                return false;
+            }
+            for (int i = 0; i < nameLength; i++) {
+                if (name[i] != tagName[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+        }
+    }
+}
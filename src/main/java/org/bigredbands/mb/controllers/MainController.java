@@ -1,19 +1,37 @@
 package org.bigredbands.mb.controllers;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongBinaryOperator;
+
+import javax.swing.SwingUtilities;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.bigredbands.mb.analysis.Collision;
+import org.bigredbands.mb.analysis.CollisionDetector;
+import org.bigredbands.mb.analysis.CollisionReport;
+import org.bigredbands.mb.analysis.StrideAnalyzer;
+import org.bigredbands.mb.analysis.StrideReport;
 import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.BinaryConstants;
 import org.bigredbands.mb.models.CommandPair;
 import org.bigredbands.mb.models.DrillInfo;
 import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.MoveState;
 import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.ShowTimeline;
+import org.bigredbands.mb.models.TempoMap;
+import org.bigredbands.mb.utils.ProgressListener;
 import org.bigredbands.mb.views.MainView;
 import org.bigredbands.mb.views.ViewInterface;
 import org.xml.sax.SAXException;
@@ -25,8 +43,18 @@ import org.xml.sax.SAXException;
  *
  */
 public class MainController implements ControllerInterface, SynchronizedController {
+
     //TODO: consider making this class a singleton?
 
+    /**
+     * What the view draws for one frame of playback
+     */
+    private static class PlaybackFrame {
+        private float count;
+        private MoveState state;
+        private final HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+    }
+
     // The mainView to which information will be presented to the user
     private ViewInterface mainView;
 
@@ -36,6 +64,24 @@ public class MainController implements ControllerInterface, SynchronizedControll
     // The main model which stores the ranks and moves for the project
     private DrillInfo drillInfo;
 
+    // Projects saved as XML of at least this many bytes are read by the large project parser
+    public static final long LARGE_PROJECT_SIZE = 16L << 20;
+
+    // Reads saved projects with their moves read in parallel; a StreamingXMLParser reads them in a
+    // single pass, an XMLParser through a DOM, and a LazyXMLParser leaves each move in the file
+    // until it is first used
+    private DrillParser drillParser = new ParallelXMLParser();
+
+    // Reads saved projects of at least the large project size, leaving each move in the file until
+    // the field, the thumbnails or an export first uses it
+    private DrillParser largeProjectParser = new LazyXMLParser();
+
+    // The size in bytes from which a saved project is read by the large project parser
+    private long largeProjectSize = LARGE_PROJECT_SIZE;
+
+    // Reads projects saved in the binary format, which are told apart by their first bytes
+    private DrillParser binaryParser = new BinaryDrillParser();
+
     // The number of the current move
     private int currentMove;
 
@@ -54,9 +100,56 @@ public class MainController implements ControllerInterface, SynchronizedControll
     // The current move of the playback animation
     private int playbackMove = 1;
 
+    // How far the playback animation is between the current count and the next, from 0 to 1
+    private float playbackFraction = 0;
+
+    // The frame of playback the view draws, only swapped on the event dispatch thread, and the frame the
+    // playback thread fills next, updated in place so that playback makes no new positions on each frame
+    private PlaybackFrame playbackFrame = new PlaybackFrame();
+    private PlaybackFrame nextPlaybackFrame = new PlaybackFrame();
+
+    // True while the next frame has been filled and is waiting to be swapped in
+    private boolean playbackFrameQueued = false;
+
     private int playbackCountTotal = 0;
 
-    private boolean modified = false;
+    // The measures and tempos of the song being played back, read by the playback thread
+    private volatile TempoMap playbackTempoMap;
+
+    // Checks the step sizes of the show, keeping the results of moves that have not changed
+    private StrideAnalyzer strideAnalyzer = new StrideAnalyzer();
+
+    // The ranks found colliding in the move shown on the field, and the move, its number and its
+    // revision they were found for, so that they are only found again once the move changes
+    private HashSet<String> collidingRanks = new HashSet<String>();
+    private Move collisionMove;
+    private int collisionMoveNumber;
+    private int collisionRevision;
+
+    // The number of edits made to the project, and the number it had when it was last saved, or
+    // -1 once a save fails; the project has changed since it was saved while the two differ
+    private final AtomicLong edits = new AtomicLong();
+    private final AtomicLong savedEdits = new AtomicLong();
+
+    // Writes saved projects one at a time, so that the user can go on editing while they are written
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "project-save");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // The number of saves that have failed, to tell whether any failed while waiting for them
+    private final AtomicInteger failedSaves = new AtomicInteger();
+
+    // Whether the edits of a saved project are recorded in a journal next to it
+    private boolean journaled = false;
+
+    // Records the edits of the project so that they can be recovered until it is saved, once
+    // it has been saved somewhere
+    private EditJournal journal = new EditJournal();
 
     /**
      * A simple wrapper class containing a MainController and a MainView.
@@ -92,6 +185,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     public static ControllerViewBundle BuildMainControllerAndView() {
         final MainController mainController = new MainController();
+        mainController.setJournaled(true);
         final MainView mainView = new MainView(mainController);
         mainController.initializeWithMainView(mainView);
         return new ControllerViewBundle(mainController, mainView);
@@ -106,6 +200,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     public MainController() {
         fileUrl = "";
+        closeMoves(drillInfo);
         drillInfo = new DrillInfo();
         currentMove = 0;
         selectedRanks.clear();
@@ -118,6 +213,45 @@ public class MainController implements ControllerInterface, SynchronizedControll
         this.mainView = mainView;
     }
 
+    /**
+     * Sets how saved projects smaller than the large project size are read when loaded.
+     *
+     * @param drillParser - the parser to load projects with
+     */
+    public void setDrillParser(DrillParser drillParser) {
+        this.drillParser = drillParser;
+    }
+
+    /**
+     * Sets how saved projects of at least the given size are read when loaded.
+     *
+     * @param largeProjectParser - the parser to load large projects with
+     * @param largeProjectSize - the size in bytes from which a project is large
+     */
+    public void setLargeProjectParser(DrillParser largeProjectParser, long largeProjectSize) {
+        this.largeProjectParser = largeProjectParser;
+        this.largeProjectSize = largeProjectSize;
+    }
+
+    /**
+     * Sets whether the edits of a saved project are recorded in a journal next to it, and
+     * recovered from it when the project is next opened if they were not saved.
+     *
+     * @param journaled - true to record edits
+     */
+    public void setJournaled(boolean journaled) {
+        this.journaled = journaled;
+    }
+
+    /**
+     * Returns the journal the edits of the project are recorded in
+     *
+     * @return the journal of the project
+     */
+    EditJournal getJournal() {
+        return journal;
+    }
+
     /**
      * Saves the project at its current location
      */
@@ -127,7 +261,8 @@ public class MainController implements ControllerInterface, SynchronizedControll
     }
 
     /**
-     * Saves the project at the location fileUrl
+     * Saves the project at the location fileUrl.  A copy of the project is taken and written
+     * on the save thread, and the view is told when it has been saved or could not be.
      *
      * @param file - the location to save the file at
      */
@@ -139,12 +274,132 @@ public class MainController implements ControllerInterface, SynchronizedControll
             return;
         }
 
-        XMLGenerator generator = new XMLGenerator();
-        generator.save(drillInfo, file);
+        drillInfo.updatePositions();
+        final boolean binary;
+        try {
+            binary = isBinaryProject(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            mainView.displayError(e.getMessage());
+            return;
+        }
+
+        // edits made from here on are recorded in the journal of the saved file
+        if (journaled && !file.getAbsoluteFile().equals(journal.getProjectFile())) {
+            closeJournal(journal, true);
+            journal = new EditJournal(file.getAbsoluteFile());
+        }
 
-        //TODO: assuming nothing went wrong with the save...
+        // the copy is written on the save thread while the project goes on being edited
+        final DrillInfo snapshot = drillInfo.snapshot();
+        final long journalMark = journal.mark();
+        final EditJournal savedJournal = file.getAbsoluteFile().equals(journal.getProjectFile()) ? journal : null;
+        final File saveFile = file;
+        final long snapshotEdits = edits.get();
         fileUrl = file.getAbsolutePath();
-        modified = false;
+        savedEdits.set(snapshotEdits);
+        saveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (writeProject(snapshot, snapshotEdits, saveFile, binary) && savedJournal != null) {
+                    try {
+                        savedJournal.rebase(journalMark);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes a copy of the project on the save thread, and tells the view how it went
+     *
+     * @param snapshot - the copy of the project to write
+     * @param snapshotEdits - the number of edits made to the project when the copy was taken
+     * @param file - the location to save the file at
+     * @param binary - true to save in the binary format, false to save as XML
+     * @return true if the project was saved
+     */
+    private boolean writeProject(DrillInfo snapshot, final long snapshotEdits, final File file, boolean binary) {
+        ProgressListener progressListener = new ProgressListener() {
+            private int percent = -1;
+
+            @Override
+            public void progress(int done, int total) {
+                int newPercent = (int) (100L * done / total);
+                if (newPercent != percent) {
+                    percent = newPercent;
+                    mainView.updateSaveProgress(file, percent);
+                }
+            }
+        };
+
+        try {
+            if (binary) {
+                BinaryDrillGenerator generator = new BinaryDrillGenerator();
+                generator.setProgressListener(progressListener);
+                generator.save(snapshot, file);
+            }
+            else {
+                StreamingXMLGenerator generator = new StreamingXMLGenerator();
+                generator.setProgressListener(progressListener);
+                generator.save(snapshot, file);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            savedEdits.set(-1);
+            failedSaves.incrementAndGet();
+            mainView.saveFailed(file, e.getMessage() != null ? e.getMessage() : e.toString());
+            return false;
+        }
+        // a save that failed before this one no longer leaves the project modified, unless it was
+        // edited after the copy was taken or a later save has already recorded more edits
+        savedEdits.accumulateAndGet(snapshotEdits, new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long saved, long snapshot) {
+                return Math.max(saved, snapshot);
+            }
+        });
+        mainView.saveFinished(file);
+        return true;
+    }
+
+    /**
+     * Waits for the saves that have been started to finish.
+     *
+     * @return true if they were all saved, false if any of them failed
+     */
+    public boolean waitForSaves() {
+        int failedBefore = failedSaves.get();
+        try {
+            saveExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+        return failedSaves.get() == failedBefore;
+    }
+
+    /**
+     * Returns whether a project should be saved in the binary format: an existing file
+     * keeps the format it is in, and a new file is binary if it has the binary extension
+     *
+     * @param file - the location the project is saved at
+     * @return true to save in the binary format, false to save as XML
+     * @throws IOException
+     */
+    private boolean isBinaryProject(File file) throws IOException {
+        if (file.length() > 0) {
+            return BinaryDrillParser.isBinaryProject(file);
+        }
+        return file.getName().toLowerCase().endsWith("." + BinaryConstants.EXTENSION);
     }
 
     /**
@@ -161,10 +416,27 @@ public class MainController implements ControllerInterface, SynchronizedControll
             return false;
         }
 
-        XMLParser parser = new XMLParser();
-
+        DrillInfo previousDrillInfo = drillInfo;
+        EditJournal loadedJournal = null;
         try {
-            drillInfo = parser.load(file);
+            // edits that were not saved are replayed on the project as it was last saved, or as
+            // it was written to the checkpoint of the journal
+            File savedFile = file;
+            if (journaled) {
+                loadedJournal = openJournal(file);
+                if (loadedJournal.getCheckpoint() != null) {
+                    savedFile = loadedJournal.getCheckpoint();
+                }
+            }
+            if (BinaryDrillParser.isBinaryProject(savedFile)) {
+                drillInfo = binaryParser.load(savedFile);
+            }
+            else if (savedFile.length() >= largeProjectSize) {
+                drillInfo = largeProjectParser.load(savedFile);
+            }
+            else {
+                drillInfo = drillParser.load(savedFile);
+            }
         } catch (ParserConfigurationException e) {
             e.printStackTrace();
             mainView.displayError(e.getMessage());
@@ -183,12 +455,18 @@ public class MainController implements ControllerInterface, SynchronizedControll
             return false;
         }
 
+        closeMoves(previousDrillInfo);
+        closeJournal(journal, false);
+        journal = new EditJournal();
         currentMove = 0;
         selectedRanks.clear();
 
         if (!mainView.isProjectViewCreated()) {
             mainView.createProjectView(false);
         }
+        if (loadedJournal != null) {
+            recoverEdits(loadedJournal);
+        }
         mainView.updateViewWithMoves(drillInfo.getMoves().size(), currentMove, drillInfo.getMoves().get(currentMove).getCounts());
 
         System.out.println(drillInfo.toString());
@@ -197,6 +475,119 @@ public class MainController implements ControllerInterface, SynchronizedControll
         return true;
     }
 
+    /**
+     * Opens the journal of a project that is being loaded, starting a new one if it cannot be read
+     *
+     * @param file - the project being loaded
+     * @return the journal of the project
+     */
+    private static EditJournal openJournal(File file) {
+        try {
+            return EditJournal.open(file.getAbsoluteFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new EditJournal(file.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * Replays the edits in the journal of a project that has just been loaded, and goes on to
+     * record edits in it.  The project is left on its first move, as when it is loaded.
+     *
+     * @param loadedJournal - the journal of the project
+     */
+    private void recoverEdits(EditJournal loadedJournal) {
+        // the edits are not recorded again as they are replayed
+        loadedJournal.replay(this);
+        if (loadedJournal.hasEdits()) {
+            setModified();
+        }
+        changeMoves(0);
+        selectedRanks.clear();
+        mainView.clearSelectedRank();
+
+        try {
+            loadedJournal.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            mainView.displayError("Edits to this project cannot be recovered if it is not saved: " + e.getMessage());
+        }
+        journal = loadedJournal;
+    }
+
+    /**
+     * Returns the journal of the project, with the current move and ranks recorded, to record an
+     * edit in before it is made.  Once enough edits have built up, a copy of the project is written
+     * to a checkpoint on the save thread.
+     *
+     * @return the journal to record the edit in
+     */
+    private EditJournal journal() {
+        if (journal.isCompactionDue()) {
+            drillInfo.updatePositions();
+            final DrillInfo snapshot = drillInfo.snapshot();
+            final long journalMark = journal.mark();
+            final EditJournal compactedJournal = journal;
+            saveExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compactedJournal.compact(snapshot, journalMark);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        return journal.at(currentMove, selectedRanks);
+    }
+
+    /**
+     * Closes the journal of a project that is no longer open on the save thread, after the saves
+     * and compactions of it that have been started
+     *
+     * @param closedJournal - the journal to close
+     * @param discard - true to delete the journal, false to keep any edits in it that were not saved
+     */
+    private void closeJournal(final EditJournal closedJournal, final boolean discard) {
+        saveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (discard) {
+                        closedJournal.discard();
+                    }
+                    else {
+                        closedJournal.close();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes the file that the moves of a project are still read from, if they are read lazily
+     *
+     * @param drillInfo - the project that is no longer open
+     */
+    private void closeMoves(final DrillInfo drillInfo) {
+        if (drillInfo != null && drillInfo.getMoves() instanceof Closeable) {
+            // a save still being written may read moves from the file
+            saveExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ((Closeable) drillInfo.getMoves()).close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+    }
+
     /**
      * Creates a new blank project
      */
@@ -204,6 +595,9 @@ public class MainController implements ControllerInterface, SynchronizedControll
     public void createEmptyProject() {
         //TODO: finish me
         fileUrl = "";
+        closeMoves(drillInfo);
+        closeJournal(journal, false);
+        journal = new EditJournal();
         drillInfo = new DrillInfo();
         drillInfo.getMoves().add(new Move());
         currentMove = 0;
@@ -231,12 +625,30 @@ public class MainController implements ControllerInterface, SynchronizedControll
     @Override
     public void closeProgram() {
         // TODO do proper clean up, dont just exit and kill everything
+        // a save that failed has already been reported, and the project is left open to save again
+        if (!waitForSaves()) {
+            return;
+        }
+
+        // the project has been saved, or the user chose not to save it
+        try {
+            journal.discard();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         System.exit(0);
     }
 
     @Override
     public boolean isModified() {
-        return modified;
+        return edits.get() != savedEdits.get();
+    }
+
+    /**
+     * Records that the project has changed since it was last saved
+     */
+    private void setModified() {
+        edits.incrementAndGet();
     }
 
     /**
@@ -260,6 +672,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
     @Override
     public HashMap<String, RankPosition> getRankPositions(int moveNumber) {
         if(moveNumber >= 0 && moveNumber < getNumberOfMoves()) {
+            drillInfo.updatePositions(moveNumber);
             return drillInfo.getMoves().get(moveNumber).getEndPositions();
         } else {
             return new HashMap<String,RankPosition>();
@@ -279,12 +692,13 @@ public class MainController implements ControllerInterface, SynchronizedControll
         if(counts <= 0) {
             return;
         }
+        journal().addMove(counts);
         drillInfo.addMove(counts, currentMove + 1);
         currentMove = currentMove + 1;
         if (!selectedRanks.isEmpty()) {
             mainView.updateSelectedRank(selectedRanks);
         }
-        modified = true;
+        setModified();
         mainView.updateViewWithOneMove(drillInfo.getMoves().size() - 1, drillInfo.getMoves().get(drillInfo.getMoves().size() - 1).getCounts());
     }
 
@@ -300,17 +714,15 @@ public class MainController implements ControllerInterface, SynchronizedControll
         if(moveNum <= 0 || moveNum >= drillInfo.getMoves().size()) {
             return;
         }
+        journal().deleteMove(moveNum);
+        // the ranks are carried forward from the previous move the next time the later moves are shown
         drillInfo.deleteMove(moveNum);
         currentMove = moveNum-1;
 
-        for(String rankName : mainView.getRankPositions().keySet()) {
-            updatePositions(rankName);
-        }
-
         if (!selectedRanks.isEmpty()) {
             mainView.updateSelectedRank(selectedRanks);
         }
-        modified = true;
+        setModified();
         mainView.updateViewWithRemoveMove(currentMove, drillInfo.getMoves().get(currentMove).getCounts(),moveNum);
     }
 
@@ -333,6 +745,8 @@ public class MainController implements ControllerInterface, SynchronizedControll
     public void changeMoves(int targetMove) {
         if (targetMove != currentMove) {
             currentMove = targetMove;
+            // commands are only ever edited in the current move, so it must start from up to date positions
+            drillInfo.updatePositions(currentMove);
             if (!selectedRanks.isEmpty()) {
                 mainView.updateSelectedRank(selectedRanks);
             }
@@ -350,6 +764,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String addRank(String rankName, RankPosition rankPosition) {
+        journal().addRank(rankName, rankPosition);
         final String errorMessage = drillInfo.addRankToMoves(rankName, rankPosition);
         if (!errorMessage.isEmpty()) {
             return errorMessage;
@@ -358,7 +773,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
 
         selectedRanks.clear();
         selectedRanks.add(rankName);
-        modified = true;
+        setModified();
         mainView.updateSelectedRank(selectedRanks);
         mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
         return "";
@@ -366,7 +781,11 @@ public class MainController implements ControllerInterface, SynchronizedControll
     }
 
     public void updateInitialPosition(String rankName, RankPosition newPos) {
+        journal().updateInitialPosition(rankName, newPos);
+        drillInfo.updatePositions(0);
         drillInfo.getMoves().get(0).updatePositions(rankName,newPos);
+        drillInfo.markDirty(rankName, 1);
+        drillInfo.updatePositions(currentMove);
         updatePositions(rankName);
 
     }
@@ -379,96 +798,81 @@ public class MainController implements ControllerInterface, SynchronizedControll
             return commands.get(rankNames.toArray()[0]);
         }
         else {
-            ArrayList<CommandPair> shared = new ArrayList<CommandPair>();
-
-            int currentCount = 0;
-            int diffCounts = 0;
-            String[] rankArray = rankNames.toArray(new String[0]);
-
-            ArrayList<CommandPair> referenceCmds = commands.get(rankArray[0]);
-            for (CommandPair refCmd : referenceCmds) {
-                // Loop through each of the reference commands
-                for (int i = 1; i < rankArray.length; i++) {
-                    ArrayList<CommandPair> cmdList = commands.get(rankArray[i]);
-                    int altCounts = 0;
-                    boolean checkFinished = false;
-
-                    // for THIS rank, loop through its commands until you find matching/not matching
-                    for (CommandPair altCmd : cmdList) {
-                        // Note: currentCount, at any time, is the FIRST count in the command (zero indexed)
-                        if (altCounts == currentCount) {
-                            if (altCmd.getCounts() == refCmd.getCounts()
-                                    && altCmd.getCommand() == refCmd.getCommand()) {
-                                if (i == rankArray.length - 1) {
-                                    if (diffCounts != 0) shared.add(new CommandPair(CommandPair.EMPTY, diffCounts));
-                                    diffCounts = 0;
-
-                                    shared.add(new CommandPair(refCmd.getCommand(), refCmd.getCounts()));
-                                }
-
-                                break;
-                            } else {
-                                // Commands don't match - similar to overshoot, just add refCmd's counts to diff
-                                diffCounts += refCmd.getCounts();
-                                checkFinished = true;
-                                break;
-                            }
-                        } else if (altCounts > currentCount) {
-                            // overshoot with altCounts - means every command mismatches, so we mark as such
-                            diffCounts += refCmd.getCounts();
-                            checkFinished = true;
-                            break;
-                        }
-
-                        altCounts += altCmd.getCounts();
-                    }
-
-                    // if we exit the loop and refCmd is too high to reach, add to diffCounts
-                    if (altCounts < currentCount) {
-                        diffCounts += refCmd.getCounts();
-                        checkFinished = true;
-                    }
-
-                    if (checkFinished) break;
-                }
-                currentCount += refCmd.getCounts();
-            }
-
-            int maxLen = -1;
+            // Each rank's commands are [start, end) spans of counts.  The ranks are swept together
+            // in order of count, and a command is shared where every rank has the same one over
+            // the same span.
+            int rankCount = rankNames.size();
+            ArrayList<ArrayList<CommandPair>> rankCmds = new ArrayList<ArrayList<CommandPair>>(rankCount);
+            int[] next = new int[rankCount];
+            int[] starts = new int[rankCount];
+            int maxLen = 0;
             for (String rankName : rankNames) {
                 ArrayList<CommandPair> cmdList = commands.get(rankName);
+                rankCmds.add(cmdList);
 
                 int len = 0;
                 for (CommandPair cmd : cmdList) len += cmd.getCounts();
-
-                if (len > maxLen) maxLen = len;
+                maxLen = Math.max(maxLen, len);
             }
 
-            int sharedLen = 0;
-            for (CommandPair cmd : shared) sharedLen += cmd.getCounts();
+            ArrayList<CommandPair> shared = new ArrayList<CommandPair>();
+            int sharedEnd = 0;
+            sweep:
+            while (true) {
+                // no command can be shared before the latest start of the ranks' next commands
+                int latest = 0;
+                for (int i = 0; i < rankCount; i++) {
+                    if (next[i] == rankCmds.get(i).size()) break sweep;
+                    latest = Math.max(latest, starts[i]);
+                }
+
+                boolean aligned = true;
+                for (int i = 0; i < rankCount; i++) {
+                    ArrayList<CommandPair> cmdList = rankCmds.get(i);
+                    while (starts[i] < latest) {
+                        starts[i] += cmdList.get(next[i]++).getCounts();
+                        if (next[i] == cmdList.size()) break sweep;
+                    }
+                    aligned &= starts[i] == latest;
+                }
+                if (!aligned) continue;
 
-            diffCounts = (maxLen - sharedLen);
+                CommandPair refCmd = rankCmds.get(0).get(next[0]);
+                boolean matches = true;
+                for (int i = 1; i < rankCount && matches; i++) {
+                    CommandPair altCmd = rankCmds.get(i).get(next[i]);
+                    matches = altCmd.getCounts() == refCmd.getCounts() && altCmd.getCommand() == refCmd.getCommand();
+                }
+                if (matches) {
+                    if (latest > sharedEnd) shared.add(new CommandPair(CommandPair.EMPTY, latest - sharedEnd));
+                    shared.add(new CommandPair(refCmd.getCommand(), refCmd.getCounts()));
+                    sharedEnd = latest + refCmd.getCounts();
+                }
 
-            if (diffCounts > 0) shared.add(new CommandPair(CommandPair.EMPTY, diffCounts));
+                // every rank starts a command here, so move them all past it
+                for (int i = 0; i < rankCount; i++) {
+                    starts[i] += rankCmds.get(i).get(next[i]++).getCounts();
+                }
+            }
+
+            if (maxLen > sharedEnd) shared.add(new CommandPair(CommandPair.EMPTY, maxLen - sharedEnd));
 
             return shared;
         }
     }
 
     /**
-     * Using the end position of the current move and the commands of all subsequent moves for a rank, updates the start and
-     * end positions of each move based on the current move.  Useful for when the commands of a middle move are
-     * changed and the later moves need to have their positions updated.
+     * Marks the positions of a rank in every move after the current move as out of date, so that they are
+     * carried forward from the end position of the current move when they are next read.  Useful for when
+     * the commands of a middle move are changed and the later moves need to have their positions updated.
      * @param rankName - the rank whose positions need to be updated.
      */
     private void updatePositions(String rankName) {
-        for (int i = currentMove+1; i < drillInfo.getMoves().size(); i++) {
-            drillInfo.getMoves().get(i).updatePositions(rankName, drillInfo.getMoves().get(i-1).getEndPositions().get(rankName));
-        }
+        drillInfo.markDirty(rankName, currentMove+1);
 
         //TODO: may not be necessary later when you have to select ranks by clicking on them first
         selectedRanks.add(rankName);
-        modified = true;
+        setModified();
         mainView.updateSelectedRank(selectedRanks);
         mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
     }
@@ -528,6 +932,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void deleteRank(HashSet<String> rankNames) {
+        journal().deleteRank(rankNames);
         HashSet<String> oldSelectedRanks = (HashSet<String>)rankNames.clone();
 
         for(String rankName : oldSelectedRanks) {
@@ -537,7 +942,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
             }
         }
 
-        modified = true;
+        setModified();
         mainView.updateSelectedRank(selectedRanks);
         mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
     }
@@ -554,12 +959,13 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void setSongConstants(HashMap<Integer, Integer> tempoHashMap, HashMap<Integer, Integer> countsHashMap, String songName) {
+        journal().setSongConstants(tempoHashMap, countsHashMap, songName);
         drillInfo.setTempoHashMap(tempoHashMap);
         drillInfo.setCountsHashMap(countsHashMap);
         drillInfo.setSongName(songName);
-        modified = true;
+        setModified();
 
-        // Must be called after setting modified = true so that the project title is updated to indicate the modification.
+        // Must be called after setModified so that the project title is updated to indicate the modification.
         mainView.updateProjectTitle();
     }
 
@@ -570,13 +976,21 @@ public class MainController implements ControllerInterface, SynchronizedControll
     public void startPlayback() {
         //TODO: paint the present first!
         if (!isPlaybackRunning() && playbackMove < drillInfo.getMoves().size()) {
+            // the playback thread reads every move, so none can be left to update while it runs
+            drillInfo.updatePositions();
             playbackRunning = true;
             mainView.disableProjectButtons();
             playbackCount = 0;
+            playbackFraction = 0;
             playbackMove = 1;
+            playbackTempoMap = drillInfo.getTimeline().getTempoMap();
+            // the first frame is filled here, so there is one to draw before the playback thread runs
+            synchronized (this) {
+                playbackFrameQueued = false;
+                fillPlaybackFrame(playbackFrame);
+            }
             playbackThread = new Thread(new PlaybackController(this));
             playbackThread.start();
-            System.out.println("Playback Started.");
             mainView.updateFootballField(playbackMove, playbackCount);
         }
     }
@@ -601,7 +1015,6 @@ public class MainController implements ControllerInterface, SynchronizedControll
         }
         playbackThread = null;
         mainView.enableProjectButtons();
-        System.out.println("Playback Ended.");
     }
 
     /**
@@ -614,13 +1027,12 @@ public class MainController implements ControllerInterface, SynchronizedControll
             // TODO: consider making the other methods synchronized as well that way no method
             // from the controller may repaint the screen during playback
             // TODO: resizing the screen may fuck up playback....
-            playbackCount++;
             playbackCountTotal++;
-            if (playbackCount > drillInfo.getMoves().get(playbackMove).getCounts()) {//TODO: may be a concurrency issue here if someone else is editing the moves
-                playbackCount = 1;
-                playbackMove++;
-            }
-            if (playbackMove >= drillInfo.getMoves().size()) {//TODO: may be a concurrency issue here if someone else is editing the moves
+            playbackFraction = 0;
+            // playback starts from the end of the first move, which only sets the ranks
+            ShowTimeline timeline = drillInfo.getTimeline();
+            int showCount = timeline.getMoveStart(1) + playbackCountTotal;
+            if (showCount > timeline.getTotalCounts()) {//TODO: may be a concurrency issue here if someone else is editing the moves
                 playbackRunning = false;
                 playbackCount = 0;
                 playbackCountTotal = 0;
@@ -629,20 +1041,16 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 playbackThread = null;
                 mainView.enableProjectButtons();
                 mainView.setPlaybackButtonState(playbackRunning);
-                System.out.println("Playback Ended.");
             }
             else {
-                mainView.updateFootballField(playbackMove, playbackCount);
-                System.out.println("From the playbackThread - Move Number: " + playbackMove + ", Count: " + playbackCount);
+                playbackMove = timeline.getMoveAt(showCount);
+                playbackCount = timeline.getLocalCount(showCount);
+                queuePlaybackFrame();
             }
 
         }
     }
 
-    private synchronized int getCountTotal() {
-        return playbackCountTotal;
-    }
-
     /**
      * Checks if playback is currently running
      *
@@ -659,85 +1067,141 @@ public class MainController implements ControllerInterface, SynchronizedControll
      * @return - a hashmap mapping the rank name to its current position in playback
      */
     @Override
-    public HashMap<String, RankPosition> getPlaybackPositions() {
-        return drillInfo.getMoves().get(playbackMove).getIntermediatePositions(playbackCount);
+    public synchronized HashMap<String, RankPosition> getPlaybackPositions() {
+        return playbackFrame.positions;
     }
 
     /**
-     * Gets the tempo changes throughout this song
+     * Gets the state of the move currently being played back
      *
-     * @return - a hashmap mapping the measure number of a tempo change to the new
-     * tempo at this measure
+     * @return - the state of every rank in the move being played back
      */
     @Override
-    public HashMap<Integer, Integer> getTempoHash() {
-        return drillInfo.getTempoHashMap();
+    public synchronized MoveState getPlaybackState() {
+        return playbackFrame.state;
     }
 
     /**
-     * Gets the speed at which the playback is updated, based on the current count
+     * Gets the count within the move currently being played back, including how far
+     * playback is towards the next count
      *
-     * @return
+     * @return - the number of counts into the move being played back
      */
     @Override
-    public synchronized int getPlaybackSpeed() {
-        HashMap<Integer, Integer>countMap = getCountHash();
-        HashMap<Integer, Integer>tempoMap = getTempoHash();
-        if(tempoMap.isEmpty()) {
-            return 500;
-        }
-        int meas;
-        if(countMap.isEmpty()) {
-            // default to 4/4 time
-            int currentCount = getCountTotal();
-            meas = (Math.max(currentCount-1,0))/4 + 1; // automatically truncates
+    public synchronized float getPlaybackCount() {
+        return playbackFrame.count;
+    }
+
+    /**
+     * Returns the count within the move being played back as playback is now, which is
+     * shown once the frame holding it is swapped in
+     */
+    private float getCurrentPlaybackCount() {
+        int moveCounts = drillInfo.getMoves().get(playbackMove).getCounts();
+        float count = playbackCount + playbackFraction;
+        if (count <= moveCounts) {
+            return count;
         }
-        else {
-            Integer[] measCounts = new Integer[0];
-            measCounts = countMap.keySet().toArray(measCounts);
-            Arrays.sort(measCounts);
-
-            int currentCount = getCountTotal();
-            int prevM = 1;
-            int prevC = 4;
-            meas = 1;
-            for(Integer measure : measCounts) {
-                int countDiff = (measure - prevM)*prevC;
-                if (currentCount - countDiff <= 0) {
-                    // means the currentCount is in this interval
-                    break;
-                }
-                else {
-                    // means the currentCount is in the next interval
-                    currentCount-=countDiff;
-                    meas+=(measure-prevM);
-                }
-                prevM = (int)measure;
-                prevC = countMap.get((int)measure);
-            }
-            // the last interval
-            meas+=(Math.max(currentCount-1,0))/prevC;
+        // past the last count of the move, so it is the start of the next move being shown
+        if (getDisplayedPlaybackMove() != playbackMove) {
+            return count - moveCounts;
+        }
+        return moveCounts;
+    }
 
+    /**
+     * Sets how far playback is between the current count and the next, and redraws the field
+     *
+     * @param fraction - the fraction of the way to the next count, from 0 to 1
+     */
+    @Override
+    public synchronized void setPlaybackFraction(float fraction) {
+        if (isPlaybackRunning()) {
+            playbackFraction = Math.max(0, Math.min(1, fraction));
+            queuePlaybackFrame();
         }
-        Integer[] measTempos = new Integer[0];
-        measTempos = tempoMap.keySet().toArray(measTempos);
-        Arrays.sort(measTempos);
+    }
 
-        int tempo = 120;
-        for(Integer measure : measTempos) {
-            if(meas < measure) {
-                // that is, the measure we're working on is before the next change
-                break;
-            }
-            else {
-                // set the tempo
-                tempo = tempoMap.get(measure);
+    /**
+     * Fills the next frame of playback on the playback thread and has it swapped in and drawn on
+     * the event dispatch thread, so that the view never draws a frame while it is being filled.
+     * If the last frame has not been swapped in yet, the view is behind and this one is dropped.
+     */
+    private void queuePlaybackFrame() {
+        if (playbackFrameQueued) {
+            return;
+        }
+        fillPlaybackFrame(nextPlaybackFrame);
+        playbackFrameQueued = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                showPlaybackFrame();
             }
+        });
+    }
+
+    /**
+     * Swaps in the frame filled by the playback thread and redraws the field
+     */
+    private synchronized void showPlaybackFrame() {
+        if (!playbackFrameQueued) {
+            // playback was restarted since the frame was queued
+            return;
         }
-        if(tempo<=0) {
-            return 500;
+        PlaybackFrame shown = playbackFrame;
+        playbackFrame = nextPlaybackFrame;
+        nextPlaybackFrame = shown;
+        playbackFrameQueued = false;
+        if (isPlaybackRunning()) {
+            mainView.updateFootballField(playbackMove, playbackCount);
         }
-        return 60000/tempo;
+    }
+
+    /**
+     * Fills a frame with the positions of the ranks as playback is now
+     */
+    private void fillPlaybackFrame(PlaybackFrame frame) {
+        Move move = drillInfo.getMoves().get(getDisplayedPlaybackMove());
+        frame.count = getCurrentPlaybackCount();
+        frame.state = move.getState();
+        move.getIntermediatePositions(frame.count, frame.positions);
+    }
+
+    /**
+     * Returns the move shown during playback, which is the next move once playback has
+     * gone past the last count of the current one
+     *
+     * @return - the number of the move to display
+     */
+    private int getDisplayedPlaybackMove() {
+        if (playbackCount + playbackFraction > drillInfo.getMoves().get(playbackMove).getCounts()
+                && playbackMove + 1 < drillInfo.getMoves().size()) {
+            return playbackMove + 1;
+        }
+        return playbackMove;
+    }
+
+    /**
+     * Gets the tempo changes throughout this song
+     *
+     * @return - a hashmap mapping the measure number of a tempo change to the new
+     * tempo at this measure
+     */
+    @Override
+    public HashMap<Integer, Integer> getTempoHash() {
+        return drillInfo.getTempoHashMap();
+    }
+
+    /**
+     * Gets the measures and tempos of the song being played back.  The map never changes
+     * once built, so it is read without taking the lock on this controller.
+     *
+     * @return - the tempo map of the song
+     */
+    @Override
+    public TempoMap getTempoMap() {
+        return playbackTempoMap;
     }
 
     /**
@@ -772,6 +1236,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String assignCommand(String rankName, CommandPair commandPair){
+        journal().assignCommand(rankName, commandPair);
         final String errorMessage = drillInfo.getMoves().get(currentMove).addCommand(rankName, commandPair);
         if (!errorMessage.isEmpty()) {
             return errorMessage;
@@ -790,6 +1255,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String removeCommands(int[] commandIndices) {
+        journal().removeCommands(commandIndices);
         HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
@@ -839,6 +1305,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String renameCommand(int index, String name) {
+        journal().renameCommand(index, name);
         HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
@@ -865,7 +1332,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
             if (!errorMessage.isEmpty()) {
                 return errorMessage;
             }
-            modified = true;
+            setModified();
             mainView.updateSelectedRank(selectedRanks);
         }
 
@@ -882,6 +1349,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String moveCommandsUp(int[] commandIndices) {
+        journal().moveCommandsUp(commandIndices);
         HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
@@ -913,7 +1381,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
             if (!errorMessage.isEmpty()) {
                 return errorMessage;
             }
-            modified = true;
+            setModified();
             mainView.updateSelectedRank(selectedRanks);
         }
 
@@ -930,6 +1398,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String moveCommandsDown(int[] commandIndices) {
+        journal().moveCommandsDown(commandIndices);
         HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
@@ -962,7 +1431,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 return errorMessage;
                 
             }
-            modified = true;
+            setModified();
             mainView.updateSelectedRank(selectedRanks);
         }
 
@@ -980,6 +1449,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String mergeCommands(int[] commandIndices) {
+        journal().mergeCommands(commandIndices);
         HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
@@ -991,6 +1461,10 @@ public class MainController implements ControllerInterface, SynchronizedControll
             if (sharedCommands.get(indx).getCommand() == CommandPair.DTP) {
                 return "Cannot merge DTP commands";
             }
+
+            if (sharedCommands.get(indx).getCommand() == CommandPair.FTA) {
+                return "Cannot merge FTA commands";
+            }
         }
 
         for (String rankName : selectedRanks) {
@@ -1015,7 +1489,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
             if (!errorMessage.isEmpty()) {
                 return errorMessage;
             }
-            modified = true;
+            setModified();
             mainView.updateSelectedRank(selectedRanks);
         }
 
@@ -1042,6 +1516,9 @@ public class MainController implements ControllerInterface, SynchronizedControll
         if (sharedCommands.get(index).getCommand() == CommandPair.DTP) {
             return "Cannot split DTP command";
         }
+        if (sharedCommands.get(index).getCommand() == CommandPair.FTA) {
+            return "Cannot split FTA command";
+        }
         return "";
     }
 
@@ -1055,6 +1532,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String splitCommand(int index, int count) {
+        journal().splitCommand(index, count);
         HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
@@ -1085,7 +1563,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
             if (!errorMessage.isEmpty()) {
                 return errorMessage;
             }
-            modified = true;
+            setModified();
             mainView.updateSelectedRank(selectedRanks);
         }
 
@@ -1104,6 +1582,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
         }
         else {
             PDFGenerator pdfGenerator = new PDFGenerator();
+            drillInfo.updatePositions();
             try {
                 pdfGenerator.createPDF(drillInfo, file);
             } catch (IOException e) {
@@ -1130,10 +1609,11 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void setMoveComment(String comment) {
+        journal().setMoveComment(comment);
         drillInfo.getMoves().get(currentMove).setComments(comment);
-        modified = true;
+        setModified();
 
-        // Must be called after setting modified = true so that the project title is updated to indicate the modification.
+        // Must be called after setModified so that the project title is updated to indicate the modification.
         mainView.updateProjectTitle();
     }
 
@@ -1153,9 +1633,60 @@ public class MainController implements ControllerInterface, SynchronizedControll
      * @return - the current move.
      */
     public Move getCurrentMove() {
+        drillInfo.updatePositions(currentMove);
         return drillInfo.getMoves().get(currentMove);
     }
 
+    /**
+     * Checks every count of the show for ranks that cross through each other or come
+     * closer than the minimum interval.
+     *
+     * @return - the collisions found in each move
+     */
+    @Override
+    public CollisionReport getCollisionReport() {
+        drillInfo.updatePositions();
+        return new CollisionDetector().analyze(drillInfo);
+    }
+
+    /**
+     * Returns the ranks that cross through another rank or come closer than the minimum interval
+     * at any count of the current move, so that the field can highlight them.
+     *
+     * @return - the names of the colliding ranks
+     */
+    @Override
+    public HashSet<String> getCollidingRanks() {
+        if (currentMove < 0 || currentMove >= getNumberOfMoves()) {
+            return new HashSet<String>();
+        }
+        drillInfo.updatePositions(currentMove);
+        Move move = drillInfo.getMoves().get(currentMove);
+        if (move != collisionMove || currentMove != collisionMoveNumber || move.getRevision() != collisionRevision) {
+            collidingRanks = new HashSet<String>();
+            for (Collision collision : new CollisionDetector().analyzeMove(currentMove, move)) {
+                collidingRanks.add(collision.getFirstRank());
+                collidingRanks.add(collision.getSecondRank());
+            }
+            collisionMove = move;
+            collisionMoveNumber = currentMove;
+            collisionRevision = move.getRevision();
+        }
+        return collidingRanks;
+    }
+
+    /**
+     * Checks every count of the show for ranks stepping larger or smaller than the stride
+     * limits.  Only the moves changed since the last check are checked again.
+     *
+     * @return - the stride violations found in each move
+     */
+    @Override
+    public StrideReport getStrideReport() {
+        drillInfo.updatePositions();
+        return strideAnalyzer.analyze(drillInfo);
+    }
+
 }
 
 
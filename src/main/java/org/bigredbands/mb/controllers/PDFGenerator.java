@@ -25,6 +25,7 @@ import org.bigredbands.mb.models.ConsolidatedDrillInstruction;
 import org.bigredbands.mb.models.DrillInfo;
 import org.bigredbands.mb.models.Field;
 import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.ShowTimeline;
 import org.bigredbands.mb.utils.PDFStringUtils;
 import org.bigredbands.mb.views.PdfImage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
@@ -124,10 +125,7 @@ public class PDFGenerator {
         // Initialize iterated variables
         int pageNumber = 1; // page number
         int moveNumber = 0; // move number
-        int begMeasure = 0; // beginning measure of move
-        int currentMeasure = 0; // the measure that is currently being counted
-        int currentCountsPerMeasure = 4; // functions as the time signature
-        int extraCounts = 0; // any extra counts from calculating the end measure to be carried on to the next move
+        ShowTimeline timeline = drillInfo.getTimeline(); // where each count falls in the measures
 
         // iterating through each move in the drill
         for (Move move : drillInfo.getMoves()) {
@@ -142,24 +140,12 @@ public class PDFGenerator {
 
             drillTitle = drillInfo.getSongName();
 
-            // we have a map of measure number to count per measure
-            // currently assumes 4 counts per measure
-            int totalCounts = extraCounts;
-            while (move.getCounts() > totalCounts){
-                currentCountsPerMeasure = drillInfo.getCountsHashMap().getOrDefault(currentMeasure + 1, currentCountsPerMeasure);
-                totalCounts += currentCountsPerMeasure;
-                currentMeasure ++;
-            }
-
-            measureText = "Measures:  " + begMeasure + " - " + currentMeasure;
+            // a move begins in the measure of the count after the move before it, which is
+            // the same measure that move ended in if it ended partway through
+            int begMeasure = moveNumber == 0 ? 0 : timeline.getMeasureAt(timeline.getMoveStart(moveNumber) + 1);
+            int endMeasure = timeline.getMeasureAt(timeline.getMoveStart(moveNumber + 1));
 
-            if (totalCounts > move.getCounts()) {
-                begMeasure = currentMeasure;
-                extraCounts = totalCounts - move.getCounts();
-            } else {
-                extraCounts = 0;
-                begMeasure = currentMeasure + 1;
-            }
+            measureText = "Measures:  " + begMeasure + " - " + endMeasure;
 
             moveLabel = "Move " + moveNumber;
 
@@ -186,7 +172,7 @@ public class PDFGenerator {
             yPosition -= lineSpacing * fontSize;
 
             // add image to PDF
-            PdfImage image = new PdfImage(field, move.getEndPositions());
+            PdfImage image = new PdfImage(field, move.getState());
             image.setPreferredSize(dim);
             image.setSize(dim);
             BufferedImage bi = createImage(image);
@@ -0,0 +1,214 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.xml.sax.SAXException;
+
+/**
+ *
+ * Reads a saved project with its moves read in parallel.  The file is scanned once for where
+ * each move starts and ends, as LazyXMLParser scans it, and each move is then read on its own
+ * from its bytes on a ForkJoinPool while everything around the moves, such as the song name
+ * and the tempo and counts per measure changes, is read on the calling thread.  The moves are
+ * put back in the order they are in the file.
+ *
+ * Files the scan does not follow, and every file when the pool has a single thread, are read
+ * by StreamingXMLParser instead.  If anything in the file cannot be read, the file is read
+ * again by StreamingXMLParser, so that the error thrown is the one that reading it in a single
+ * pass finds first, and what was first found is printed along with its stack trace.
+ *
+ * The file is only held in memory once: each move and the parts around them are read through
+ * streams over the bytes of the file rather than copies of them.
+ *
+ */
+public class ParallelXMLParser implements DrillParser {
+
+    // The number of moves read by a task without splitting it further
+    private static final int MOVES_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+
+    public ParallelXMLParser() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a parser that reads the moves on the given pool.
+     *
+     * @param pool - the pool to read the moves on
+     */
+    public ParallelXMLParser(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Loads the models based on the information stored in a save XML file.
+     *
+     * @param file - the save file stored in XML format
+     * @return the drill read from the save XML file
+     * @throws SAXException if the file is not well formed XML
+     * @throws IOException
+     * @throws DrillXMLException
+     */
+    @Override
+    public DrillInfo load(File file) throws SAXException, IOException, DrillXMLException {
+        if (pool.getParallelism() < 2) {
+            // the moves would only be read one after another, after the scan
+            return new StreamingXMLParser().load(file);
+        }
+        String systemId = file.toURI().toString();
+        LazyXMLParser.Index index;
+        byte[] bytes;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            index = new LazyXMLParser.Scanner().scan(channel);
+            if (index == null || channel.size() > Integer.MAX_VALUE) {
+                return new StreamingXMLParser().load(file);
+            }
+            bytes = readFully(channel);
+        } finally {
+            channel.close();
+        }
+
+        MoveParse moveParse = new MoveParse(bytes, index, systemId, 0, index.count,
+                new Move[index.count], new AtomicReference<Exception>());
+        ForkJoinTask<Void> task = pool.submit(moveParse);
+
+        DrillInfo drillInfo;
+        try {
+            drillInfo = new StreamingXMLParser().load(around(bytes, index), systemId);
+        } catch (SAXException | DrillXMLException e) {
+            moveParse.failure.compareAndSet(null, e);
+            task.join();
+            return loadAfterFailure(file, moveParse.failure.get());
+        }
+        task.join();
+        if (moveParse.failure.get() != null) {
+            return loadAfterFailure(file, moveParse.failure.get());
+        }
+
+        // a gap in the move numbers is filled with empty moves, as it is when read in a single pass
+        ArrayList<Move> moves = new ArrayList<Move>(index.count);
+        for (int i = 0; i < index.count; i++) {
+            while (index.numbers[i] > moves.size()) {
+                moves.add(new Move());
+            }
+            moves.add(moveParse.moves[i]);
+        }
+        drillInfo.setMoves(moves);
+        return drillInfo;
+    }
+
+    /**
+     * Reads the file again in a single pass, after reporting what could not be read in parallel
+     */
+    private static DrillInfo loadAfterFailure(File file, Exception failure)
+            throws SAXException, IOException, DrillXMLException {
+        failure.printStackTrace();
+        return new StreamingXMLParser().load(file);
+    }
+
+    /**
+     * Reads the whole file
+     */
+    private static byte[] readFully(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("The file ended before it was read, it may have changed while it was loaded.");
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Returns a stream of the parts of the file between the moves
+     */
+    private static InputStream around(final byte[] bytes, final LazyXMLParser.Index index) {
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            // the index of the move the next part ends at, or the number of moves for the last part
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next <= index.count;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (next > index.count) {
+                    throw new NoSuchElementException();
+                }
+                int start = next == 0 ? 0 : (int) index.ends[next - 1];
+                int end = next == index.count ? bytes.length : (int) index.starts[next];
+                next++;
+                return new ByteArrayInputStream(bytes, start, end - start);
+            }
+        });
+    }
+
+    /**
+     * Reads a range of the moves, splitting it in two until it is small enough to read
+     * on one thread.  Stops at the first move that cannot be read, or as soon as any other
+     * task has failed, as the file is then read again in a single pass.
+     */
+    private static class MoveParse extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] bytes;
+        private final LazyXMLParser.Index index;
+        private final String systemId;
+        private final int from;
+        private final int to;
+
+        // the moves read, by their index in the file, and the first error found reading them
+        private final Move[] moves;
+        private final AtomicReference<Exception> failure;
+
+        private MoveParse(byte[] bytes, LazyXMLParser.Index index, String systemId, int from, int to,
+                Move[] moves, AtomicReference<Exception> failure) {
+            this.bytes = bytes;
+            this.index = index;
+            this.systemId = systemId;
+            this.from = from;
+            this.to = to;
+            this.moves = moves;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MOVES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MoveParse(bytes, index, systemId, from, middle, moves, failure),
+                        new MoveParse(bytes, index, systemId, middle, to, moves, failure));
+                return;
+            }
+            for (int i = from; i < to && failure.get() == null; i++) {
+                int start = (int) index.starts[i];
+                try {
+                    moves[i] = LazyXMLParser.parseMove(bytes, start, (int) index.ends[i] - start, systemId);
+                } catch (SAXException | IOException | DrillXMLException | RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }
+    }
+}
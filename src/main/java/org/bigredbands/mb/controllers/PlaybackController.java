@@ -1,5 +1,7 @@
 package org.bigredbands.mb.controllers;
 
+import org.bigredbands.mb.models.TempoMap;
+
 /**
  *
  * Used for controlling playback of drill.
@@ -7,6 +9,9 @@ package org.bigredbands.mb.controllers;
  */
 public class PlaybackController implements Runnable {
 
+    // The time between frames drawn in between counts, in milliseconds (about 60 frames a second)
+    private static final int FRAME_INTERVAL = 16;
+
     private SynchronizedController controller;
 
     /**
@@ -19,18 +24,34 @@ public class PlaybackController implements Runnable {
     }
 
     /**
-     *
+     * Advances the playback count on every beat, and in between beats redraws the field
+     * at the frame rate with how far playback is towards the next count.  The length of
+     * each beat comes from the tempo map, stepped through one count at a time.
      */
     @Override
     public void run() {
+        TempoMap.Cursor beats = controller.getTempoMap().cursor(0);
+        long beatStart = System.nanoTime();
+        long beatLength = beats.nextBeatLength() * 1000000L;
         while (controller.isPlaybackRunning()) {
+            long untilBeat = beatStart + beatLength - System.nanoTime();
             try {
-                Thread.sleep(controller.getPlaybackSpeed());
+                Thread.sleep(Math.max(0, Math.min(FRAME_INTERVAL, untilBeat / 1000000L)));
             } catch (InterruptedException e) {
                 // We've been interrupted: no more messages.
                 return;
             }
-            controller.incrementPlaybackCount();
+
+            long elapsed = System.nanoTime() - beatStart;
+            if (elapsed >= beatLength) {
+                controller.incrementPlaybackCount();
+                // keep the beats on time even if this frame was late
+                beatStart = beatStart + beatLength;
+                beatLength = beats.nextBeatLength() * 1000000L;
+            }
+            else {
+                controller.setPlaybackFraction((float) elapsed / beatLength);
+            }
         }
     }
 
@@ -0,0 +1,87 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.utils.FileWriteUtils;
+import org.bigredbands.mb.utils.ProgressListener;
+
+/**
+ *
+ * Saves a project by writing its tags straight to the file as each model is visited,
+ * rather than building the DOM of the whole show first.  The file written is byte for
+ * byte the same as one written by XMLGenerator, except that moves read lazily by
+ * LazyXMLParser and not changed since are copied as they were in the file they were read
+ * from.
+ *
+ */
+public class StreamingXMLGenerator {
+
+    // The declaration the DOM Transformer writes at the start of a file
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+    // The size of the buffer in front of the file
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Told as each move is written, if set
+    private ProgressListener progressListener;
+
+    public StreamingXMLGenerator() {
+
+    }
+
+    /**
+     * Sets what is told how many moves have been written as a show is saved.
+     *
+     * @param progressListener - told after each move, or null for nothing
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Saves drill information into XML file that can later be accessed
+     * and edited in RankPanda 2.0.
+     * @param drillInfo - contains information from currently written drill.
+     * @param file - file where the drill information will be saved.
+     * @throws IOException if the file cannot be written
+     */
+    public void save(final DrillInfo drillInfo, File file) throws IOException {
+        // the file is replaced as a whole, so moves still to be read from it are not written over
+        FileWriteUtils.replace(file, new FileWriteUtils.ChannelWriter() {
+            @Override
+            public void write(FileChannel channel) throws IOException {
+                StreamingXMLGenerator.this.write(drillInfo, new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            }
+        });
+    }
+
+    /**
+     * Writes drill information as XML to a stream, leaving the stream open.
+     * @param drillInfo - contains information from currently written drill.
+     * @param out - the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void write(DrillInfo drillInfo, OutputStream out) throws IOException {
+        out.write(DECLARATION.getBytes(StandardCharsets.UTF_8));
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            drillInfo.writeXML(writer, out, progressListener);
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,612 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.XMLConstants;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ *
+ * Reads a saved project in a single pass over the file, building the moves, positions and
+ * commands as their tags are read rather than building the DOM of the whole file first.
+ *
+ * The parser accepts the same files as XMLParser and fails with the same errors.  XMLParser
+ * finds every move, tempo change, counts per measure change and song name wherever it is in
+ * the document, and reads them in that order, so the first error found in each is kept and
+ * they are thrown in the same order once the whole file has been read.  A file that is not
+ * well formed fails with a SAXException before any of them, as it does when building a DOM.
+ *
+ */
+public class StreamingXMLParser implements DrillParser {
+
+    // Reports CDATA sections apart from text, as they are separate nodes in a DOM
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    /**
+     * A move read from the file, or the error reading it
+     */
+    private static class MoveEntry {
+        private Move move;
+        private int moveNumber;
+        private Exception error;
+    }
+
+    /**
+     * A tempo or counts per measure change read from the file, or the error reading it
+     */
+    private static class SongConstantEntry {
+        private int measure = -1;
+        private int value = -1;
+        private Exception error;
+    }
+
+    /**
+     * The song name read from the file, or the error reading it
+     */
+    private static class TextEntry {
+        private String text;
+        private Exception error;
+    }
+
+    // Looking up a factory is slow next to reading a single move, so each thread keeps one
+    private static final ThreadLocal<XMLInputFactory> FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            if (factory.isPropertySupported(REPORT_CDATA)) {
+                factory.setProperty(REPORT_CDATA, true);
+            }
+            return factory;
+        }
+    };
+
+    public StreamingXMLParser() {
+
+    }
+
+    /**
+     * Loads the models based on the information stored in a save XML file.
+     *
+     * @param file - the save file stored in XML format
+     * @return the drill read from the save XML file
+     * @throws SAXException if the file is not well formed XML
+     * @throws IOException
+     * @throws DrillXMLException
+     */
+    @Override
+    public DrillInfo load(File file) throws SAXException, IOException, DrillXMLException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return load(in, file.toURI().toString());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads the models based on the information stored in a stream of save XML, leaving the
+     * stream open.
+     *
+     * @param in - the saved XML
+     * @param systemId - where the XML is from, for resolving relative references
+     * @return the drill read from the XML
+     * @throws SAXException if the XML is not well formed
+     * @throws IOException
+     * @throws DrillXMLException
+     */
+    DrillInfo load(InputStream in, String systemId) throws SAXException, IOException, DrillXMLException {
+        try {
+            XMLStreamReader reader = FACTORY.get().createXMLStreamReader(systemId, in);
+            try {
+                return new Pass(reader).read();
+            }
+            finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new SAXException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A single read through a file
+     */
+    private static class Pass {
+        private final XMLStreamReader reader;
+
+        // The depth of the element the reader is in, 0 outside the root
+        private int depth;
+
+        // What has been read, in the order XMLParser reads it
+        private final List<MoveEntry> moves = new ArrayList<MoveEntry>();
+        private final List<SongConstantEntry> tempoChanges = new ArrayList<SongConstantEntry>();
+        private final List<SongConstantEntry> countsChanges = new ArrayList<SongConstantEntry>();
+        private TextEntry songName;
+
+        private Pass(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Reads the whole file and builds the drill from it
+         */
+        private DrillInfo read() throws XMLStreamException, DrillXMLException {
+            while (reader.hasNext()) {
+                if (next() == XMLStreamConstants.START_ELEMENT) {
+                    scan();
+                }
+            }
+
+            DrillInfo drillInfo = new DrillInfo();
+            for (MoveEntry entry : moves) {
+                rethrow(entry.error);
+                XMLParser.addMove(drillInfo.getMoves(), entry.move, entry.moveNumber);
+            }
+            for (SongConstantEntry entry : tempoChanges) {
+                rethrow(entry.error);
+                XMLParser.addSongConstant(drillInfo.getTempoHashMap(), entry.measure, entry.value, XMLConstants.TEMPO);
+            }
+            for (SongConstantEntry entry : countsChanges) {
+                rethrow(entry.error);
+                XMLParser.addSongConstant(drillInfo.getCountsHashMap(), entry.measure, entry.value, XMLConstants.COUNT_PER_MEASURE);
+            }
+            if (songName != null) {
+                rethrow(songName.error);
+                drillInfo.setSongName(songName.text);
+            }
+            return drillInfo;
+        }
+
+        private int next() throws XMLStreamException {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+            return event;
+        }
+
+        /**
+         * Moves to the start of the next child of the current element, returning false instead
+         * when the current element ends
+         */
+        private boolean nextChild() throws XMLStreamException {
+            while (true) {
+                int event = next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    return true;
+                }
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Reads an element that is not part of the element around it: either a move, song
+         * change or song name, which XMLParser finds wherever they are, or an element to look
+         * inside for them.  Ends at the end of the element.
+         */
+        private void scan() throws XMLStreamException {
+            String name = reader.getLocalName();
+            if (name.equals(XMLConstants.MOVE)) {
+                readMove();
+            }
+            else if (name.equals(XMLConstants.TEMPO_CHANGE)) {
+                readSongConstant(tempoChanges, XMLConstants.TEMPO);
+            }
+            else if (name.equals(XMLConstants.COUNT_PER_MEASURE_CHANGE)) {
+                readSongConstant(countsChanges, XMLConstants.COUNT_PER_MEASURE);
+            }
+            else if (name.equals(XMLConstants.SONG_NAME) && songName == null) {
+                songName = new TextEntry();
+                int start = depth;
+                try {
+                    songName.text = getTagText();
+                } catch (DrillXMLException | NumberFormatException e) {
+                    songName.error = e;
+                    skipTo(start);
+                }
+            }
+            else {
+                while (nextChild()) {
+                    scan();
+                }
+            }
+        }
+
+        /**
+         * Finishes an element after an error part way through it, still looking inside the
+         * rest of it for moves and song changes
+         *
+         * @param elementDepth - the depth of the element
+         */
+        private void skipTo(int elementDepth) throws XMLStreamException {
+            while (depth >= elementDepth) {
+                if (next() == XMLStreamConstants.START_ELEMENT) {
+                    scan();
+                }
+            }
+        }
+
+        private void readMove() throws XMLStreamException {
+            MoveEntry entry = new MoveEntry();
+            moves.add(entry);
+            int start = depth;
+            try {
+                entry.move = new Move();
+                entry.moveNumber = -1;
+                int moveCounts = -1;
+                while (nextChild()) {
+                    String name = reader.getLocalName();
+                    if (name.equals(XMLConstants.RANK)) {
+                        addRankToMove(entry.move);
+                    }
+                    else if (name.equals(XMLConstants.MOVE_NUMBER)) {
+                        if (entry.moveNumber == -1) {
+                            entry.moveNumber = Integer.parseInt(getTagText());
+                        }
+                        else {
+                            throw new DrillXMLException("DrillXMLException: there were two " + XMLConstants.MOVE_NUMBER + " tags in a move.");
+                        }
+                    }
+                    else if (name.equals(XMLConstants.MOVE_COUNTS)) {
+                        if (moveCounts == -1) {
+                            moveCounts = Integer.parseInt(getTagText());
+                        }
+                        else {
+                            throw new DrillXMLException("DrillXMLException: there were two " + XMLConstants.MOVE_COUNTS + " tags in a move.");
+                        }
+                    }
+                    else if (name.equals(XMLConstants.MOVE_COMMENTS)) {
+                        entry.move.setComments(getTagText());
+                    }
+                    else {
+                        scan();
+                    }
+                }
+
+                if (entry.moveNumber == -1) {
+                    throw new DrillXMLException("DrillXMLException: a move number was not specified for a move.");
+                }
+                if (moveCounts == -1) {
+                    throw new DrillXMLException("DrillXMLException: the number of counts for a move was not specified for a move.");
+                }
+                entry.move.setCounts(moveCounts);
+            } catch (DrillXMLException | NumberFormatException e) {
+                entry.error = e;
+                skipTo(start);
+            }
+        }
+
+        private void addRankToMove(Move move) throws XMLStreamException, DrillXMLException {
+            String rankName = null;
+            ArrayList<CommandPair> commands = new ArrayList<CommandPair>();
+            RankPosition startPosition = null;
+            RankPosition endPosition = null;
+
+            while (nextChild()) {
+                String name = reader.getLocalName();
+                if (name.equals(XMLConstants.RANK_NAME)) {
+                    if (rankName == null) {
+                        rankName = getTagText();
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple rank names for one rank.");
+                    }
+                }
+                else if (name.equals(XMLConstants.START_POS)) {
+                    if (startPosition == null) {
+                        startPosition = getRankPosition();
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple start positions for one rank.");
+                    }
+                }
+                else if (name.equals(XMLConstants.COMMAND)) {
+                    addCommandToList(commands);
+                }
+                else if (name.equals(XMLConstants.END_POS)) {
+                    if (endPosition == null) {
+                        endPosition = getRankPosition();
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple end positions for one rank.");
+                    }
+                }
+                else {
+                    scan();
+                }
+            }
+
+            if (rankName == null) {
+                throw new DrillXMLException("DrillXMLException: No rank name was specified for a rank.");
+            }
+            if (startPosition == null) {
+                throw new DrillXMLException("DrillXMLException: No start position was specified for a rank.");
+            }
+            if (endPosition == null) {
+                throw new DrillXMLException("DrillXMLException: No end position was specified for a rank.");
+            }
+
+            move.getCommands().put(rankName, commands);
+            move.getStartPositions().put(rankName, startPosition);
+            move.getEndPositions().put(rankName, endPosition);
+        }
+
+        private void addCommandToList(ArrayList<CommandPair> commands) throws XMLStreamException, DrillXMLException {
+            int commandIndex = -1;
+            int counts = -1;
+            int commandType = -1;
+            String commandName = "";
+            RankPosition DTPDest = null;
+            ArrayList<Point> waypoints = null;
+
+            while (nextChild()) {
+                String name = reader.getLocalName();
+                if (name.equals(XMLConstants.INDEX)) {
+                    if (commandIndex == -1) {
+                        commandIndex = Integer.parseInt(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were two index tags in a command.");
+                    }
+                }
+                else if (name.equals(XMLConstants.COMMAND_TYPE)) {
+                    if (commandType == -1) {
+                        commandType = Integer.parseInt(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were two command-types tags in a command.");
+                    }
+                }
+                else if (name.equals(XMLConstants.COUNTS)) {
+                    if (counts == -1) {
+                        counts = Integer.parseInt(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were two counts tags in a command.");
+                    }
+                }
+                else if (name.equals(XMLConstants.COMMAND_NAME)) {
+                    if (commandName.isEmpty()) {
+                        commandName = getTagText();
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were two command name tags in a command.");
+                    }
+                }
+                else if ((commandType == CommandPair.DTP || commandType == CommandPair.FTA)
+                        && name.equals(XMLConstants.DESTINATION)) {
+                    if (DTPDest == null) {
+                        DTPDest = XMLParser.parseDestination(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were two destination tags in a command.");
+                    }
+                }
+                else if (commandType == CommandPair.FTA && name.equals(XMLConstants.WAYPOINTS)) {
+                    if (waypoints == null) {
+                        waypoints = XMLParser.parseWaypoints(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were two waypoints tags in a command.");
+                    }
+                }
+                else {
+                    scan();
+                }
+            }
+
+            XMLParser.addCommand(commands, commandIndex, commandType, counts, commandName, DTPDest, waypoints);
+        }
+
+        private RankPosition getRankPosition() throws XMLStreamException, DrillXMLException {
+            Point startPoint = null;
+            Point pointOne = null;
+            Point endPoint = null;
+            int lineType = -1;
+
+            while (nextChild()) {
+                String name = reader.getLocalName();
+                if (name.equals(XMLConstants.LINE_TYPE)) {
+                    if (lineType == -1) {
+                        lineType = Integer.parseInt(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple line types for one rank.");
+                    }
+                }
+                else if (name.equals(XMLConstants.FRONT_POINT)) {
+                    if (startPoint == null) {
+                        startPoint = getPoint();
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple start points for one rank.");
+                    }
+                }
+                else if (name.equals(XMLConstants.POINT_ONE)) {
+                    if (pointOne == null) {
+                        pointOne = getPoint();
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple point ones for one rank.");
+                    }
+                }
+                else if (name.equals(XMLConstants.END_POINT)) {
+                    if (endPoint == null) {
+                        endPoint = getPoint();
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple end points for one rank.");
+                    }
+                }
+                else {
+                    scan();
+                }
+            }
+
+            return XMLParser.createRankPosition(startPoint, pointOne, endPoint, lineType);
+        }
+
+        private Point getPoint() throws XMLStreamException, DrillXMLException {
+            float x = -1;
+            float y = -1;
+
+            while (nextChild()) {
+                String name = reader.getLocalName();
+                if (name.equals(XMLConstants.X_COORDINATE)) {
+                    if (x < 0) {
+                        x = Float.parseFloat(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple x coordinates in a point.");
+                    }
+                }
+                else if (name.equals(XMLConstants.Y_COORDINATE)) {
+                    if (y < 0) {
+                        y = Float.parseFloat(getTagText());
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were multiple y coordinates in a point.");
+                    }
+                }
+                else {
+                    scan();
+                }
+            }
+
+            if (x < 0) {
+                throw new DrillXMLException("DrillXMLException: found a point change without an x value.");
+            }
+            if (y < 0) {
+                throw new DrillXMLException("DrillXMLException: found a point change without an y value.");
+            }
+
+            return new Point(x, y);
+        }
+
+        private void readSongConstant(List<SongConstantEntry> changes, String valueTagName) throws XMLStreamException {
+            SongConstantEntry entry = new SongConstantEntry();
+            changes.add(entry);
+            int start = depth;
+            try {
+                while (nextChild()) {
+                    String name = reader.getLocalName();
+                    if (name.equals(XMLConstants.MEASURE_NUMBER)) {
+                        if (entry.measure == -1) {
+                            entry.measure = Integer.parseInt(getTagText());
+                        }
+                        else {
+                            throw new DrillXMLException("DrillXMLException: there were multiple measure-number tags " + valueTagName + " change tag.");
+                        }
+                    }
+                    else if (name.equals(valueTagName)) {
+                        if (entry.value == -1) {
+                            entry.value = Integer.parseInt(getTagText());
+                        }
+                        else {
+                            throw new DrillXMLException("DrillXMLException: there were multiple " + valueTagName + " tags " + valueTagName + " change tag.");
+                        }
+                    }
+                    else {
+                        scan();
+                    }
+                }
+            } catch (DrillXMLException | NumberFormatException e) {
+                entry.error = e;
+                skipTo(start);
+            }
+        }
+
+        /**
+         * Returns the text of the current element, which must hold at most one text node as
+         * in a DOM.  Ends at the end of the element.
+         */
+        private String getTagText() throws XMLStreamException, DrillXMLException {
+            String name = reader.getLocalName();
+            StringBuilder text = new StringBuilder();
+            int nodes = 0;
+            short lastType = 0;
+
+            while (true) {
+                int event = next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    break;
+                }
+                switch (event) {
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        // text split over several events is still one node
+                        if (lastType != Node.TEXT_NODE) {
+                            nodes++;
+                            lastType = Node.TEXT_NODE;
+                        }
+                        text.append(reader.getText());
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        nodes++;
+                        lastType = Node.CDATA_SECTION_NODE;
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        nodes++;
+                        lastType = Node.COMMENT_NODE;
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        nodes++;
+                        lastType = Node.PROCESSING_INSTRUCTION_NODE;
+                        break;
+                    case XMLStreamConstants.START_ELEMENT:
+                        nodes++;
+                        lastType = Node.ELEMENT_NODE;
+                        scan();
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            if (nodes > 1) {
+                throw new DrillXMLException("DrillXMLException: expected there to be one TEXT_NODE child under "
+                        + name + " but there were " + nodes + " nodes.");
+            }
+            if (nodes == 1 && lastType != Node.TEXT_NODE) {
+                throw new DrillXMLException("DrillXMLException: expected there to be one TEXT_NODE child under "
+                        + name + " but there was a " + lastType + " type");
+            }
+            return text.toString();
+        }
+
+        private static void rethrow(Exception error) throws DrillXMLException {
+            if (error instanceof DrillXMLException) {
+                throw (DrillXMLException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.bigredbands.mb.controllers;
 
 import java.util.HashSet;
 
+import org.bigredbands.mb.models.TempoMap;
+
 public interface SynchronizedController {
 
     /**
@@ -17,11 +19,19 @@ public interface SynchronizedController {
     public boolean isPlaybackRunning();
 
     /**
-     * Gets the speed at which the playback is updated
+     * Gets the measures and tempos of the song being played back, which can be read
+     * without synchronizing on the controller
+     *
+     * @return - the tempo map of the song
+     */
+    public TempoMap getTempoMap();
+
+    /**
+     * Sets how far playback is between the current count and the next, and redraws the field
      *
-     * @return
+     * @param fraction - the fraction of the way to the next count, from 0 to 1
      */
-    public int getPlaybackSpeed();
+    public void setPlaybackFraction(float fraction);
 
 
 }
@@ -1,10 +1,17 @@
 package org.bigredbands.mb.controllers;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -13,7 +20,11 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.XMLConstants;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  *
@@ -22,6 +33,9 @@ import org.w3c.dom.Document;
  */
 public class XMLGenerator {
 
+    // The declaration the Transformer writes at the start of a whole document
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
     /**
      * Default constructor.
      */
@@ -71,4 +85,50 @@ public class XMLGenerator {
         }
     }
 
+    /**
+     * Saves a show whose moves are made one at a time as they are saved, so that only one
+     * move is held in memory at once.  Each tag of the song and each move is built as its own
+     * document and written straight after the last, giving the same file as save would for
+     * the whole show.
+     * @param song - the song name, tempo changes and meter changes of the show, holding no moves
+     * @param moves - the moves of the show, in order
+     * @param file - file where the drill information will be saved.
+     * @throws IOException if the file cannot be written
+     */
+    public void save(DrillInfo song, Iterator<Move> moves, File file) throws IOException {
+        if (!song.getMoves().isEmpty()) {
+            throw new IllegalArgumentException("The moves of the song are given separately");
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try {
+            DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+
+            // the drill tag is built without the moves, which are added as they are made
+            Element drillTag = song.convertToXML(docBuilder.newDocument());
+
+            out.write(DECLARATION.getBytes(StandardCharsets.UTF_8));
+            if (!drillTag.hasChildNodes() && !moves.hasNext()) {
+                out.write(("<" + XMLConstants.DRILL + "/>").getBytes(StandardCharsets.UTF_8));
+            }
+            else {
+                out.write(("<" + XMLConstants.DRILL + ">").getBytes(StandardCharsets.UTF_8));
+                for (Node child = drillTag.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    transformer.transform(new DOMSource(child), new StreamResult(out));
+                }
+                for (int i = 0; moves.hasNext(); i++) {
+                    transformer.transform(new DOMSource(moves.next().convertToXML(docBuilder.newDocument(), i)),
+                            new StreamResult(out));
+                }
+                out.write(("</" + XMLConstants.DRILL + ">").getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (TransformerException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            out.close();
+        }
+    }
 }
@@ -22,7 +22,12 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-public class XMLParser {
+/**
+ *
+ * Reads a saved project by building the DOM of the whole file.
+ *
+ */
+public class XMLParser implements DrillParser {
 
     //TODO: need some form of a verifier eventually after reading from the xml file
     //to make sure all the data is sound
@@ -41,6 +46,7 @@ public class XMLParser {
      * @throws SAXException
      * @throws DrillXMLException
      */
+    @Override
     public DrillInfo load(File file) throws ParserConfigurationException, SAXException, IOException, DrillXMLException{
         //creates an empty list of moves and defines the a SongConstants variable
         DrillInfo drillInfo = new DrillInfo();
@@ -154,6 +160,17 @@ public class XMLParser {
         //store the move number in the move
         move.setCounts(moveCounts);
 
+        addMove(moves, move, moveNumber);
+    }
+
+    /**
+     * Adds a move that has been read to the list of moves
+     *
+     * @param moves - the list of moves read so far
+     * @param move - the move read
+     * @param moveNumber - the number the move was saved with
+     */
+    static void addMove(List<Move> moves, Move move, int moveNumber) {
         //TODO: check if the move already exists and is not empty
 
         //add the move to the list at its specified move number, adding other empty moves
@@ -241,6 +258,7 @@ public class XMLParser {
         int commandType = -1;
         String commandName = "";
         RankPosition DTPDest = null;
+        ArrayList<Point> waypoints = null;
 
         //iterate through the children of the tag
         for (int i=0; i < commandChildren.getLength(); i++) {
@@ -284,41 +302,44 @@ public class XMLParser {
                         throw new DrillXMLException("DrillXMLException: there were two command name tags in a command.");
                     }
                 }
-                else if (commandType==CommandPair.DTP &&
+                else if ((commandType==CommandPair.DTP || commandType==CommandPair.FTA) &&
                         commandChild.getNodeName().equals(XMLConstants.DESTINATION)) {
                     if (DTPDest==null) {
-                        String[] tokens = getTagText(commandChild).split(";");
-                        if(tokens.length!=4) {
-                            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
-                        }
-                        int lineType = Integer.parseInt(tokens[0]);
-                        String[] frontStr = tokens[1].split(",");
-                        if(frontStr.length!=2) {
-                            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
-                        }
-                        Point front = new Point(Float.parseFloat(frontStr[0]),Float.parseFloat(frontStr[1]));
-
-                        String[] midStr = tokens[2].split(",");
-                        if(midStr.length!=2) {
-                            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
-                        }
-                        Point mid = new Point(Float.parseFloat(midStr[0]),Float.parseFloat(midStr[1]));
-
-                        String[] endStr = tokens[3].split(",");
-                        if(endStr.length!=2) {
-                            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
-                        }
-                        Point end = new Point(Float.parseFloat(endStr[0]),Float.parseFloat(endStr[1]));
-
-                        DTPDest = new RankPosition(front,mid,end,lineType);
+                        DTPDest = parseDestination(getTagText(commandChild));
                     }
                     else {
                         throw new DrillXMLException("DrillXMLException: there were two destination tags in a command.");
                     }
                 }
+                else if (commandType==CommandPair.FTA &&
+                        commandChild.getNodeName().equals(XMLConstants.WAYPOINTS)) {
+                    if (waypoints==null) {
+                        waypoints = parseWaypoints(getTagText(commandChild));
+                    }
+                    else {
+                        throw new DrillXMLException("DrillXMLException: there were two waypoints tags in a command.");
+                    }
+                }
             }
         }
 
+        addCommand(commands, commandIndex, commandType, counts, commandName, DTPDest, waypoints);
+    }
+
+    /**
+     * Checks the fields read for a command and adds it to the list of commands for its rank
+     *
+     * @param commands - the commands of the rank read so far
+     * @param commandIndex - the index the command was saved with, or -1 if it was missing
+     * @param commandType - the type of the command, or -1 if it was missing
+     * @param counts - the counts of the command, or -1 if they were missing
+     * @param commandName - the name of the command
+     * @param DTPDest - the destination of a DTP or FTA command
+     * @param waypoints - the waypoints of an FTA command
+     * @throws DrillXMLException
+     */
+    static void addCommand(ArrayList<CommandPair> commands, int commandIndex, int commandType, int counts,
+            String commandName, RankPosition DTPDest, ArrayList<Point> waypoints) throws DrillXMLException {
         //check if all of the necessary fields have been specified
         if (commandIndex == -1) {
             throw new DrillXMLException("DrillXMLException: a command index was not specified for a command.");
@@ -341,12 +362,68 @@ public class XMLParser {
             commands.add(new CommandPair());
         }
         CommandPair cmd = new CommandPair(commandType, counts, commandName);
-        if(commandType == CommandPair.DTP) {
+        if(commandType == CommandPair.DTP || commandType == CommandPair.FTA) {
             cmd.setDestination(DTPDest);
         }
+        if(commandType == CommandPair.FTA) {
+            cmd.setWaypoints(waypoints);
+        }
         commands.add(cmd);
     }
 
+    /**
+     * Decodes the destination of a DTP or FTA command, stored as "lineType;x,y;x,y;x,y"
+     *
+     * @param text - the text of the destination tag
+     * @return the destination
+     * @throws DrillXMLException
+     */
+    static RankPosition parseDestination(String text) throws DrillXMLException {
+        String[] tokens = text.split(";");
+        if(tokens.length!=4) {
+            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
+        }
+        int lineType = Integer.parseInt(tokens[0]);
+        String[] frontStr = tokens[1].split(",");
+        if(frontStr.length!=2) {
+            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
+        }
+        Point front = new Point(Float.parseFloat(frontStr[0]),Float.parseFloat(frontStr[1]));
+
+        String[] midStr = tokens[2].split(",");
+        if(midStr.length!=2) {
+            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
+        }
+        Point mid = new Point(Float.parseFloat(midStr[0]),Float.parseFloat(midStr[1]));
+
+        String[] endStr = tokens[3].split(",");
+        if(endStr.length!=2) {
+            throw new DrillXMLException("DrillXMLException: DTP destination not encoded properly.");
+        }
+        Point end = new Point(Float.parseFloat(endStr[0]),Float.parseFloat(endStr[1]));
+
+        return new RankPosition(front,mid,end,lineType);
+    }
+
+    /**
+     * Decodes the waypoints of an FTA command, stored as "x,y;x,y;..."
+     *
+     * @param text - the text of the waypoints tag
+     * @return the waypoints in order
+     * @throws DrillXMLException
+     */
+    static ArrayList<Point> parseWaypoints(String text) throws DrillXMLException {
+        ArrayList<Point> waypoints = new ArrayList<Point>();
+        for (String pointStr : text.split(";")) {
+            String[] coordinates = pointStr.split(",");
+            if(coordinates.length!=2) {
+                throw new DrillXMLException("DrillXMLException: FTA waypoints not encoded properly.");
+            }
+            waypoints.add(new Point(Float.parseFloat(coordinates[0]),Float.parseFloat(coordinates[1])));
+        }
+        return waypoints;
+    }
+
     /**
      * Gets rank position
      *
@@ -401,6 +478,20 @@ public class XMLParser {
             }
         }
 
+        return createRankPosition(startPoint, pointOne, endPoint, lineType);
+    }
+
+    /**
+     * Checks the fields read for a rank position and creates it
+     *
+     * @param startPoint - the front point, or null if it was missing
+     * @param pointOne - the midpoint, or null if it was missing
+     * @param endPoint - the end point, or null if it was missing
+     * @param lineType - the line type, or -1 if it was missing
+     * @return the rank position
+     * @throws DrillXMLException
+     */
+    static RankPosition createRankPosition(Point startPoint, Point pointOne, Point endPoint, int lineType) throws DrillXMLException {
         //sanity checks after parsing
         if (startPoint == null) {
             throw new DrillXMLException("DrillXMLException: there was no start point for a rank.");
@@ -496,6 +587,19 @@ public class XMLParser {
             }
         }
 
+        addSongConstant(hashMap, measure, value, valueTagName);
+    }
+
+    /**
+     * Checks the fields read for a tempo or counts per measure change and adds it to its hashmap
+     *
+     * @param hashMap - the changes read so far, by measure
+     * @param measure - the measure of the change, or -1 if it was missing
+     * @param value - the new tempo or counts per measure, or -1 if it was missing
+     * @param valueTagName - the name of the tag holding the value
+     * @throws DrillXMLException
+     */
+    static void addSongConstant(HashMap<Integer, Integer> hashMap, int measure, int value, String valueTagName) throws DrillXMLException {
         //check to make sure we found a key and value
         if (measure == -1) {
             throw new DrillXMLException("DrillXMLException: found a " + valueTagName + " change without a measure-number tag.");
@@ -0,0 +1,19 @@
+package org.bigredbands.mb.exceptions;
+
+/**
+ * Thrown when a move that was left in its save file to be read when first used cannot be
+ * read.  It is unchecked, as the move is read by whatever first gets it from the list of
+ * moves.
+ */
+public class MoveLoadException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MoveLoadException(String message) {
+        super(message);
+    }
+
+    public MoveLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,219 @@
+package org.bigredbands.mb.models;
+
+/**
+ * A path through the points of a rank, with the distance along the path to each point.
+ *
+ * Lines and corners are stored exactly, and a curve as the polyline of its shared
+ * CurveTable, so that any distance along the path is found with a binary search and a lerp
+ * rather than by integrating the curve again.  A table holds its points in arrays sized
+ * when it is created and is refilled in place, so building and reading it only allocates
+ * to sample a curve that is not already cached.
+ */
+public final class ArcLengthTable {
+
+    // The number of straight pieces a curve is sampled as
+    public static final int CURVE_SAMPLES = CurveTable.SAMPLES;
+
+    private final float[] xs;
+    private final float[] ys;
+
+    // The distance along the path to each point, starting from 0 at the first
+    private final float[] lengths;
+
+    private int size;
+
+    /**
+     * Creates a table with room for a curve
+     */
+    public ArcLengthTable() {
+        this(CURVE_SAMPLES + 1);
+    }
+
+    /**
+     * Creates a table with room for the given number of points
+     *
+     * @param capacity - the most points the path will have
+     */
+    public ArcLengthTable(int capacity) {
+        xs = new float[capacity];
+        ys = new float[capacity];
+        lengths = new float[capacity];
+    }
+
+    /**
+     * Fills the table with the shape of a rank stored as in a RankProgram
+     *
+     * @param values - the stored rank positions
+     * @param offset - the index of the rank's first value
+     */
+    public void setRank(float[] values, int offset) {
+        float frontX = values[offset + RankProgram.FRONT_X];
+        float frontY = values[offset + RankProgram.FRONT_Y];
+        float midX = values[offset + RankProgram.MID_X];
+        float midY = values[offset + RankProgram.MID_Y];
+        float endX = values[offset + RankProgram.END_X];
+        float endY = values[offset + RankProgram.END_Y];
+
+        size = 0;
+        switch ((int) values[offset + RankProgram.LINE_TYPE]) {
+            case RankPosition.CURVE:
+                setQuadratic(frontX, frontY,
+                        2 * midX - (frontX + endX) / 2, 2 * midY - (frontY + endY) / 2,
+                        endX, endY);
+                break;
+            case RankPosition.CORNER:
+                addPoint(frontX, frontY);
+                addPoint(midX, midY);
+                addPoint(endX, endY);
+                break;
+            default:
+                addPoint(frontX, frontY);
+                addPoint(endX, endY);
+        }
+    }
+
+    /**
+     * Fills the table with a quadratic curve, as drawn for a curved rank
+     *
+     * @param startX - the x coordinate of the start of the curve
+     * @param startY - the y coordinate of the start of the curve
+     * @param controlX - the x coordinate of the control point
+     * @param controlY - the y coordinate of the control point
+     * @param endX - the x coordinate of the end of the curve
+     * @param endY - the y coordinate of the end of the curve
+     */
+    public void setQuadratic(float startX, float startY, float controlX, float controlY, float endX, float endY) {
+        CurveTable curve = CurveTable.of(startX, startY, controlX, controlY, endX, endY);
+        for (int i = 0; i < curve.getPointCount(); i++) {
+            xs[i] = curve.getX(i);
+            ys[i] = curve.getY(i);
+            lengths[i] = curve.getDistance(i);
+        }
+        size = curve.getPointCount();
+    }
+
+    /**
+     * Empties the table so that a path can be added point by point
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a point to the end of the path
+     *
+     * @param x - the x coordinate of the point
+     * @param y - the y coordinate of the point
+     */
+    public void addPoint(float x, float y) {
+        if (size == 0) {
+            lengths[0] = 0;
+        }
+        else {
+            float dx = x - xs[size - 1];
+            float dy = y - ys[size - 1];
+            lengths[size] = lengths[size - 1] + (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /**
+     * Returns the length of the whole path
+     *
+     * @return the distance from the first point to the last along the path
+     */
+    public float getLength() {
+        return size == 0 ? 0 : lengths[size - 1];
+    }
+
+    /**
+     * Returns the number of points on the path
+     *
+     * @return the number of points
+     */
+    public int getPointCount() {
+        return size;
+    }
+
+    /**
+     * Returns the x coordinate of a point on the path
+     *
+     * @param index - the index of the point
+     * @return the x coordinate
+     */
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Returns the y coordinate of a point on the path
+     *
+     * @param index - the index of the point
+     * @return the y coordinate
+     */
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Writes the point a distance along the path, clamped to its ends
+     *
+     * @param distance - the distance from the start of the path
+     * @param out - the array to write the x and then y coordinate to
+     * @param offset - the index to write the x coordinate at
+     */
+    public void pointAt(float distance, float[] out, int offset) {
+        int i = pieceAt(distance, 0);
+        writePoint(i, distance, out, offset);
+    }
+
+    /**
+     * Writes a number of points spread evenly along the path, the first at its start and
+     * the last at its end.  A single point is placed at the start.
+     *
+     * @param points - the number of points to write
+     * @param out - the array to write the x and y coordinates of each point to, in turn
+     * @param offset - the index to write the first x coordinate at
+     */
+    public void spread(int points, float[] out, int offset) {
+        float spacing = points > 1 ? getLength() / (points - 1) : 0;
+        int piece = 0;
+        for (int k = 0; k < points; k++) {
+            float distance = k * spacing;
+            // the points are in order along the path, so the search carries on from the last one
+            piece = pieceAt(distance, piece);
+            writePoint(piece, distance, out, offset + 2 * k);
+        }
+    }
+
+    // Returns the index of the point starting the piece of path that holds the distance
+    private int pieceAt(float distance, int from) {
+        int low = from;
+        int high = Math.max(size - 2, from);
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lengths[mid] <= distance) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void writePoint(int i, float distance, float[] out, int offset) {
+        if (size < 2) {
+            out[offset] = size == 0 ? 0 : xs[0];
+            out[offset + 1] = size == 0 ? 0 : ys[0];
+            return;
+        }
+        float pieceLength = lengths[i + 1] - lengths[i];
+        float t = pieceLength > 0 ? (distance - lengths[i]) / pieceLength : 0;
+        t = Math.max(0, Math.min(1, t));
+        out[offset] = xs[i] + (xs[i + 1] - xs[i]) * t;
+        out[offset + 1] = ys[i] + (ys[i + 1] - ys[i]) * t;
+    }
+}
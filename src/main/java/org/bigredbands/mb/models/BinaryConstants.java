@@ -0,0 +1,54 @@
+package org.bigredbands.mb.models;
+
+/**
+ * The layout of a binary project file.
+ *
+ * All numbers are big endian.  The file starts with a fixed header:
+ *
+ *   magic (4 bytes "PNDB"), version (short), reserved (short),
+ *   song name (string), song constants offset, tempo change count, counts change count,
+ *   move index offset, move count, string table offset, string count
+ *
+ * and then holds, at the offsets in the header:
+ *
+ *   song constants - a measure and a value for each tempo change, then for each counts
+ *                    per measure change
+ *   moves          - for each move its counts, comments (string) and rank count, then a
+ *                    record per rank: name (string), start position, end position and
+ *                    command count, followed by a record per command: type, counts, name
+ *                    (string), destination and waypoint count, followed by the waypoints
+ *   move index     - the offset of each move
+ *   string table   - the length of each string in chars, followed by its chars
+ *
+ * Strings are stored as indexes into the string table.  A position is its line type
+ * followed by the x and y of its front, midpoint and end as floats; a missing
+ * destination is stored with the line type NONE.  Waypoints are an x and y each, and a
+ * command without waypoints has a waypoint count of NONE.
+ */
+public abstract class BinaryConstants {
+
+    public static final byte[] MAGIC = { 'P', 'N', 'D', 'B' };
+    public static final short VERSION = 1;
+
+    public static final String EXTENSION = "pndb";
+
+    // Marks a missing destination or missing waypoints
+    public static final int NONE = -1;
+
+    // The offsets of the fields of the header
+    public static final int SONG_NAME = 8;
+    public static final int SONG_CONSTANTS_OFFSET = 12;
+    public static final int TEMPO_COUNT = 16;
+    public static final int COUNTS_COUNT = 20;
+    public static final int MOVE_INDEX_OFFSET = 24;
+    public static final int MOVE_COUNT = 28;
+    public static final int STRING_TABLE_OFFSET = 32;
+    public static final int STRING_COUNT = 36;
+    public static final int HEADER_SIZE = 40;
+
+    // The sizes of the fixed width records
+    public static final int POSITION_SIZE = 28;
+    public static final int RANK_SIZE = 8 + 2 * POSITION_SIZE;
+    public static final int COMMAND_SIZE = 16 + POSITION_SIZE;
+    public static final int WAYPOINT_SIZE = 8;
+}
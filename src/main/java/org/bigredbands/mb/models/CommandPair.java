@@ -1,7 +1,15 @@
 package org.bigredbands.mb.models;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.bigredbands.mb.utils.XMLStreamUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
@@ -50,6 +58,7 @@ public class CommandPair {
     private String name;
     private Integer counts;
     private RankPosition destination;
+    private List<Point> waypoints;
 
     /**
      * Creates a renamed command with the specified command type, number of counts, and name.
@@ -80,6 +89,25 @@ public class CommandPair {
         this.destination = null;
     }
 
+    /**
+     * Creates a copy of a command that shares nothing with it that can be changed.
+     *
+     * @param commandPair - the command to copy
+     */
+    public CommandPair(CommandPair commandPair) {
+        this.command = commandPair.command;
+        this.counts = commandPair.counts;
+        this.name = commandPair.name;
+        this.destination = commandPair.destination == null ? null : new RankPosition(commandPair.destination);
+        if (commandPair.waypoints != null) {
+            ArrayList<Point> waypoints = new ArrayList<Point>(commandPair.waypoints.size());
+            for (Point waypoint : commandPair.waypoints) {
+                waypoints.add(new Point(waypoint.X(), waypoint.Y()));
+            }
+            this.waypoints = Collections.unmodifiableList(waypoints);
+        }
+    }
+
     public int getCommand() {
         return command;
     }
@@ -92,12 +120,37 @@ public class CommandPair {
         this.name = name;
     }
 
+    public String getName() {
+        return name;
+    }
+
     public void setDestination(RankPosition dest) {
         this.destination = dest;
     }
 
     public RankPosition getDestination() {
-        return (this.command == DTP) ? this.destination : null;
+        return (this.command == DTP || this.command == FTA) ? this.destination : null;
+    }
+
+    /**
+     * Sets the points the front of the rank leads it through in a follow the leader
+     *
+     * @param waypoints - the points, in the order they are passed through
+     */
+    public void setWaypoints(List<Point> waypoints) {
+        this.waypoints = waypoints == null ? null : Collections.unmodifiableList(new ArrayList<Point>(waypoints));
+    }
+
+    /**
+     * Returns the points the front of the rank leads it through in a follow the leader
+     *
+     * @return the points in order, empty if there are none, or null if this is not an FTA
+     */
+    public List<Point> getWaypoints() {
+        if (this.command != FTA) {
+            return null;
+        }
+        return (this.waypoints == null) ? Collections.<Point>emptyList() : this.waypoints;
     }
 
     @Override
@@ -114,6 +167,7 @@ public class CommandPair {
             // use getDestination() instead of raw value to avoid returning 
             // a value for non-direct-to-point moves
             .append(this.getDestination(), other.getDestination())
+            .append(this.getWaypoints(), other.getWaypoints())
             .isEquals();
     }
 
@@ -124,6 +178,7 @@ public class CommandPair {
             .append(this.counts)
             .append(this.name)
             .append(this.getDestination())
+            .append(this.getWaypoints())
             .hashCode();
     }
 
@@ -254,19 +309,63 @@ public class CommandPair {
 
         // TODO: add destination tag and info
         // also figure out how to parse
-        if(this.command == DTP && this.destination != null) {
+        if((this.command == DTP || this.command == FTA) && this.destination != null) {
             Element destTag = document.createElement(XMLConstants.DESTINATION);
             commandTag.appendChild(destTag);
 
-            //RankPosition format: lineType;front.x,front.y;mid.x,mid.y;end.x,end.y
-            String str = this.destination.getLineType() + ";" +
-                    this.destination.getFront().X() + "," + this.destination.getFront().Y() + ";" +
-                    this.destination.getMidpoint().X() + "," + this.destination.getMidpoint().Y() + ";" +
-                    this.destination.getEnd().X() + "," + this.destination.getEnd().Y();
-            Text destText = document.createTextNode(str);
+            Text destText = document.createTextNode(getDestinationText());
             destTag.appendChild(destText);
         }
 
+        if(this.command == FTA && this.waypoints != null && !this.waypoints.isEmpty()) {
+            Element waypointsTag = document.createElement(XMLConstants.WAYPOINTS);
+            commandTag.appendChild(waypointsTag);
+
+            waypointsTag.appendChild(document.createTextNode(getWaypointsText()));
+        }
+
         return commandTag;
     }
+
+    /**
+     * Writes the command as XML, in the same form as convertToXML
+     *
+     * @param writer - the writer to write to
+     * @param commandIndex - the index of the command in its rank
+     * @throws XMLStreamException
+     */
+    public void writeXML(XMLStreamWriter writer, Integer commandIndex) throws XMLStreamException {
+        writer.writeStartElement(XMLConstants.COMMAND);
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.INDEX, commandIndex.toString());
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.COMMAND_TYPE, command.toString());
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.COUNTS, counts.toString());
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.COMMAND_NAME, name);
+        if((this.command == DTP || this.command == FTA) && this.destination != null) {
+            XMLStreamUtils.writeTextElement(writer, XMLConstants.DESTINATION, getDestinationText());
+        }
+        if(this.command == FTA && this.waypoints != null && !this.waypoints.isEmpty()) {
+            XMLStreamUtils.writeTextElement(writer, XMLConstants.WAYPOINTS, getWaypointsText());
+        }
+        writer.writeEndElement();
+    }
+
+    //RankPosition format: lineType;front.x,front.y;mid.x,mid.y;end.x,end.y
+    private String getDestinationText() {
+        return this.destination.getLineType() + ";" +
+                this.destination.getFront().X() + "," + this.destination.getFront().Y() + ";" +
+                this.destination.getMidpoint().X() + "," + this.destination.getMidpoint().Y() + ";" +
+                this.destination.getEnd().X() + "," + this.destination.getEnd().Y();
+    }
+
+    //Waypoints format: x,y;x,y;...
+    private String getWaypointsText() {
+        StringBuilder str = new StringBuilder();
+        for (Point waypoint : this.waypoints) {
+            if (str.length() > 0) {
+                str.append(";");
+            }
+            str.append(waypoint.X()).append(",").append(waypoint.Y());
+        }
+        return str.toString();
+    }
 }
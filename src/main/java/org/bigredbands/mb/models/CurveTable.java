@@ -0,0 +1,211 @@
+package org.bigredbands.mb.models;
+
+/**
+ * The arc-length parameterization of a quadratic curve, as drawn for a curved rank.
+ *
+ * The curve is sampled once into a polyline along with the distance along the curve to
+ * each sample, so that its length, the point a distance along it and the distance from
+ * a point to it are lookups rather than integrals.  Tables are immutable, and {@link #of}
+ * keeps the tables it has built for each thread in slots picked by their control points,
+ * so a rank that holds its shape over many counts or frames is only sampled once, and
+ * looking one up allocates nothing and takes no lock.
+ */
+public final class CurveTable {
+
+    // The number of straight pieces the curve is sampled as
+    public static final int SAMPLES = 32;
+
+    // The number of tables kept for reuse by each thread, a power of two
+    private static final int CACHE_SIZE = 1024;
+
+    // The tables built by each thread, each in the slot picked by the hash of its control points
+    private static final ThreadLocal<CurveTable[]> CACHE = new ThreadLocal<CurveTable[]>() {
+        @Override
+        protected CurveTable[] initialValue() {
+            return new CurveTable[CACHE_SIZE];
+        }
+    };
+
+    // The control points the table was built from
+    private final float startX, startY, controlX, controlY, endX, endY;
+
+    private final float[] xs = new float[SAMPLES + 1];
+    private final float[] ys = new float[SAMPLES + 1];
+
+    // The distance along the curve to each sample, starting from 0 at the first
+    private final float[] lengths = new float[SAMPLES + 1];
+
+    /**
+     * Returns the table of a quadratic curve, reusing the table built for the same control
+     * points if there is one
+     *
+     * @param startX - the x coordinate of the start of the curve
+     * @param startY - the y coordinate of the start of the curve
+     * @param controlX - the x coordinate of the control point
+     * @param controlY - the y coordinate of the control point
+     * @param endX - the x coordinate of the end of the curve
+     * @param endY - the y coordinate of the end of the curve
+     * @return the table of the curve
+     */
+    public static CurveTable of(float startX, float startY, float controlX, float controlY, float endX, float endY) {
+        int hash = Float.floatToIntBits(startX);
+        hash = 31 * hash + Float.floatToIntBits(startY);
+        hash = 31 * hash + Float.floatToIntBits(controlX);
+        hash = 31 * hash + Float.floatToIntBits(controlY);
+        hash = 31 * hash + Float.floatToIntBits(endX);
+        hash = 31 * hash + Float.floatToIntBits(endY);
+        hash ^= hash >>> 16;
+
+        // a table with other control points in the slot is replaced, since it is less recent
+        CurveTable[] tables = CACHE.get();
+        int slot = hash & (CACHE_SIZE - 1);
+        CurveTable table = tables[slot];
+        if (table == null || !table.isOf(startX, startY, controlX, controlY, endX, endY)) {
+            table = new CurveTable(startX, startY, controlX, controlY, endX, endY);
+            tables[slot] = table;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the table of a curved rank, which passes through its midpoint
+     *
+     * @param frontX - the x coordinate of the front of the rank
+     * @param frontY - the y coordinate of the front of the rank
+     * @param midX - the x coordinate of the midpoint of the rank
+     * @param midY - the y coordinate of the midpoint of the rank
+     * @param endX - the x coordinate of the end of the rank
+     * @param endY - the y coordinate of the end of the rank
+     * @return the table of the curve from the front to the end
+     */
+    public static CurveTable ofRank(float frontX, float frontY, float midX, float midY, float endX, float endY) {
+        return of(frontX, frontY, 2 * midX - (frontX + endX) / 2, 2 * midY - (frontY + endY) / 2, endX, endY);
+    }
+
+    private CurveTable(float startX, float startY, float controlX, float controlY, float endX, float endY) {
+        this.startX = startX;
+        this.startY = startY;
+        this.controlX = controlX;
+        this.controlY = controlY;
+        this.endX = endX;
+        this.endY = endY;
+        for (int i = 0; i <= SAMPLES; i++) {
+            float t = (float) i / SAMPLES;
+            float s = 1 - t;
+            xs[i] = s * s * startX + 2 * s * t * controlX + t * t * endX;
+            ys[i] = s * s * startY + 2 * s * t * controlY + t * t * endY;
+            if (i > 0) {
+                float dx = xs[i] - xs[i - 1];
+                float dy = ys[i] - ys[i - 1];
+                lengths[i] = lengths[i - 1] + (float) Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+    }
+
+    // Returns whether the table was built from the given control points, compared as floats
+    // are by equals so that the same points always find the same table
+    private boolean isOf(float startX, float startY, float controlX, float controlY, float endX, float endY) {
+        return Float.floatToIntBits(this.startX) == Float.floatToIntBits(startX)
+                && Float.floatToIntBits(this.startY) == Float.floatToIntBits(startY)
+                && Float.floatToIntBits(this.controlX) == Float.floatToIntBits(controlX)
+                && Float.floatToIntBits(this.controlY) == Float.floatToIntBits(controlY)
+                && Float.floatToIntBits(this.endX) == Float.floatToIntBits(endX)
+                && Float.floatToIntBits(this.endY) == Float.floatToIntBits(endY);
+    }
+
+    /**
+     * Returns the length of the curve
+     *
+     * @return the distance from the start to the end along the curve
+     */
+    public float getLength() {
+        return lengths[SAMPLES];
+    }
+
+    /**
+     * Returns the number of samples of the curve
+     *
+     * @return the number of points
+     */
+    public int getPointCount() {
+        return SAMPLES + 1;
+    }
+
+    /**
+     * Returns the x coordinate of a sample of the curve
+     *
+     * @param index - the index of the sample, from the start
+     * @return the x coordinate
+     */
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Returns the y coordinate of a sample of the curve
+     *
+     * @param index - the index of the sample, from the start
+     * @return the y coordinate
+     */
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Returns the distance along the curve to a sample
+     *
+     * @param index - the index of the sample, from the start
+     * @return the distance from the start of the curve
+     */
+    public float getDistance(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Writes the point a distance along the curve, clamped to its ends
+     *
+     * @param distance - the distance from the start of the curve
+     * @param out - the array to write the x and then y coordinate to
+     * @param offset - the index to write the x coordinate at
+     */
+    public void pointAt(float distance, float[] out, int offset) {
+        int low = 0;
+        int high = SAMPLES - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lengths[mid] <= distance) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        float pieceLength = lengths[low + 1] - lengths[low];
+        float t = pieceLength > 0 ? (distance - lengths[low]) / pieceLength : 0;
+        t = Math.max(0, Math.min(1, t));
+        out[offset] = xs[low] + (xs[low + 1] - xs[low]) * t;
+        out[offset + 1] = ys[low] + (ys[low + 1] - ys[low]) * t;
+    }
+
+    /**
+     * Returns the shortest distance from a point to the curve
+     *
+     * @param x - the x coordinate of the point
+     * @param y - the y coordinate of the point
+     * @return the distance to the nearest point of the curve
+     */
+    public float distanceTo(float x, float y) {
+        float nearest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < SAMPLES; i++) {
+            float dx = xs[i + 1] - xs[i];
+            float dy = ys[i + 1] - ys[i];
+            float lengthSquared = dx * dx + dy * dy;
+            float t = lengthSquared > 0 ? ((x - xs[i]) * dx + (y - ys[i]) * dy) / lengthSquared : 0;
+            t = Math.max(0, Math.min(1, t));
+            float offX = xs[i] + dx * t - x;
+            float offY = ys[i] + dy * t - y;
+            nearest = Math.min(nearest, offX * offX + offY * offY);
+        }
+        return (float) Math.sqrt(nearest);
+    }
+}
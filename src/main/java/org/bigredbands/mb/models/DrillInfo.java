@@ -1,18 +1,30 @@
 package org.bigredbands.mb.models;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.bigredbands.mb.utils.ProgressListener;
+import org.bigredbands.mb.utils.XMLStreamUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
 
 public class DrillInfo {
     // A List of moves for the drill
-    private ArrayList<Move> moves;
+    private List<Move> moves;
 
      // A HashMap that stores a map of Measure number to tempo change
     private HashMap<Integer, Integer> tempoHashMap;
@@ -23,6 +35,69 @@ public class DrillInfo {
     //A String that contains the name of the song
     private String songName;
 
+    // A HashMap that stores, for each rank with edits that have not been carried forward yet,
+    // the first move whose start and end positions are out of date
+    private HashMap<String, Integer> dirtyRanks = new HashMap<String, Integer>();
+
+    // The index of where each count falls in the moves and measures, built when first needed
+    private ShowTimeline timeline;
+
+    /**
+     * Carries the positions of one rank forward through a range of moves.  The end positions
+     * are only computed here, without changing the moves, so that the ranks can be computed
+     * in parallel and then committed one at a time.
+     */
+    private static class RankPropagation extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Move> moves;
+        private final String rankName;
+        private final int firstMove;
+        private final int lastMove;
+
+        // the start and end position to set for each move from the first, until the first null
+        private final RankPosition[] newStarts;
+        private final RankPosition[] newEnds;
+
+        // true if the positions stopped changing before the last move
+        private boolean settled = false;
+
+        private RankPropagation(List<Move> moves, String rankName, int firstMove, int lastMove) {
+            this.moves = moves;
+            this.rankName = rankName;
+            this.firstMove = firstMove;
+            this.lastMove = lastMove;
+            newStarts = new RankPosition[lastMove - firstMove + 1];
+            newEnds = new RankPosition[lastMove - firstMove + 1];
+        }
+
+        @Override
+        protected void compute() {
+            RankPosition start = firstMove == 0
+                    ? moves.get(0).getStartPositions().get(rankName)
+                    : moves.get(firstMove - 1).getEndPositions().get(rankName);
+            for (int i = firstMove; i <= lastMove; i++) {
+                RankPosition oldEnd = moves.get(i).getEndPositions().get(rankName);
+                RankPosition newEnd = moves.get(i).computeEndPosition(rankName, start);
+                newStarts[i - firstMove] = start;
+                if (newEnd.equals(oldEnd)) {
+                    // keep the old end, which the next move already starts from, and stop here
+                    newEnds[i - firstMove] = oldEnd;
+                    settled = true;
+                    return;
+                }
+                newEnds[i - firstMove] = newEnd;
+                start = newEnd;
+            }
+        }
+
+        private void commit() {
+            for (int i = 0; i < newStarts.length && newStarts[i] != null; i++) {
+                moves.get(firstMove + i).setPositions(rankName, newStarts[i], newEnds[i]);
+            }
+        }
+    }
+
     public DrillInfo() {
         this.moves = new ArrayList<Move>();
         this.tempoHashMap = new HashMap<Integer, Integer>();
@@ -35,18 +110,105 @@ public class DrillInfo {
      * @param tempoHashMap - A map of measure number to tempo change
      * @param countsHashMap - A map of measure number to counts per measure
      */
-    public DrillInfo(ArrayList<Move> moves, HashMap<Integer, Integer> tempoHashMap, HashMap<Integer, Integer> countsHashMap){
+    public DrillInfo(List<Move> moves, HashMap<Integer, Integer> tempoHashMap, HashMap<Integer, Integer> countsHashMap){
         this.moves = moves;
         this.tempoHashMap = tempoHashMap;
         this.countsHashMap = countsHashMap;
     }
 
     public void addMove(int counts, int index) {
+        updatePositions();
         moves.add(index, new Move(counts, moves.get(moves.size()-1).getEndPositions()));
+        if (timeline != null) {
+            timeline.updateMoves(moves, index);
+        }
     }
 
+    /**
+     * Removes a move.  Every rank of the move after it then starts from where the move before
+     * it ends, and is marked to be carried forward from there.
+     *
+     * @param moveNum - the index of the move to remove
+     */
     public void deleteMove(int moveNum) {
+        for (Map.Entry<String, Integer> entry : dirtyRanks.entrySet()) {
+            if (entry.getValue() > moveNum) {
+                entry.setValue(entry.getValue() - 1);
+            }
+        }
         moves.remove(moveNum);
+        if (timeline != null) {
+            timeline.updateMoves(moves, moveNum);
+        }
+        if (moveNum > 0 && moveNum < moves.size()) {
+            for (String rankName : moves.get(moveNum).getStartPositions().keySet()) {
+                markDirty(rankName, moveNum);
+            }
+        }
+    }
+
+    /**
+     * Marks the positions of a rank as out of date from the given move on, because the end
+     * position of the move before it has changed.  The positions are carried forward the
+     * next time they are read through updatePositions.
+     *
+     * @param rankName - the rank that changed
+     * @param moveNum - the first move whose positions are out of date
+     */
+    public void markDirty(String rankName, int moveNum) {
+        Integer firstDirty = dirtyRanks.get(rankName);
+        if (firstDirty == null || moveNum < firstDirty) {
+            dirtyRanks.put(rankName, moveNum);
+        }
+    }
+
+    /**
+     * Brings the positions of every rank up to date in every move.
+     */
+    public void updatePositions() {
+        updatePositions(moves.size() - 1);
+    }
+
+    /**
+     * Brings the positions of every rank up to date up to and including the given move.  Each
+     * out of date rank is carried forward from its first out of date move until its end
+     * position stops changing, with the ranks computed in parallel.  Later moves are left
+     * marked out of date until they are needed.
+     *
+     * @param moveNum - the last move that needs to be up to date
+     */
+    public void updatePositions(int moveNum) {
+        if (dirtyRanks.isEmpty()) {
+            return;
+        }
+        moveNum = Math.min(moveNum, moves.size() - 1);
+
+        ArrayList<RankPropagation> propagations = new ArrayList<RankPropagation>();
+        for (Map.Entry<String, Integer> entry : dirtyRanks.entrySet()) {
+            if (entry.getValue() <= moveNum) {
+                propagations.add(new RankPropagation(moves, entry.getKey(), entry.getValue(), moveNum));
+            }
+        }
+        if (propagations.isEmpty()) {
+            return;
+        }
+
+        if (propagations.size() == 1) {
+            propagations.get(0).compute();
+        }
+        else {
+            ForkJoinTask.invokeAll(propagations);
+        }
+
+        for (RankPropagation propagation : propagations) {
+            propagation.commit();
+            if (propagation.settled || propagation.lastMove == moves.size() - 1) {
+                dirtyRanks.remove(propagation.rankName);
+            }
+            else {
+                dirtyRanks.put(propagation.rankName, propagation.lastMove + 1);
+            }
+        }
     }
 
     /**
@@ -69,6 +231,7 @@ public class DrillInfo {
     }
 
     public void deleteRank(String rankName) {
+        dirtyRanks.remove(rankName);
         for (Move move : moves) {
             move.deleteRank(rankName);
         }
@@ -79,12 +242,52 @@ public class DrillInfo {
         return moves.get(0).getStartPositions().containsKey(rankName);
     }
 
-    public ArrayList<Move> getMoves() {
+    /**
+     * Returns a copy of the drill as it is now, which can be read on another thread, to be saved,
+     * while this drill goes on being edited.  Moves that have not changed since the last copy
+     * share the copy made then, so taking a copy after a few edits only copies what changed.
+     * The first move is always copied, as the field edits its positions in place.
+     *
+     * @return a copy of the drill that must not be changed
+     */
+    public DrillInfo snapshot() {
+        List<Move> movesCopy;
+        if (moves instanceof LazyMoveList) {
+            movesCopy = ((LazyMoveList) moves).snapshot();
+        }
+        else {
+            movesCopy = new ArrayList<Move>(moves.size());
+            for (int i = 0; i < moves.size(); i++) {
+                movesCopy.add(i == 0 ? new Move(moves.get(i)) : moves.get(i).snapshot());
+            }
+        }
+        DrillInfo copy = new DrillInfo(movesCopy, new HashMap<Integer, Integer>(tempoHashMap),
+                new HashMap<Integer, Integer>(countsHashMap));
+        copy.setSongName(songName);
+        return copy;
+    }
+
+    public List<Move> getMoves() {
         return moves;
     }
 
-    public void setMoves(ArrayList<Move> moves) {
+    public void setMoves(List<Move> moves) {
         this.moves = moves;
+        dirtyRanks.clear();
+        timeline = null;
+    }
+
+    /**
+     * Returns the timeline of the show, which finds the move and measure of any count
+     *
+     * @return the timeline of the show
+     */
+    public ShowTimeline getTimeline() {
+        // moves added to the list directly are not seen by addMove, so check it still matches
+        if (timeline == null || timeline.getMoveCount() != moves.size()) {
+            timeline = new ShowTimeline(moves, tempoHashMap, countsHashMap);
+        }
+        return timeline;
     }
 
     /**
@@ -117,6 +320,9 @@ public class DrillInfo {
      */
     public void setTempoHashMap(HashMap<Integer, Integer> tempoHashMap){
         this.tempoHashMap = tempoHashMap;
+        if (timeline != null) {
+            timeline.updateSong(tempoHashMap, countsHashMap);
+        }
     }
 
     /**
@@ -127,6 +333,9 @@ public class DrillInfo {
      */
     public void setCountsHashMap(HashMap<Integer, Integer> countsHashMap){
         this.countsHashMap = countsHashMap;
+        if (timeline != null) {
+            timeline.updateSong(tempoHashMap, countsHashMap);
+        }
     }
 
     /**
@@ -270,4 +479,97 @@ public class DrillInfo {
 
         return drillTag;
     }
+
+    /**
+     * Writes the drill as XML, in the same form as convertToXML, one move at a time
+     *
+     * @param writer - the writer to write to
+     * @throws XMLStreamException
+     */
+    public void writeXML(XMLStreamWriter writer) throws XMLStreamException {
+        writeXML(writer, null, null);
+    }
+
+    /**
+     * Writes the drill as XML, in the same form as convertToXML, copying the moves that are
+     * unchanged since they were read from a file straight from the file to the stream the
+     * writer writes to.  The other moves are kept as they are written, and copied from there
+     * the next time the drill is written if they have not changed, so that saving again after
+     * an edit only writes the moves that were edited.  The first move is always written, as the
+     * field edits its positions in place.
+     *
+     * @param writer - the writer to write to
+     * @param out - the stream the writer writes to, or null to write every move
+     * @param progressListener - told after each move is written, or null
+     * @throws XMLStreamException
+     */
+    public void writeXML(XMLStreamWriter writer, OutputStream out, ProgressListener progressListener) throws XMLStreamException {
+        if (songName.length() == 0 && tempoHashMap.isEmpty() && countsHashMap.isEmpty() && moves.isEmpty()) {
+            writer.writeEmptyElement(XMLConstants.DRILL);
+            return;
+        }
+        writer.writeStartElement(XMLConstants.DRILL);
+        if (songName.length() != 0) {
+            XMLStreamUtils.writeTextElement(writer, XMLConstants.SONG_NAME, songName);
+        }
+        writeSongConstants(writer, tempoHashMap, XMLConstants.TEMPO_CHANGE, XMLConstants.TEMPO);
+        writeSongConstants(writer, countsHashMap, XMLConstants.COUNT_PER_MEASURE_CHANGE, XMLConstants.COUNT_PER_MEASURE);
+        LazyMoveList lazyMoves = (out != null && moves instanceof LazyMoveList) ? (LazyMoveList) moves : null;
+        ByteArrayOutputStream contentsBytes = null;
+        XMLStreamWriter contentsWriter = null;
+        for (int i = 0; i < moves.size(); i++) {
+            try {
+                if (lazyMoves != null && lazyMoves.isUnchanged(i)) {
+                    // finish the tag before the move and hand everything written so far to the stream
+                    writer.writeCharacters("");
+                    writer.flush();
+                    lazyMoves.copyMove(i, out);
+                }
+                else if (out != null && i > 0) {
+                    Move move = moves.get(i);
+                    byte[] contents = move.getXMLContents();
+                    if (contents == null) {
+                        if (contentsWriter == null) {
+                            contentsBytes = new ByteArrayOutputStream();
+                            contentsWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(contentsBytes, "UTF-8");
+                        }
+                        contentsBytes.reset();
+                        move.writeXMLContents(contentsWriter);
+                        // finish the last tag, which is left open in case the element is empty
+                        contentsWriter.writeCharacters("");
+                        contentsWriter.flush();
+                        contents = contentsBytes.toByteArray();
+                        move.setXMLContents(contents);
+                    }
+
+                    // the number is written around the contents, so moves keep them as others are added or removed
+                    writer.writeStartElement(XMLConstants.MOVE);
+                    XMLStreamUtils.writeTextElement(writer, XMLConstants.MOVE_NUMBER, Integer.toString(i));
+                    writer.writeCharacters("");
+                    writer.flush();
+                    out.write(contents);
+                    writer.writeEndElement();
+                }
+                else {
+                    moves.get(i).writeXML(writer, i);
+                }
+            } catch (IOException e) {
+                throw new XMLStreamException(e.getMessage(), e);
+            }
+            if (progressListener != null) {
+                progressListener.progress(i + 1, moves.size());
+            }
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeSongConstants(XMLStreamWriter writer, HashMap<Integer, Integer> hashMap,
+            String changeName, String valueName) throws XMLStreamException {
+        for (Map.Entry<Integer, Integer> entry : hashMap.entrySet()) {
+            writer.writeStartElement(changeName);
+            XMLStreamUtils.writeTextElement(writer, XMLConstants.MEASURE_NUMBER, entry.getKey().toString());
+            XMLStreamUtils.writeTextElement(writer, valueName, entry.getValue().toString());
+            writer.writeEndElement();
+        }
+    }
 }
@@ -0,0 +1,162 @@
+package org.bigredbands.mb.models;
+
+import java.util.List;
+
+/**
+ * The trail followed by a rank during a follow the leader move.
+ *
+ * The trail runs from the end of the rank to its front, through the waypoints, and then
+ * from the end of the destination to its front.  The front leads the rank along the trail
+ * and every marcher behind it walks in its footsteps, so the marcher a fraction f of the
+ * way from the end to the front starts f of the rank's length along the trail, and
+ * finishes the same fraction into the destination.
+ *
+ * The trail is stored once as an ArcLengthTable when the path is created, so that placing
+ * a marcher at any point of the move is a binary search and a lerp along the table.
+ */
+public final class FollowPath {
+
+    // The cross product below which the front, middle and end are taken as a line
+    private static final float COLLINEAR = 1e-4f;
+
+    // The trail from the end of the rank to the front of the destination
+    private final ArcLengthTable trail;
+
+    // The length of the rank at the start and at the destination, along its shape
+    private final float startLength;
+    private final float endLength;
+
+    // The positions at the start and end of the move, stored as in a RankProgram
+    private final float[] start = new float[RankProgram.STRIDE];
+    private final float[] destination = new float[RankProgram.STRIDE];
+
+    /**
+     * Creates the trail a rank follows to its destination
+     *
+     * @param start - the position of the rank at the start of the move
+     * @param waypoints - the points the front of the rank leads it through, in order
+     * @param destination - the position of the rank at the end of the move
+     */
+    public FollowPath(RankPosition start, List<Point> waypoints, RankPosition destination) {
+        RankProgram.store(start, this.start, 0);
+        RankProgram.store(destination, this.destination, 0);
+
+        ArcLengthTable shape = new ArcLengthTable();
+        int waypointCount = waypoints == null ? 0 : waypoints.size();
+        trail = new ArcLengthTable(2 * (ArcLengthTable.CURVE_SAMPLES + 1) + waypointCount);
+
+        shape.setRank(this.start, 0);
+        startLength = shape.getLength();
+        addReversed(shape);
+        for (int i = 0; i < waypointCount; i++) {
+            trail.addPoint(waypoints.get(i).X(), waypoints.get(i).Y());
+        }
+        shape.setRank(this.destination, 0);
+        endLength = shape.getLength();
+        addReversed(shape);
+    }
+
+    // Adds the points of a rank's shape to the trail from its end to its front
+    private void addReversed(ArcLengthTable shape) {
+        for (int i = shape.getPointCount() - 1; i >= 0; i--) {
+            trail.addPoint(shape.getX(i), shape.getY(i));
+        }
+    }
+
+    /**
+     * Returns the length of the whole trail
+     *
+     * @return the distance from the end of the rank to the front of the destination
+     */
+    public float getLength() {
+        return trail.getLength();
+    }
+
+    /**
+     * Returns the number of points stored for the trail, for drawing it
+     *
+     * @return the number of points
+     */
+    public int getPointCount() {
+        return trail.getPointCount();
+    }
+
+    /**
+     * Returns the x coordinate of a point of the trail
+     *
+     * @param index - the index of the point, from the end of the rank
+     * @return the x coordinate
+     */
+    public float getX(int index) {
+        return trail.getX(index);
+    }
+
+    /**
+     * Returns the y coordinate of a point of the trail
+     *
+     * @param index - the index of the point, from the end of the rank
+     * @return the y coordinate
+     */
+    public float getY(int index) {
+        return trail.getY(index);
+    }
+
+    /**
+     * Returns the distance along the trail of a marcher part way through the move
+     *
+     * @param fraction - how far the marcher is from the end of the rank to its front
+     * @param t - how far through the move the rank is, from 0 to 1
+     * @return the distance from the start of the trail
+     */
+    public float getDistance(float fraction, float t) {
+        float from = fraction * startLength;
+        float to = getLength() - (1 - fraction) * endLength;
+        return from + (to - from) * t;
+    }
+
+    /**
+     * Writes the position of the rank part way through the move.  In between the start and
+     * the destination the rank is bent along the trail, and is given as the curve through
+     * its front, middle marcher and end.
+     *
+     * @param t - how far through the move the rank is, from 0 to 1
+     * @param out - the array to write the position to
+     * @param offset - the index in out of the first of the STRIDE values written
+     */
+    public void evaluate(float t, float[] out, int offset) {
+        if (t <= 0) {
+            System.arraycopy(start, 0, out, offset, RankProgram.STRIDE);
+            return;
+        }
+        if (t >= 1) {
+            System.arraycopy(destination, 0, out, offset, RankProgram.STRIDE);
+            return;
+        }
+        trail.pointAt(getDistance(1, t), out, offset + RankProgram.FRONT_X);
+        trail.pointAt(getDistance(0.5f, t), out, offset + RankProgram.MID_X);
+        trail.pointAt(getDistance(0, t), out, offset + RankProgram.END_X);
+
+        float vX = out[offset + RankProgram.FRONT_X] - out[offset + RankProgram.END_X];
+        float vY = out[offset + RankProgram.FRONT_Y] - out[offset + RankProgram.END_Y];
+        float vmX = out[offset + RankProgram.MID_X] - out[offset + RankProgram.END_X];
+        float vmY = out[offset + RankProgram.MID_Y] - out[offset + RankProgram.END_Y];
+        out[offset + RankProgram.LINE_TYPE] = Math.abs(vX * vmY - vmX * vY) < COLLINEAR ? RankPosition.LINE : RankPosition.CURVE;
+    }
+
+    /**
+     * Writes the positions of marchers spread evenly along the rank part way through the
+     * move, the first at the front and the last at the end, as by ArcLengthTable.spread.
+     *
+     * @param t - how far through the move the rank is, from 0 to 1
+     * @param marchers - the number of marchers in the rank
+     * @param out - the array to write the x and y coordinates of each marcher to, in turn
+     * @param offset - the index to write the first x coordinate at
+     */
+    public void place(float t, int marchers, float[] out, int offset) {
+        t = Math.max(0, Math.min(1, t));
+        for (int k = 0; k < marchers; k++) {
+            float fraction = marchers > 1 ? 1 - (float) k / (marchers - 1) : 1;
+            trail.pointAt(getDistance(fraction, t), out, offset + 2 * k);
+        }
+    }
+}
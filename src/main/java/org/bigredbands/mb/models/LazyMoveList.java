@@ -0,0 +1,330 @@
+package org.bigredbands.mb.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.bigredbands.mb.exceptions.MoveLoadException;
+
+/**
+ * A list of moves that are read from their save file the first time they are used.
+ *
+ * Only a bounded number of moves read this way are kept; the least recently used one past
+ * that is let go once nothing else holds it, and is read again when next used.  A move that
+ * is changed, or that is added to the list, is kept from then on.  The first move is always
+ * kept, as the field edits its positions in place.
+ *
+ * All methods are synchronized, so moves can be read from several threads at once, as the
+ * positions of the ranks are carried forward in parallel.
+ */
+public class LazyMoveList extends AbstractList<Move> implements RandomAccess, Closeable {
+
+    /**
+     * Where the moves of the list are read from
+     */
+    public interface Source extends Closeable {
+
+        /**
+         * Reads a move from the source.
+         *
+         * @param sourceIndex - the index of the move in the source
+         * @return a new move read from the source
+         * @throws IOException if the move cannot be read
+         */
+        public Move read(int sourceIndex) throws IOException;
+
+        /**
+         * Copies the saved form of a move to a stream, exactly as it is in the source.
+         *
+         * @param sourceIndex - the index of the move in the source
+         * @param out - the stream to copy to
+         * @throws IOException
+         */
+        public void copy(int sourceIndex, OutputStream out) throws IOException;
+
+        /**
+         * Returns the number of counts in a move without reading it, if the source knows it.
+         *
+         * @param sourceIndex - the index of the move in the source
+         * @return the number of counts, or -1 if the move must be read to find it
+         */
+        public int getCounts(int sourceIndex);
+    }
+
+    /**
+     * A place in the list, which follows its move as moves are added and removed before it
+     */
+    private final class Slot implements Runnable {
+        // The index of the move in the source and the number it was saved with, or -1 for
+        // a move that was not read from the source
+        private final int sourceIndex;
+        private final int moveNumber;
+
+        // The move while it is kept, and the move that was let go until it is collected
+        private Move move;
+        private WeakReference<Move> released;
+
+        // Whether the move has changed since it was read, or was not read at all
+        private boolean modified;
+
+        private Slot(int sourceIndex, int moveNumber) {
+            this.sourceIndex = sourceIndex;
+            this.moveNumber = moveNumber;
+        }
+
+        private Slot(Move move) {
+            this.sourceIndex = -1;
+            this.moveNumber = -1;
+            this.move = move;
+            this.modified = true;
+        }
+
+        @Override
+        public void run() {
+            markModified(this);
+        }
+    }
+
+    private final Source source;
+    private final int capacity;
+    private final ArrayList<Slot> slots = new ArrayList<Slot>();
+
+    // The unchanged moves that are kept, least recently used first
+    private final LinkedHashMap<Slot, Move> loaded;
+
+    /**
+     * Creates an empty list of moves read from the given source.
+     *
+     * @param source - where the moves are read from
+     * @param capacity - the number of unchanged moves to keep at most
+     */
+    public LazyMoveList(Source source, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("At least one move must be kept, not " + capacity + ".");
+        }
+        this.source = source;
+        this.capacity = capacity;
+        this.loaded = new LinkedHashMap<Slot, Move>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Slot, Move> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                release(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Adds a move to the end of the list that is read from the source when first used.
+     *
+     * @param sourceIndex - the index of the move in the source
+     * @param moveNumber - the number the move was saved with
+     */
+    public synchronized void addFromSource(int sourceIndex, int moveNumber) {
+        slots.add(new Slot(sourceIndex, moveNumber));
+        modCount++;
+        if (slots.size() == 1) {
+            keep(slots.get(0));
+        }
+    }
+
+    /**
+     * Returns the number of moves that have been read and are still held by the list.
+     *
+     * @return the number of moves in memory
+     */
+    public synchronized int getLoadedCount() {
+        int count = 0;
+        for (Slot slot : slots) {
+            if (slot.move != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether a move is still exactly as it was saved in the source, at the index it
+     * was saved at, so that it can be copied rather than written again.  The first move is
+     * always written again.
+     *
+     * @param index - the index of the move
+     * @return true if the move can be copied from the source
+     */
+    public synchronized boolean isUnchanged(int index) {
+        Slot slot = slots.get(index);
+        return index > 0 && !slot.modified && slot.moveNumber == index;
+    }
+
+    /**
+     * Copies the saved form of an unchanged move from the source.
+     *
+     * @param index - the index of the move
+     * @param out - the stream to copy to
+     * @throws IOException
+     */
+    public synchronized void copyMove(int index, OutputStream out) throws IOException {
+        if (!isUnchanged(index)) {
+            throw new IllegalStateException("Move " + index + " has changed since it was read.");
+        }
+        source.copy(slots.get(index).sourceIndex, out);
+    }
+
+    /**
+     * Returns a copy of the list as it is now, which can be read on another thread while this
+     * list goes on being edited.  Moves that are unchanged since they were read are left in the
+     * source, to be read or copied from there, and the others are copied with Move.snapshot,
+     * except for the first move which is always copied in full as it is edited in place.  The
+     * copy shares the source, and must not be closed.
+     *
+     * @return a copy of the list
+     */
+    public synchronized LazyMoveList snapshot() {
+        LazyMoveList copy = new LazyMoveList(source, capacity);
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            if (!slot.modified) {
+                copy.slots.add(copy.new Slot(slot.sourceIndex, slot.moveNumber));
+            }
+            else {
+                copy.slots.add(copy.new Slot(i == 0 ? new Move(slot.move) : slot.move.snapshot()));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the number of counts in a move, without reading it if it is unchanged and the
+     * source knows its counts, so that the timing of the whole show can be found without
+     * reading every move.
+     *
+     * @param index - the index of the move
+     * @return the number of counts in the move
+     */
+    public synchronized int getCounts(int index) {
+        Slot slot = slots.get(index);
+        if (slot.move == null && !slot.modified) {
+            int counts = source.getCounts(slot.sourceIndex);
+            if (counts >= 0) {
+                return counts;
+            }
+        }
+        return get(index).getCounts();
+    }
+
+    @Override
+    public synchronized Move get(int index) {
+        Slot slot = slots.get(index);
+        if (slot.move == null) {
+            load(slot, index);
+        }
+        else if (!slot.modified) {
+            // mark it as the most recently used
+            loaded.get(slot);
+        }
+        return slot.move;
+    }
+
+    @Override
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    @Override
+    public synchronized Move set(int index, Move move) {
+        Move previous = get(index);
+        detach(slots.set(index, new Slot(move)));
+        return previous;
+    }
+
+    @Override
+    public synchronized void add(int index, Move move) {
+        slots.add(index, new Slot(move));
+        modCount++;
+    }
+
+    @Override
+    public synchronized Move remove(int index) {
+        Move previous = get(index);
+        detach(slots.remove(index));
+        modCount++;
+        if (index == 0 && !slots.isEmpty()) {
+            keep(slots.get(0));
+        }
+        return previous;
+    }
+
+    /**
+     * Closes the source.  Moves that have not been read can no longer be used.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        source.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        // printing every move would read them all
+        return "[" + slots.size() + " moves, " + getLoadedCount() + " read]";
+    }
+
+    private void load(Slot slot, int index) {
+        Move move = slot.released == null ? null : slot.released.get();
+        if (move == null) {
+            try {
+                move = source.read(slot.sourceIndex);
+            } catch (IOException e) {
+                throw new MoveLoadException("Move " + index + " could not be read: " + e.getMessage(), e);
+            }
+            move.setChangeListener(slot);
+        }
+        slot.released = null;
+        slot.move = move;
+        if (!slot.modified) {
+            loaded.put(slot, move);
+        }
+    }
+
+    private void release(Slot slot) {
+        slot.released = new WeakReference<Move>(slot.move);
+        slot.move = null;
+    }
+
+    private synchronized void markModified(Slot slot) {
+        if (slot.modified) {
+            return;
+        }
+        slot.modified = true;
+        loaded.remove(slot);
+        if (slot.move == null) {
+            // the move was let go but is still held by whatever changed it
+            slot.move = slot.released.get();
+            slot.released = null;
+        }
+    }
+
+    private void keep(Slot slot) {
+        if (slot.move == null) {
+            load(slot, slots.indexOf(slot));
+        }
+        markModified(slot);
+    }
+
+    private void detach(Slot slot) {
+        loaded.remove(slot);
+        Move move = slot.move != null ? slot.move : (slot.released == null ? null : slot.released.get());
+        if (move != null && slot.sourceIndex >= 0) {
+            move.setChangeListener(null);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.bigredbands.mb.models;
+
+import java.util.Map;
+
+/**
+ * Places the individual marchers of every rank in a move.
+ *
+ * Each rank is given a number of marchers, spread evenly along its shape from the front
+ * to the end: straight for a line, through the midpoint for a corner, and along the
+ * quadratic through the midpoint for a curve, by way of an ArcLengthTable.  A rank part
+ * way through a follow the leader is instead placed along the trail it follows.  Marchers
+ * are numbered in order of rank id, as in the MoveState, and then from front to end, and
+ * marcher k is written to an output array as its x coordinate at 2 * k and y at 2 * k + 1.
+ *
+ * The engine keeps its working arrays between calls, so that evaluating a count allocates
+ * nothing beyond the table of a curve not seen before, and so one engine must only be
+ * used by one thread at a time.
+ */
+public final class MarcherEngine {
+
+    // The state of the move the marchers are in
+    private final MoveState state;
+
+    // The number of the first marcher of each rank, with one extra entry holding the total
+    private final int[] marcherOffsets;
+
+    // The positions of the ranks at the count being evaluated
+    private final float[] rankValues;
+
+    // The shape of the rank being placed
+    private final ArcLengthTable table = new ArcLengthTable();
+
+    /**
+     * Creates an engine for the ranks of a move
+     *
+     * @param state - the state of the move
+     * @param marcherCounts - the number of marchers in each rank, by rank name
+     * @param defaultMarchers - the number of marchers in a rank missing from the counts
+     */
+    public MarcherEngine(MoveState state, Map<String, Integer> marcherCounts, int defaultMarchers) {
+        this.state = state;
+        this.rankValues = new float[state.getValueCount()];
+        this.marcherOffsets = new int[state.getRankCount() + 1];
+        for (int rankId = 0; rankId < state.getRankCount(); rankId++) {
+            Integer marchers = marcherCounts.get(state.getRankName(rankId));
+            marcherOffsets[rankId + 1] = marcherOffsets[rankId] + Math.max(0, marchers == null ? defaultMarchers : marchers);
+        }
+    }
+
+    /**
+     * Returns the number of marchers in every rank of the move
+     *
+     * @return the total number of marchers
+     */
+    public int getMarcherCount() {
+        return marcherOffsets[marcherOffsets.length - 1];
+    }
+
+    /**
+     * Returns the length of the array needed to evaluate every marcher
+     *
+     * @return the number of floats written by evaluate
+     */
+    public int getValueCount() {
+        return 2 * getMarcherCount();
+    }
+
+    /**
+     * Returns the number of the first marcher of a rank
+     *
+     * @param rankId - the id of the rank in the move state
+     * @return the number of the marcher at the front of the rank
+     */
+    public int getMarcherOffset(int rankId) {
+        return marcherOffsets[rankId];
+    }
+
+    /**
+     * Returns the number of marchers in a rank
+     *
+     * @param rankId - the id of the rank in the move state
+     * @return the number of marchers
+     */
+    public int getRankMarchers(int rankId) {
+        return marcherOffsets[rankId + 1] - marcherOffsets[rankId];
+    }
+
+    /**
+     * Writes the position of every marcher at a count of the move
+     *
+     * @param count - the number of counts into the move, possibly fractional
+     * @param out - the array to write the positions to, at least getValueCount() long
+     */
+    public void evaluate(float count, float[] out) {
+        state.evaluate(count, rankValues);
+        for (int rankId = 0; rankId < state.getRankCount(); rankId++) {
+            int offset = 2 * marcherOffsets[rankId];
+            if (!state.placeFollowing(rankId, count, getRankMarchers(rankId), out, offset)) {
+                table.setRank(rankValues, rankId * RankProgram.STRIDE);
+                table.spread(getRankMarchers(rankId), out, offset);
+            }
+        }
+    }
+
+    /**
+     * Writes the position of every marcher in ranks that have already been evaluated
+     *
+     * @param values - the positions of the ranks, laid out as by MoveState.evaluate
+     * @param out - the array to write the positions to, at least getValueCount() long
+     */
+    public void place(float[] values, float[] out) {
+        for (int rankId = 0; rankId < state.getRankCount(); rankId++) {
+            table.setRank(values, rankId * RankProgram.STRIDE);
+            table.spread(getRankMarchers(rankId), out, 2 * marcherOffsets[rankId]);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.bigredbands.mb.models;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -7,7 +8,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.bigredbands.mb.models.MarchingConstants.PART;
+import org.bigredbands.mb.utils.XMLStreamUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
@@ -24,10 +29,55 @@ public class Move {
     private String comments;
     private Integer moveCounts;
 
+    //the position of each rank at every command boundary, built lazily from the start position and commands
+    //so that intermediate counts can be found without replaying the whole command list.  An entry is dropped
+    //whenever the start position or commands of that rank change.
+    private HashMap<String, Checkpoints> checkpoints;
+
+    //the commands of each rank compiled for fast evaluation, built lazily and dropped along with the checkpoints
+    private HashMap<String, RankProgram> programs;
+
+    //the positions of every rank laid out in arrays, built lazily from the programs and dropped with any of them
+    private MoveState state;
+
+    //counts the changes made to the ranks, commands, end positions and counts of this move, so that work
+    //derived from it can tell whether it is still current
+    private int revision;
+
+    //told of every change made to this move, including its comments and end positions, by the list holding it
+    private Runnable changeListener;
+
+    //a copy of this move as it was when last asked for, dropped whenever this move changes, and held
+    //softly so that it never costs the memory of a second show
+    private SoftReference<Move> snapshot;
+
+    //what writeXML writes inside this move after its number, as UTF-8, kept from the last time this move
+    //was saved until it changes, so that a move that has not changed is not written again
+    private SoftReference<byte[]> xmlContents;
+
+    /**
+     * The positions of a single rank at the start of each of its commands.
+     */
+    private static class Checkpoints {
+        //positions[i] is the position after commands 0 through i-1 have been fully executed,
+        //so positions[0] is the start position and positions[commands.size()] is the end position
+        private final RankPosition[] positions;
+
+        //startCounts[i] is the number of counts into the move at which command i starts
+        private final int[] startCounts;
+
+        private Checkpoints(RankPosition[] positions, int[] startCounts) {
+            this.positions = positions;
+            this.startCounts = startCounts;
+        }
+    }
+
     public Move() {
         startPositions = new HashMap<String, RankPosition>();
         endPositions = new HashMap<String, RankPosition>();
         commands = new HashMap<String, ArrayList<CommandPair>>();
+        checkpoints = new HashMap<String, Checkpoints>();
+        programs = new HashMap<String, RankProgram>();
         comments = "";
         moveCounts = 0;
     }
@@ -36,6 +86,8 @@ public class Move {
         this.startPositions = deepCopyPositions(startPositions);
         this.endPositions = deepCopyPositions(startPositions);
         commands = new HashMap<String, ArrayList<CommandPair>>();
+        checkpoints = new HashMap<String, Checkpoints>();
+        programs = new HashMap<String, RankProgram>();
         for (String rankName : startPositions.keySet()) {
             commands.put(rankName, new ArrayList<CommandPair>());
         }
@@ -43,13 +95,54 @@ public class Move {
         this.moveCounts = counts;
     }
 
+    /**
+     * Creates a copy of a move that shares nothing with it that can be changed.
+     *
+     * @param move - the move to copy
+     */
+    public Move(Move move) {
+        this.startPositions = deepCopyPositions(move.startPositions);
+        this.endPositions = deepCopyPositions(move.endPositions);
+        commands = new HashMap<String, ArrayList<CommandPair>>();
+        checkpoints = new HashMap<String, Checkpoints>();
+        programs = new HashMap<String, RankProgram>();
+        for (String rankName : move.commands.keySet()) {
+            ArrayList<CommandPair> rankCommands = new ArrayList<CommandPair>();
+            for (CommandPair command : move.commands.get(rankName)) {
+                rankCommands.add(new CommandPair(command));
+            }
+            commands.put(rankName, rankCommands);
+        }
+        this.comments = move.comments;
+        this.moveCounts = move.moveCounts;
+    }
+
+    /**
+     * Returns a copy of this move as it is now, which can be read on another thread while this
+     * move goes on being edited.  The same copy is returned until this move next changes, so it
+     * must not be changed itself.  Positions edited in place, rather than through this move,
+     * are not seen as a change.
+     *
+     * @return a copy of this move
+     */
+    public Move snapshot() {
+        Move copy = snapshot == null ? null : snapshot.get();
+        if (copy == null) {
+            copy = new Move(this);
+            snapshot = new SoftReference<Move>(copy);
+        }
+        return copy;
+    }
+
     public void addRank(String rankName, RankPosition rankPosition) {
+        invalidate(rankName);
         commands.put(rankName, new ArrayList<CommandPair>());
         startPositions.put(rankName, rankPosition);
         endPositions.put(rankName, new RankPosition(rankPosition));
     }
 
     public void deleteRank(String rankName) {
+        invalidate(rankName);
         commands.remove(rankName);
         startPositions.remove(rankName);
         endPositions.remove(rankName);
@@ -106,6 +199,7 @@ public class Move {
 
         //set the name of the command
         commands.get(rankName).get(index).setName(name);
+        changed();
 
         return "";
     }
@@ -130,6 +224,7 @@ public class Move {
             tempCommandPair = commands.get(rankName).remove(commandIndices[i]);
             commands.get(rankName).add(commandIndices[i]-1, tempCommandPair);
         }
+        invalidate(rankName);
 
         return "";
     }
@@ -154,6 +249,7 @@ public class Move {
             tempCommandPair = commands.get(rankName).remove(commandIndices[i]);
             commands.get(rankName).add(commandIndices[i]+1, tempCommandPair);
         }
+        invalidate(rankName);
 
         return "";
     }
@@ -188,6 +284,7 @@ public class Move {
             mergedCounts = mergedCounts + tempCommand.getCounts();
         }
         commands.get(rankName).add(commandIndices[0], new CommandPair(firstCommandType, mergedCounts));
+        invalidate(rankName);
 
         return "";
     }
@@ -215,6 +312,7 @@ public class Move {
         CommandPair tempCommand = commands.get(rankName).remove(index);
         commands.get(rankName).add(index, new CommandPair(tempCommand.getCommand(), count));
         commands.get(rankName).add(index+1, new CommandPair(tempCommand.getCommand(), tempCommand.getCounts() - count));
+        invalidate(rankName);
 
         return "";
     }
@@ -225,6 +323,37 @@ public class Move {
         endPositions.put(rankName, getPositionFromCommands(rankName));
     }
 
+    /**
+     * Sets the start and end position of a rank whose end position has already been found
+     * with computeEndPosition.
+     *
+     * @param rankName - the rank to set the positions of
+     * @param newStartPos - the new start position, shared with the end position of the previous move
+     * @param newEndPos - the end position reached from the new start position
+     */
+    public void setPositions(String rankName, RankPosition newStartPos, RankPosition newEndPos) {
+        invalidate(rankName);
+        startPositions.put(rankName, newStartPos);
+        endPositions.put(rankName, newEndPos);
+    }
+
+    /**
+     * Returns the position a rank would end this move at if it started from the given position.
+     * Nothing in this move is changed, cached positions included, so different ranks can be
+     * computed at the same time.
+     *
+     * @param rankName - the rank whose commands to execute
+     * @param startPosition - the position to start the commands from
+     * @return a new position at the end of the commands
+     */
+    public RankPosition computeEndPosition(String rankName, RankPosition startPosition) {
+        RankPosition position = new RankPosition(startPosition);
+        for (CommandPair command : commands.get(rankName)) {
+            movePortionCounts(command.getCommand(), position, command.getCounts(), command.getCounts(), command.getDestination(), command.getWaypoints());
+        }
+        return position;
+    }
+
     public HashMap<String, RankPosition> deepCopyPositions(HashMap<String, RankPosition> existingPositions) {
         HashMap<String, RankPosition> positionCopy = new HashMap<String, RankPosition>();
 
@@ -237,6 +366,7 @@ public class Move {
 
     public void setComments(String comments) {
         this.comments = comments;
+        changed();
     }
 
     public String getComments() {
@@ -249,10 +379,12 @@ public class Move {
 
     public void setCommands(HashMap<String, ArrayList<CommandPair>> commands) {
         this.commands= commands;
+        invalidateAll();
     }
 
     public void setStartPositions(HashMap<String, RankPosition> startPosition) {
         this.startPositions = startPosition;
+        invalidateAll();
     }
 
     public HashMap<String, RankPosition> getStartPositions() {
@@ -261,6 +393,10 @@ public class Move {
 
     public void setEndPositions(HashMap<String, RankPosition> endPositions) {
         this.endPositions = endPositions;
+        // the state holds the end positions, so it is built again from the new ones
+        state = null;
+        revision++;
+        changed();
     }
 
     public HashMap<String, RankPosition> getEndPositions() {
@@ -269,6 +405,18 @@ public class Move {
 
     public void setCounts(int counts) {
         this.moveCounts = counts;
+        revision++;
+        changed();
+    }
+
+    /**
+     * Returns a number that changes whenever a rank, command, end position or the counts of this
+     * move change.
+     *
+     * @return the revision of this move
+     */
+    public int getRevision() {
+        return revision;
     }
 
     public int getCounts() {
@@ -285,44 +433,206 @@ public class Move {
         return itermediatePos;
     }
 
-    //TODO: not terribly efficient because it starts from the beginning of the move each time this is called,
-    // and this is called from each frame of the animation
-    private RankPosition getPositionFromCommandsAndCounts(String rankName, int counts) {
-        RankPosition position = new RankPosition(startPositions.get(rankName));
-        for (int i = 0; i < commands.get(rankName).size() && counts > 0; i++) {
-            CommandPair command = commands.get(rankName).get(i);
-            int countsLeft = counts - command.getCounts();
+    /**
+     * Returns the position of every rank at the given, possibly fractional, count.  Between
+     * whole counts the ranks move continuously through each command.
+     *
+     * @param counts - the number of counts into the move
+     * @return a hashmap mapping each rank name to its position at that count
+     */
+    public HashMap<String, RankPosition> getIntermediatePositions(float counts) {
+        return getIntermediatePositions(counts, new HashMap<String, RankPosition>());
+    }
+
+    /**
+     * Writes the position of every rank at the given, possibly fractional, count into an
+     * existing hashmap.  The positions already in the map are updated in place and only
+     * ranks that are not yet in it are given new positions, so the same map can be passed
+     * in every frame of playback.
+     *
+     * @param counts - the number of counts into the move
+     * @param positions - the hashmap to write the positions into
+     * @return the given hashmap, holding exactly the ranks of this move
+     */
+    public HashMap<String, RankPosition> getIntermediatePositions(float counts, HashMap<String, RankPosition> positions) {
+        positions.keySet().retainAll(startPositions.keySet());
+
+        float[] values = new float[RankProgram.STRIDE];
+        for (String rankName : startPositions.keySet()) {
+            getProgram(rankName).evaluate(counts, values, 0);
+            RankPosition position = positions.get(rankName);
+            if (position == null) {
+                positions.put(rankName, RankProgram.toRankPosition(values, 0));
+            }
+            else {
+                position.getFront().setPoint(values[RankProgram.FRONT_X], values[RankProgram.FRONT_Y]);
+                position.getMidpoint().setPoint(values[RankProgram.MID_X], values[RankProgram.MID_Y]);
+                position.getEnd().setPoint(values[RankProgram.END_X], values[RankProgram.END_Y]);
+                position.setLineType((int) values[RankProgram.LINE_TYPE]);
+            }
+        }
+        return positions;
+    }
 
-            //only do a portion of the command
-            if (countsLeft < 0) {
-                movePortionCounts(command.getCommand(), position, counts, command.getCounts(), command.getDestination());
+    private RankPosition getPositionFromCommandsAndCounts(String rankName, int counts) {
+        Checkpoints rankCheckpoints = getCheckpoints(rankName);
+        if (counts <= 0) {
+            return new RankPosition(rankCheckpoints.positions[0]);
+        }
+
+        //find the last command that has started by this count.  A command is executed if it
+        //starts strictly before the given count, so this is the number of start counts below it, minus one
+        int[] startCounts = rankCheckpoints.startCounts;
+        int low = 0;
+        int high = startCounts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startCounts[mid] < counts) {
+                low = mid + 1;
             }
-            //else do full command (as part of the chain that leads up to the current one
             else {
-                //moveFullCounts(command, position);
-                movePortionCounts(command.getCommand(), position, command.getCounts(), command.getCounts(), command.getDestination());
+                high = mid;
             }
-            counts = counts - command.getCounts();
+        }
+        int index = low - 1;
+
+        //no commands have started (the rank has no commands)
+        if (index < 0) {
+            return new RankPosition(rankCheckpoints.positions[0]);
+        }
 
+        //the command has been fully executed, so its end is already known
+        CommandPair command = commands.get(rankName).get(index);
+        int countsIntoCommand = counts - startCounts[index];
+        if (countsIntoCommand >= command.getCounts()) {
+            return new RankPosition(rankCheckpoints.positions[index + 1]);
         }
 
+        //otherwise only do a portion of the command from the checkpoint at its start, a follow
+        //the leader going along the trail compiled with the rank's program
+        RankPosition position = new RankPosition(rankCheckpoints.positions[index]);
+        if (command.getCommand() == CommandPair.FTA && command.getDestination() != null) {
+            position.FTAMove(getProgram(rankName).getFollowPath(index), (float) countsIntoCommand / command.getCounts());
+            return position;
+        }
+        movePortionCounts(command.getCommand(), position, countsIntoCommand, command.getCounts(), command.getDestination(), command.getWaypoints());
         return position;
     }
 
     private RankPosition getPositionFromCommands(String rankName) {
-        //create a new endPosition object from the current start position
-        RankPosition endPosition = new RankPosition(startPositions.get(rankName));
-        for (int i = 0; i < commands.get(rankName).size(); i++) {
-            int numcounts = commands.get(rankName).get(i).getCounts();
-            CommandPair cmd = commands.get(rankName).get(i);
-            movePortionCounts(commands.get(rankName).get(i).getCommand(), endPosition, numcounts, numcounts,cmd.getDestination());
+        //rebuild the checkpoints from the current start position, the last one being the new end position
+        invalidate(rankName);
+        Checkpoints rankCheckpoints = getCheckpoints(rankName);
+        return new RankPosition(rankCheckpoints.positions[rankCheckpoints.positions.length - 1]);
+    }
+
+    /**
+     * Returns the compiled commands of the given rank, compiling them if they have changed
+     * since they were last compiled.
+     *
+     * @param rankName - the rank to get the program for
+     * @return the compiled program for the rank
+     */
+    public RankProgram getProgram(String rankName) {
+        RankProgram program = programs.get(rankName);
+        if (program == null) {
+            program = RankProgram.compile(startPositions.get(rankName), commands.get(rankName));
+            programs.put(rankName, program);
+        }
+        return program;
+    }
+
+    /**
+     * Returns the positions of every rank in this move laid out for evaluating all of the
+     * ranks at once, building it if any rank has changed since it was last built.
+     *
+     * @return the state of every rank in this move
+     */
+    public MoveState getState() {
+        if (state == null) {
+            state = MoveState.of(this);
         }
-        return endPosition;
+        return state;
+    }
+
+    /**
+     * Drops everything derived from the start position and commands of the given rank.
+     *
+     * @param rankName - the rank that changed
+     */
+    private void invalidate(String rankName) {
+        checkpoints.remove(rankName);
+        programs.remove(rankName);
+        state = null;
+        revision++;
+        changed();
+    }
+
+    /**
+     * Drops everything derived from the start positions and commands of every rank.
+     */
+    private void invalidateAll() {
+        checkpoints.clear();
+        programs.clear();
+        state = null;
+        revision++;
+        changed();
+    }
+
+    /**
+     * Sets what is told of every change made to this move.
+     *
+     * @param changeListener - run after each change, or null for nothing
+     */
+    void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed() {
+        snapshot = null;
+        xmlContents = null;
+        if (changeListener != null) {
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Returns the checkpoints for the given rank, replaying its commands from the start position
+     * if they have not been built since the rank last changed.
+     *
+     * @param rankName - the rank to get checkpoints for
+     * @return the positions of the rank at the start of each command
+     */
+    private Checkpoints getCheckpoints(String rankName) {
+        Checkpoints rankCheckpoints = checkpoints.get(rankName);
+        if (rankCheckpoints != null) {
+            return rankCheckpoints;
+        }
+
+        ArrayList<CommandPair> commandList = commands.get(rankName);
+        RankPosition[] positions = new RankPosition[commandList.size() + 1];
+        int[] startCounts = new int[commandList.size()];
+
+        //the checkpoints own their positions, so none of them can be changed from outside of the move
+        RankPosition position = new RankPosition(startPositions.get(rankName));
+        positions[0] = new RankPosition(position);
+        int currentCount = 0;
+        for (int i = 0; i < commandList.size(); i++) {
+            CommandPair command = commandList.get(i);
+            startCounts[i] = currentCount;
+            movePortionCounts(command.getCommand(), position, command.getCounts(), command.getCounts(), command.getDestination(), command.getWaypoints());
+            positions[i + 1] = new RankPosition(position);
+            currentCount = currentCount + command.getCounts();
+        }
+
+        rankCheckpoints = new Checkpoints(positions, startCounts);
+        checkpoints.put(rankName, rankCheckpoints);
+        return rankCheckpoints;
     }
 
     //TODO: can definitely combine these two.  is it worth it?
     private void movePortionCounts(int command, RankPosition endPosition, int counts,
-            int totalcounts, RankPosition dest) {
+            int totalcounts, RankPosition dest, List<Point> waypoints) {
 
         switch (command){
             case CommandPair.MT:
@@ -354,22 +664,22 @@ public class Move {
                 endPosition.flattenEndsMove((float)counts/(float)totalcounts);
                 break;
             case CommandPair.GTCW_HEAD:
-                endPosition.gateTurnMove(-1*MarchingConstants.STANDARD_GATE_TURN_RATIO*counts, PART.HEAD);
+                endPosition.gateTurnMove(RotationTable.GATE_TURN, -counts, PART.HEAD);
                 break;
             case CommandPair.GTCW_TAIL:
-                endPosition.gateTurnMove(-1*MarchingConstants.STANDARD_GATE_TURN_RATIO*counts, PART.TAIL);
+                endPosition.gateTurnMove(RotationTable.GATE_TURN, -counts, PART.TAIL);
                 break;
             case CommandPair.GTCCW_HEAD:
-                endPosition.gateTurnMove(MarchingConstants.STANDARD_GATE_TURN_RATIO*counts, PART.HEAD);
+                endPosition.gateTurnMove(RotationTable.GATE_TURN, counts, PART.HEAD);
                 break;
             case CommandPair.GTCCW_TAIL:
-                endPosition.gateTurnMove(MarchingConstants.STANDARD_GATE_TURN_RATIO*counts, PART.TAIL);
+                endPosition.gateTurnMove(RotationTable.GATE_TURN, counts, PART.TAIL);
                 break;
             case CommandPair.PWCW:
-                endPosition.pinwheelMove(MarchingConstants.STANDARD_PINWHEEL_RATIO*counts);
+                endPosition.pinwheelMove(RotationTable.PINWHEEL, counts);
                 break;
             case CommandPair.PWCCW:
-                endPosition.pinwheelMove(-1*MarchingConstants.STANDARD_PINWHEEL_RATIO*counts);
+                endPosition.pinwheelMove(RotationTable.PINWHEEL, -counts);
                 break;
             case CommandPair.EXPAND_HEAD:
                 endPosition.expansionMove(MarchingConstants.STANDARD_STEP_SIZE * counts, 0.0f);
@@ -395,7 +705,9 @@ public class Move {
                 break;
 
             case CommandPair.FTA:
-                // TODO: implement
+                if (dest != null) {
+                    endPosition.FTAMove(dest, waypoints, (float)counts/(float)totalcounts);
+                }
                 break;
 
             case CommandPair.CORNER_LB:
@@ -589,4 +901,63 @@ public class Move {
         commentsTag.appendChild(commentsText);
         return moveTag;
     }
+
+    /**
+     * Writes the move as XML, in the same form as convertToXML
+     *
+     * @param writer - the writer to write to
+     * @param moveNumber - the index of the move in the show
+     * @throws XMLStreamException
+     */
+    public void writeXML(XMLStreamWriter writer, Integer moveNumber) throws XMLStreamException {
+        writer.writeStartElement(XMLConstants.MOVE);
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.MOVE_NUMBER, moveNumber.toString());
+        writeXMLContents(writer);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes what writeXML writes inside the move after its number, which does not depend on
+     * where the move is in the show.
+     *
+     * @param writer - the writer to write to
+     * @throws XMLStreamException
+     */
+    public void writeXMLContents(XMLStreamWriter writer) throws XMLStreamException {
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.MOVE_COUNTS, moveCounts.toString());
+
+        //TODO: NOTE: assuming that each hashmap has the same ranks
+        for (String rankName : startPositions.keySet()) {
+            writer.writeStartElement(XMLConstants.RANK);
+            XMLStreamUtils.writeTextElement(writer, XMLConstants.RANK_NAME, rankName);
+            startPositions.get(rankName).writeXML(writer, XMLConstants.START_POS);
+            ArrayList<CommandPair> commandList = commands.get(rankName);
+            for (int i = 0; i < commandList.size(); i++) {
+                commandList.get(i).writeXML(writer, i);
+            }
+            endPositions.get(rankName).writeXML(writer, XMLConstants.END_POS);
+            writer.writeEndElement();
+        }
+
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.MOVE_COMMENTS, comments);
+    }
+
+    /**
+     * Returns what writeXMLContents wrote for this move when it was last saved, if this move has
+     * not changed since and the bytes have been kept.
+     *
+     * @return the contents as UTF-8, or null if they must be written again
+     */
+    public byte[] getXMLContents() {
+        return xmlContents == null ? null : xmlContents.get();
+    }
+
+    /**
+     * Keeps what writeXMLContents wrote for this move, until it changes.
+     *
+     * @param contents - the contents as UTF-8, which must not be changed
+     */
+    public void setXMLContents(byte[] contents) {
+        xmlContents = new SoftReference<byte[]>(contents);
+    }
 }
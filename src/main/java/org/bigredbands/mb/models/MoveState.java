@@ -0,0 +1,235 @@
+package org.bigredbands.mb.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The positions of every rank in a move, stored in parallel primitive arrays rather than
+ * as a map of RankPositions.
+ *
+ * Each rank is given a dense id, in order of rank name, which indexes the arrays holding
+ * its start and end positions and its compiled program.  Evaluating the move at a count
+ * writes {@link RankProgram#STRIDE} floats per rank into a single array, rank id i
+ * starting at i * STRIDE, so that drawing or exporting a whole move is one pass over
+ * contiguous memory.
+ *
+ * A MoveState is a snapshot of the move when it was built, and is rebuilt by the move
+ * whenever a rank or its commands change.
+ */
+public final class MoveState {
+
+    // The name of the rank with each id
+    private final String[] rankNames;
+
+    // The id of each rank
+    private final HashMap<String, Integer> rankIds;
+
+    // The positions of each rank at the start of the move
+    private final float[] startFrontX;
+    private final float[] startFrontY;
+    private final float[] startMidX;
+    private final float[] startMidY;
+    private final float[] startEndX;
+    private final float[] startEndY;
+    private final int[] startLineType;
+
+    // The positions of each rank at the end of the move
+    private final float[] endFrontX;
+    private final float[] endFrontY;
+    private final float[] endMidX;
+    private final float[] endMidY;
+    private final float[] endEndX;
+    private final float[] endEndY;
+    private final int[] endLineType;
+
+    // The number of counts after which each rank stops moving
+    private final int[] totalCounts;
+
+    // The compiled commands of each rank
+    private final RankProgram[] programs;
+
+    /**
+     * Builds the state of every rank in the given move.
+     *
+     * @param move - the move to build the state of
+     * @return the state of the move
+     */
+    public static MoveState of(Move move) {
+        String[] names = move.getStartPositions().keySet().toArray(new String[0]);
+        Arrays.sort(names);
+
+        RankProgram[] programs = new RankProgram[names.length];
+        RankPosition[] ends = new RankPosition[names.length];
+        for (int i = 0; i < names.length; i++) {
+            programs[i] = move.getProgram(names[i]);
+            ends[i] = move.getEndPositions().get(names[i]);
+        }
+        return new MoveState(names, programs, ends);
+    }
+
+    private MoveState(String[] rankNames, RankProgram[] programs, RankPosition[] ends) {
+        int size = rankNames.length;
+        this.rankNames = rankNames;
+        this.programs = programs;
+        rankIds = new HashMap<String, Integer>();
+
+        startFrontX = new float[size];
+        startFrontY = new float[size];
+        startMidX = new float[size];
+        startMidY = new float[size];
+        startEndX = new float[size];
+        startEndY = new float[size];
+        startLineType = new int[size];
+        endFrontX = new float[size];
+        endFrontY = new float[size];
+        endMidX = new float[size];
+        endMidY = new float[size];
+        endEndX = new float[size];
+        endEndY = new float[size];
+        endLineType = new int[size];
+        totalCounts = new int[size];
+
+        float[] position = new float[RankProgram.STRIDE];
+        for (int i = 0; i < size; i++) {
+            rankIds.put(rankNames[i], i);
+            RankProgram program = programs[i];
+            totalCounts[i] = program.getTotalCounts();
+
+            program.evaluate(0, position, 0);
+            startFrontX[i] = position[RankProgram.FRONT_X];
+            startFrontY[i] = position[RankProgram.FRONT_Y];
+            startMidX[i] = position[RankProgram.MID_X];
+            startMidY[i] = position[RankProgram.MID_Y];
+            startEndX[i] = position[RankProgram.END_X];
+            startEndY[i] = position[RankProgram.END_Y];
+            startLineType[i] = (int) position[RankProgram.LINE_TYPE];
+
+            // the end position of the move is the one it holds, as in the exported and saved show
+            if (ends[i] != null) {
+                RankProgram.store(ends[i], position, 0);
+            }
+            else {
+                program.evaluate(totalCounts[i], position, 0);
+            }
+            endFrontX[i] = position[RankProgram.FRONT_X];
+            endFrontY[i] = position[RankProgram.FRONT_Y];
+            endMidX[i] = position[RankProgram.MID_X];
+            endMidY[i] = position[RankProgram.MID_Y];
+            endEndX[i] = position[RankProgram.END_X];
+            endEndY[i] = position[RankProgram.END_Y];
+            endLineType[i] = (int) position[RankProgram.LINE_TYPE];
+        }
+    }
+
+    /**
+     * Returns the number of ranks in the move
+     *
+     * @return the number of ranks
+     */
+    public int getRankCount() {
+        return rankNames.length;
+    }
+
+    /**
+     * Returns the length of the array needed to evaluate every rank in the move
+     *
+     * @return the number of floats written by evaluate
+     */
+    public int getValueCount() {
+        return rankNames.length * RankProgram.STRIDE;
+    }
+
+    /**
+     * Returns the name of the rank with the given id
+     *
+     * @param rankId - the id of the rank
+     * @return the name of the rank
+     */
+    public String getRankName(int rankId) {
+        return rankNames[rankId];
+    }
+
+    /**
+     * Returns the id of the rank with the given name
+     *
+     * @param rankName - the name of the rank
+     * @return the id of the rank, or -1 if the rank is not in the move
+     */
+    public int getRankId(String rankName) {
+        Integer rankId = rankIds.get(rankName);
+        return rankId == null ? -1 : rankId;
+    }
+
+    /**
+     * Writes the position of every rank at the given count into the output array, the rank
+     * with id i starting at index i * STRIDE.
+     *
+     * @param count - the number of counts into the move
+     * @param out - the array to write the positions to, at least getValueCount() long
+     */
+    public void evaluate(int count, float[] out) {
+        evaluate((float) count, out);
+    }
+
+    /**
+     * Writes the position of every rank at the given, possibly fractional, count into the
+     * output array, laid out as in evaluate.
+     *
+     * @param count - the number of counts into the move
+     * @param out - the array to write the positions to, at least getValueCount() long
+     */
+    public void evaluate(float count, float[] out) {
+        int offset = 0;
+        for (int i = 0; i < rankNames.length; i++, offset += RankProgram.STRIDE) {
+            if (count <= 0) {
+                out[offset + RankProgram.FRONT_X] = startFrontX[i];
+                out[offset + RankProgram.FRONT_Y] = startFrontY[i];
+                out[offset + RankProgram.MID_X] = startMidX[i];
+                out[offset + RankProgram.MID_Y] = startMidY[i];
+                out[offset + RankProgram.END_X] = startEndX[i];
+                out[offset + RankProgram.END_Y] = startEndY[i];
+                out[offset + RankProgram.LINE_TYPE] = startLineType[i];
+            }
+            else if (count >= totalCounts[i]) {
+                // the rank has finished its commands and holds its end position
+                out[offset + RankProgram.FRONT_X] = endFrontX[i];
+                out[offset + RankProgram.FRONT_Y] = endFrontY[i];
+                out[offset + RankProgram.MID_X] = endMidX[i];
+                out[offset + RankProgram.MID_Y] = endMidY[i];
+                out[offset + RankProgram.END_X] = endEndX[i];
+                out[offset + RankProgram.END_Y] = endEndY[i];
+                out[offset + RankProgram.LINE_TYPE] = endLineType[i];
+            }
+            else {
+                programs[i].evaluate(count, out, offset);
+            }
+        }
+    }
+
+    /**
+     * Writes the positions of the marchers of a rank if it is part way through a follow the
+     * leader command at the given count, as by RankProgram.placeFollowing.
+     *
+     * @param rankId - the id of the rank
+     * @param count - the number of counts into the move, possibly fractional
+     * @param marchers - the number of marchers in the rank
+     * @param out - the array to write the x and y coordinates of each marcher to, in turn
+     * @param offset - the index to write the first x coordinate at
+     * @return true if the marchers were placed, false if the rank is not following a trail
+     */
+    public boolean placeFollowing(int rankId, float count, int marchers, float[] out, int offset) {
+        if (count <= 0 || count >= totalCounts[rankId]) {
+            return false;
+        }
+        return programs[rankId].placeFollowing(count, marchers, out, offset);
+    }
+
+    /**
+     * Writes the end position of every rank into the output array, laid out as in evaluate.
+     *
+     * @param out - the array to write the positions to, at least getValueCount() long
+     */
+    public void evaluateEnd(float[] out) {
+        evaluate(Float.POSITIVE_INFINITY, out);
+    }
+}
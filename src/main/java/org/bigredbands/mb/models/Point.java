@@ -2,6 +2,10 @@ package org.bigredbands.mb.models;
 
 import java.awt.geom.Point2D;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.bigredbands.mb.utils.XMLStreamUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
@@ -37,6 +41,19 @@ public class Point extends Point2D.Float {
         return new Point(this.x*(1-t) + b.x*t, this.y*(1-t) + b.y*t);
     }
 
+    /**
+     * Sets this point to the interpolation between two points, as in
+     * interpolate(), without creating a new Point.  Either point may be this
+     * point.
+     *
+     * @param a The point weighted with a factor `(1 - t)`.
+     * @param b The point weighted with a factor `t`.
+     * @param t The relative weight of each point.
+     */
+    public void interpolateInPlace(Point a, Point b, float t) {
+        setPoint(a.x*(1-t) + b.x*t, a.y*(1-t) + b.y*t);
+    }
+
     /**
      * Normalizes the relative magnitude vector represented by this instance.
      *
@@ -86,7 +103,7 @@ public class Point extends Point2D.Float {
      * @return The difference between this and `other`.
      */
     public Point subtract(Point other) {
-        return this.add(other.multiply(-1.0f));
+        return new Point(this.x - other.x, this.y - other.y);
     }
 
     /**
@@ -133,4 +150,18 @@ public class Point extends Point2D.Float {
 
         return pointTag;
     }
+
+    /**
+     * Writes the point as XML, in the same form as convertToXML
+     *
+     * @param writer - the writer to write to
+     * @param pointName - the name of the point tag
+     * @throws XMLStreamException
+     */
+    public void writeXML(XMLStreamWriter writer, String pointName) throws XMLStreamException {
+        writer.writeStartElement(pointName);
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.X_COORDINATE, java.lang.Float.toString(x));
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.Y_COORDINATE, java.lang.Float.toString(y));
+        writer.writeEndElement();
+    }
 }
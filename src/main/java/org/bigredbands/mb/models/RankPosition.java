@@ -1,10 +1,14 @@
 package org.bigredbands.mb.models;
 
-import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.bigredbands.mb.models.MarchingConstants.PART;
+import org.bigredbands.mb.utils.XMLStreamUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Text;
@@ -22,6 +26,9 @@ public class RankPosition {
     private Integer lineType;
     private enum part {HEAD, TAIL};
 
+    // The position laid out as in a RankProgram, kept between moves so they allocate nothing
+    private float[] values;
+
     public RankPosition(Point front, Point end){
         this.front = front;
         this.end = end;
@@ -152,20 +159,51 @@ public class RankPosition {
         return positionTag;
     }
 
+    /**
+     * Writes the position as XML, in the same form as convertToXML
+     *
+     * @param writer - the writer to write to
+     * @param positionName - the name of the position tag
+     * @throws XMLStreamException
+     */
+    public void writeXML(XMLStreamWriter writer, String positionName) throws XMLStreamException {
+        writer.writeStartElement(positionName);
+        front.writeXML(writer, XMLConstants.FRONT_POINT);
+        midpoint.writeXML(writer, XMLConstants.POINT_ONE);
+        end.writeXML(writer, XMLConstants.END_POINT);
+        XMLStreamUtils.writeTextElement(writer, XMLConstants.LINE_TYPE, lineType.toString());
+        writer.writeEndElement();
+    }
+
     /**
      * This function sets the end position for Gate Turns
      * @param theta - how much the rank is turning by
      * @param moveable - which part is moving
      */
     public void gateTurnMove(float theta, PART moveable) {
+        gateTurnMove((float) Math.cos(theta), (float) Math.sin(theta), moveable);
+    }
+
+    /**
+     * Gate turns the rank a whole or fractional number of counts at the rate of a rotation
+     * table, without calling into java.lang.Math
+     * @param rotation - the rotation rate of the turn
+     * @param counts - the number of counts turned, negative to turn the other way
+     * @param moveable - the part of the rank that moves around the other
+     */
+    public void gateTurnMove(RotationTable rotation, float counts, PART moveable) {
+        gateTurnMove(rotation.cos(counts), rotation.sin(counts), moveable);
+    }
+
+    private void gateTurnMove(float cos, float sin, PART moveable) {
         switch (moveable) {
             case HEAD:
-                front = rotate(theta, end, front);
-                midpoint = rotate(theta, end, midpoint);
+                rotateInPlace(cos, sin, end, front);
+                rotateInPlace(cos, sin, end, midpoint);
                 break;
             case TAIL:
-                end = rotate(theta, front, end);
-                midpoint = rotate(theta, front, midpoint);
+                rotateInPlace(cos, sin, front, end);
+                rotateInPlace(cos, sin, front, midpoint);
                 break;
             default:
                 break;
@@ -180,131 +218,131 @@ public class RankPosition {
      * @return The new location of the rotated end of the line as a Point
      */
     public Point rotate(float theta, Point origin, Point mover) {
-        // determine length
-        float deltaX = (mover.X()-origin.X());
-        float deltaY = (origin.Y()-mover.Y());
-        float length = (float) Math.sqrt(Math.pow(deltaX, 2) + Math.pow(deltaY, 2));
-
-        //determine reference angle
-        float referenceAngle = (float)(Math.atan(deltaY/deltaX));
-
-        if (deltaX==0&&deltaY>0){
-            referenceAngle = (float) (Math.PI/2.0f);
-        } else if (deltaX==0&&deltaY<0) {
-            referenceAngle=(float) (Math.PI/2.0f)*(-1.0f);
-        } else if (deltaY==0&&deltaX>0) {
-            referenceAngle=0.0f;
-        } else if (deltaY==0&&deltaX<0) {
-            referenceAngle=(float) Math.PI;
-        } else {
-            referenceAngle = (float) Math.atan(deltaY/deltaX);
-            if (deltaX<0){
-                referenceAngle=(float) Math.PI+referenceAngle;
-            }
-        }
-
-        float newX = (float) (length*Math.cos(theta + referenceAngle));
-        float newY = (float) (length*Math.sin(theta + referenceAngle));
+        Point rotated = new Point(mover.X(), mover.Y());
+        rotateInPlace((float) Math.cos(theta), (float) Math.sin(theta), origin, rotated);
+        return rotated;
+    }
 
-        return new Point(origin.X() + newX, origin.Y() - newY);
+    /**
+     * Rotates a point about an origin, moving the point itself rather than creating a new one.
+     * A positive angle turns counterclockwise as seen on the field, where y grows downward.
+     * @param cos - the cosine of the angle of rotation
+     * @param sin - the sine of the angle of rotation
+     * @param origin - the end of the line that is the origin of the rotation
+     * @param mover - the end of the line that is doing the rotating, which is set to its rotated location
+     */
+    private static void rotateInPlace(float cos, float sin, Point origin, Point mover) {
+        float deltaX = mover.X() - origin.X();
+        float deltaY = mover.Y() - origin.Y();
+        mover.setPoint(origin.X() + deltaX * cos + deltaY * sin, origin.Y() - deltaX * sin + deltaY * cos);
     }
 
     public void pinwheelMove(float theta) {
-        //determine length
-        if(this.lineType==this.LINE) {
-            float midX = (front.X()+ end.X())/2.0f;
-            float midY = (front.Y()+ end.Y())/2.0f;
-            this.midpoint = new Point(midX, midY);
-        }
-
-        float deltaX = (front.X()-end.X());
-        float deltaY = (front.Y()-end.Y());
-        float halfLength = (float) ((Math.sqrt( Math.pow(deltaX, 2) + Math.pow(deltaY, 2)))/2.0);
-
-        float referenceAngle;
-
-        //defining reference Angles - Is this really neccessary? ASK DAVE
-        if (deltaX==0&&deltaY>0){
-            referenceAngle = (float) (Math.PI/2.0f);
-            System.out.println("Half PI");
-        }else if (deltaX==0&&deltaY<0){
-            referenceAngle=(float) (Math.PI/2.0f)*(-1.0f);
-            System.out.println("Negative Half PI");
-        }else if (deltaY==0&&deltaX>0){
-            referenceAngle=0.0f;
-        }else if (deltaY==0&&deltaX<0){
-            referenceAngle=(float) Math.PI;
-        }else{
-            referenceAngle = (float) Math.atan(deltaY/deltaX);
-            if (deltaX<0){
-                referenceAngle=(float) Math.PI+referenceAngle;
-                System.out.println("mo");
-            }
-        }
+        pinwheelMove((float) Math.cos(theta), (float) Math.sin(theta));
+    }
 
-        float newX = (float) (halfLength*Math.cos(theta + referenceAngle));
-        float newY = (float) (halfLength*Math.sin(theta + referenceAngle));
+    /**
+     * Pinwheels the rank a whole or fractional number of counts at the rate of a rotation
+     * table, without calling into java.lang.Math
+     * @param rotation - the rotation rate of the pinwheel
+     * @param counts - the number of counts turned, negative to turn the other way
+     */
+    public void pinwheelMove(RotationTable rotation, float counts) {
+        pinwheelMove(rotation.cos(counts), rotation.sin(counts));
+    }
 
+    private void pinwheelMove(float cos, float sin) {
+        if(this.lineType==LINE) {
+            this.midpoint.interpolateInPlace(this.front, this.end, 0.5f);
+        }
+
+        // the front and end turn about the midpoint, each half the length of the rank away
+        float halfX = (front.X() - end.X()) / 2.0f;
+        float halfY = (front.Y() - end.Y()) / 2.0f;
+        float newX = halfX * cos - halfY * sin;
+        float newY = halfX * sin + halfY * cos;
 
         front.setPoint((midpoint.X() + newX), (midpoint.Y()+ newY));
         end.setPoint((midpoint.X() - newX), (midpoint.Y()- newY));
-
-        //float midX = (front.X()+ end.X())/2.0f;
-        //float midY = (front.Y()+ end.Y())/2.0f;
-        //this.midpoint = new Point(midX, midY);
     }
 
     /**
+     * Grows the rank along its shape, scaling it about the point that splits its length in
+     * the ratio of the two expansions, so that a curve or corner keeps its shape and the
+     * length along it changes by exactly the total expansion.  A line grows along itself
+     * exactly as before, with each end moving out by its own expansion.
      *
-     * @param headExpansion
-     * @param tailExpansion
-     * @param both
+     * @param headExpansion - the distance the front moves out along the rank
+     * @param tailExpansion - the distance the end moves out along the rank
      */
     public void expansionMove(float headExpansion, float tailExpansion) {
-        if(this.lineType==this.LINE) {
-            float midX = (front.X()+ end.X())/2.0f;
-            float midY = (front.Y()+ end.Y())/2.0f;
-            this.midpoint = new Point(midX, midY);
+        float length = getRankPositionLength();
+        float expansion = headExpansion + tailExpansion;
+        if (length == 0 || expansion == 0) {
+            return;
         }
 
-        float frontX = front.X();
-        float frontY = front.Y();
-        float endX = end.X();
-        float endY = end.Y();
-
-        float referenceAngle = (float) Math.atan(((frontY-endY)/(frontX-endX)));
-
-        float deltaXHead = (float) (headExpansion*Math.cos(referenceAngle));
-        float deltaYHead = (float) (headExpansion*Math.sin(referenceAngle));
-        float deltaXEnd = (float) (tailExpansion*Math.cos(referenceAngle));
-        float deltaYEnd = (float) (tailExpansion*Math.sin(referenceAngle));
-
-        //different signs for different orientations
-        if(!(frontX-endX<0)&&!(frontY-endY<0)){
-            front.setPoint(frontX + deltaXHead, frontY +deltaYHead);
-            end.setPoint(endX - deltaXEnd, endY - deltaYEnd);
-        }else if(!(frontX-endX<0)&&(frontY-endY<0)){
-            front.setPoint(frontX + deltaXHead, frontY + deltaYHead);
-            end.setPoint(endX - deltaXEnd, endY - deltaYEnd);
-        }else if((frontX-endX<0)&&!(frontY-endY<0)){
-            front.setPoint(frontX - deltaXHead, frontY - deltaYHead);
-            end.setPoint(endX + deltaXEnd, endY + deltaYEnd);
-        }else if((frontX-endX<0)&&(frontY-endY<0)){
-            front.setPoint(frontX - deltaXHead, frontY - deltaYHead);
-            end.setPoint(endX + deltaXEnd, endY + deltaYEnd);
+        if (values == null) {
+            values = new float[RankProgram.STRIDE];
         }
+        pointAlong(length * headExpansion / expansion, values);
+        float pivotX = values[0];
+        float pivotY = values[1];
+        float scale = expansion / length;
+        front.setPoint(front.X() + scale * (front.X() - pivotX), front.Y() + scale * (front.Y() - pivotY));
+        end.setPoint(end.X() + scale * (end.X() - pivotX), end.Y() + scale * (end.Y() - pivotY));
+        if(this.lineType==LINE) {
+            this.midpoint.interpolateInPlace(this.front, this.end, 0.5f);
+        }
+        else {
+            midpoint.setPoint(midpoint.X() + scale * (midpoint.X() - pivotX), midpoint.Y() + scale * (midpoint.Y() - pivotY));
+        }
+    }
 
-        float midX = (front.X()+ end.X())/2.0f;
-        float midY = (front.Y()+ end.Y())/2.0f;
-        this.midpoint = new Point(midX, midY);
-
+    // Writes the point a distance along the rank from its front, along its shape, to the
+    // first two entries of out
+    private void pointAlong(float distance, float[] out) {
+        switch (this.lineType) {
+            case CURVE:
+                CurveTable.ofRank(front.X(), front.Y(), midpoint.X(), midpoint.Y(), end.X(), end.Y()).pointAt(distance, out, 0);
+                return;
+            case CORNER: {
+                float toCorner = (float) front.distance(midpoint.X(), midpoint.Y());
+                if (distance <= toCorner) {
+                    float t = toCorner > 0 ? Math.max(0, distance / toCorner) : 0;
+                    out[0] = front.X() + (midpoint.X() - front.X()) * t;
+                    out[1] = front.Y() + (midpoint.Y() - front.Y()) * t;
+                }
+                else {
+                    float fromCorner = (float) end.distance(midpoint.X(), midpoint.Y());
+                    float t = fromCorner > 0 ? Math.min(1, (distance - toCorner) / fromCorner) : 0;
+                    out[0] = midpoint.X() + (end.X() - midpoint.X()) * t;
+                    out[1] = midpoint.Y() + (end.Y() - midpoint.Y()) * t;
+                }
+                return;
+            }
+            default: {
+                float t = Math.max(0, Math.min(1, distance / (float) front.distance(end.X(), end.Y())));
+                out[0] = front.X() + (end.X() - front.X()) * t;
+                out[1] = front.Y() + (end.Y() - front.Y()) * t;
+            }
+        }
     }
 
+    /**
+     * Bows the rank out to the left or right by moving its midpoint, keeping both ends
+     * where they are, so the rank grows longer as it curves.  Moves that keep the length
+     * of the rank along the curve would pull the ends in and change how existing shows
+     * play back, and are not done here.
+     *
+     * @param dist - the distance the midpoint moves out from the line through the ends
+     * @param type - 0 to bow to the left, 1 to the right
+     */
     public void curveMoveAuto(float dist, int type) {
         if(this.lineType==this.LINE) {
             float midX = (front.X()+ end.X())/2.0f;
             float midY = (front.Y()+ end.Y())/2.0f;
-            this.midpoint = new Point(midX, midY);
+            this.midpoint.setPoint(midX, midY);
         }
 
         // type = 0 for left, 1 for right
@@ -312,13 +350,13 @@ public class RankPosition {
         float vY = front.Y() - end.Y();
         float len = (float)Math.sqrt(vX*vX + vY*vY);
         if(lineType==LINE) {
-            midpoint = new Point(end.X()+vX/2.0f,end.Y()+vY/2.0f);
+            midpoint.setPoint(end.X()+vX/2.0f,end.Y()+vY/2.0f);
         }
         if(type==0) {
-            midpoint = new Point(midpoint.X()+vY*dist/len, midpoint.Y()-vX*dist/len);
+            midpoint.setPoint(midpoint.X()+vY*dist/len, midpoint.Y()-vX*dist/len);
         }
         else {
-            midpoint = new Point(midpoint.X()-vY*dist/len, midpoint.Y()+vX*dist/len);
+            midpoint.setPoint(midpoint.X()-vY*dist/len, midpoint.Y()+vX*dist/len);
         }
         float vmX = front.X() - midpoint.X();
         float vmY = front.Y() - midpoint.Y();
@@ -364,7 +402,7 @@ public class RankPosition {
         float vX = front.X() - end.X();
         float vY = front.Y() - end.Y();
         if(lineType==LINE) {
-            midpoint = new Point(end.X()+vX/2.0f,end.Y()+vY/2.0f);
+            midpoint.setPoint(end.X()+vX/2.0f,end.Y()+vY/2.0f);
         }
 
         if(this.lineType == CURVE || endpoint.lineType == CURVE) {
@@ -373,15 +411,15 @@ public class RankPosition {
 
         // if either is a line, set where the midpoint is
         if(endpoint.lineType == LINE) {
-            endpoint.midpoint = endpoint.front.interpolate(endpoint.end, 0.5f);
+            endpoint.midpoint.interpolateInPlace(endpoint.front, endpoint.end, 0.5f);
         }
         if(this.lineType == LINE) {
-            this.midpoint = this.front.interpolate(this.end, 0.5f);
+            this.midpoint.interpolateInPlace(this.front, this.end, 0.5f);
         }
 
-        this.front = this.front.interpolate(endpoint.front, t);
-        this.end = this.end.interpolate(endpoint.end, t);
-        this.midpoint = this.midpoint.interpolate(endpoint.midpoint, t);
+        this.front.interpolateInPlace(this.front, endpoint.front, t);
+        this.end.interpolateInPlace(this.end, endpoint.end, t);
+        this.midpoint.interpolateInPlace(this.midpoint, endpoint.midpoint, t);
 
         if(t==1) {
             this.lineType = endpoint.lineType;
@@ -389,33 +427,63 @@ public class RankPosition {
 
     }
 
-    private float getRankPositionLength() {
-        // Note: this is simplified - the "length" of a curve is front-mid + mid-end
-        if(this.lineType==LINE) {
-            this.midpoint = this.front.interpolate(this.end, 0.5f);
+    /**
+     * Returns the length of the rank along its shape: along the quadratic for a curve,
+     * through the midpoint for a corner, and straight for a line.
+     *
+     * @return the length of the rank
+     */
+    public float getRankPositionLength() {
+        switch (this.lineType) {
+            case CURVE:
+                return CurveTable.ofRank(front.X(), front.Y(), midpoint.X(), midpoint.Y(), end.X(), end.Y()).getLength();
+            case CORNER:
+                return (float)(this.front.distance(this.midpoint.X(), this.midpoint.Y()) +
+                        this.end.distance(this.midpoint.X(), this.midpoint.Y()));
+            default:
+                return (float)this.front.distance(this.end.X(), this.end.Y());
         }
-
-        return (float)(this.front.distance(this.midpoint.X(), this.midpoint.Y()) +
-                this.end.distance(this.midpoint.X(), this.midpoint.Y()));
     }
 
-    private static float getPathLength(ArrayList<Point>path) {
-        float length = 0;
-
-        return length;
+    /**
+     * Moves the rank part way along the trail to its destination in a follow the leader,
+     * the front leading the rank through the waypoints.  The trail is only built when the
+     * rank stops part way along it; a rank moved repeatedly along the same trail should be
+     * moved with the FollowPath of its compiled program instead.
+     *
+     * @param endpoint - the position of the rank at the end of the move
+     * @param path - the points the front leads the rank through
+     * @param t - how far through the move the rank is, from 0 to 1
+     */
+    public void FTAMove(RankPosition endpoint, List<Point>path, float t) {
+        if (t <= 0) {
+            return;
+        }
+        if (t >= 1) {
+            front.setPoint(endpoint.front.X(), endpoint.front.Y());
+            midpoint.setPoint(endpoint.midpoint.X(), endpoint.midpoint.Y());
+            end.setPoint(endpoint.end.X(), endpoint.end.Y());
+            lineType = endpoint.lineType;
+            return;
+        }
+        FTAMove(new FollowPath(this, path, endpoint), t);
     }
 
-    public void FTAMove(RankPosition endpoint, ArrayList<Point>path, float t) {
-        // TODO: UNUSED - need to be able to store "waypoints" for this and FTA in Move
-        float len = getPathLength(path) + this.getRankPositionLength() + endpoint.getRankPositionLength();
-        this.front = this.front.interpolate(endpoint.front, t);
-        this.end = this.end.interpolate(endpoint.end, t);
-        this.midpoint = this.midpoint.interpolate(endpoint.midpoint, t);
-
-        if(t==1){
-            this.lineType = endpoint.lineType;
+    /**
+     * Moves the rank part way along a trail it is following
+     *
+     * @param path - the trail, starting from the current position of the rank
+     * @param t - how far through the move the rank is, from 0 to 1
+     */
+    public void FTAMove(FollowPath path, float t) {
+        if (values == null) {
+            values = new float[RankProgram.STRIDE];
         }
-
+        path.evaluate(t, values, 0);
+        front.setPoint(values[RankProgram.FRONT_X], values[RankProgram.FRONT_Y]);
+        midpoint.setPoint(values[RankProgram.MID_X], values[RankProgram.MID_Y]);
+        end.setPoint(values[RankProgram.END_X], values[RankProgram.END_Y]);
+        lineType = (int) values[RankProgram.LINE_TYPE];
     }
 
     public void cornerMove(float t, int xDir, int yDir, int leadDir) {
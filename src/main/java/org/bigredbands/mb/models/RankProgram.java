@@ -0,0 +1,619 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rank's commands for a single move compiled into flat primitive arrays.
+ *
+ * Compiling resolves everything about a command that does not depend on how far into
+ * the command the rank is: the position at the start of every command, the per-count
+ * deltas of steps and expansions, the pivots of gate turns, pinwheels and corners, the
+ * destination of direct moves and the trail of follow the leader moves.  Evaluating the
+ * program at a count then only looks up one command and applies a few multiply-adds,
+ * without allocating or replaying the earlier commands.
+ *
+ * Positions are written as {@link #STRIDE} floats: the front, midpoint and end
+ * coordinates followed by the line type.
+ */
+public final class RankProgram {
+
+    // The number of floats used to store one rank position
+    public static final int STRIDE = 7;
+
+    // The offsets of each value within a stored rank position
+    public static final int FRONT_X = 0;
+    public static final int FRONT_Y = 1;
+    public static final int MID_X = 2;
+    public static final int MID_Y = 3;
+    public static final int END_X = 4;
+    public static final int END_Y = 5;
+    public static final int LINE_TYPE = 6;
+
+    // The operations the commands are compiled to
+    private static final int OP_NONE = 0;
+    private static final int OP_TRANSLATE = 1;
+    private static final int OP_CURVE = 2;
+    private static final int OP_FLATTEN_MID = 3;
+    private static final int OP_FLATTEN_ENDS = 4;
+    private static final int OP_GATE_TURN_HEAD = 5;
+    private static final int OP_GATE_TURN_TAIL = 6;
+    private static final int OP_PINWHEEL = 7;
+    private static final int OP_EXPAND = 8;
+    private static final int OP_DIRECT = 9;
+    private static final int OP_CORNER = 10;
+    private static final int OP_FOLLOW = 11;
+
+    // The number of parameters stored for each command
+    private static final int PARAMS = 16;
+
+    // The operation of each command
+    private final int[] operations;
+
+    // The count within the move at which each command starts
+    private final int[] startCounts;
+
+    // The number of counts in each command
+    private final int[] counts;
+
+    // The precomputed parameters of each command, PARAMS floats per command
+    private final float[] params;
+
+    // The position at the start of each command followed by the end position, STRIDE floats each
+    private final float[] checkpoints;
+
+    // The trail of each follow the leader command, null for every other command
+    private final FollowPath[] paths;
+
+    /**
+     * Compiles the given commands, starting from the given position.
+     *
+     * @param start - the position of the rank at the start of the move
+     * @param commands - the commands of the rank in this move
+     * @return the compiled program
+     */
+    public static RankProgram compile(RankPosition start, List<CommandPair> commands) {
+        return new RankProgram(start, commands);
+    }
+
+    private RankProgram(RankPosition start, List<CommandPair> commands) {
+        int size = commands.size();
+        operations = new int[size];
+        startCounts = new int[size];
+        counts = new int[size];
+        params = new float[size * PARAMS];
+        checkpoints = new float[(size + 1) * STRIDE];
+        paths = new FollowPath[size];
+
+        store(start, checkpoints, 0);
+
+        int currentCount = 0;
+        for (int i = 0; i < size; i++) {
+            CommandPair command = commands.get(i);
+            startCounts[i] = currentCount;
+            counts[i] = command.getCounts();
+            compileCommand(i, command);
+
+            // the end of each command is the start of the next
+            apply(i, counts[i], checkpoints, (i + 1) * STRIDE);
+            currentCount = currentCount + command.getCounts();
+        }
+    }
+
+    /**
+     * Returns the number of counts covered by the commands of this program
+     *
+     * @return the total number of counts
+     */
+    public int getTotalCounts() {
+        int size = counts.length;
+        return size == 0 ? 0 : startCounts[size - 1] + counts[size - 1];
+    }
+
+    /**
+     * Writes the position of the rank at the given count into the output array.
+     *
+     * @param count - the number of counts into the move
+     * @param out - the array to write the position to
+     * @param offset - the index in out of the first of the STRIDE values written
+     */
+    public void evaluate(int count, float[] out, int offset) {
+        evaluate((float) count, out, offset);
+    }
+
+    /**
+     * Writes the position of the rank at the given, possibly fractional, count into the
+     * output array.  Between whole counts every command moves the rank continuously, so
+     * this can be used to draw the ranks in between beats.
+     *
+     * @param count - the number of counts into the move
+     * @param out - the array to write the position to
+     * @param offset - the index in out of the first of the STRIDE values written
+     */
+    public void evaluate(float count, float[] out, int offset) {
+        int index = commandAt(count);
+        if (index < 0) {
+            System.arraycopy(checkpoints, 0, out, offset, STRIDE);
+        }
+        else if (count - startCounts[index] >= counts[index]) {
+            System.arraycopy(checkpoints, (index + 1) * STRIDE, out, offset, STRIDE);
+        }
+        else {
+            apply(index, count - startCounts[index], out, offset);
+        }
+    }
+
+    /**
+     * Writes the positions of the marchers of the rank if it is part way through a follow
+     * the leader command at the given count, placing each one along the trail it follows.
+     *
+     * @param count - the number of counts into the move, possibly fractional
+     * @param marchers - the number of marchers in the rank
+     * @param out - the array to write the x and y coordinates of each marcher to, in turn
+     * @param offset - the index to write the first x coordinate at
+     * @return true if the marchers were placed, false if the rank is not following a trail
+     */
+    public boolean placeFollowing(float count, int marchers, float[] out, int offset) {
+        int index = commandAt(count);
+        if (index < 0 || operations[index] != OP_FOLLOW || count - startCounts[index] >= counts[index]) {
+            return false;
+        }
+        paths[index].place((count - startCounts[index]) / counts[index], marchers, out, offset);
+        return true;
+    }
+
+    /**
+     * Returns the trail of a follow the leader command in this program
+     *
+     * @param index - the index of the command
+     * @return the trail, or null if the command does not follow one
+     */
+    public FollowPath getFollowPath(int index) {
+        return paths[index];
+    }
+
+    /**
+     * Returns the trails of the follow the leader commands in this program
+     *
+     * @return the trails, in order of command
+     */
+    public List<FollowPath> getFollowPaths() {
+        List<FollowPath> followPaths = new ArrayList<FollowPath>();
+        for (FollowPath path : paths) {
+            if (path != null) {
+                followPaths.add(path);
+            }
+        }
+        return followPaths;
+    }
+
+    // Returns the index of the last command that has started by the count, or -1 if none
+    // has (a command starts strictly before the counts at which it is executed)
+    private int commandAt(float count) {
+        int low = 0;
+        int high = startCounts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startCounts[mid] < count) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Returns the position of the rank at the given count as a new RankPosition.
+     *
+     * @param count - the number of counts into the move
+     * @return the position of the rank
+     */
+    public RankPosition getPosition(int count) {
+        float[] position = new float[STRIDE];
+        evaluate(count, position, 0);
+        return toRankPosition(position, 0);
+    }
+
+    /**
+     * Creates a RankPosition from STRIDE values stored in an array.
+     *
+     * @param values - the array holding the position
+     * @param offset - the index of the first value
+     * @return a new RankPosition
+     */
+    public static RankPosition toRankPosition(float[] values, int offset) {
+        return new RankPosition(new Point(values[offset + FRONT_X], values[offset + FRONT_Y]),
+                new Point(values[offset + MID_X], values[offset + MID_Y]),
+                new Point(values[offset + END_X], values[offset + END_Y]),
+                (int) values[offset + LINE_TYPE]);
+    }
+
+    /**
+     * Stores a RankPosition as STRIDE values in an array.
+     *
+     * @param position - the position to store
+     * @param values - the array to store the position in
+     * @param offset - the index of the first value
+     */
+    public static void store(RankPosition position, float[] values, int offset) {
+        values[offset + FRONT_X] = position.getFront().X();
+        values[offset + FRONT_Y] = position.getFront().Y();
+        values[offset + MID_X] = position.getMidpoint().X();
+        values[offset + MID_Y] = position.getMidpoint().Y();
+        values[offset + END_X] = position.getEnd().X();
+        values[offset + END_Y] = position.getEnd().Y();
+        values[offset + LINE_TYPE] = position.getLineType();
+    }
+
+    /**
+     * Resolves the parameters of a command from the position at its start.  These mirror
+     * the RankPosition move functions called by Move for the same command.
+     */
+    private void compileCommand(int index, CommandPair command) {
+        int base = index * STRIDE;
+        int p = index * PARAMS;
+        float frontX = checkpoints[base + FRONT_X];
+        float frontY = checkpoints[base + FRONT_Y];
+        float midX = checkpoints[base + MID_X];
+        float midY = checkpoints[base + MID_Y];
+        float endX = checkpoints[base + END_X];
+        float endY = checkpoints[base + END_Y];
+        int lineType = (int) checkpoints[base + LINE_TYPE];
+
+        switch (command.getCommand()) {
+            case CommandPair.FM:
+                compileTranslate(index, 0, MarchingConstants.STANDARD_STEP_SIZE);
+                break;
+            case CommandPair.BM:
+                compileTranslate(index, 0, -MarchingConstants.STANDARD_STEP_SIZE);
+                break;
+            case CommandPair.RS:
+                compileTranslate(index, -MarchingConstants.STANDARD_STEP_SIZE, 0);
+                break;
+            case CommandPair.LS:
+                compileTranslate(index, MarchingConstants.STANDARD_STEP_SIZE, 0);
+                break;
+            case CommandPair.CURVE_LEFT:
+            case CommandPair.CURVE_RIGHT: {
+                float vX = frontX - endX;
+                float vY = frontY - endY;
+                operations[index] = OP_CURVE;
+                params[p] = lineType == RankPosition.LINE ? endX + vX / 2.0f : midX;
+                params[p + 1] = lineType == RankPosition.LINE ? endY + vY / 2.0f : midY;
+                params[p + 2] = vX;
+                params[p + 3] = vY;
+                params[p + 4] = (float) Math.sqrt(vX * vX + vY * vY);
+                params[p + 5] = command.getCommand() == CommandPair.CURVE_LEFT ? 1 : -1;
+                break;
+            }
+            case CommandPair.FLAT_TO_ENDS:
+                operations[index] = lineType == RankPosition.LINE ? OP_NONE : OP_FLATTEN_MID;
+                params[p] = (frontX + endX) / 2.0f - midX;
+                params[p + 1] = (frontY + endY) / 2.0f - midY;
+                break;
+            case CommandPair.FLAT_TO_MID:
+                operations[index] = lineType == RankPosition.LINE ? OP_NONE : OP_FLATTEN_ENDS;
+                params[p] = midX - (frontX + endX) / 2.0f;
+                params[p + 1] = midY - (frontY + endY) / 2.0f;
+                break;
+            case CommandPair.GTCW_HEAD:
+                compileGateTurn(index, OP_GATE_TURN_HEAD, endX, endY, frontX, frontY, midX, midY, 1);
+                break;
+            case CommandPair.GTCCW_HEAD:
+                compileGateTurn(index, OP_GATE_TURN_HEAD, endX, endY, frontX, frontY, midX, midY, -1);
+                break;
+            case CommandPair.GTCW_TAIL:
+                compileGateTurn(index, OP_GATE_TURN_TAIL, frontX, frontY, endX, endY, midX, midY, 1);
+                break;
+            case CommandPair.GTCCW_TAIL:
+                compileGateTurn(index, OP_GATE_TURN_TAIL, frontX, frontY, endX, endY, midX, midY, -1);
+                break;
+            case CommandPair.PWCW:
+            case CommandPair.PWCCW:
+                operations[index] = OP_PINWHEEL;
+                params[p] = lineType == RankPosition.LINE ? (frontX + endX) / 2.0f : midX;
+                params[p + 1] = lineType == RankPosition.LINE ? (frontY + endY) / 2.0f : midY;
+                params[p + 2] = (frontX - endX) / 2.0f;
+                params[p + 3] = (frontY - endY) / 2.0f;
+                params[p + 4] = command.getCommand() == CommandPair.PWCW ? 1 : -1;
+                break;
+            case CommandPair.EXPAND_HEAD:
+                compileExpansion(index, MarchingConstants.STANDARD_STEP_SIZE, 0.0f);
+                break;
+            case CommandPair.EXPAND_TAIL:
+                compileExpansion(index, 0.0f, MarchingConstants.STANDARD_STEP_SIZE);
+                break;
+            case CommandPair.EXPAND_BOTH:
+                compileExpansion(index, MarchingConstants.STANDARD_STEP_SIZE / 2, MarchingConstants.STANDARD_STEP_SIZE / 2);
+                break;
+            case CommandPair.CONDENSE_HEAD:
+                compileExpansion(index, -MarchingConstants.STANDARD_STEP_SIZE, 0.0f);
+                break;
+            case CommandPair.CONDENSE_TAIL:
+                compileExpansion(index, 0.0f, -MarchingConstants.STANDARD_STEP_SIZE);
+                break;
+            case CommandPair.CONDENSE_BOTH:
+                compileExpansion(index, -MarchingConstants.STANDARD_STEP_SIZE / 2, -MarchingConstants.STANDARD_STEP_SIZE / 2);
+                break;
+            case CommandPair.DTP:
+                compileDirect(index, command.getDestination(), frontX, frontY, midX, midY, endX, endY, lineType);
+                break;
+            case CommandPair.FTA:
+                if (command.getDestination() == null) {
+                    operations[index] = OP_NONE;
+                }
+                else {
+                    operations[index] = OP_FOLLOW;
+                    paths[index] = new FollowPath(toRankPosition(checkpoints, base),
+                            command.getWaypoints(), command.getDestination());
+                }
+                break;
+            case CommandPair.CORNER_LB:
+                compileCorner(index, 1, -1, 0, frontX, frontY, endX, endY, lineType);
+                break;
+            case CommandPair.CORNER_LF:
+                compileCorner(index, 1, 1, 0, frontX, frontY, endX, endY, lineType);
+                break;
+            case CommandPair.CORNER_RB:
+                compileCorner(index, -1, -1, 0, frontX, frontY, endX, endY, lineType);
+                break;
+            case CommandPair.CORNER_RF:
+                compileCorner(index, -1, 1, 0, frontX, frontY, endX, endY, lineType);
+                break;
+            case CommandPair.CORNER_FR:
+                compileCorner(index, -1, 1, 1, frontX, frontY, endX, endY, lineType);
+                break;
+            case CommandPair.CORNER_FL:
+                compileCorner(index, 1, 1, 1, frontX, frontY, endX, endY, lineType);
+                break;
+            case CommandPair.CORNER_BR:
+                compileCorner(index, -1, -1, 1, frontX, frontY, endX, endY, lineType);
+                break;
+            case CommandPair.CORNER_BL:
+                compileCorner(index, 1, -1, 1, frontX, frontY, endX, endY, lineType);
+                break;
+            default:
+                // MT and HALT do not move the rank
+                operations[index] = OP_NONE;
+                break;
+        }
+    }
+
+    private void compileTranslate(int index, float xPerCount, float yPerCount) {
+        operations[index] = OP_TRANSLATE;
+        params[index * PARAMS] = xPerCount;
+        params[index * PARAMS + 1] = yPerCount;
+    }
+
+    private void compileGateTurn(int index, int operation, float pivotX, float pivotY,
+            float moverX, float moverY, float midX, float midY, int direction) {
+        int p = index * PARAMS;
+        operations[index] = operation;
+        params[p] = pivotX;
+        params[p + 1] = pivotY;
+        params[p + 2] = moverX - pivotX;
+        params[p + 3] = moverY - pivotY;
+        params[p + 4] = midX - pivotX;
+        params[p + 5] = midY - pivotY;
+        params[p + 6] = direction;
+    }
+
+    private void compileExpansion(int index, float headPerCount, float tailPerCount) {
+        int p = index * PARAMS;
+        ArcLengthTable shape = new ArcLengthTable();
+        shape.setRank(checkpoints, index * STRIDE);
+        float length = shape.getLength();
+        float perCount = headPerCount + tailPerCount;
+        if (length == 0 || perCount == 0) {
+            operations[index] = OP_NONE;
+            return;
+        }
+
+        // the rank is scaled about the point that splits its length in the ratio of the
+        // head and tail expansions, which keeps its shape and grows it by exactly perCount
+        operations[index] = OP_EXPAND;
+        shape.pointAt(length * headPerCount / perCount, params, p);
+        params[p + 2] = perCount / length;
+    }
+
+    private void compileDirect(int index, RankPosition destination, float frontX, float frontY,
+            float midX, float midY, float endX, float endY, int lineType) {
+        if (destination == null) {
+            operations[index] = OP_NONE;
+            return;
+        }
+
+        int p = index * PARAMS;
+        int destLineType = destination.getLineType();
+        int movingLineType = (lineType == RankPosition.CURVE || destLineType == RankPosition.CURVE) ? RankPosition.CURVE : lineType;
+        if (movingLineType == RankPosition.LINE) {
+            midX = frontX * 0.5f + endX * 0.5f;
+            midY = frontY * 0.5f + endY * 0.5f;
+        }
+        else if (lineType == RankPosition.LINE) {
+            midX = endX + (frontX - endX) / 2.0f;
+            midY = endY + (frontY - endY) / 2.0f;
+        }
+
+        Point destFront = destination.getFront();
+        Point destEnd = destination.getEnd();
+        Point destMid = destination.getMidpoint();
+
+        operations[index] = OP_DIRECT;
+        params[p] = frontX;
+        params[p + 1] = frontY;
+        params[p + 2] = midX;
+        params[p + 3] = midY;
+        params[p + 4] = endX;
+        params[p + 5] = endY;
+        params[p + 6] = destFront.X();
+        params[p + 7] = destFront.Y();
+        params[p + 8] = destLineType == RankPosition.LINE ? destFront.X() * 0.5f + destEnd.X() * 0.5f : destMid.X();
+        params[p + 9] = destLineType == RankPosition.LINE ? destFront.Y() * 0.5f + destEnd.Y() * 0.5f : destMid.Y();
+        params[p + 10] = destEnd.X();
+        params[p + 11] = destEnd.Y();
+        params[p + 12] = movingLineType;
+        params[p + 13] = destLineType;
+    }
+
+    private void compileCorner(int index, int xDir, int yDir, int leadDir,
+            float frontX, float frontY, float endX, float endY, int lineType) {
+        int p = index * PARAMS;
+        float length = (float) Math.sqrt((frontX - endX) * (frontX - endX) + (frontY - endY) * (frontY - endY));
+
+        // which end pivots and which direction each end moves in
+        boolean frontPivots;
+        boolean frontMovesInY;
+        if (leadDir == 0 && frontX != endX) {
+            frontPivots = xDir * frontX > xDir * endX;
+            frontMovesInY = frontPivots;
+        }
+        else if (leadDir == 1 && frontY != endY) {
+            frontPivots = yDir * frontY > yDir * endY;
+            frontMovesInY = !frontPivots;
+        }
+        else {
+            // not physically possible
+            operations[index] = OP_NONE;
+            return;
+        }
+
+        operations[index] = OP_CORNER;
+        params[p] = frontPivots ? frontX : endX;
+        params[p + 1] = frontPivots ? frontY : endY;
+        params[p + 2] = frontMovesInY ? 0 : xDir;
+        params[p + 3] = frontMovesInY ? yDir : 0;
+        params[p + 4] = frontMovesInY ? xDir : 0;
+        params[p + 5] = frontMovesInY ? 0 : yDir;
+        params[p + 6] = length;
+        params[p + 7] = lineType != RankPosition.CURVE ? RankPosition.CORNER : RankPosition.CURVE;
+    }
+
+    /**
+     * Writes the position after the given number of counts of a command into out.
+     *
+     * @param index - the index of the command
+     * @param count - the number of counts of the command to execute, may be fractional
+     * @param out - the array to write the position to
+     * @param offset - the index in out of the first value written
+     */
+    private void apply(int index, float count, float[] out, int offset) {
+        System.arraycopy(checkpoints, index * STRIDE, out, offset, STRIDE);
+
+        int p = index * PARAMS;
+        float t = count / counts[index];
+        switch (operations[index]) {
+            case OP_TRANSLATE: {
+                float dx = params[p] * count;
+                float dy = params[p + 1] * count;
+                out[offset + FRONT_X] += dx;
+                out[offset + FRONT_Y] += dy;
+                out[offset + MID_X] += dx;
+                out[offset + MID_Y] += dy;
+                out[offset + END_X] += dx;
+                out[offset + END_Y] += dy;
+                break;
+            }
+            case OP_CURVE: {
+                float vX = params[p + 2];
+                float vY = params[p + 3];
+                float length = params[p + 4];
+                float side = params[p + 5];
+                float dist = MarchingConstants.STANDARD_STEP_SIZE * count;
+                float midX = params[p] + side * (vY * dist / length);
+                float midY = params[p + 1] - side * (vX * dist / length);
+                out[offset + MID_X] = midX;
+                out[offset + MID_Y] = midY;
+                float vmX = out[offset + FRONT_X] - midX;
+                float vmY = out[offset + FRONT_Y] - midY;
+                out[offset + LINE_TYPE] = (vX * vmY == vmX * vY) ? RankPosition.LINE : RankPosition.CURVE;
+                break;
+            }
+            case OP_FLATTEN_MID:
+                if (t == 1) {
+                    out[offset + LINE_TYPE] = RankPosition.LINE;
+                }
+                else {
+                    out[offset + MID_X] += t * params[p];
+                    out[offset + MID_Y] += t * params[p + 1];
+                }
+                break;
+            case OP_FLATTEN_ENDS:
+                out[offset + FRONT_X] += t * params[p];
+                out[offset + FRONT_Y] += t * params[p + 1];
+                out[offset + END_X] += t * params[p];
+                out[offset + END_Y] += t * params[p + 1];
+                if (t == 1) {
+                    out[offset + LINE_TYPE] = RankPosition.LINE;
+                }
+                break;
+            case OP_GATE_TURN_HEAD:
+            case OP_GATE_TURN_TAIL: {
+                float cos = RotationTable.GATE_TURN.cos(count);
+                float sin = params[p + 6] * RotationTable.GATE_TURN.sin(count);
+                int mover = operations[index] == OP_GATE_TURN_HEAD ? FRONT_X : END_X;
+                out[offset + mover] = params[p] + cos * params[p + 2] - sin * params[p + 3];
+                out[offset + mover + 1] = params[p + 1] + sin * params[p + 2] + cos * params[p + 3];
+                out[offset + MID_X] = params[p] + cos * params[p + 4] - sin * params[p + 5];
+                out[offset + MID_Y] = params[p + 1] + sin * params[p + 4] + cos * params[p + 5];
+                break;
+            }
+            case OP_PINWHEEL: {
+                float cos = RotationTable.PINWHEEL.cos(count);
+                float sin = params[p + 4] * RotationTable.PINWHEEL.sin(count);
+                float halfX = cos * params[p + 2] - sin * params[p + 3];
+                float halfY = sin * params[p + 2] + cos * params[p + 3];
+                out[offset + MID_X] = params[p];
+                out[offset + MID_Y] = params[p + 1];
+                out[offset + FRONT_X] = params[p] + halfX;
+                out[offset + FRONT_Y] = params[p + 1] + halfY;
+                out[offset + END_X] = params[p] - halfX;
+                out[offset + END_Y] = params[p + 1] - halfY;
+                break;
+            }
+            case OP_EXPAND: {
+                float scale = params[p + 2] * count;
+                out[offset + FRONT_X] += scale * (out[offset + FRONT_X] - params[p]);
+                out[offset + FRONT_Y] += scale * (out[offset + FRONT_Y] - params[p + 1]);
+                out[offset + END_X] += scale * (out[offset + END_X] - params[p]);
+                out[offset + END_Y] += scale * (out[offset + END_Y] - params[p + 1]);
+                if ((int) out[offset + LINE_TYPE] == RankPosition.LINE) {
+                    out[offset + MID_X] = (out[offset + FRONT_X] + out[offset + END_X]) / 2.0f;
+                    out[offset + MID_Y] = (out[offset + FRONT_Y] + out[offset + END_Y]) / 2.0f;
+                }
+                else {
+                    out[offset + MID_X] += scale * (out[offset + MID_X] - params[p]);
+                    out[offset + MID_Y] += scale * (out[offset + MID_Y] - params[p + 1]);
+                }
+                break;
+            }
+            case OP_DIRECT:
+                out[offset + FRONT_X] = params[p] * (1 - t) + params[p + 6] * t;
+                out[offset + FRONT_Y] = params[p + 1] * (1 - t) + params[p + 7] * t;
+                out[offset + MID_X] = params[p + 2] * (1 - t) + params[p + 8] * t;
+                out[offset + MID_Y] = params[p + 3] * (1 - t) + params[p + 9] * t;
+                out[offset + END_X] = params[p + 4] * (1 - t) + params[p + 10] * t;
+                out[offset + END_Y] = params[p + 5] * (1 - t) + params[p + 11] * t;
+                out[offset + LINE_TYPE] = t == 1 ? params[p + 13] : params[p + 12];
+                break;
+            case OP_CORNER: {
+                float distance = t * params[p + 6];
+                out[offset + MID_X] = params[p];
+                out[offset + MID_Y] = params[p + 1];
+                out[offset + FRONT_X] += distance * params[p + 2];
+                out[offset + FRONT_Y] += distance * params[p + 3];
+                out[offset + END_X] += distance * params[p + 4];
+                out[offset + END_Y] += distance * params[p + 5];
+                out[offset + LINE_TYPE] = t == 1 ? RankPosition.LINE : params[p + 7];
+                break;
+            }
+            case OP_FOLLOW:
+                paths[index].evaluate(t, out, offset);
+                break;
+            default:
+                break;
+        }
+    }
+}
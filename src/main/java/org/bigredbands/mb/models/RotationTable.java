@@ -0,0 +1,145 @@
+package org.bigredbands.mb.models;
+
+/**
+ * A table of the rotation matrices for turning a whole number of counts at a constant
+ * rate, such as the standard gate turn and pinwheel ratios.  The standard rates complete
+ * a full turn in a whole number of counts, so the table only needs to hold one period
+ * and can be looked up without calling into java.lang.Math.  The rotation for a fraction
+ * of a count is at most one count's turn, and is found from a short series rather than
+ * the library's trig functions.
+ */
+public final class RotationTable {
+
+    public static final RotationTable GATE_TURN = new RotationTable(MarchingConstants.STANDARD_GATE_TURN_RATIO);
+    public static final RotationTable PINWHEEL = new RotationTable(MarchingConstants.STANDARD_PINWHEEL_RATIO);
+
+    // The largest difference from a whole turn that is still considered periodic
+    private static final double PERIOD_TOLERANCE = 1e-5;
+
+    // The largest turn per count for which the series below is accurate to float precision
+    private static final double SERIES_LIMIT = Math.PI / 4;
+
+    // The rotation rate in radians per count
+    private final float radiansPerCount;
+
+    // cos and sin of k counts of rotation, for k from 0 to period - 1
+    private final float[] cosTable;
+    private final float[] sinTable;
+
+    // True if a fraction of a count's turn can be found with the series
+    private final boolean smallSteps;
+
+    /**
+     * Creates a rotation table for the given rate.
+     *
+     * @param radiansPerCount - the angle turned in each count, in radians
+     */
+    public RotationTable(float radiansPerCount) {
+        this.radiansPerCount = radiansPerCount;
+        this.smallSteps = Math.abs(radiansPerCount) <= SERIES_LIMIT;
+
+        double countsPerTurn = (2.0 * Math.PI) / Math.abs(radiansPerCount);
+        long period = Math.round(countsPerTurn);
+        if (radiansPerCount == 0 || period > 4096 || Math.abs(countsPerTurn - period) > PERIOD_TOLERANCE * countsPerTurn) {
+            // not periodic in whole counts, fall back to computing each rotation
+            cosTable = null;
+            sinTable = null;
+            return;
+        }
+
+        cosTable = new float[(int) period];
+        sinTable = new float[(int) period];
+        for (int k = 0; k < period; k++) {
+            cosTable[k] = (float) Math.cos((double) radiansPerCount * k);
+            sinTable[k] = (float) Math.sin((double) radiansPerCount * k);
+        }
+    }
+
+    /**
+     * Returns the rotation rate of this table
+     *
+     * @return the angle turned in each count, in radians
+     */
+    public float getRadiansPerCount() {
+        return radiansPerCount;
+    }
+
+    /**
+     * Returns the cosine of the angle turned after the given number of counts
+     *
+     * @param counts - the number of counts turned, may be negative
+     * @return the cosine of the rotation
+     */
+    public float cos(int counts) {
+        if (cosTable == null) {
+            return (float) Math.cos((double) radiansPerCount * counts);
+        }
+        return cosTable[Math.floorMod(counts, cosTable.length)];
+    }
+
+    /**
+     * Returns the sine of the angle turned after the given number of counts
+     *
+     * @param counts - the number of counts turned, may be negative
+     * @return the sine of the rotation
+     */
+    public float sin(int counts) {
+        if (sinTable == null) {
+            return (float) Math.sin((double) radiansPerCount * counts);
+        }
+        return sinTable[Math.floorMod(counts, sinTable.length)];
+    }
+
+    /**
+     * Returns the cosine of the angle turned after the given, possibly fractional, number
+     * of counts.  The whole counts are looked up and the remaining fraction of a count is
+     * added on with the angle sum identity.
+     *
+     * @param counts - the number of counts turned, may be negative
+     * @return the cosine of the rotation
+     */
+    public float cos(float counts) {
+        int whole = (int) Math.floor(counts);
+        float fraction = counts - whole;
+        if (fraction == 0) {
+            return cos(whole);
+        }
+        double angle = (double) radiansPerCount * fraction;
+        return (float) (cos(whole) * cosOfStep(angle) - sin(whole) * sinOfStep(angle));
+    }
+
+    /**
+     * Returns the sine of the angle turned after the given, possibly fractional, number
+     * of counts.
+     *
+     * @param counts - the number of counts turned, may be negative
+     * @return the sine of the rotation
+     */
+    public float sin(float counts) {
+        int whole = (int) Math.floor(counts);
+        float fraction = counts - whole;
+        if (fraction == 0) {
+            return sin(whole);
+        }
+        double angle = (double) radiansPerCount * fraction;
+        return (float) (sin(whole) * cosOfStep(angle) + cos(whole) * sinOfStep(angle));
+    }
+
+    // Returns the cosine of an angle no larger than one count's turn
+    private double cosOfStep(double angle) {
+        if (!smallSteps) {
+            return Math.cos(angle);
+        }
+        double squared = angle * angle;
+        return 1 - squared / 2 * (1 - squared / 12 * (1 - squared / 30 * (1 - squared / 56)));
+    }
+
+    // Returns the sine of an angle no larger than one count's turn
+    private double sinOfStep(double angle) {
+        if (!smallSteps) {
+            return Math.sin(angle);
+        }
+        double squared = angle * angle;
+        return angle * (1 - squared / 6 * (1 - squared / 20 * (1 - squared / 42 * (1 - squared / 72))));
+    }
+}
@@ -0,0 +1,183 @@
+package org.bigredbands.mb.models;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of where each count of the show falls, in moves, in measures and in time.
+ *
+ * Counts are numbered through the whole show from 1, so that the first count of move m is
+ * getMoveStart(m) + 1 and its last is getMoveStart(m + 1).  Count 0 is the set before the
+ * show starts, and falls in measure 0.  Measures are numbered from 1, with 4 counts in a
+ * measure until the counts hash map of the song says otherwise, and the tempo of a measure
+ * is that of the last tempo change at or before it.
+ *
+ * The move counts are stored as prefix sums, so every lookup is a binary search, and the
+ * measures and tempos are looked up in a TempoMap.  The timeline is kept by DrillInfo,
+ * which updates it as moves are added and deleted and as the song constants change.
+ */
+public class ShowTimeline {
+
+    // The number of counts before the start of each move, with one extra entry holding the
+    // total counts of the show
+    private int[] moveStarts = new int[1];
+
+    // The number of moves in the show
+    private int moveCount = 0;
+
+    // The measures and tempos of the song
+    private TempoMap tempoMap;
+
+    /**
+     * Builds the timeline of a show
+     *
+     * @param moves - the moves of the show
+     * @param tempoHashMap - a map of measure number to tempo change
+     * @param countsHashMap - a map of measure number to counts per measure
+     */
+    public ShowTimeline(List<Move> moves, Map<Integer, Integer> tempoHashMap, Map<Integer, Integer> countsHashMap) {
+        updateMoves(moves, 0);
+        updateSong(tempoHashMap, countsHashMap);
+    }
+
+    /**
+     * Brings the move counts up to date after the moves from the given index on have been
+     * added, removed or changed.  The moves before it are left as they are.
+     *
+     * @param moves - the moves of the show
+     * @param firstMove - the first move that changed
+     */
+    public void updateMoves(List<Move> moves, int firstMove) {
+        if (moveStarts.length < moves.size() + 1) {
+            moveStarts = Arrays.copyOf(moveStarts, Math.max(moves.size() + 1, moveStarts.length * 2));
+        }
+        moveCount = moves.size();
+        // moves still in their save file are not read just for their counts
+        LazyMoveList lazyMoves = moves instanceof LazyMoveList ? (LazyMoveList) moves : null;
+        for (int i = Math.max(firstMove, 0); i < moveCount; i++) {
+            moveStarts[i + 1] = moveStarts[i] + (lazyMoves != null ? lazyMoves.getCounts(i) : moves.get(i).getCounts());
+        }
+    }
+
+    /**
+     * Rebuilds the measures and tempos after the song constants have changed
+     *
+     * @param tempoHashMap - a map of measure number to tempo change
+     * @param countsHashMap - a map of measure number to counts per measure
+     */
+    public void updateSong(Map<Integer, Integer> tempoHashMap, Map<Integer, Integer> countsHashMap) {
+        tempoMap = new TempoMap(tempoHashMap, countsHashMap);
+    }
+
+    /**
+     * Returns the measures and tempos of the show, which do not change once built and so
+     * can be read from any thread
+     *
+     * @return the tempo map of the show
+     */
+    public TempoMap getTempoMap() {
+        return tempoMap;
+    }
+
+    /**
+     * Returns the number of moves in the show
+     *
+     * @return the number of moves
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the number of counts in the whole show
+     *
+     * @return the total number of counts
+     */
+    public int getTotalCounts() {
+        return moveStarts[moveCount];
+    }
+
+    /**
+     * Returns the number of counts before the start of a move
+     *
+     * @param move - the index of the move, or the number of moves for the end of the show
+     * @return the last count of the move before it
+     */
+    public int getMoveStart(int move) {
+        return moveStarts[move];
+    }
+
+    /**
+     * Returns the move a count falls in.  A move with no counts holds none of them, and the
+     * counts past the end of the show fall in the last move.
+     *
+     * @param count - the count of the show
+     * @return the index of the move, or 0 for counts before the first
+     */
+    public int getMoveAt(int count) {
+        // the last move that starts before the count
+        int low = 0;
+        int high = moveCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (moveStarts[mid] < count) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns how many counts into its move a count falls
+     *
+     * @param count - the count of the show
+     * @return the count within the move returned by getMoveAt
+     */
+    public int getLocalCount(int count) {
+        return count - moveStarts[getMoveAt(count)];
+    }
+
+    /**
+     * Returns the measure a count falls in
+     *
+     * @param count - the count of the show
+     * @return the measure, or 0 for counts before the first
+     */
+    public int getMeasureAt(int count) {
+        return tempoMap.getMeasureAt(count);
+    }
+
+    /**
+     * Returns the first count of a measure
+     *
+     * @param measure - the measure, starting at 1
+     * @return the first count of the measure, or 0 for measures before the first
+     */
+    public int getMeasureStart(int measure) {
+        return tempoMap.getMeasureStart(measure);
+    }
+
+    /**
+     * Returns the length of a count at the tempo of its measure
+     *
+     * @param count - the count of the show
+     * @return the length of the count in milliseconds
+     */
+    public int getBeatLength(int count) {
+        return tempoMap.getBeatLength(count);
+    }
+
+    /**
+     * Returns the time from the start of the show until a count is reached
+     *
+     * @param count - the count of the show
+     * @return the time in milliseconds
+     */
+    public long getMillisAt(int count) {
+        return tempoMap.getMillisAt(count);
+    }
+}
@@ -0,0 +1,271 @@
+package org.bigredbands.mb.models;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The measures and tempos of a song, laid out over the counts of the show.
+ *
+ * Measures are numbered from 1, with 4 counts in a measure until the counts hash map of the
+ * song says otherwise, and count 0 falls in measure 0.  The tempo of a measure is that of
+ * the last tempo change at or before it, 120 beats per minute if there is none, and every
+ * count is half a second long if the song has no tempo changes at all.
+ *
+ * The changes are stored as prefix sums over the counts, so that any count, measure or time
+ * is found with a binary search, and a Cursor steps through the counts one at a time without
+ * searching at all.  A TempoMap never changes once built, so the playback thread can read it
+ * without holding the controller lock.
+ */
+public final class TempoMap {
+
+    // The number of counts in a measure before the first change
+    public static final int DEFAULT_COUNTS_PER_MEASURE = 4;
+
+    // The tempo of a measure before the first change, in beats per minute
+    public static final int DEFAULT_TEMPO = 120;
+
+    // The length of a count, in milliseconds, when the song has no tempo
+    public static final int DEFAULT_BEAT_LENGTH = 500;
+
+    // The measures where the counts per measure change, the number of counts in each measure
+    // from there on, and the first count of the measure
+    private final int[] measureChanges;
+    private final int[] countsPerMeasure;
+    private final int[] measureStarts;
+
+    // The counts where the tempo changes, the length of each count from there on in
+    // milliseconds, and the time from the start of the show to that count
+    private final int[] tempoStarts;
+    private final int[] beatLengths;
+    private final long[] tempoMillis;
+
+    /**
+     * Steps through the counts of the show in order, giving the length of each.  A cursor
+     * belongs to the thread using it.
+     */
+    public final class Cursor {
+        private int count;
+
+        // the tempo change the count falls after
+        private int segment;
+
+        private Cursor(int count) {
+            this.count = count;
+            this.segment = floorIndex(tempoStarts, Math.max(count, 1));
+        }
+
+        /**
+         * Returns the count the cursor is at
+         *
+         * @return the count of the show
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the length of the count the cursor is at, and moves on to the next count
+         *
+         * @return the time until the next count, in milliseconds
+         */
+        public int nextBeatLength() {
+            int beatLength = beatLengths[segment];
+            count++;
+            if (segment + 1 < tempoStarts.length && count >= tempoStarts[segment + 1]) {
+                segment++;
+            }
+            return beatLength;
+        }
+    }
+
+    /**
+     * Builds the tempo map of a song
+     *
+     * @param tempoHashMap - a map of measure number to tempo change
+     * @param countsHashMap - a map of measure number to counts per measure
+     */
+    public TempoMap(Map<Integer, Integer> tempoHashMap, Map<Integer, Integer> countsHashMap) {
+        // measures before the first are ignored, and a change at the first replaces the default
+        NavigableMap<Integer, Integer> counts = new TreeMap<Integer, Integer>(countsHashMap).tailMap(1, true);
+        int size = counts.containsKey(1) ? counts.size() : counts.size() + 1;
+        measureChanges = new int[size];
+        countsPerMeasure = new int[size];
+        measureStarts = new int[size];
+
+        measureChanges[0] = 1;
+        countsPerMeasure[0] = DEFAULT_COUNTS_PER_MEASURE;
+        measureStarts[0] = 1;
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            if (entry.getKey() > 1) {
+                i++;
+                measureChanges[i] = entry.getKey();
+                measureStarts[i] = measureStarts[i - 1] + (measureChanges[i] - measureChanges[i - 1]) * countsPerMeasure[i - 1];
+            }
+            // a measure needs at least one count for the counts after it to be reached
+            countsPerMeasure[i] = Math.max(entry.getValue(), 1);
+        }
+
+        // every tempo change at or before the first measure applies from the start
+        TreeMap<Integer, Integer> tempos = new TreeMap<Integer, Integer>(tempoHashMap);
+        Map.Entry<Integer, Integer> first = tempos.floorEntry(1);
+        NavigableMap<Integer, Integer> later = tempos.tailMap(1, false);
+        tempoStarts = new int[later.size() + 1];
+        beatLengths = new int[later.size() + 1];
+        tempoMillis = new long[later.size() + 1];
+
+        tempoStarts[0] = 1;
+        if (tempos.isEmpty()) {
+            beatLengths[0] = DEFAULT_BEAT_LENGTH;
+        }
+        else {
+            beatLengths[0] = getBeatLengthOfTempo(first == null ? DEFAULT_TEMPO : first.getValue());
+        }
+        // the first count is reached one count after the start of the show
+        tempoMillis[0] = beatLengths[0];
+        int j = 0;
+        for (Map.Entry<Integer, Integer> entry : later.entrySet()) {
+            j++;
+            tempoStarts[j] = getMeasureStart(entry.getKey());
+            beatLengths[j] = getBeatLengthOfTempo(entry.getValue());
+            tempoMillis[j] = tempoMillis[j - 1] + (long) (tempoStarts[j] - tempoStarts[j - 1]) * beatLengths[j - 1];
+        }
+    }
+
+    private static int getBeatLengthOfTempo(int tempo) {
+        if (tempo <= 0) {
+            return DEFAULT_BEAT_LENGTH;
+        }
+        return 60000 / tempo;
+    }
+
+    /**
+     * Returns a cursor that steps through the counts from the given one
+     *
+     * @param count - the first count of the cursor
+     * @return a new cursor at the count
+     */
+    public Cursor cursor(int count) {
+        return new Cursor(count);
+    }
+
+    /**
+     * Returns the measure a count falls in
+     *
+     * @param count - the count of the show
+     * @return the measure, or 0 for counts before the first
+     */
+    public int getMeasureAt(int count) {
+        if (count < 1) {
+            return 0;
+        }
+        int i = floorIndex(measureStarts, count);
+        return measureChanges[i] + (count - measureStarts[i]) / countsPerMeasure[i];
+    }
+
+    /**
+     * Returns the first count of a measure
+     *
+     * @param measure - the measure, starting at 1
+     * @return the first count of the measure, or 0 for measures before the first
+     */
+    public int getMeasureStart(int measure) {
+        if (measure < 1) {
+            return 0;
+        }
+        int i = floorIndex(measureChanges, measure);
+        return measureStarts[i] + (measure - measureChanges[i]) * countsPerMeasure[i];
+    }
+
+    /**
+     * Returns the length of a count at the tempo of its measure.  Count 0 takes the tempo of
+     * the first measure.
+     *
+     * @param count - the count of the show
+     * @return the length of the count in milliseconds
+     */
+    public int getBeatLength(int count) {
+        return beatLengths[floorIndex(tempoStarts, Math.max(count, 1))];
+    }
+
+    /**
+     * Returns the time from the start of the show until a count is reached, counting the
+     * length of every count before it
+     *
+     * @param count - the count of the show
+     * @return the time in milliseconds
+     */
+    public long getMillisAt(int count) {
+        if (count < 1) {
+            return 0;
+        }
+        int i = floorIndex(tempoStarts, count);
+        return tempoMillis[i] + (long) (count - tempoStarts[i]) * beatLengths[i];
+    }
+
+    /**
+     * Returns the time from the start of the show until a point partway through a count,
+     * taking the fraction of that count at its own tempo
+     *
+     * @param count - the count of the show, possibly fractional
+     * @return the time in milliseconds
+     */
+    public double getMillisAt(float count) {
+        if (count <= 0) {
+            return 0;
+        }
+        int whole = (int) count;
+        return getMillisAt(whole) + (count - whole) * (double) getBeatLength(whole);
+    }
+
+    /**
+     * Returns the count reached at a time from the start of the show, the inverse of
+     * getMillisAt
+     *
+     * @param millis - the time in milliseconds
+     * @return the count of the show, possibly fractional
+     */
+    public float getCountAt(double millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        if (millis < tempoMillis[0]) {
+            return (float) (millis / beatLengths[0]);
+        }
+        int i = floorIndex(tempoMillis, millis);
+        return (float) (tempoStarts[i] + (millis - tempoMillis[i]) / beatLengths[i]);
+    }
+
+    // Returns the index of the last value at or below the key, given sorted values starting
+    // at or below it
+    private static int floorIndex(int[] values, int key) {
+        int low = 0;
+        int high = values.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (values[mid] <= key) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int floorIndex(long[] values, double key) {
+        int low = 0;
+        int high = values.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (values[mid] <= key) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -19,6 +19,7 @@ public abstract class XMLConstants {
     public static String COUNTS= "counts";
     public static String COMMAND_TYPE = "command-type";
     public static String DESTINATION = "destination";
+    public static String WAYPOINTS = "waypoints";
     public static String INDEX = "index";
     public static String FRONT_POINT = "front-point";
     public static String POINT_ONE = "point-one";
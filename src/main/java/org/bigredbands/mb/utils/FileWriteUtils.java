@@ -0,0 +1,61 @@
+package org.bigredbands.mb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a file as a whole or not at all: the contents are written to a temporary file
+ * next to it, flushed to the disk and then moved over it, so a failed or interrupted save
+ * leaves the file as it was, and anything still reading the old file keeps reading it.
+ */
+public class FileWriteUtils {
+
+    /**
+     * Writes the contents of a file to a channel
+     */
+    public interface ChannelWriter {
+
+        /**
+         * Writes the whole contents of the file.
+         *
+         * @param channel - the channel to write to, positioned at the start of an empty file
+         * @throws IOException
+         */
+        public void write(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Replaces a file, or creates it if it does not exist.
+     *
+     * @param file - the file to write
+     * @param writer - writes the new contents of the file
+     * @throws IOException if the file cannot be written, in which case it is left unchanged
+     */
+    public static void replace(File file, ChannelWriter writer) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                writer.write(channel);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
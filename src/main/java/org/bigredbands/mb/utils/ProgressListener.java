@@ -0,0 +1,15 @@
+package org.bigredbands.mb.utils;
+
+/**
+ * Told how far along a long running task is, on the thread running the task.
+ */
+public interface ProgressListener {
+
+    /**
+     * Reports the progress of the task.
+     *
+     * @param done - the number of steps done
+     * @param total - the number of steps in the whole task
+     */
+    public void progress(int done, int total);
+}
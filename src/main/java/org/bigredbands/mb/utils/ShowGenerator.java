@@ -0,0 +1,363 @@
+package org.bigredbands.mb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.bigredbands.mb.controllers.XMLGenerator;
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.views.FootballField;
+
+/**
+ * Builds made up shows of any size, for finding how large a show the program copes with.
+ *
+ * The ranks start out in a block on the field.  In every move they march in groups that
+ * share their commands, as sections do in a real show, and between them use every type of
+ * command along with tempo and meter changes in the song.  A rank whose commands would
+ * take it off the field is instead sent back to its place in the block by a direct to point
+ * or a follow the leader, so that every show generated can be saved and loaded again.
+ *
+ * The same seed, rank count and move count always give the same show.  A show can be
+ * written out as it is made, one move at a time, so shows far larger than the heap would
+ * hold whole can still be saved.
+ *
+ * From the command line:  ShowGenerator file.pnd [ranks] [moves] [seed]
+ */
+public class ShowGenerator {
+
+    // The seed used if none is given
+    public static final long DEFAULT_SEED = 2718;
+
+    // The shows generated from the command line if no size is given, about a real show
+    public static final int DEFAULT_RANKS = 40;
+    public static final int DEFAULT_MOVES = 80;
+
+    // The lengths of a move, in counts
+    private static final int[] MOVE_COUNTS = { 8, 8, 16, 16, 16, 24, 32 };
+
+    // The lengths of a command, in counts
+    private static final int[] COMMAND_COUNTS = { 2, 4, 4, 8 };
+
+    // The number of ranks that march the same commands in a move
+    private static final int GROUP_SIZE = 4;
+
+    // The chance a group is sent back to its place in the block in a move
+    private static final float RETURN_CHANCE = 0.08f;
+
+    // Commands that can be followed by any other
+    private static final int[] SINGLE_COMMANDS = { CommandPair.MT, CommandPair.HALT, CommandPair.FM,
+            CommandPair.BM, CommandPair.RS, CommandPair.LS, CommandPair.GTCW_HEAD, CommandPair.GTCW_TAIL,
+            CommandPair.GTCCW_HEAD, CommandPair.GTCCW_TAIL, CommandPair.PWCW, CommandPair.PWCCW };
+
+    // Commands that bend or stretch the rank, each followed by one that brings it back to a
+    // straight line of the same length
+    private static final int[][] PAIRED_COMMANDS = {
+            { CommandPair.CURVE_RIGHT, CommandPair.FLAT_TO_ENDS },
+            { CommandPair.CURVE_LEFT, CommandPair.FLAT_TO_MID },
+            { CommandPair.EXPAND_HEAD, CommandPair.CONDENSE_HEAD },
+            { CommandPair.EXPAND_TAIL, CommandPair.CONDENSE_TAIL },
+            { CommandPair.EXPAND_BOTH, CommandPair.CONDENSE_BOTH } };
+
+    // Commands that leave the rank with a corner, only given as the last command of a move
+    private static final int[] CORNER_COMMANDS = { CommandPair.CORNER_LB, CommandPair.CORNER_LF,
+            CommandPair.CORNER_RB, CommandPair.CORNER_RF, CommandPair.CORNER_FR, CommandPair.CORNER_FL,
+            CommandPair.CORNER_BR, CommandPair.CORNER_BL };
+
+    // The tempos the song changes between, in beats per minute
+    private static final int[] TEMPOS = { 72, 96, 108, 120, 132, 144, 160, 176 };
+
+    // The counts per measure the song changes between
+    private static final int[] METERS = { 2, 3, 4, 4, 4, 6 };
+
+    // The space left between the block and the edge of the field, in yards
+    private static final float MARGIN = 2;
+
+    private final long seed;
+
+    public ShowGenerator() {
+        this(DEFAULT_SEED);
+    }
+
+    /**
+     * Creates a generator whose shows are built from the given seed
+     *
+     * @param seed - the seed of the random choices made
+     */
+    public ShowGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Builds a show
+     *
+     * @param rankCount - the number of ranks
+     * @param moveCount - the number of moves, including the opening set
+     * @return the show, with its positions up to date
+     */
+    public DrillInfo generate(int rankCount, int moveCount) {
+        Random random = new Random(seed);
+        int[] moveCounts = createMoveCounts(random, moveCount);
+        DrillInfo drillInfo = createSong(random, rankCount, moveCounts);
+        Iterator<Move> moves = new MoveMaker(random, rankCount, moveCounts);
+        while (moves.hasNext()) {
+            drillInfo.getMoves().add(moves.next());
+        }
+        return drillInfo;
+    }
+
+    /**
+     * Builds a show and saves it as a project file through XMLGenerator, one move at a time,
+     * so that only the move being written is held in memory.  The file holds the same show
+     * generate would build.
+     *
+     * @param rankCount - the number of ranks
+     * @param moveCount - the number of moves, including the opening set
+     * @param file - the file to save the show to
+     * @return the number of counts in the show
+     * @throws IOException if the file cannot be written
+     */
+    public int write(int rankCount, int moveCount, File file) throws IOException {
+        Random random = new Random(seed);
+        int[] moveCounts = createMoveCounts(random, moveCount);
+        DrillInfo song = createSong(random, rankCount, moveCounts);
+        new XMLGenerator().save(song, new MoveMaker(random, rankCount, moveCounts), file);
+
+        int totalCounts = 0;
+        for (int counts : moveCounts) {
+            totalCounts += counts;
+        }
+        return totalCounts;
+    }
+
+    /**
+     * Makes the moves of a show in order, each starting from where the last one ends, and
+     * keeping nothing of a move once the next one has been made
+     */
+    private static class MoveMaker implements Iterator<Move> {
+        private final Random random;
+        private final int rankCount;
+        private final int[] moveCounts;
+        private final HashMap<String, RankPosition> homePositions;
+
+        // The last move made, or null before the opening set
+        private Move move;
+        private int moveNumber;
+
+        private MoveMaker(Random random, int rankCount, int[] moveCounts) {
+            this.random = random;
+            this.rankCount = rankCount;
+            this.moveCounts = moveCounts;
+            this.homePositions = createBlock(rankCount);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return moveNumber < moveCounts.length;
+        }
+
+        @Override
+        public Move next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (move == null) {
+                move = new Move(0, homePositions);
+            }
+            else {
+                move = new Move(moveCounts[moveNumber], move.getEndPositions());
+                for (int first = 0; first < rankCount; first += GROUP_SIZE) {
+                    List<CommandPair> commands = random.nextFloat() < RETURN_CHANCE ? null : createCommands(random, move.getCounts());
+                    boolean followTheLeader = random.nextBoolean();
+                    for (int r = first; r < Math.min(first + GROUP_SIZE, rankCount); r++) {
+                        String rankName = getRankName(r);
+                        if (commands == null || !addCommands(move, rankName, commands)) {
+                            returnHome(random, move, rankName, homePositions.get(rankName), followTheLeader);
+                        }
+                    }
+                }
+            }
+            moveNumber++;
+            return move;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // Picks the length of every move, the opening set having none
+    private static int[] createMoveCounts(Random random, int moveCount) {
+        int[] moveCounts = new int[Math.max(0, moveCount)];
+        for (int i = 1; i < moveCounts.length; i++) {
+            moveCounts[i] = MOVE_COUNTS[random.nextInt(MOVE_COUNTS.length)];
+        }
+        return moveCounts;
+    }
+
+    /**
+     * Returns the name of a rank of a generated show: A to Z, then AA to ZZ and so on
+     *
+     * @param rank - the number of the rank, from 0
+     * @return the name of the rank
+     */
+    public static String getRankName(int rank) {
+        String name = "";
+        for (int n = rank + 1; n > 0; n = (n - 1) / 26) {
+            name = (char) ('A' + (n - 1) % 26) + name;
+        }
+        return name;
+    }
+
+    // Lays the ranks out in rows across the field, front to the right
+    private static HashMap<String, RankPosition> createBlock(int rankCount) {
+        float width = FootballField.FIELD_LENGTH - 2 * MARGIN;
+        float height = FootballField.FIELD_HEIGHT - 2 * MARGIN;
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(rankCount * width / height)));
+        int rows = Math.max(1, (rankCount + columns - 1) / columns);
+        float columnWidth = width / columns;
+        float rowHeight = height / rows;
+        float length = Math.min(6, columnWidth * 0.75f);
+
+        HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+        for (int r = 0; r < rankCount; r++) {
+            float x = MARGIN + (r % columns) * columnWidth + (columnWidth - length) / 2;
+            float y = MARGIN + (r / columns) * rowHeight + rowHeight / 2;
+            positions.put(getRankName(r), new RankPosition(new Point(x + length, y), new Point(x, y)));
+        }
+        return positions;
+    }
+
+    // Makes up the commands of a group of ranks for a move
+    private static List<CommandPair> createCommands(Random random, int moveCounts) {
+        List<CommandPair> commands = new ArrayList<CommandPair>();
+        int remaining = moveCounts;
+        while (remaining > 0) {
+            int counts = Math.min(remaining, COMMAND_COUNTS[random.nextInt(COMMAND_COUNTS.length)]);
+            int choice = random.nextInt(4);
+            if (choice == 0 && 2 * counts <= remaining) {
+                int[] pair = PAIRED_COMMANDS[random.nextInt(PAIRED_COMMANDS.length)];
+                commands.add(new CommandPair(pair[0], counts));
+                commands.add(new CommandPair(pair[1], counts));
+                remaining -= 2 * counts;
+            }
+            else if (choice == 1 && counts == remaining) {
+                commands.add(new CommandPair(CORNER_COMMANDS[random.nextInt(CORNER_COMMANDS.length)], counts));
+                remaining -= counts;
+            }
+            else {
+                commands.add(new CommandPair(SINGLE_COMMANDS[random.nextInt(SINGLE_COMMANDS.length)], counts));
+                remaining -= counts;
+            }
+        }
+        return commands;
+    }
+
+    // Gives a rank the commands of its group, taking them back off and returning false if
+    // they would leave it off the field
+    private static boolean addCommands(Move move, String rankName, List<CommandPair> commands) {
+        for (CommandPair command : commands) {
+            move.addCommand(rankName, new CommandPair(command.getCommand(), command.getCounts()));
+        }
+        if (isOnField(move.getEndPositions().get(rankName))) {
+            return true;
+        }
+        int[] indices = new int[move.getCommands().get(rankName).size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        move.removeCommands(rankName, indices);
+        return false;
+    }
+
+    // Sends a rank back to its place in the block over the whole move
+    private static void returnHome(Random random, Move move, String rankName, RankPosition home, boolean followTheLeader) {
+        CommandPair command;
+        if (followTheLeader) {
+            command = new CommandPair(CommandPair.FTA, move.getCounts());
+            Point front = move.getStartPositions().get(rankName).getFront();
+            List<Point> waypoints = new ArrayList<Point>();
+            waypoints.add(new Point(
+                    clamp((front.X() + home.getFront().X()) / 2 + random.nextFloat() * 8 - 4, FootballField.FIELD_LENGTH),
+                    clamp((front.Y() + home.getFront().Y()) / 2 + random.nextFloat() * 8 - 4, FootballField.FIELD_HEIGHT)));
+            command.setWaypoints(waypoints);
+        }
+        else {
+            command = new CommandPair(CommandPair.DTP, move.getCounts());
+        }
+        command.setDestination(new RankPosition(home));
+        move.addCommand(rankName, command);
+    }
+
+    private static float clamp(float value, float limit) {
+        return Math.max(MARGIN, Math.min(limit - MARGIN, value));
+    }
+
+    private static boolean isOnField(RankPosition position) {
+        for (Point point : new Point[] { position.getFront(), position.getMidpoint(), position.getEnd() }) {
+            if (point.X() < 0 || point.X() > FootballField.FIELD_LENGTH
+                    || point.Y() < 0 || point.Y() > FootballField.FIELD_HEIGHT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Makes a show holding the song name, tempo changes and meter changes but no moves yet
+    private DrillInfo createSong(Random random, int rankCount, int[] moveCounts) {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.setSongName("Generated show " + rankCount + "x" + moveCounts.length + " #" + seed);
+        drillInfo.getTempoHashMap().put(1, TEMPOS[random.nextInt(TEMPOS.length)]);
+        drillInfo.getCountsHashMap().put(1, 4);
+
+        // measures are taken as four counts long, so the changes fall within the show
+        int totalCounts = 0;
+        for (int counts : moveCounts) {
+            totalCounts += counts;
+        }
+        int measures = Math.max(1, totalCounts / 4);
+        for (int measure = 9 + random.nextInt(16); measure <= measures; measure += 8 + random.nextInt(24)) {
+            drillInfo.getTempoHashMap().put(measure, TEMPOS[random.nextInt(TEMPOS.length)]);
+        }
+        for (int measure = 17 + random.nextInt(32); measure <= measures; measure += 16 + random.nextInt(48)) {
+            drillInfo.getCountsHashMap().put(measure, METERS[random.nextInt(METERS.length)]);
+        }
+        return drillInfo;
+    }
+
+    /**
+     * Writes a generated show to a project file
+     *
+     * @param args - the file to write, then optionally the number of ranks, the number of
+     *        moves and the seed
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: ShowGenerator file.pnd [ranks] [moves] [seed]");
+            System.exit(1);
+        }
+        int rankCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RANKS;
+        int moveCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MOVES;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+
+        File file = new File(args[0]);
+        int counts;
+        try {
+            counts = new ShowGenerator(seed).write(rankCount, moveCount, file);
+        } catch (IOException e) {
+            System.err.println("Could not write " + file + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("Wrote " + rankCount + " ranks, " + moveCount + " moves and " + counts + " counts to " + file);
+    }
+}
@@ -0,0 +1,63 @@
+package org.bigredbands.mb.utils;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes text the way the DOM Transformer does, so a project saved through an
+ * XMLStreamWriter is byte for byte the same as one saved through XMLGenerator.
+ */
+public class XMLStreamUtils {
+
+    /**
+     * Writes an element holding only text, as an empty element if there is no text
+     *
+     * @param writer - the writer to write to
+     * @param name - the name of the element
+     * @param text - the text inside the element
+     * @throws XMLStreamException
+     */
+    public static void writeTextElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+        if (text.isEmpty()) {
+            writer.writeEmptyElement(name);
+            return;
+        }
+        writer.writeStartElement(name);
+        writeText(writer, text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes text, escaping &amp;, &lt; and &gt; and writing control characters and
+     * characters outside the basic multilingual plane as character references
+     *
+     * @param writer - the writer to write to
+     * @param text - the text to write
+     * @throws XMLStreamException
+     */
+    public static void writeText(XMLStreamWriter writer, String text) throws XMLStreamException {
+        int runStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            int length = Character.charCount(codePoint);
+            if (needsReference(codePoint)) {
+                if (runStart < i) {
+                    writer.writeCharacters(text.substring(runStart, i));
+                }
+                writer.writeEntityRef("#" + codePoint);
+                runStart = i + length;
+            }
+            i += length;
+        }
+        if (runStart < text.length()) {
+            writer.writeCharacters(runStart == 0 ? text : text.substring(runStart));
+        }
+    }
+
+    private static boolean needsReference(int codePoint) {
+        return (codePoint < 0x20 && codePoint != '\t' && codePoint != '\n')
+                || (codePoint >= 0x7f && codePoint <= 0x9f)
+                || codePoint > 0xffff;
+    }
+}
@@ -21,8 +21,10 @@ import java.util.HashMap;
 import javax.swing.JPanel;
 
 import org.bigredbands.mb.models.Field;
+import org.bigredbands.mb.models.MoveState;
 import org.bigredbands.mb.models.Point;
 import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.RankProgram;
 
 /**
  * This class represents the generic "field view" used in rendering the editor,
@@ -45,6 +47,25 @@ public abstract class FieldView extends JPanel {
 
     public abstract HashMap<String, RankPosition> getRankPositions();
 
+    /**
+     * Returns the state of the ranks to draw when they are laid out in arrays, in which
+     * case it is drawn instead of the rank positions.
+     *
+     * @return the state of the ranks, or null to draw the rank positions
+     */
+    public MoveState getRankState() {
+        return null;
+    }
+
+    /**
+     * Returns the positions of the ranks in the rank state, as evaluated by it
+     *
+     * @return the evaluated positions, or null if there is no rank state
+     */
+    public float[] getRankValues() {
+        return null;
+    }
+
     public void setFieldStyle(FieldStyle fieldStyle) {
         this.fieldStyle = fieldStyle;
     }
@@ -255,7 +276,7 @@ public abstract class FieldView extends JPanel {
         g.fill(arrowhead);
     }
 
-    private void drawRank(Graphics2D g, String rankName, RankPosition rank) {
+    private void drawRank(Graphics2D g, String rankName, float[] rank, int offset) {
         // TODO: somewhere in either the rank positioning or the grid snapping
         // code, there is a 0.6ft error in the y-axis coordinate. If we wanted
         // to correct for this, we'd add 0.6 to the fieldOffset y-axis value.
@@ -272,19 +293,23 @@ public abstract class FieldView extends JPanel {
         g.setColor(fieldStyle.getRankColor());
 
         // TODO: convert rank scale to feet (avoid the multiply())
-        Point start = rank.getFront().multiply(3.0f).add(fieldOffset);
-        Point midpoint = rank.getMidpoint().multiply(3.0f).add(fieldOffset);
-        Point end = rank.getEnd().multiply(3.0f).add(fieldOffset);
+        Point start = new Point(rank[offset + RankProgram.FRONT_X], rank[offset + RankProgram.FRONT_Y])
+            .multiply(3.0f).add(fieldOffset);
+        Point midpoint = new Point(rank[offset + RankProgram.MID_X], rank[offset + RankProgram.MID_Y])
+            .multiply(3.0f).add(fieldOffset);
+        Point end = new Point(rank[offset + RankProgram.END_X], rank[offset + RankProgram.END_Y])
+            .multiply(3.0f).add(fieldOffset);
 
         Point arrowDir;
-        switch (rank.getLineType()) {
+        switch ((int) rank[offset + RankProgram.LINE_TYPE]) {
             case RankPosition.LINE:
                 g.draw(new Line2D.Float(start, end));
                 arrowDir = start.subtract(end);
                 break;
             case RankPosition.CURVE:
                 // TODO: convert rank scale to feet (avoid the multiply())
-                Point control = rank.getCurveControlPoint().multiply(3.0f).add(fieldOffset);
+                Point linearCenter = start.interpolate(end, 0.5f);
+                Point control = linearCenter.add(midpoint.subtract(linearCenter).multiply(2.0f));
                 g.draw(new QuadCurve2D.Float(start.X(), start.Y(),
                     control.X(), control.Y(),
                     end.X(), end.Y()));
@@ -328,13 +353,24 @@ public abstract class FieldView extends JPanel {
      * This function draws the ranks (line, curve, and corner) to the canvas.
      */
     private void drawRanks(Graphics2D g) {
+        MoveState rankState = getRankState();
+        if (rankState != null) {
+            float[] rankValues = getRankValues();
+            for (int rankId = 0; rankId < rankState.getRankCount(); rankId++) {
+                drawRank(g, rankState.getRankName(rankId), rankValues, rankId * RankProgram.STRIDE);
+            }
+            return;
+        }
+
         HashMap<String, RankPosition> rankPositions = getRankPositions();
         if (rankPositions == null) {
             return;
         }
 
+        float[] rankValues = new float[RankProgram.STRIDE];
         for (String rankName : rankPositions.keySet()) {
-            drawRank(g, rankName, rankPositions.get(rankName));
+            RankProgram.store(rankPositions.get(rankName), rankValues, 0);
+            drawRank(g, rankName, rankValues, 0);
         }
     }
 }
@@ -21,8 +21,12 @@ import java.util.HashSet;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
+import org.bigredbands.mb.models.CurveTable;
+import org.bigredbands.mb.models.FollowPath;
+import org.bigredbands.mb.models.MoveState;
 import org.bigredbands.mb.models.Point;
 import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.RankProgram;
 
 /**
  * This class handles the UI of the football field where ranks are
@@ -48,6 +52,9 @@ public class FootballField extends JPanel {
     //TODO: currently clearing and reading everything every paint.  not very efficent.  may need to change later.
     private HashMap<String, Shape> lineMap = new HashMap<String, Shape>();
 
+    //the positions of the ranks during playback, reused from frame to frame
+    private float[] playbackValues = new float[0];
+
     private int topLeftX = 0;
     private int topLeftY = 0;
 
@@ -73,6 +80,10 @@ public class FootballField extends JPanel {
     private int xDragOrigin;
     private int yDragOrigin;
 
+    // Whether ranks have been dragged on move 0 since the mouse was pressed, so that their
+    // initial positions are set once the drag ends
+    private boolean initialPositionsDragged = false;
+
     //used to give the mouse position when drawing an oval under the mouse (such as when creating  rank).  useful for snapping.
     private int xMouseOval = -1;
     private int yMouseOval = -1;
@@ -192,7 +203,12 @@ public class FootballField extends JPanel {
             drawFieldLines(g, dim, MARGIN, expandableMarginWidth, expandableMarginHeight);
             drawHashes(g, topLeftX, topLeftY, scaleFactor);
             if (mainView.isPlaybackRunning()) {
-                lineMap = createShapes(mainView.getPlaybackPositions(), topLeftX, topLeftY, scaleFactor); //TODO: replace this with playback positions
+                MoveState playbackState = mainView.getPlaybackState();
+                if (playbackValues.length < playbackState.getValueCount()) {
+                    playbackValues = new float[playbackState.getValueCount()];
+                }
+                playbackState.evaluate(mainView.getPlaybackCount(), playbackValues);
+                lineMap = createShapes(playbackState, playbackValues, topLeftX, topLeftY, scaleFactor);
             }
             else {
                 lineMap = createShapes(mainView.getRankPositions(), topLeftX, topLeftY, scaleFactor);
@@ -200,6 +216,7 @@ public class FootballField extends JPanel {
             drawRanks(lineMap,
                     createShapes(transientRanks, topLeftX, topLeftY, scaleFactor),
                     mainView.getSelectedRanks(),
+                    mainView.isPlaybackRunning() ? null : mainView.getCollidingRanks(),
                     g,
                     topLeftX,
                     topLeftY,
@@ -217,8 +234,13 @@ public class FootballField extends JPanel {
                 drawDTP(g,DTPShape);
             }
             if(addFTARankFlag && (mainView.getFTARank()!=null)) {
-                Shape DTPShape = createShape(mainView.getDTPRank(),topLeftX,topLeftY,scaleFactor);
-                drawDTP(g,DTPShape);
+                Shape FTAShape = createShape(mainView.getFTARank(),topLeftX,topLeftY,scaleFactor);
+                drawDTP(g,FTAShape);
+            }
+            if (!mainView.isPlaybackRunning()) {
+                for (FollowPath path : mainView.getFollowPaths()) {
+                    drawFTAPath(g, createShape(path, topLeftX, topLeftY, scaleFactor));
+                }
             }
         }
         //else, create a static football field for the specified move number
@@ -247,6 +269,7 @@ public class FootballField extends JPanel {
             drawRanks(lineMap,
                     new HashMap<String, Shape>(),
                     mainView.getSelectedRanks(),
+                    null,
                     g,
                     (int) (topLeftX + FootballField.END_ZONE_LENGTH*scaleFactor),
                     topLeftY,
@@ -487,53 +510,37 @@ public class FootballField extends JPanel {
       * @return
       */
      public static HashMap<String, Shape> createShapes(HashMap<String, RankPosition> rankHash, int topLeftX, int topLeftY, float scaleFactor) {
-         //In terms of rank positioning, (0,0) is the top left corner of field Lines
-        //initialize for loop variables
-
-        // TODO: redo this using Path2D(?)
-        float x1, x2, x3, x4;
-        float y1, y2, y3, y4;
-        RankPosition locus;
         HashMap<String, Shape> shapeMap = new HashMap<String, Shape>();
+        float[] values = new float[RankProgram.STRIDE];
 
         //for each entry in the hashmap, draw the rank
         for(String rankName: rankHash.keySet()){
-            //define points for each line
-            locus = rankHash.get(rankName);
-
-            x1 = locus.getFront().X();
-            y1 = locus.getFront().Y();
-            x4 = locus.getEnd().X();
-            y4 = locus.getEnd().Y();
-
-            switch (locus.getLineType()) {
-                case RankPosition.LINE:
-                    shapeMap.put(rankName, new Line2D.Float(
-                            topLeftX + x1*scaleFactor,
-                            topLeftY + y1*scaleFactor,
-                            topLeftX + x4*scaleFactor,
-                            topLeftY + y4*scaleFactor));
-                    break;
-                case RankPosition.CURVE:
-                    float xMid=locus.getMidpoint().X();
-                    float yMid=locus.getMidpoint().Y();
-                    x2=(x1+x4)/2+2*(xMid-(x1+x4)/2);
-                    y2=(y1+y4)/2+2*(yMid-(y1+y4)/2);
-                    shapeMap.put(rankName, new QuadCurve2D.Float(topLeftX + x1*scaleFactor, topLeftY + y1*scaleFactor, topLeftX + x2*scaleFactor, topLeftY + y2*scaleFactor, topLeftX + x4*scaleFactor, topLeftY + y4*scaleFactor));
-                    break;
-                case RankPosition.CORNER:
-                    xMid=locus.getMidpoint().X();
-                    yMid=locus.getMidpoint().Y();
-                    Path2D cornerPath = new Path2D.Float();
-
-                    cornerPath.moveTo(topLeftX + x1*scaleFactor,topLeftY + y1*scaleFactor);
-                    cornerPath.lineTo(topLeftX + xMid*scaleFactor,topLeftY + yMid*scaleFactor);
-                    cornerPath.lineTo(topLeftX + x4*scaleFactor,topLeftY + y4*scaleFactor);
-                    shapeMap.put(rankName,  cornerPath);
-                    break;
-                default:
-                    System.out.println("TRIED CREATE SOMETHING THAT WASN'T A LINE, CURVE, OR CORNER");
-                    break;
+            RankProgram.store(rankHash.get(rankName), values, 0);
+            Shape shape = createShape(values, 0, topLeftX, topLeftY, scaleFactor);
+            if (shape != null) {
+                shapeMap.put(rankName, shape);
+            }
+        }
+
+        return shapeMap;
+     }
+
+     /**
+      * Converts the evaluated positions of every rank in a move into shapes that can be drawn on the screen
+      * @param rankState - the state of the move the positions were evaluated from
+      * @param values - the positions written by evaluating the move state
+      * @param topLeftX - the top left x coordinate of the football field
+      * @param topLeftY - the top left y coordinate of the football field
+      * @param scaleFactor - converts yards to pixels
+      * @return a hashmap mapping each rank name to its shape
+      */
+     public static HashMap<String, Shape> createShapes(MoveState rankState, float[] values, int topLeftX, int topLeftY, float scaleFactor) {
+        HashMap<String, Shape> shapeMap = new HashMap<String, Shape>();
+
+        for (int rankId = 0; rankId < rankState.getRankCount(); rankId++) {
+            Shape shape = createShape(values, rankId * RankProgram.STRIDE, topLeftX, topLeftY, scaleFactor);
+            if (shape != null) {
+                shapeMap.put(rankState.getRankName(rankId), shape);
             }
         }
 
@@ -541,21 +548,60 @@ public class FootballField extends JPanel {
      }
 
      public static Shape createShape(RankPosition locus, int topLeftX, int topLeftY, float scaleFactor) {
+        float[] values = new float[RankProgram.STRIDE];
+        RankProgram.store(locus, values, 0);
+        return createShape(values, 0, topLeftX, topLeftY, scaleFactor);
+     }
+
+     /**
+      * Converts the trail of a follow the leader into a shape that can be drawn on the screen,
+      * through the same points the ranks are placed along during the move
+      * @param path - the trail followed by the rank
+      * @param topLeftX - the top left x coordinate of the football field
+      * @param topLeftY - the top left y coordinate of the football field
+      * @param scaleFactor - converts yards to pixels
+      * @return the shape of the trail
+      */
+     public static Shape createShape(FollowPath path, int topLeftX, int topLeftY, float scaleFactor) {
+         Path2D trail = new Path2D.Float();
+         for (int i = 0; i < path.getPointCount(); i++) {
+             float x = topLeftX + path.getX(i)*scaleFactor;
+             float y = topLeftY + path.getY(i)*scaleFactor;
+             if (i == 0) {
+                 trail.moveTo(x, y);
+             }
+             else {
+                 trail.lineTo(x, y);
+             }
+         }
+         return trail;
+     }
+
+     /**
+      * Converts a rank position stored as RankProgram.STRIDE values into a shape that can be drawn on the screen
+      * @param values - the array holding the position
+      * @param offset - the index of the first value of the position
+      * @param topLeftX - the top left x coordinate of the football field
+      * @param topLeftY - the top left y coordinate of the football field
+      * @param scaleFactor - converts yards to pixels
+      * @return the shape of the rank, or null if the line type is unknown
+      */
+     public static Shape createShape(float[] values, int offset, int topLeftX, int topLeftY, float scaleFactor) {
          //In terms of rank positioning, (0,0) is the top left corner of field Lines
         //initialize for loop variables
 
         // TODO: redo this using Path2D(?)
-        float x1, x2, x3, x4;
-        float y1, y2, y3, y4;
+        float x1, x2, x4;
+        float y1, y2, y4;
 
         //define points for each line
 
-        x1 = locus.getFront().X();
-        y1 = locus.getFront().Y();
-        x4 = locus.getEnd().X();
-        y4 = locus.getEnd().Y();
+        x1 = values[offset + RankProgram.FRONT_X];
+        y1 = values[offset + RankProgram.FRONT_Y];
+        x4 = values[offset + RankProgram.END_X];
+        y4 = values[offset + RankProgram.END_Y];
 
-        switch (locus.getLineType()) {
+        switch ((int) values[offset + RankProgram.LINE_TYPE]) {
         case RankPosition.LINE:
             return new Line2D.Float(
                     topLeftX + x1*scaleFactor,
@@ -563,8 +609,8 @@ public class FootballField extends JPanel {
                     topLeftX + x4*scaleFactor,
                     topLeftY + y4*scaleFactor);
         case RankPosition.CURVE:
-            float xMid=locus.getMidpoint().X();
-            float yMid=locus.getMidpoint().Y();
+            float xMid=values[offset + RankProgram.MID_X];
+            float yMid=values[offset + RankProgram.MID_Y];
             x2=(x1+x4)/2+2*(xMid-(x1+x4)/2);
             y2=(y1+y4)/2+2*(yMid-(y1+y4)/2);
             return new QuadCurve2D.Float(topLeftX + x1*scaleFactor,
@@ -574,8 +620,8 @@ public class FootballField extends JPanel {
                     topLeftX + x4*scaleFactor,
                     topLeftY + y4*scaleFactor);
         case RankPosition.CORNER:
-            xMid=locus.getMidpoint().X();
-            yMid=locus.getMidpoint().Y();
+            xMid=values[offset + RankProgram.MID_X];
+            yMid=values[offset + RankProgram.MID_Y];
             Path2D cornerPath = new Path2D.Float();
 
             cornerPath.moveTo(topLeftX + x1*scaleFactor,topLeftY + y1*scaleFactor);
@@ -589,14 +635,16 @@ public class FootballField extends JPanel {
      }
 
      /**
-      * This function draws the shapes to the screen
+      * This function draws the shapes to the screen, highlighting the ranks that collide with
+      * another rank in the move, if any are given
       */
-    public static void drawRanks(HashMap<String, Shape> shapeMap, HashMap<String, Shape> transientShapes, HashSet<String>selectedRanks, Graphics g, int topLeftX, int topLeftY, float scaleFactor) {
+    public static void drawRanks(HashMap<String, Shape> shapeMap, HashMap<String, Shape> transientShapes, HashSet<String>selectedRanks, HashSet<String> collidingRanks, Graphics g, int topLeftX, int topLeftY, float scaleFactor) {
         //drawn normal ranks
         for (String rankName : shapeMap.keySet()) {
             drawArrow(g,
                     rankName,
                     selectedRanks,
+                    collidingRanks,
                     shapeMap.get(rankName));
         }
 
@@ -605,6 +653,7 @@ public class FootballField extends JPanel {
             drawArrow(g,
                     "",
                     null,
+                    null,
                     transientShapes.get(rankName));
         }
     }
@@ -722,7 +771,7 @@ public class FootballField extends JPanel {
                         RankPosition DTPRank = mainView.getDTPRank();
                         Shape DTPShape = createShape(DTPRank,topLeftX,topLeftY,scaleFactor);
 
-                        if (DTPShape.intersects(boxX, boxY, width, height)) {
+                        if (hitsShape(DTPShape, boxX, boxY, width, height)) {
                             System.out.println("right clicked on DTP destination!");
                             if(DTPShape instanceof Line2D){
                                 DTPRank.setLineType(RankPosition.CURVE);
@@ -745,7 +794,7 @@ public class FootballField extends JPanel {
                             // Check each possible rank for intersection - ONLY edit first one found
                             System.out.println("Checking rank " + rankName + "...");
 
-                            if (lineMap.get(rankName).intersects(boxX, boxY, width, height)) {
+                            if (hitsShape(lineMap.get(rankName), boxX, boxY, width, height)) {
                                 System.out.println("right clicked on " + rankName + "!");
                                 if(lineMap.get(rankName) instanceof Line2D){
                                     RankPosition rightClickedRank=mainView.getRankPositions().get(rankName);
@@ -771,7 +820,7 @@ public class FootballField extends JPanel {
 
                         for (String rankName : lineMap.keySet()) {
                             System.out.println("Checking rank " + rankName + "...");
-                            if (lineMap.get(rankName).intersects(boxX, boxY, width, height)) {
+                            if (hitsShape(lineMap.get(rankName), boxX, boxY, width, height)) {
                                 System.out.println("Clicked on " + rankName + "!");
                                 rankSelected = true;
                                 break;
@@ -812,7 +861,7 @@ public class FootballField extends JPanel {
                     Shape DTPShape = createShape(DTPRank,topLeftX,topLeftY,scaleFactor);
                     System.out.println("Checking DTP destination...");
 
-                    if (DTPShape.intersects(boxX, boxY, width, height)) {
+                    if (hitsShape(DTPShape, boxX, boxY, width, height)) {
                         mainView.setDrag(true);
                         System.out.println("Clicked on DTP destination!");
                         mainView.setSelectPoint(LINE_SELECTED);
@@ -870,7 +919,7 @@ public class FootballField extends JPanel {
                     for (String rankName : lineMap.keySet()) {
                         System.out.println("Checking rank " + rankName + "...");
 
-                        if (lineMap.get(rankName).intersects(boxX, boxY, width, height)) {
+                        if (hitsShape(lineMap.get(rankName), boxX, boxY, width, height)) {
                             // Check each rank for selection
                             mainView.setDrag(true);
                             System.out.println("Clicked on " + rankName + "!");
@@ -960,6 +1009,15 @@ public class FootballField extends JPanel {
 
             @Override
             public void mouseReleased(MouseEvent arg0) {
+                if (initialPositionsDragged) {
+                    initialPositionsDragged = false;
+                    if (mainView.getCurrentMoveNumber() == 0) {
+                        for (String rankName : mainView.getSelectedRanks()) {
+                            mainView.updateInitialPosition(rankName, mainView.getRankPositions().get(rankName));
+                        }
+                    }
+                }
+
                 // Reset dragging
                 mainView.setSelectPoint(LINE_SELECTED);
                 mainView.setDrag(false);
@@ -1131,11 +1189,8 @@ public class FootballField extends JPanel {
                     xDragOrigin = newX;
                     yDragOrigin = newY;
 
-                    if(mainView.getCurrentMoveNumber()==0) {
-                        for(String rankName : mainView.getSelectedRanks()) {
-                            mainView.updateInitialPosition(rankName, mainView.getRankPositions().get(rankName));
-                        }
-                    }
+                    // the initial positions are set when the drag ends
+                    initialPositionsDragged = true;
 
                 }
                 else if (mainView.getDrag() && addDTPFlag && (DTPRank != null)) {
@@ -1398,24 +1453,35 @@ public class FootballField extends JPanel {
     }
 
     /**
-     * Draws an arrow to represent a rank, colored blue if unselected, green if selected
+     * Returns the color of a rank: green if selected, orange if it collides with another rank,
+     * and blue otherwise
+     */
+    private static Color getRankColor(String rankName, HashSet<String> selectedRanks, HashSet<String> collidingRanks) {
+        if (selectedRanks != null && selectedRanks.contains(rankName)) {
+            return Color.GREEN;
+        }
+        if (collidingRanks != null && collidingRanks.contains(rankName)) {
+            return Color.ORANGE;
+        }
+        return Color.BLUE;
+    }
+
+    /**
+     * Draws an arrow to represent a rank, colored blue if unselected, green if selected and
+     * orange if it collides with another rank
      * @param g1 - the graphics used to draw
      * @param rankName - the name of the rank to be drawn
      * @param selectedRank - the name of the selected rank
+     * @param collidingRanks - the names of the ranks that collide, or null
      * @param shape - the shape to be drawn
      */
-    private static void drawArrow(Graphics g1, String rankName, HashSet<String> selectedRanks, Shape shape) {
+    private static void drawArrow(Graphics g1, String rankName, HashSet<String> selectedRanks, HashSet<String> collidingRanks, Shape shape) {
         Graphics2D g = (Graphics2D) g1.create();
         g.setStroke(new BasicStroke(4));
 
         //TODO: this will be necessary if we store different kinds of shapes in the list
         if (shape instanceof QuadCurve2D) {
-            if (selectedRanks != null && selectedRanks.contains(rankName)) {
-                g.setColor(Color.GREEN);
-            }
-            else {
-                g.setColor(Color.BLUE);
-            }
+            g.setColor(getRankColor(rankName, selectedRanks, collidingRanks));
             //TODO: draw the dots on the end of the rank, the arrow, and set the color to green of
             g.draw(shape);
 
@@ -1454,12 +1520,7 @@ public class FootballField extends JPanel {
             double dy = y2 - y1;
             double angle = Math.atan2(dy, dx);
 
-            if (selectedRanks != null && selectedRanks.contains(rankName)) {
-                g.setColor(Color.GREEN);
-            }
-            else {
-                g.setColor(Color.BLUE);
-            }
+            g.setColor(getRankColor(rankName, selectedRanks, collidingRanks));
 
             g.fillOval((int) (x1 - 0.5*ARROW_POINT_RADIUS),
                     (int) (y1 - 0.5*ARROW_POINT_RADIUS),
@@ -1475,12 +1536,7 @@ public class FootballField extends JPanel {
         }
         else if (shape instanceof Path2D) {
             // TODO: this is lazy coding, make it more robust
-            if (selectedRanks != null && selectedRanks.contains(rankName)) {
-                g.setColor(Color.GREEN);
-            }
-            else {
-                g.setColor(Color.BLUE);
-            }
+            g.setColor(getRankColor(rankName, selectedRanks, collidingRanks));
             g.draw(shape);
 
             PathIterator pi = ((Path2D.Float)shape).getPathIterator(new AffineTransform());
@@ -1520,6 +1576,42 @@ public class FootballField extends JPanel {
         }
     }
 
+    /**
+     * Checks if a click box touches the line drawn for a rank.  A curve is measured against
+     * its cached arc-length table, since QuadCurve2D.intersects also counts the area between
+     * the curve and its chord.
+     * @param shape - the shape of the rank
+     * @param boxX - the left of the click box
+     * @param boxY - the top of the click box
+     * @param width - the width of the click box
+     * @param height - the height of the click box
+     * @return true if the box touches the rank
+     */
+    private static boolean hitsShape(Shape shape, int boxX, int boxY, int width, int height) {
+        if (shape instanceof QuadCurve2D) {
+            QuadCurve2D curve = (QuadCurve2D) shape;
+            CurveTable table = CurveTable.of((float) curve.getX1(), (float) curve.getY1(),
+                    (float) curve.getCtrlX(), (float) curve.getCtrlY(),
+                    (float) curve.getX2(), (float) curve.getY2());
+            return table.distanceTo(boxX + width / 2.0f, boxY + height / 2.0f) <= Math.max(width, height) / 2.0f;
+        }
+        return shape.intersects(boxX, boxY, width, height);
+    }
+
+    /**
+     * Draws the trail of a follow the leader as a dashed gray line
+     * @param g1 - the graphics used to draw
+     * @param shape - the shape of the trail
+     */
+    private static void drawFTAPath(Graphics g1, Shape shape) {
+        Graphics2D g = (Graphics2D) g1.create();
+        float dash[] = {6.0f};
+        g.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND, 10.0f, dash, 0.0f));
+        g.setColor(Color.GRAY);
+        g.draw(shape);
+        g.dispose();
+    }
+
     /**
      * Draws an arrow to represent a rank, colored blue if unselected, green if selected
      * @param g1 - the graphics used to draw
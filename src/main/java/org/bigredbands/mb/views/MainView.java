@@ -4,14 +4,19 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.bigredbands.mb.controllers.ControllerInterface;
+import org.bigredbands.mb.models.BinaryConstants;
 import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.FollowPath;
 import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.MoveState;
 import org.bigredbands.mb.models.RankPosition;
 import org.bigredbands.mb.exceptions.FileSelectionException;
 
@@ -173,6 +178,23 @@ public class MainView implements ViewInterface {
         return project.getFTADest();
     }
 
+    /**
+     * Returns the trails of the follow the leader commands of the selected ranks in the
+     * current move, for drawing on the field
+     *
+     * @return - the trails of the selected ranks
+     */
+    public List<FollowPath> getFollowPaths() {
+        List<FollowPath> paths = new ArrayList<FollowPath>();
+        Move move = controller.getCurrentMove();
+        for (String rankName : controller.getSelectedRanks()) {
+            if (move.getStartPositions().containsKey(rankName)) {
+                paths.addAll(move.getProgram(rankName).getFollowPaths());
+            }
+        }
+        return paths;
+    }
+
     public void updateInitialPosition(String rankName, RankPosition newPos) {
         controller.updateInitialPosition(rankName, newPos);
     }
@@ -275,6 +297,59 @@ public class MainView implements ViewInterface {
         ErrorDialog.createErrorDialog(errorMessage, getCurrentWindow());
     }
 
+    /**
+     * Shows how much of the project has been saved in the message label
+     *
+     * @param file - the file being saved
+     * @param percent - how much of the project has been written, from 0 to 100
+     */
+    public void updateSaveProgress(final File file, final int percent) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (project != null) {
+                    project.setMessageLabelText("Saving " + file.getName() + "... " + percent + "%");
+                }
+            }
+        });
+    }
+
+    /**
+     * Clears the save progress from the message label
+     *
+     * @param file - the file that was saved
+     */
+    public void saveFinished(File file) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (project != null) {
+                    project.setMessageLabelText("");
+                    project.updateProjectTitle();
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells the user the project could not be saved, and marks it as modified again
+     *
+     * @param file - the file that could not be saved
+     * @param errorMessage - what went wrong
+     */
+    public void saveFailed(final File file, final String errorMessage) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (project != null) {
+                    project.setMessageLabelText("");
+                    project.updateProjectTitle();
+                }
+                displayError(file.getName() + " could not be saved: " + errorMessage);
+            }
+        });
+    }
+
     /**
      * Creates an empty project, can be called from introView and projectView
      * The controller method will respond appropriately
@@ -384,6 +459,15 @@ public class MainView implements ViewInterface {
         return controller.getSelectedRanks();
     }
 
+    /**
+     * Gets the ranks that collide with another rank at some count of the current move
+     *
+     * @return the names of the colliding ranks
+     */
+    public HashSet<String> getCollidingRanks() {
+        return controller.getCollidingRanks();
+    }
+
     /**
      * Deletes the specified rank from the project
      * @param rankName - the name of the rank to be deleted
@@ -587,6 +671,25 @@ public class MainView implements ViewInterface {
         return controller.getPlaybackPositions();
     }
 
+    /**
+     * Gets the state of the move currently being played back
+     *
+     * @return - the state of every rank in the move being played back
+     */
+    public MoveState getPlaybackState() {
+        return controller.getPlaybackState();
+    }
+
+    /**
+     * Gets the count within the move currently being played back, including how far
+     * playback is towards the next count
+     *
+     * @return - the number of counts into the move being played back
+     */
+    public float getPlaybackCount() {
+        return controller.getPlaybackCount();
+    }
+
     /**
      * Disables the listeners of the buttons in project view for playback
      */
@@ -726,8 +829,8 @@ public class MainView implements ViewInterface {
         fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
         fileChooser.setMultiSelectionEnabled(false);
 
-        //only allows the user to access .pnd files
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("pnd files","pnd");
+        //only allows the user to access .pnd and .pndb files
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("pnd files","pnd",BinaryConstants.EXTENSION);
         fileChooser.setFileFilter(filter);
         fileChooser.addChoosableFileFilter(filter);
     }
@@ -766,8 +869,10 @@ public class MainView implements ViewInterface {
         //if the user chose something, return it.  if not, return null.
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             String path = fileChooser.getSelectedFile().getPath();
+            //keep the binary extension if it was chosen, and save as .pnd otherwise
+            String extension = path.endsWith("." + BinaryConstants.EXTENSION) ? "." + BinaryConstants.EXTENSION : ".pnd";
             path = path.lastIndexOf(".pnd") > 0 ? path.substring(0, path.lastIndexOf(".pnd")) : path;
-            File file = new File(path + ".pnd");
+            File file = new File(path + extension);
 
             //TODO: we should probably log this at some point.....
             System.out.println(file.getAbsolutePath());
@@ -3,19 +3,46 @@ package org.bigredbands.mb.views;
 import java.util.HashMap;
 
 import org.bigredbands.mb.models.Field;
+import org.bigredbands.mb.models.MoveState;
 import org.bigredbands.mb.models.RankPosition;
 
 public class PdfImage extends FieldView {
 
     private HashMap<String, RankPosition> rankPositions;
 
+    private MoveState rankState;
+    private float[] rankValues;
+
     public PdfImage(Field field, HashMap<String, RankPosition> rankPositions) {
         super(field);
         this.rankPositions = rankPositions;
     }
 
-    @Override 
+    /**
+     * Creates an image of the ranks of a move at the end of the move
+     *
+     * @param field - the field to draw the ranks on
+     * @param rankState - the state of the ranks in the move
+     */
+    public PdfImage(Field field, MoveState rankState) {
+        super(field);
+        this.rankState = rankState;
+        this.rankValues = new float[rankState.getValueCount()];
+        rankState.evaluateEnd(rankValues);
+    }
+
+    @Override
     public HashMap<String, RankPosition> getRankPositions() {
         return this.rankPositions;
     }
+
+    @Override
+    public MoveState getRankState() {
+        return this.rankState;
+    }
+
+    @Override
+    public float[] getRankValues() {
+        return this.rankValues;
+    }
 }
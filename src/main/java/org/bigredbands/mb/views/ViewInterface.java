@@ -1,5 +1,6 @@
 package org.bigredbands.mb.views;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,6 +35,30 @@ public interface ViewInterface {
      */
     public void displayError(String errorMessage);
 
+    /**
+     * Show the user how much of a project being saved has been written.  Called
+     * on the save thread.
+     *
+     * @param file - the file being saved
+     * @param percent - how much of the project has been written, from 0 to 100
+     */
+    public void updateSaveProgress(File file, int percent);
+
+    /**
+     * Tell the user a project has been saved.  Called on the save thread.
+     *
+     * @param file - the file that was saved
+     */
+    public void saveFinished(File file);
+
+    /**
+     * Tell the user a project could not be saved.  Called on the save thread.
+     *
+     * @param file - the file that could not be saved
+     * @param errorMessage - what went wrong
+     */
+    public void saveFailed(File file, String errorMessage);
+
     /**
      * Add a new move the the scrollbar with the given moveNumber.  Then update
      * the screen by repainting everything and changing the move to moveNumber.
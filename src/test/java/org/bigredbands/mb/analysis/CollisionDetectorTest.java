@@ -0,0 +1,152 @@
+package org.bigredbands.mb.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CollisionDetectorTest {
+
+    private static final float TOLERANCE = 1e-3f;
+
+    private static DrillInfo createDrill(HashMap<String, RankPosition> startPositions) {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move(0, startPositions));
+        return drillInfo;
+    }
+
+    @Test
+    public void testCrossingRanks() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(40, 20), new Point(50, 20)));
+        startPositions.put("B", new RankPosition(new Point(45, 15), new Point(45, 25)));
+        startPositions.put("C", new RankPosition(new Point(70, 20), new Point(80, 20)));
+        CollisionReport report = new CollisionDetector().analyze(createDrill(startPositions));
+
+        List<Collision> collisions = report.getCollisions(0);
+        Assert.assertEquals(1, collisions.size());
+        Assert.assertEquals("A", collisions.get(0).getFirstRank());
+        Assert.assertEquals("B", collisions.get(0).getSecondRank());
+        Assert.assertEquals(Collision.Type.CROSSING, collisions.get(0).getType());
+        Assert.assertEquals(0, collisions.get(0).getCount());
+        Assert.assertFalse(report.getOffendingRanks(0).contains("C"));
+    }
+
+    @Test
+    public void testSpacing() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(40, 20), new Point(50, 20)));
+        startPositions.put("B", new RankPosition(new Point(40, 20.5f), new Point(50, 20.5f)));
+        startPositions.put("C", new RankPosition(new Point(40, 30), new Point(50, 30)));
+        DrillInfo drillInfo = createDrill(startPositions);
+
+        // C closes in on B by a step a count, reaching it on count 8 of the next move
+        drillInfo.addMove(8, 1);
+        Assert.assertEquals("", drillInfo.getMoves().get(1).addCommand("C", new CommandPair(CommandPair.BM, 8)));
+        drillInfo.getMoves().get(1).updatePositions("C", startPositions.get("C"));
+        CollisionReport report = new CollisionDetector().analyze(drillInfo);
+
+        List<Collision> first = report.getCollisions(0);
+        Assert.assertEquals(1, first.size());
+        Assert.assertEquals(Collision.Type.SPACING, first.get(0).getType());
+        Assert.assertEquals(1.5f, first.get(0).getDistance(), TOLERANCE);
+
+        for (Collision collision : report.getCollisions(1)) {
+            if (collision.getSecondRank().equals("C")) {
+                Assert.assertEquals(8, collision.getCount());
+            }
+        }
+    }
+
+    @Test
+    public void testMoreSegmentsThanFitInSixteenBits() {
+        // 8300 curved ranks, eight segments each, spaced apart on a grid
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        for (int i = 0; i < 8300; i++) {
+            float x = 3 * (i % 100);
+            float y = 3 * (i / 100);
+            startPositions.put(String.format("R%04d", i),
+                    new RankPosition(new Point(x, y), new Point(x + 0.5f, y + 0.3f), new Point(x + 1, y), RankPosition.CURVE));
+        }
+        // the last two ranks by name, whose segments come after the first 65536, cross far from the rest
+        startPositions.put("Z1", new RankPosition(new Point(-50, 20), new Point(-40, 20)));
+        startPositions.put("Z2", new RankPosition(new Point(-45, 15), new Point(-45, 25)));
+
+        List<Collision> collisions = new CollisionDetector().analyze(createDrill(startPositions)).getCollisions(0);
+        Assert.assertEquals(1, collisions.size());
+        Assert.assertEquals("Z1", collisions.get(0).getFirstRank());
+        Assert.assertEquals("Z2", collisions.get(0).getSecondRank());
+        Assert.assertEquals(Collision.Type.CROSSING, collisions.get(0).getType());
+    }
+
+    @Test
+    public void testMatchesPairwiseCheck() {
+        Random random = new Random(3);
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        for (int i = 0; i < 30; i++) {
+            float x = 10 + random.nextFloat() * 80;
+            float y = 5 + random.nextFloat() * 40;
+            startPositions.put("R" + i, new RankPosition(new Point(x, y), new Point(x + 10, y)));
+        }
+        DrillInfo drillInfo = createDrill(startPositions);
+        int[] commandTypes = { CommandPair.FM, CommandPair.BM, CommandPair.RS, CommandPair.LS,
+                CommandPair.GTCW_HEAD, CommandPair.PWCCW, CommandPair.CURVE_LEFT };
+        for (int i = 1; i < 6; i++) {
+            drillInfo.addMove(8, i);
+            for (String rankName : startPositions.keySet()) {
+                int commandType = commandTypes[random.nextInt(commandTypes.length)];
+                Assert.assertEquals("", drillInfo.getMoves().get(i).addCommand(rankName, new CommandPair(commandType, 8)));
+            }
+        }
+        for (int i = 1; i < 6; i++) {
+            for (String rankName : startPositions.keySet()) {
+                drillInfo.getMoves().get(i).updatePositions(rankName, drillInfo.getMoves().get(i - 1).getEndPositions().get(rankName));
+            }
+        }
+
+        CollisionDetector detector = new CollisionDetector(4.0f);
+        CollisionReport report = detector.analyze(drillInfo);
+        Assert.assertFalse(report.isEmpty());
+        for (int i = 0; i < drillInfo.getMoves().size(); i++) {
+            Move move = drillInfo.getMoves().get(i);
+            List<String> expected = new ArrayList<String>();
+            for (int count = i == 0 ? 0 : 1; count <= move.getCounts(); count++) {
+                expected.addAll(checkPairs(move, i, count, 4.0f));
+            }
+            List<String> actual = new ArrayList<String>();
+            for (Collision collision : report.getCollisions(i)) {
+                actual.add(collision.getCount() + " " + collision.getFirstRank() + " " + collision.getSecondRank() + " " + collision.getType());
+            }
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    // Compares every pair of ranks at a count, without the grid
+    private static List<String> checkPairs(Move move, int moveNumber, int count, float minimumInterval) {
+        List<String> found = new ArrayList<String>();
+        CollisionDetector detector = new CollisionDetector(minimumInterval);
+        HashMap<String, RankPosition> intermediate = move.getIntermediatePositions(count);
+        for (int a = 0; a < move.getState().getRankCount(); a++) {
+            for (int b = a + 1; b < move.getState().getRankCount(); b++) {
+                HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+                String first = move.getState().getRankName(a);
+                String second = move.getState().getRankName(b);
+                positions.put(first, intermediate.get(first));
+                positions.put(second, intermediate.get(second));
+                List<Collision> collisions = detector.analyzeMove(0, new Move(0, positions));
+                for (Collision collision : collisions) {
+                    found.add(count + " " + first + " " + second + " " + collision.getType());
+                }
+            }
+        }
+        return found;
+    }
+}
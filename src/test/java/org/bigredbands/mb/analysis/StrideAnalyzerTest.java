@@ -0,0 +1,174 @@
+package org.bigredbands.mb.analysis;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.MarchingConstants.PART;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StrideAnalyzerTest {
+
+    private static final float TOLERANCE = 1e-4f;
+
+    private static DrillInfo createDrill() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(40, 20), new Point(50, 20)));
+        startPositions.put("B", new RankPosition(new Point(40, 30), new Point(50, 30)));
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move(0, startPositions));
+        for (int i = 1; i < 4; i++) {
+            drillInfo.addMove(8, i);
+            for (String rankName : startPositions.keySet()) {
+                Assert.assertEquals("", drillInfo.getMoves().get(i).addCommand(rankName, new CommandPair(CommandPair.FM, 8)));
+                drillInfo.markDirty(rankName, i + 1);
+            }
+        }
+        drillInfo.updatePositions();
+        return drillInfo;
+    }
+
+    @Test
+    public void testStandardStepsPass() {
+        StrideReport report = new StrideAnalyzer().analyze(createDrill());
+        Assert.assertEquals(4, report.getMoveCount());
+        Assert.assertTrue(report.isEmpty());
+    }
+
+    @Test
+    public void testStepsOutsideLimits() {
+        DrillInfo drillInfo = createDrill();
+        Move move = drillInfo.getMoves().get(2);
+
+        // A takes 8 steps to go 10 yards, which is 4 to 5
+        CommandPair far = new CommandPair(CommandPair.DTP, 8);
+        far.setDestination(new RankPosition(new Point(40, 35), new Point(50, 35)));
+        Assert.assertEquals("", move.removeCommands("A", new int[] { 0 }));
+        Assert.assertEquals("", move.addCommand("A", far));
+
+        // B turns its front a quarter around its end, which stays put
+        Assert.assertEquals("", move.removeCommands("B", new int[] { 0 }));
+        Assert.assertEquals("", move.addCommand("B", new CommandPair(CommandPair.GTCW_HEAD, 8)));
+        drillInfo.markDirty("A", 3);
+        drillInfo.markDirty("B", 3);
+        drillInfo.updatePositions();
+
+        StrideReport report = new StrideAnalyzer().analyze(drillInfo);
+        List<StrideViolation> violations = report.getViolations(2);
+        // all 8 marchers of A on every count, and the 5 marchers of B furthest from and
+        // nearest to its end, which turns through an eighth of a circle over the move
+        Assert.assertEquals(8 * 8 + 5 * 8, violations.size());
+        for (StrideViolation violation : violations) {
+            if (violation.getRankName().equals("A")) {
+                Assert.assertEquals(StrideViolation.Type.TOO_LARGE, violation.getType());
+            }
+            else if (violation.getMarcher() >= 5) {
+                Assert.assertEquals(StrideViolation.Type.TOO_SMALL, violation.getType());
+            }
+            else {
+                Assert.assertEquals(StrideViolation.Type.TOO_LARGE, violation.getType());
+                Assert.assertTrue(violation.getMarcher() < 3);
+            }
+            Assert.assertTrue(violation.getPart() != PART.TAIL || violation.getRankName().equals("A"));
+        }
+        Assert.assertEquals(10.0f / 8, violations.get(0).getStepSize(), TOLERANCE);
+        Assert.assertEquals(4, violations.get(0).getStepsPerFiveYards(), TOLERANCE);
+        Assert.assertTrue(report.getViolations(1).isEmpty());
+        Assert.assertTrue(report.getViolations(3).isEmpty());
+    }
+
+    @Test
+    public void testSmallSteps() {
+        DrillInfo drillInfo = createDrill();
+        Move move = drillInfo.getMoves().get(1);
+        CommandPair near = new CommandPair(CommandPair.DTP, 8);
+        near.setDestination(new RankPosition(new Point(41, 20), new Point(51, 20)));
+        Assert.assertEquals("", move.removeCommands("A", new int[] { 0 }));
+        Assert.assertEquals("", move.addCommand("A", near));
+        drillInfo.markDirty("A", 2);
+        drillInfo.updatePositions();
+
+        // every marcher takes 16 to 5 halved, which is 32 to 5
+        List<StrideViolation> violations = new StrideAnalyzer().analyze(drillInfo).getViolations(1);
+        Assert.assertEquals(8 * 8, violations.size());
+        Assert.assertEquals(StrideViolation.Type.TOO_SMALL, violations.get(0).getType());
+        Assert.assertEquals(40, violations.get(0).getStepsPerFiveYards(), 0.01f);
+    }
+
+    @Test
+    public void testOnlyChangedMovesAnalyzedAgain() {
+        DrillInfo drillInfo = createDrill();
+        StrideAnalyzer analyzer = new StrideAnalyzer();
+        analyzer.analyze(drillInfo);
+        Assert.assertEquals(4, analyzer.getMovesAnalyzed());
+
+        analyzer.analyze(drillInfo);
+        Assert.assertEquals(0, analyzer.getMovesAnalyzed());
+
+        Move move = drillInfo.getMoves().get(3);
+        Assert.assertEquals("", move.removeCommands("A", new int[] { 0 }));
+        Assert.assertEquals("", move.addCommand("A", new CommandPair(CommandPair.MT, 8)));
+        drillInfo.markDirty("A", 4);
+        drillInfo.updatePositions();
+        StrideReport report = analyzer.analyze(drillInfo);
+        Assert.assertEquals(1, analyzer.getMovesAnalyzed());
+        Assert.assertTrue(report.isEmpty());
+
+        drillInfo.deleteMove(1);
+        drillInfo.updatePositions();
+        report = analyzer.analyze(drillInfo);
+        Assert.assertEquals(3, report.getMoveCount());
+    }
+
+    @Test
+    public void testMarchersPerRank() {
+        DrillInfo drillInfo = createDrill();
+        Move move = drillInfo.getMoves().get(1);
+        Assert.assertEquals("", move.removeCommands("A", new int[] { 0 }));
+        Assert.assertEquals("", move.addCommand("A", new CommandPair(CommandPair.GTCW_HEAD, 8)));
+        drillInfo.markDirty("A", 2);
+        drillInfo.updatePositions();
+
+        // a rank of two marchers is only its front and end, and the end stays put
+        HashMap<String, Integer> marcherCounts = new HashMap<String, Integer>();
+        marcherCounts.put("A", 2);
+        StrideAnalyzer analyzer = new StrideAnalyzer(StrideAnalyzer.DEFAULT_LARGEST_STEP,
+                StrideAnalyzer.DEFAULT_SMALLEST_STEP, marcherCounts, 3);
+        List<StrideViolation> violations = analyzer.analyze(drillInfo).getViolations(1);
+        Assert.assertEquals(8, violations.size());
+        for (StrideViolation violation : violations) {
+            Assert.assertEquals(PART.HEAD, violation.getPart());
+        }
+    }
+
+    @Test
+    public void testAnalyzedAgainAfterEndPositionsChange() {
+        DrillInfo drillInfo = createDrill();
+        StrideAnalyzer analyzer = new StrideAnalyzer();
+        Assert.assertTrue(analyzer.analyze(drillInfo).isEmpty());
+
+        // the end of the last move is moved 10 yards further down the field
+        Move move = drillInfo.getMoves().get(3);
+        HashMap<String, RankPosition> endPositions = new HashMap<String, RankPosition>();
+        for (String rankName : move.getEndPositions().keySet()) {
+            RankPosition position = move.getEndPositions().get(rankName);
+            endPositions.put(rankName, new RankPosition(
+                    new Point(position.getFront().X(), position.getFront().Y() + 10),
+                    new Point(position.getEnd().X(), position.getEnd().Y() + 10)));
+        }
+        move.setEndPositions(endPositions);
+
+        StrideReport report = analyzer.analyze(drillInfo);
+        Assert.assertEquals(1, analyzer.getMovesAnalyzed());
+        // only the last count lands on the new end positions
+        Assert.assertEquals(2 * 8, report.getViolations(3).size());
+        for (StrideViolation violation : report.getViolations(3)) {
+            Assert.assertEquals(8, violation.getCount());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BinaryDrillParserTest {
+
+    private static final String outputPath = "out/test/BinaryDrillParserTest/";
+
+    private static final String[] fixturePaths = { "src/test/resources/XMLParser/", "src/test/resources/MainController/" };
+
+    @BeforeClass
+    public static void createOutputDir() {
+        // Create the output directory if it doesn't already exist
+        new File(outputPath).mkdirs();
+    }
+
+    @Test
+    public void testFixturesRoundTrip() throws Exception {
+        for (String path : fixturePaths) {
+            for (File file : new File(path).listFiles()) {
+                assertRoundTrip(file);
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedShowRoundTrip() throws Exception {
+        File file = new File(outputPath + "generated-show.pnd");
+        new ShowGenerator().write(30, 25, file);
+        assertRoundTrip(file);
+    }
+
+    @Test
+    public void testStringsRoundTrip() throws Exception {
+        // a lone surrogate cannot be saved as XML, but is kept by the binary format
+        String text = "Fight & \"Win\" <now>\r\n\tcaf\u00e9 \u0000\ud83c\udfba \ud800";
+
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put(text, new RankPosition(new Point(45, 10), new Point(55, 10)));
+        Move move = new Move(8, startPositions);
+        CommandPair command = new CommandPair(CommandPair.FTA, 8, text);
+        command.setDestination(new RankPosition(new Point(60, 20), new Point(65, 25), new Point(70, 20), RankPosition.CURVE));
+        command.setWaypoints(Arrays.asList(new Point(50, 15), new Point(55, 20)));
+        move.addCommand(text, command);
+        move.setComments(text);
+
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.setSongName(text);
+        drillInfo.getMoves().add(new Move(0, startPositions));
+        drillInfo.getMoves().add(move);
+
+        File file = new File(outputPath + "strings.pndb");
+        new BinaryDrillGenerator().save(drillInfo, file);
+        DrillInfo actualDrillInfo = new BinaryDrillParser().load(file);
+
+        Assert.assertEquals(text, actualDrillInfo.getSongName());
+        Move actualMove = actualDrillInfo.getMoves().get(1);
+        Assert.assertEquals(text, actualMove.getComments());
+        Assert.assertEquals(move.getCommands(), actualMove.getCommands());
+        Assert.assertEquals(move.getStartPositions(), actualMove.getStartPositions());
+    }
+
+    @Test
+    public void testIsBinaryProject() throws Exception {
+        File binaryFile = new File(outputPath + "is-binary.pndb");
+        new BinaryDrillGenerator().save(new DrillInfo(), binaryFile);
+        Assert.assertTrue(BinaryDrillParser.isBinaryProject(binaryFile));
+
+        Assert.assertFalse(BinaryDrillParser.isBinaryProject(new File("src/test/resources/XMLParser/1-empty-project.pnd")));
+
+        File emptyFile = new File(outputPath + "empty.pndb");
+        Files.write(emptyFile.toPath(), new byte[0]);
+        Assert.assertFalse(BinaryDrillParser.isBinaryProject(emptyFile));
+    }
+
+    @Test
+    public void testInvalidFiles() throws Exception {
+        assertLoadFails(new File("src/test/resources/XMLParser/1-empty-project.pnd"),
+                "DrillXMLException: the file is not a binary project file.");
+
+        File file = new File(outputPath + "valid.pndb");
+        new BinaryDrillGenerator().save(new ShowGenerator().generate(8, 4), file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // every cut short file is reported, wherever it ends
+        for (int length = 0; length < bytes.length; length += 7) {
+            File truncatedFile = new File(outputPath + "truncated.pndb");
+            Files.write(truncatedFile.toPath(), Arrays.copyOf(bytes, length));
+            try {
+                new BinaryDrillParser().load(truncatedFile);
+                Assert.fail("A file cut short at " + length + " bytes loaded");
+            } catch (DrillXMLException e) {
+                // expected
+            }
+        }
+
+        byte[] newerVersion = bytes.clone();
+        newerVersion[5] = 2;
+        File newerFile = new File(outputPath + "newer-version.pndb");
+        Files.write(newerFile.toPath(), newerVersion);
+        assertLoadFails(newerFile, "DrillXMLException: the binary project file was saved by an unknown version, 2.");
+    }
+
+    // Checks that a project converted to the binary format and back is saved the same in both
+    private void assertRoundTrip(File xmlFile) throws Exception {
+        String name = xmlFile.getName().replace(".pnd", "");
+        File binaryFile = new File(outputPath + name + ".pndb");
+        File convertedFile = new File(outputPath + name + "-converted.pnd");
+        File resavedFile = new File(outputPath + name + "-resaved.pndb");
+
+        DrillInfo xmlDrillInfo = new StreamingXMLParser().load(xmlFile);
+        new BinaryDrillGenerator().save(xmlDrillInfo, binaryFile);
+        DrillInfo binaryDrillInfo = new BinaryDrillParser().load(binaryFile);
+        new StreamingXMLGenerator().save(binaryDrillInfo, convertedFile);
+        new BinaryDrillGenerator().save(binaryDrillInfo, resavedFile);
+
+        File expectedFile = new File(outputPath + name + "-expected.pnd");
+        new StreamingXMLGenerator().save(xmlDrillInfo, expectedFile);
+        Assert.assertArrayEquals(name, Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(convertedFile.toPath()));
+        Assert.assertArrayEquals(name, Files.readAllBytes(binaryFile.toPath()), Files.readAllBytes(resavedFile.toPath()));
+    }
+
+    private void assertLoadFails(File file, String message) throws Exception {
+        try {
+            new BinaryDrillParser().load(file);
+            Assert.fail(file + " loaded");
+        } catch (DrillXMLException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.utils.FakeMainView;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EditJournalTest {
+
+    private static final String outputPath = "out/test/EditJournalTest/";
+
+    private static final File fixture = new File("src/test/resources/MainController/two-moves-one-rank-with-commands.pnd");
+
+    private final File projectFile = new File(outputPath + "project.pnd");
+
+    @Before
+    public void copyFixture() throws Exception {
+        // Create the output directory if it doesn't already exist, and start from the fixture
+        new File(outputPath).mkdirs();
+        Files.copy(fixture.toPath(), projectFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(EditJournal.getJournalFile(projectFile.getAbsoluteFile()).toPath());
+        Files.deleteIfExists(EditJournal.getCheckpointFile(projectFile.getAbsoluteFile(), 0).toPath());
+        Files.deleteIfExists(EditJournal.getCheckpointFile(projectFile.getAbsoluteFile(), 1).toPath());
+    }
+
+    @Test
+    public void testEditsAreRecoveredAfterAStop() throws Exception {
+        MainController edited = openProject();
+        makeEdits(edited);
+        Assert.assertTrue(EditJournal.getJournalFile(projectFile.getAbsoluteFile()).exists());
+
+        // the program stops without saving, and the project is opened again
+        MainController recovered = openProject();
+        Assert.assertTrue(recovered.isModified());
+        Assert.assertEquals(0, recovered.getCurrentMoveNumber());
+        Assert.assertTrue(recovered.getSelectedRanks().isEmpty());
+        assertSameProject(edited, recovered);
+    }
+
+    @Test
+    public void testSavingDropsTheRecordedEdits() throws Exception {
+        MainController edited = openProject();
+        makeEdits(edited);
+        edited.saveProject();
+        Assert.assertTrue(edited.waitForSaves());
+
+        MainController reopened = openProject();
+        Assert.assertFalse(reopened.isModified());
+        assertSameProject(edited, reopened);
+
+        // an edit after the save is all that is replayed
+        reopened.setMoveComment("After the save");
+        MainController recovered = openProject();
+        Assert.assertTrue(recovered.isModified());
+        recovered.changeMoves(reopened.getCurrentMoveNumber());
+        Assert.assertEquals("After the save", recovered.getMoveComment());
+        assertSameProject(reopened, recovered);
+    }
+
+    @Test
+    public void testEditsMadeWhileSavingAreKept() throws Exception {
+        MainController edited = openProject();
+        edited.addMove(8);
+        edited.saveProject();
+        edited.setMoveComment("While saving");
+        Assert.assertTrue(edited.waitForSaves());
+
+        MainController recovered = openProject();
+        Assert.assertTrue(recovered.isModified());
+        assertSameProject(edited, recovered);
+    }
+
+    @Test
+    public void testRecordCutShortIsDropped() throws Exception {
+        MainController edited = openProject();
+        makeEdits(edited);
+        File journalFile = EditJournal.getJournalFile(projectFile.getAbsoluteFile());
+        Files.write(journalFile.toPath(), new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+        MainController recovered = openProject();
+        assertSameProject(edited, recovered);
+    }
+
+    @Test
+    public void testJournalOfAnotherSaveIsIgnored() throws Exception {
+        MainController edited = openProject();
+        makeEdits(edited);
+
+        // the project file is replaced outside of the program
+        Files.write(projectFile.toPath(), Files.readAllBytes(fixture.toPath()));
+        Assert.assertTrue(projectFile.setLastModified(projectFile.lastModified() - 10000));
+
+        MainController reopened = openProject();
+        Assert.assertFalse(reopened.isModified());
+        Assert.assertEquals(2, reopened.getNumberOfMoves());
+    }
+
+    @Test
+    public void testCompactedJournalIsRecovered() throws Exception {
+        MainController edited = openProject();
+        edited.getJournal().setCompactionThreshold(5);
+        makeEdits(edited);
+        makeEdits(edited);
+        Assert.assertTrue(edited.waitForSaves());
+        File checkpoint = edited.getJournal().getCheckpoint();
+        Assert.assertNotNull(checkpoint);
+        Assert.assertTrue(checkpoint.exists());
+
+        MainController recovered = openProject();
+        Assert.assertTrue(recovered.isModified());
+        assertSameProject(edited, recovered);
+
+        // saving drops the checkpoint along with the edits
+        recovered.saveProject(projectFile);
+        Assert.assertTrue(recovered.waitForSaves());
+        Assert.assertFalse(checkpoint.exists());
+    }
+
+    private MainController openProject() {
+        MainController mainController = new MainController();
+        mainController.initializeWithMainView(new FakeMainView());
+        mainController.setJournaled(true);
+        Assert.assertTrue(mainController.loadProject(projectFile));
+        return mainController;
+    }
+
+    // Makes one of each kind of edit
+    private static void makeEdits(MainController mainController) {
+        Assert.assertEquals("", mainController.addRank("Z" + mainController.getNumberOfMoves(),
+                new RankPosition(new Point(20, 30), new Point(30, 30))));
+        mainController.updateInitialPosition("A", new RankPosition(new Point(40, 12), new Point(50, 12)));
+
+        mainController.changeMoves(1);
+        Assert.assertEquals("", mainController.addSelectedRank("A", true));
+        mainController.addMove(8);
+        String rankName = mainController.getSelectedRanks().iterator().next();
+        CommandPair command = new CommandPair(CommandPair.FM, 4, "Forward");
+        Assert.assertEquals("", mainController.assignCommand(rankName, command));
+        Assert.assertEquals("", mainController.assignCommand(rankName, new CommandPair(CommandPair.FM, 4)));
+        Assert.assertEquals("", mainController.mergeCommands(new int[] { 0, 1 }));
+        Assert.assertEquals("", mainController.splitCommand(0, 3));
+        Assert.assertEquals("", mainController.renameCommand(0, "First \u00e9"));
+        Assert.assertEquals("", mainController.moveCommandsDown(new int[] { 0 }));
+        Assert.assertEquals("", mainController.moveCommandsUp(new int[] { 1 }));
+        Assert.assertEquals("", mainController.removeCommands(new int[] { 1 }));
+        mainController.setMoveComment("Edited");
+
+        HashMap<Integer, Integer> tempoHashMap = new HashMap<Integer, Integer>();
+        tempoHashMap.put(1, 140);
+        HashMap<Integer, Integer> countsHashMap = new HashMap<Integer, Integer>();
+        countsHashMap.put(1, 3);
+        mainController.setSongConstants(tempoHashMap, countsHashMap, "Edited Song");
+
+        mainController.addMove(4);
+        mainController.deleteMove(mainController.getNumberOfMoves() - 1);
+        HashSet<String> deleted = new HashSet<String>();
+        deleted.add("Z" + (mainController.getNumberOfMoves() - 1));
+        mainController.addRank("Y", new RankPosition(new Point(20, 40), new Point(30, 40)));
+        mainController.deleteRank(deleted);
+    }
+
+    private static void assertSameProject(MainController expected, MainController actual) throws Exception {
+        File expectedFile = new File(outputPath + "expected.pnd");
+        File actualFile = new File(outputPath + "actual.pnd");
+        // saved elsewhere without moving the journals of the projects there
+        expected.setJournaled(false);
+        actual.setJournaled(false);
+        expected.saveProject(expectedFile);
+        actual.saveProject(actualFile);
+        Assert.assertTrue(expected.waitForSaves());
+        Assert.assertTrue(actual.waitForSaves());
+        Assert.assertArrayEquals(Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(actualFile.toPath()));
+    }
+}
@@ -0,0 +1,265 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.bigredbands.mb.analysis.CollisionDetector;
+import org.bigredbands.mb.analysis.StrideAnalyzer;
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.exceptions.MoveLoadException;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.LazyMoveList;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class LazyXMLParserTest {
+
+    private static final String outputPath = "out/test/LazyXMLParserTest/";
+
+    private static final String[] fixturePaths = { "src/test/resources/XMLParser/", "src/test/resources/MainController/" };
+
+    // A move with a rank, to build files around
+    private static final String MOVE = "<number>%d</number><move-counts>8</move-counts><rank><rank-name>A</rank-name>"
+            + "<start-position><front-point><x>45</x><y>10</y></front-point><point-one><x>50</x><y>10</y></point-one>"
+            + "<end-point><x>55</x><y>10</y></end-point><line-type>0</line-type></start-position>"
+            + "<end-position><front-point><x>45</x><y>10</y></front-point><point-one><x>50</x><y>10</y></point-one>"
+            + "<end-point><x>55</x><y>10</y></end-point><line-type>0</line-type></end-position></rank>";
+
+    @BeforeClass
+    public static void createOutputDir() {
+        // Create the output directory if it doesn't already exist
+        new File(outputPath).mkdirs();
+    }
+
+    @Test
+    public void testFixturesMatchStreamingParser() throws Exception {
+        for (String path : fixturePaths) {
+            for (File file : new File(path).listFiles()) {
+                assertSameResult(file);
+                assertSavedTheSame(file);
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedShowIsReadWhenUsed() throws Exception {
+        File file = new File(outputPath + "generated-show.pnd");
+        new ShowGenerator().write(30, 25, file);
+
+        DrillInfo drillInfo = new LazyXMLParser(4).load(file);
+        LazyMoveList moves = (LazyMoveList) drillInfo.getMoves();
+        try {
+            Assert.assertEquals(25, moves.size());
+            Assert.assertEquals(1, moves.getLoadedCount());
+
+            // only the first move and the most recently used are kept as the show is walked through
+            for (int i = 0; i < moves.size(); i++) {
+                moves.get(i).getCounts();
+                Assert.assertTrue(moves.getLoadedCount() <= 5);
+            }
+            Assert.assertEquals(new StreamingXMLParser().load(file), drillInfo);
+        } finally {
+            moves.close();
+        }
+        assertSavedTheSame(file);
+    }
+
+    @Test
+    public void testWholeShowPassesDoNotKeepEveryMove() throws Exception {
+        File file = new File(outputPath + "whole-show.pnd");
+        new ShowGenerator().write(10, 30, file);
+        DrillInfo expected = new StreamingXMLParser().load(file);
+
+        DrillInfo drillInfo = new LazyXMLParser(4).load(file);
+        LazyMoveList moves = (LazyMoveList) drillInfo.getMoves();
+        try {
+            // the counts of each move are read when the file is scanned
+            Assert.assertEquals(expected.getTimeline().getTotalCounts(), drillInfo.getTimeline().getTotalCounts());
+            Assert.assertEquals(1, moves.getLoadedCount());
+
+            drillInfo.updatePositions();
+            expected.updatePositions();
+            Assert.assertEquals(new StrideAnalyzer().analyze(expected).getViolations().toString(),
+                    new StrideAnalyzer().analyze(drillInfo).getViolations().toString());
+            Assert.assertTrue(moves.getLoadedCount() <= 5);
+            Assert.assertEquals(new CollisionDetector().analyze(expected).getCollisions().toString(),
+                    new CollisionDetector().analyze(drillInfo).getCollisions().toString());
+            Assert.assertTrue(moves.getLoadedCount() <= 5);
+        } finally {
+            moves.close();
+        }
+    }
+
+    @Test
+    public void testChangedMovesAreKeptAndWritten() throws Exception {
+        File file = new File(outputPath + "changed.pnd");
+        new ShowGenerator().write(12, 20, file);
+
+        DrillInfo drillInfo = new LazyXMLParser(2).load(file);
+        LazyMoveList moves = (LazyMoveList) drillInfo.getMoves();
+        try {
+            Move changedMove = moves.get(5);
+            changedMove.setComments("Changed");
+            Assert.assertFalse(moves.isUnchanged(5));
+            Assert.assertTrue(moves.isUnchanged(6));
+
+            // a changed move is never let go
+            for (Move move : moves) {
+                move.getCounts();
+            }
+            Assert.assertSame(changedMove, moves.get(5));
+
+            drillInfo.addMove(4, 10);
+            File savedFile = new File(outputPath + "changed-saved.pnd");
+            new StreamingXMLGenerator().save(drillInfo, savedFile);
+
+            DrillInfo expected = new StreamingXMLParser().load(file);
+            expected.getMoves().get(5).setComments("Changed");
+            expected.addMove(4, 10);
+            Assert.assertEquals(expected, new StreamingXMLParser().load(savedFile));
+        } finally {
+            moves.close();
+        }
+    }
+
+    @Test
+    public void testSaveOverSourceFile() throws Exception {
+        File file = new File(outputPath + "resaved.pnd");
+        new ShowGenerator().write(12, 20, file);
+        DrillInfo expected = new StreamingXMLParser().load(file);
+        expected.getMoves().get(3).setComments("Changed");
+
+        DrillInfo drillInfo = new LazyXMLParser(2).load(file);
+        LazyMoveList moves = (LazyMoveList) drillInfo.getMoves();
+        try {
+            moves.get(3).setComments("Changed");
+            new StreamingXMLGenerator().save(drillInfo, file);
+            new StreamingXMLGenerator().save(drillInfo, file);
+
+            // moves not yet read are still read from the file as it was loaded
+            Assert.assertEquals(expected, drillInfo);
+        } finally {
+            moves.close();
+        }
+        Assert.assertEquals(expected, new StreamingXMLParser().load(file));
+    }
+
+    @Test
+    public void testFilesTheScanDoesNotFollowAreReadInFull() throws Exception {
+        String[] files = {
+            "<!-- a comment --><drill><move>" + String.format(MOVE, 0) + "</move></drill>",
+            "<drill><move>" + String.format(MOVE, 0) + "<comments><![CDATA[x]]></comments></move></drill>",
+            "<drill><move>" + String.format(MOVE, 0) + "</move><extra><move>" + String.format(MOVE, 1) + "</move></extra></drill>",
+            "<drill><move>" + String.format(MOVE, 0) + "<song-name>Inside</song-name></move></drill>",
+            "<drill><move><number> 0</number><move-counts>8</move-counts></move></drill>",
+            "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><drill><move>" + String.format(MOVE, 0) + "</move></drill>",
+        };
+        for (String xml : files) {
+            DrillInfo drillInfo = assertSameResult(xml);
+            Assert.assertFalse(xml, drillInfo != null && drillInfo.getMoves() instanceof LazyMoveList);
+        }
+    }
+
+    @Test
+    public void testMovesMatchStreamingParser() throws Exception {
+        DrillInfo drillInfo = assertSameResult("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><drill a=\"/>\">"
+                + "<song-name>Fight &amp; Win</song-name><move>" + String.format(MOVE, 0) + "</move>"
+                + "<move x='/'>" + String.format(MOVE, 2) + "</move >"
+                + "<tempo-change><measure-number>3</measure-number><tempo>150</tempo></tempo-change>"
+                + "<move>" + String.format(MOVE, 0) + "<comments>caf\u00e9</comments></move></drill>");
+        Assert.assertTrue(drillInfo.getMoves() instanceof LazyMoveList);
+
+        // errors outside the moves are found when the file is loaded, and inside them when they are used
+        assertSameResult("<drill><tempo-change><tempo>100</tempo></tempo-change><move>" + String.format(MOVE, 0) + "</move></drill>");
+        assertSameResult("<drill><move><number>0</number></move></drill>");
+        assertSameResult("<drill><move>" + String.format(MOVE, 0) + "</move><move><number>1</number></move></drill>");
+        assertSameResult("<drill><move>" + String.format(MOVE, 0) + "</move><move><number>1</number><a></move></drill>");
+        assertSameResult("<drill><move>" + String.format(MOVE, 0) + "</move><move>");
+    }
+
+    // Checks that a saved file is saved the same after being loaded lazily as after being loaded in full
+    private void assertSavedTheSame(File file) throws Exception {
+        String name = file.getName().replace(".pnd", "");
+        File savedFile = new File(outputPath + name + "-saved.pnd");
+        File expectedFile = new File(outputPath + name + "-expected.pnd");
+        File actualFile = new File(outputPath + name + "-lazy.pnd");
+
+        // the unchanged moves are copied as they are, so they are compared in a file as it is saved
+        new StreamingXMLGenerator().save(new StreamingXMLParser().load(file), savedFile);
+        new StreamingXMLGenerator().save(new StreamingXMLParser().load(savedFile), expectedFile);
+        DrillInfo drillInfo = new LazyXMLParser(2).load(savedFile);
+        try {
+            new StreamingXMLGenerator().save(drillInfo, actualFile);
+        } finally {
+            close(drillInfo);
+        }
+        Assert.assertArrayEquals(name, Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(actualFile.toPath()));
+    }
+
+    private DrillInfo assertSameResult(String xml) throws Exception {
+        File file = new File(outputPath + "case.pnd");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(xml);
+        } finally {
+            writer.close();
+        }
+        return assertSameResult(file);
+    }
+
+    private DrillInfo assertSameResult(File file) throws Exception {
+        DrillInfo expected = null;
+        Exception expectedError = null;
+        try {
+            expected = new StreamingXMLParser().load(file);
+        } catch (DrillXMLException | SAXException | IOException | RuntimeException e) {
+            expectedError = e;
+        }
+
+        DrillInfo actual = null;
+        Throwable actualError = null;
+        try {
+            actual = new LazyXMLParser(1).load(file);
+            try {
+                // read every move
+                actual.getMoves().toArray();
+            } finally {
+                close(actual);
+            }
+        } catch (MoveLoadException e) {
+            actualError = e.getCause().getCause();
+        } catch (DrillXMLException | SAXException | IOException | RuntimeException e) {
+            actualError = e;
+        }
+
+        if (expectedError == null) {
+            Assert.assertNull(file + ": " + actualError, actualError);
+            Assert.assertEquals(file.toString(), expected, actual);
+        }
+        else {
+            Assert.assertNotNull(file + ": expected " + expectedError, actualError);
+            Assert.assertEquals(file.toString(), expectedError.getClass(), actualError.getClass());
+            if (!(expectedError instanceof SAXException)) {
+                Assert.assertEquals(file.toString(), expectedError.getMessage(), actualError.getMessage());
+            }
+        }
+        return actual;
+    }
+
+    private static void close(DrillInfo drillInfo) throws IOException {
+        List<Move> moves = drillInfo.getMoves();
+        if (moves instanceof LazyMoveList) {
+            ((LazyMoveList) moves).close();
+        }
+    }
+}
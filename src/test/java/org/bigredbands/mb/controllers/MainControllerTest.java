@@ -1,15 +1,29 @@
 package org.bigredbands.mb.controllers;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Random;
 
+import javax.swing.SwingUtilities;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
 import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.LazyMoveList;
+import org.bigredbands.mb.models.MoveState;
 import org.bigredbands.mb.models.Point;
 import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.RankProgram;
 import org.bigredbands.mb.utils.FakeMainView;
 import org.junit.Assert;
 import org.junit.Test;
+import org.xml.sax.SAXException;
 
 public class MainControllerTest {
 
@@ -37,6 +51,184 @@ public class MainControllerTest {
         Assert.assertFalse(mainController.isModified());
     }
 
+    @Test
+    public void testPlaybackFramesAreWhole() throws Exception {
+        final MainController mainController = new MainController();
+        mainController.initializeWithMainView(new FakeMainView());
+        mainController.loadProject(new File("src/test/resources/MainController/two-moves-one-rank-with-commands.pnd"));
+        mainController.startPlayback();
+        try {
+            // the positions drawn always belong to the move and count drawn with them
+            for (int i = 0; i < 10; i++) {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        MoveState state = mainController.getPlaybackState();
+                        float[] values = new float[state.getValueCount()];
+                        state.evaluate(mainController.getPlaybackCount(), values);
+                        HashMap<String, RankPosition> positions = mainController.getPlaybackPositions();
+                        Assert.assertEquals(state.getRankCount(), positions.size());
+                        for (String rankName : positions.keySet()) {
+                            int offset = state.getRankId(rankName) * RankProgram.STRIDE;
+                            Assert.assertEquals(values[offset + RankProgram.FRONT_X], positions.get(rankName).getFront().X(), 1e-3f);
+                            Assert.assertEquals(values[offset + RankProgram.END_Y], positions.get(rankName).getEnd().Y(), 1e-3f);
+                        }
+                    }
+                });
+                Thread.sleep(30);
+            }
+        } finally {
+            if (mainController.isPlaybackRunning()) {
+                mainController.mainThreadStopPlayback();
+            }
+        }
+    }
+
+    @Test
+    public void testCollidingRanksOfTheCurrentMove() {
+        final MainController mainController = new MainController();
+        mainController.initializeWithMainView(new FakeMainView());
+        mainController.loadProject(new File("src/test/resources/MainController/two-moves-one-rank-with-commands.pnd"));
+        mainController.changeMoves(1);
+        Assert.assertEquals("", mainController.addRank("X", new RankPosition(new Point(95, 5), new Point(105, 5))));
+        Assert.assertEquals("", mainController.addRank("Y", new RankPosition(new Point(100, 0), new Point(100, 10))));
+
+        HashSet<String> colliding = mainController.getCollidingRanks();
+        Assert.assertTrue(colliding.contains("X"));
+        Assert.assertTrue(colliding.contains("Y"));
+        Assert.assertSame(colliding, mainController.getCollidingRanks());
+
+        // found again once the move changes
+        mainController.deleteRank(new HashSet<String>(Arrays.asList("Y")));
+        Assert.assertFalse(mainController.getCollidingRanks().contains("X"));
+    }
+
+    @Test
+    public void testLargeProjectsAreReadLazily() throws Exception {
+        final File testFile = new File("src/test/resources/MainController/two-moves-one-rank-with-commands.pnd");
+        final ArrayList<DrillInfo> largeProjects = new ArrayList<DrillInfo>();
+        final DrillParser largeProjectParser = new DrillParser() {
+            @Override
+            public DrillInfo load(File file) throws ParserConfigurationException, SAXException, IOException,
+                    DrillXMLException {
+                DrillInfo drillInfo = new LazyXMLParser().load(file);
+                largeProjects.add(drillInfo);
+                return drillInfo;
+            }
+        };
+        final MainController mainController = new MainController();
+        mainController.initializeWithMainView(new FakeMainView());
+
+        // a project smaller than the large project size is read in full
+        mainController.setLargeProjectParser(largeProjectParser, testFile.length() + 1);
+        Assert.assertTrue(mainController.loadProject(testFile));
+        Assert.assertTrue(largeProjects.isEmpty());
+
+        mainController.setLargeProjectParser(largeProjectParser, testFile.length());
+        Assert.assertTrue(mainController.loadProject(testFile));
+        Assert.assertEquals(1, largeProjects.size());
+        Assert.assertTrue(largeProjects.get(0).getMoves() instanceof LazyMoveList);
+        Assert.assertEquals(2, mainController.getNumberOfMoves());
+        Assert.assertEquals(new XMLParser().load(testFile).getMoves().get(1).getEndPositions(),
+                mainController.getRankPositions(1));
+    }
+
+    @Test
+    public void testSaveAndLoadBinaryProject() throws Exception {
+        final MainController mainController = new MainController();
+        mainController.initializeWithMainView(new FakeMainView());
+        final File testFile = new File("src/test/resources/MainController/two-moves-one-rank-with-commands.pnd");
+        mainController.loadProject(testFile);
+
+        // a new file with the binary extension is saved as binary, and keeps that format
+        new File("out/test/MainControllerTest/").mkdirs();
+        final File binaryFile = new File("out/test/MainControllerTest/two-moves-one-rank-with-commands.pndb");
+        binaryFile.delete();
+        mainController.saveProject(binaryFile);
+        Assert.assertTrue(mainController.waitForSaves());
+        Assert.assertTrue(BinaryDrillParser.isBinaryProject(binaryFile));
+        mainController.saveProject();
+        Assert.assertTrue(mainController.waitForSaves());
+        Assert.assertTrue(BinaryDrillParser.isBinaryProject(binaryFile));
+
+        Assert.assertTrue(mainController.loadProject(binaryFile));
+        Assert.assertFalse(mainController.isModified());
+        Assert.assertEquals(2, mainController.getNumberOfMoves());
+        Assert.assertEquals(new XMLParser().load(testFile).getMoves().get(1).getEndPositions(),
+                mainController.getRankPositions(1));
+    }
+
+    @Test
+    public void testSaveWritesTheProjectAsItWasWhenSaved() throws Exception {
+        final FakeMainView mainView = new FakeMainView();
+        final MainController mainController = new MainController();
+        mainController.initializeWithMainView(mainView);
+        final File testFile = new File("src/test/resources/MainController/two-moves-one-rank-with-commands.pnd");
+        mainController.loadProject(testFile);
+
+        new File("out/test/MainControllerTest/").mkdirs();
+        final File savedFile = new File("out/test/MainControllerTest/saved-while-editing.pnd");
+        mainController.changeMoves(1);
+        mainController.setMoveComment("Saved");
+        mainController.saveProject(savedFile);
+        Assert.assertFalse(mainController.isModified());
+
+        // edits made while the save is written are not in the saved file
+        mainController.setMoveComment("Not saved");
+        mainController.addMove(8);
+        Assert.assertTrue(mainController.isModified());
+        Assert.assertTrue(mainController.waitForSaves());
+        Assert.assertEquals(1, mainView.getSavesFinished());
+        Assert.assertTrue(mainController.isModified());
+
+        Assert.assertFalse(new File(savedFile.getPath() + ".tmp").exists());
+        final DrillInfo savedDrillInfo = new StreamingXMLParser().load(savedFile);
+        Assert.assertEquals(2, savedDrillInfo.getMoves().size());
+        Assert.assertEquals("Saved", savedDrillInfo.getMoves().get(1).getComments());
+    }
+
+    @Test
+    public void testSaveFailureIsReported() {
+        final FakeMainView mainView = new FakeMainView();
+        final MainController mainController = new MainController();
+        mainController.initializeWithMainView(mainView);
+        mainController.createEmptyProject();
+
+        mainController.saveProject(new File("out/test/MainControllerTest/missing-directory/project.pnd"));
+        Assert.assertFalse(mainController.waitForSaves());
+        Assert.assertNotNull(mainView.getSaveError());
+        Assert.assertEquals(0, mainView.getSavesFinished());
+        Assert.assertTrue(mainController.isModified());
+
+        // only saves that fail while waiting are reported
+        Assert.assertTrue(mainController.waitForSaves());
+    }
+
+    @Test
+    public void testSaveAfterFailedSaveClearsModified() {
+        final FakeMainView mainView = new FakeMainView();
+        final MainController mainController = new MainController();
+        mainController.initializeWithMainView(mainView);
+        mainController.createEmptyProject();
+        mainController.addMove(8);
+
+        new File("out/test/MainControllerTest/").mkdirs();
+        mainController.saveProject(new File("out/test/MainControllerTest/missing-directory/project.pnd"));
+        mainController.saveProject(new File("out/test/MainControllerTest/saved-after-failure.pnd"));
+        mainController.waitForSaves();
+        Assert.assertNotNull(mainView.getSaveError());
+        Assert.assertEquals(1, mainView.getSavesFinished());
+        Assert.assertFalse(mainController.isModified());
+
+        // a save that succeeds after the project is edited again leaves it modified
+        mainController.saveProject(new File("out/test/MainControllerTest/missing-directory/project.pnd"));
+        mainController.addMove(8);
+        mainController.saveProject(new File("out/test/MainControllerTest/saved-after-failure.pnd"));
+        mainController.addMove(8);
+        mainController.waitForSaves();
+        Assert.assertTrue(mainController.isModified());
+    }
+
     @Test
     public void testIsModifiedAfterChangingMoves() {
         final MainController mainController = new MainController();
@@ -237,4 +429,45 @@ public class MainControllerTest {
         Assert.assertEquals("", mainController.splitCommand(0, 4));
         Assert.assertTrue(mainController.isModified());
     }
+
+    @Test
+    public void testSharedCommands() {
+        final MainController mainController = new MainController();
+        HashMap<String, ArrayList<CommandPair>> commands = new HashMap<String, ArrayList<CommandPair>>();
+        commands.put("A", new ArrayList<CommandPair>(Arrays.asList(new CommandPair(CommandPair.FM, 8),
+                new CommandPair(CommandPair.RS, 4), new CommandPair(CommandPair.MT, 4), new CommandPair(CommandPair.BM, 8))));
+        commands.put("B", new ArrayList<CommandPair>(Arrays.asList(new CommandPair(CommandPair.FM, 8),
+                new CommandPair(CommandPair.LS, 8), new CommandPair(CommandPair.BM, 8), new CommandPair(CommandPair.HALT, 4))));
+        HashSet<String> rankNames = new HashSet<String>(commands.keySet());
+
+        Assert.assertEquals(Arrays.asList(new CommandPair(CommandPair.FM, 8), new CommandPair(CommandPair.EMPTY, 8),
+                new CommandPair(CommandPair.BM, 8), new CommandPair(CommandPair.EMPTY, 4)),
+                mainController.getSharedCommands(rankNames, commands));
+    }
+
+    @Test
+    public void testSharedCommandsMatchesScan() {
+        final MainController mainController = new MainController();
+        Random random = new Random(5);
+        int compared = 0;
+        for (int trial = 0; trial < 500; trial++) {
+            HashMap<String, ArrayList<CommandPair>> commands = SharedCommandsScan.createCommands(
+                    random, 2 + random.nextInt(4), 1 + random.nextInt(8), 0.3f);
+            HashSet<String> rankNames = new HashSet<String>(commands.keySet());
+            String[] rankArray = rankNames.toArray(new String[0]);
+
+            // the scan depended on which rank it started from, so only compare where it did not
+            ArrayList<CommandPair> expected = SharedCommandsScan.scanSharedCommands(rankArray, commands);
+            boolean sameForEveryOrder = true;
+            for (int r = 1; r < rankArray.length; r++) {
+                Collections.rotate(Arrays.asList(rankArray), 1);
+                sameForEveryOrder &= expected.equals(SharedCommandsScan.scanSharedCommands(rankArray, commands));
+            }
+            if (sameForEveryOrder) {
+                Assert.assertEquals(expected, mainController.getSharedCommands(rankNames, commands));
+                compared++;
+            }
+        }
+        Assert.assertTrue(compared > 400);
+    }
 }
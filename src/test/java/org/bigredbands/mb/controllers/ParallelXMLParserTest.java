@@ -0,0 +1,124 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class ParallelXMLParserTest {
+
+    private static final String outputPath = "out/test/ParallelXMLParserTest/";
+
+    private static final String[] fixturePaths = { "src/test/resources/XMLParser/", "src/test/resources/MainController/" };
+
+    // A move with a rank, to build files around
+    private static final String MOVE = "<move><number>%d</number><move-counts>8</move-counts><rank><rank-name>A</rank-name>"
+            + "<start-position><front-point><x>45</x><y>10</y></front-point><point-one><x>50</x><y>10</y></point-one>"
+            + "<end-point><x>55</x><y>10</y></end-point><line-type>0</line-type></start-position>"
+            + "<end-position><front-point><x>45</x><y>10</y></front-point><point-one><x>50</x><y>10</y></point-one>"
+            + "<end-point><x>55</x><y>10</y></end-point><line-type>0</line-type></end-position></rank></move>";
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createOutputDir() {
+        // Create the output directory if it doesn't already exist
+        new File(outputPath).mkdirs();
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutDownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFixturesMatchStreamingParser() throws Exception {
+        for (String path : fixturePaths) {
+            for (File file : new File(path).listFiles()) {
+                assertSameResult(file);
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedShowMatchesStreamingParser() throws Exception {
+        File file = new File(outputPath + "generated-show.pnd");
+        new ShowGenerator().write(30, 45, file);
+        DrillInfo drillInfo = assertSameResult(file);
+        Assert.assertEquals(45, drillInfo.getMoves().size());
+    }
+
+    @Test
+    public void testErrorsMatchStreamingParser() throws Exception {
+        StringBuilder moves = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            moves.append(String.format(MOVE, i));
+        }
+
+        // moves out of order or missing numbers are put where a single pass puts them
+        assertSameResult("<drill><song-name>Fight &amp; Win</song-name>" + moves
+                + "<tempo-change><measure-number>3</measure-number><tempo>150</tempo></tempo-change>"
+                + String.format(MOVE, 20) + String.format(MOVE, 2) + "</drill>");
+
+        // the first error in the file is thrown, wherever the moves with errors are read
+        assertSameResult("<drill>" + moves + "<move><number>12</number></move>" + moves
+                + "<move><number>25</number><move-counts>x</move-counts></move></drill>");
+        assertSameResult("<drill><tempo-change><tempo>100</tempo></tempo-change>" + moves
+                + "<move><number>12</number></move></drill>");
+        assertSameResult("<drill>" + moves + "<move><number>12</number><a></move></drill>");
+        assertSameResult("<drill>" + moves + "<move>");
+    }
+
+    private DrillInfo assertSameResult(String xml) throws Exception {
+        File file = new File(outputPath + "case.pnd");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(xml);
+        } finally {
+            writer.close();
+        }
+        return assertSameResult(file);
+    }
+
+    private DrillInfo assertSameResult(File file) throws Exception {
+        DrillInfo expected = null;
+        Exception expectedError = null;
+        try {
+            expected = new StreamingXMLParser().load(file);
+        } catch (DrillXMLException | SAXException | IOException | RuntimeException e) {
+            expectedError = e;
+        }
+
+        DrillInfo actual = null;
+        Exception actualError = null;
+        try {
+            actual = new ParallelXMLParser(pool).load(file);
+        } catch (DrillXMLException | SAXException | IOException | RuntimeException e) {
+            actualError = e;
+        }
+
+        if (expectedError == null) {
+            Assert.assertNull(file + ": " + actualError, actualError);
+            Assert.assertEquals(file.toString(), expected, actual);
+        }
+        else {
+            Assert.assertNotNull(file + ": expected " + expectedError, actualError);
+            Assert.assertEquals(file.toString(), expectedError.getClass(), actualError.getClass());
+            Assert.assertEquals(file.toString(), expectedError.getMessage(), actualError.getMessage());
+        }
+        return actual;
+    }
+}
@@ -0,0 +1,118 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.bigredbands.mb.models.CommandPair;
+
+/**
+ * The scan MainController.getSharedCommands replaced, which it is checked and timed against,
+ * and the commands of large selections to run them on.
+ */
+public class SharedCommandsScan {
+
+    private static final int[] COMMAND_TYPES = { CommandPair.MT, CommandPair.FM, CommandPair.BM,
+            CommandPair.RS, CommandPair.LS, CommandPair.GTCW_HEAD };
+
+    /**
+     * Creates the commands of a block of ranks that mostly march together, each differing from
+     * the others at random with the given chance per command
+     */
+    public static HashMap<String, ArrayList<CommandPair>> createCommands(Random random, int rankCount, int commandCount, float difference) {
+        ArrayList<CommandPair> block = new ArrayList<CommandPair>();
+        for (int i = 0; i < commandCount; i++) {
+            block.add(new CommandPair(COMMAND_TYPES[random.nextInt(COMMAND_TYPES.length)], 1 + random.nextInt(8)));
+        }
+
+        HashMap<String, ArrayList<CommandPair>> commands = new HashMap<String, ArrayList<CommandPair>>();
+        for (int r = 0; r < rankCount; r++) {
+            ArrayList<CommandPair> cmdList = new ArrayList<CommandPair>();
+            for (CommandPair cmd : block) {
+                if (random.nextFloat() >= difference) {
+                    cmdList.add(new CommandPair(cmd.getCommand(), cmd.getCounts()));
+                }
+                else if (random.nextBoolean() || cmd.getCounts() < 2) {
+                    cmdList.add(new CommandPair(COMMAND_TYPES[random.nextInt(COMMAND_TYPES.length)], cmd.getCounts()));
+                }
+                else {
+                    // split the command in two, which keeps the counts after it aligned
+                    int first = 1 + random.nextInt(cmd.getCounts() - 1);
+                    cmdList.add(new CommandPair(cmd.getCommand(), first));
+                    cmdList.add(new CommandPair(cmd.getCommand(), cmd.getCounts() - first));
+                }
+            }
+            commands.put("R" + r, cmdList);
+        }
+        return commands;
+    }
+
+    /**
+     * The shared commands as found before the sweep, by looking up every command of the first
+     * rank in every other rank
+     */
+    public static ArrayList<CommandPair> scanSharedCommands(String[] rankArray, HashMap<String, ArrayList<CommandPair>> commands) {
+        ArrayList<CommandPair> shared = new ArrayList<CommandPair>();
+
+        int currentCount = 0;
+        int diffCounts = 0;
+
+        ArrayList<CommandPair> referenceCmds = commands.get(rankArray[0]);
+        for (CommandPair refCmd : referenceCmds) {
+            for (int i = 1; i < rankArray.length; i++) {
+                ArrayList<CommandPair> cmdList = commands.get(rankArray[i]);
+                int altCounts = 0;
+                boolean checkFinished = false;
+
+                for (CommandPair altCmd : cmdList) {
+                    if (altCounts == currentCount) {
+                        if (altCmd.getCounts() == refCmd.getCounts()
+                                && altCmd.getCommand() == refCmd.getCommand()) {
+                            if (i == rankArray.length - 1) {
+                                if (diffCounts != 0) shared.add(new CommandPair(CommandPair.EMPTY, diffCounts));
+                                diffCounts = 0;
+
+                                shared.add(new CommandPair(refCmd.getCommand(), refCmd.getCounts()));
+                            }
+
+                            break;
+                        } else {
+                            diffCounts += refCmd.getCounts();
+                            checkFinished = true;
+                            break;
+                        }
+                    } else if (altCounts > currentCount) {
+                        diffCounts += refCmd.getCounts();
+                        checkFinished = true;
+                        break;
+                    }
+
+                    altCounts += altCmd.getCounts();
+                }
+
+                if (altCounts < currentCount) {
+                    diffCounts += refCmd.getCounts();
+                    checkFinished = true;
+                }
+
+                if (checkFinished) break;
+            }
+            currentCount += refCmd.getCounts();
+        }
+
+        int maxLen = -1;
+        for (String rankName : rankArray) {
+            int len = 0;
+            for (CommandPair cmd : commands.get(rankName)) len += cmd.getCounts();
+            if (len > maxLen) maxLen = len;
+        }
+
+        int sharedLen = 0;
+        for (CommandPair cmd : shared) sharedLen += cmd.getCounts();
+
+        diffCounts = (maxLen - sharedLen);
+        if (diffCounts > 0) shared.add(new CommandPair(CommandPair.EMPTY, diffCounts));
+
+        return shared;
+    }
+}
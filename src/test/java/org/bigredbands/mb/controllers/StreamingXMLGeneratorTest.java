@@ -0,0 +1,97 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class StreamingXMLGeneratorTest {
+
+    private static final String outputPath = "out/test/StreamingXMLGeneratorTest/";
+
+    private static final String[] fixturePaths = { "src/test/resources/XMLParser/", "src/test/resources/MainController/" };
+
+    @BeforeClass
+    public static void createOutputDir() {
+        // Create the output directory if it doesn't already exist
+        new File(outputPath).mkdirs();
+    }
+
+    @Test
+    public void testFixturesMatchDOMGenerator() throws Exception {
+        for (String path : fixturePaths) {
+            for (File file : new File(path).listFiles()) {
+                assertSameBytes(new XMLParser().load(file), file.getName());
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedShowMatchesDOMGenerator() throws Exception {
+        assertSameBytes(new ShowGenerator().generate(30, 25), "generated-show.pnd");
+    }
+
+    @Test
+    public void testEscapedTextMatchesDOMGenerator() throws Exception {
+        String text = "Fight & \"Win\" <now> 'a'\r\n\tcaf\u00e9 \u007f\u0085\u00a0 \ud83c\udfba ]]>";
+
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put(text, new RankPosition(new Point(45, 10), new Point(55, 10)));
+        Move move = new Move(8, startPositions);
+        move.addCommand(text, new CommandPair(CommandPair.FM, 8, text));
+        move.setComments(text);
+
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.setSongName(text);
+        drillInfo.getMoves().add(new Move(0, startPositions));
+        drillInfo.getMoves().add(move);
+        assertSameBytes(drillInfo, "escaped-text.pnd");
+
+        // the carriage return is saved as a character reference, so it survives being read back
+        File file = new File(outputPath + "escaped-text-streaming.pnd");
+        Assert.assertEquals(text, new StreamingXMLParser().load(file).getSongName());
+    }
+
+    @Test
+    public void testOnlyChangedMovesAreWrittenAgain() throws Exception {
+        DrillInfo drillInfo = new ShowGenerator().generate(12, 10);
+        assertSameBytes(drillInfo, "resaved-show.pnd");
+        byte[][] contents = new byte[drillInfo.getMoves().size()][];
+        for (int i = 1; i < contents.length; i++) {
+            contents[i] = drillInfo.getMoves().get(i).getXMLContents();
+            Assert.assertNotNull(contents[i]);
+        }
+
+        // the moves after the new one keep what they were saved as under their new numbers
+        drillInfo.getMoves().get(4).setComments("Changed");
+        drillInfo.addMove(8, 2);
+        assertSameBytes(drillInfo, "resaved-show.pnd");
+        Assert.assertNull(drillInfo.getMoves().get(0).getXMLContents());
+        for (int i = 1; i < contents.length; i++) {
+            Move move = drillInfo.getMoves().get(i < 2 ? i : i + 1);
+            if (i == 4) {
+                Assert.assertNotSame(contents[i], move.getXMLContents());
+            }
+            else {
+                Assert.assertSame(contents[i], move.getXMLContents());
+            }
+        }
+    }
+
+    private void assertSameBytes(DrillInfo drillInfo, String name) throws Exception {
+        File expectedFile = new File(outputPath + name.replace(".pnd", "-dom.pnd"));
+        File actualFile = new File(outputPath + name.replace(".pnd", "-streaming.pnd"));
+        new XMLGenerator().save(drillInfo, expectedFile);
+        new StreamingXMLGenerator().save(drillInfo, actualFile);
+        Assert.assertArrayEquals(name, Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(actualFile.toPath()));
+    }
+}
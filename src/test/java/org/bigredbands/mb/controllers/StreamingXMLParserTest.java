@@ -0,0 +1,143 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.utils.ShowGenerator;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class StreamingXMLParserTest {
+
+    private static final String outputPath = "out/test/StreamingXMLParserTest/";
+
+    private static final String[] fixturePaths = { "src/test/resources/XMLParser/", "src/test/resources/MainController/" };
+
+    // A rank with every tag it can have, to build files around
+    private static final String RANK = "<rank><rank-name>A</rank-name>"
+            + "<start-position><front-point><x>45</x><y>10</y></front-point><point-one><x>50</x><y>10</y></point-one>"
+            + "<end-point><x>55</x><y>10</y></end-point><line-type>0</line-type></start-position>"
+            + "<command><index>0</index><command-type>19</command-type><counts>8</counts><name>Go</name>"
+            + "<destination>0;60.0,20.0;65.0,20.0;70.0,20.0</destination></command>"
+            + "<end-position><front-point><x>60</x><y>20</y></front-point><point-one><x>65</x><y>20</y></point-one>"
+            + "<end-point><x>70</x><y>20</y></end-point><line-type>0</line-type></end-position></rank>";
+
+    @BeforeClass
+    public static void createOutputDir() {
+        // Create the output directory if it doesn't already exist
+        new File(outputPath).mkdirs();
+    }
+
+    @Test
+    public void testFixturesMatchDOMParser() throws Exception {
+        int files = 0;
+        for (String path : fixturePaths) {
+            for (File file : new File(path).listFiles()) {
+                assertSameResult(file);
+                files++;
+            }
+        }
+        Assert.assertTrue(files > 10);
+    }
+
+    @Test
+    public void testGeneratedShowMatchesDOMParser() throws Exception {
+        File file = new File(outputPath + "generated-show.pnd");
+        new ShowGenerator().write(30, 25, file);
+        assertSameResult(file);
+    }
+
+    @Test
+    public void testWellFormedFilesMatchDOMParser() throws Exception {
+        assertSameResult("<drill><song-name>Fight &amp; Win</song-name><move><number>0</number><move-counts>8</move-counts>"
+                + "<comments><!--x-->Hold</comments>" + RANK + "</move></drill>");
+        assertSameResult("<drill><move><number>0</number><move-counts>0</move-counts></move>"
+                + "<extra><move><number>1</number><move-counts>8</move-counts>" + RANK + "</move></extra>"
+                + "<song-constants><tempo-change><measure-number>3</measure-number><tempo>150</tempo></tempo-change></song-constants>"
+                + "<song-name>First</song-name><song-name>Second</song-name></drill>");
+        assertSameResult("<drill><move><number>2</number><move-counts>4</move-counts><unknown>text</unknown></move>"
+                + "<move><number>0</number><move-counts>0</move-counts></move></drill>");
+    }
+
+    @Test
+    public void testInvalidFilesFailLikeDOMParser() throws Exception {
+        // missing and repeated tags
+        assertSameResult("<drill><move><move-counts>8</move-counts></move></drill>");
+        assertSameResult("<drill><move><number>0</number><move-counts>8</move-counts><move-counts>8</move-counts></move></drill>");
+        assertSameResult("<drill><move><number>0</number><move-counts>8</move-counts>"
+                + RANK.replace("<end-position>", "<ignored>").replace("</end-position>", "</ignored>") + "</move></drill>");
+        assertSameResult("<drill><move><number>0</number><move-counts>8</move-counts>"
+                + RANK.replace("<y>20</y></front-point>", "</front-point>") + "</move></drill>");
+        assertSameResult("<drill><move><number>0</number><move-counts>8</move-counts>"
+                + RANK.replace("0;60.0,20.0;", "0;60.0;") + "</move></drill>");
+
+        // text tags holding more or other than text
+        assertSameResult("<drill><move><number>0<!--x-->1</number><move-counts>8</move-counts></move></drill>");
+        assertSameResult("<drill><move><number><b>0</b></number><move-counts>8</move-counts></move></drill>");
+        assertSameResult("<drill><move><number><![CDATA[0]]></number><move-counts>8</move-counts></move></drill>");
+        assertSameResult("<drill><move><number>zero</number><move-counts>8</move-counts></move></drill>");
+
+        // the move error is reported before an earlier tempo error, and a later move's
+        // error after an earlier move's
+        assertSameResult("<drill><tempo-change><tempo>100</tempo></tempo-change>"
+                + "<move><number>0</number></move></drill>");
+        assertSameResult("<drill><move><number>0</number></move><move><move-counts>8</move-counts></move></drill>");
+        assertSameResult("<drill><counts-per-measure-change><measure-number>1</measure-number></counts-per-measure-change>"
+                + "<tempo-change><measure-number>1</measure-number></tempo-change></drill>");
+
+        // badly formed XML fails before any of the above
+        assertSameResult("<drill><move><number>0</number></move><move></drill>");
+    }
+
+    private void assertSameResult(String xml) throws Exception {
+        File file = new File(outputPath + "case.pnd");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(xml);
+        } finally {
+            writer.close();
+        }
+        assertSameResult(file);
+    }
+
+    private void assertSameResult(File file) throws Exception {
+        DrillInfo expected = null;
+        Exception expectedError = null;
+        try {
+            expected = new XMLParser().load(file);
+        } catch (DrillXMLException | SAXException | IOException | RuntimeException e) {
+            expectedError = e;
+        }
+
+        DrillInfo actual = null;
+        Exception actualError = null;
+        try {
+            actual = new StreamingXMLParser().load(file);
+        } catch (DrillXMLException | SAXException | IOException | RuntimeException e) {
+            actualError = e;
+        }
+
+        if (expectedError == null) {
+            Assert.assertNull(file + ": " + actualError, actualError);
+            Assert.assertEquals(file.toString(), expected, actual);
+        }
+        else {
+            Assert.assertNotNull(file + ": expected " + expectedError, actualError);
+            if (expectedError instanceof SAXException) {
+                Assert.assertTrue(file + ": " + actualError, actualError instanceof SAXException);
+            }
+            else {
+                Assert.assertEquals(file.toString(), expectedError.getClass(), actualError.getClass());
+                Assert.assertEquals(file.toString(), expectedError.getMessage(), actualError.getMessage());
+            }
+        }
+    }
+}
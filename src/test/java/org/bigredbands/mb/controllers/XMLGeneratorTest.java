@@ -288,6 +288,40 @@ DrillInfo expectedDrillInfo = new DrillInfo();
         testGeneratorAndParser(expectedDrillInfo, new File(outputPath + "12-song-name-change.pnd"));
     }
 
+    @Test
+    public void testFollowTheLeaderCommand() throws ParserConfigurationException, SAXException, IOException, DrillXMLException {
+        //create the expected DrillInfo
+        DrillInfo expectedDrillInfo = new DrillInfo();
+
+        //move 0
+        Move move = new Move();
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(45, 10), new Point(55, 10)));
+        move.setStartPositions(startPositions);
+
+        HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+        ArrayList<CommandPair> commands = new ArrayList<CommandPair>();
+        CommandPair follow = new CommandPair(CommandPair.FTA, 16);
+        RankPosition destination = new RankPosition(new Point(70, 40), new Point(74, 36), new Point(80, 40), RankPosition.CURVE);
+        follow.setDestination(destination);
+        ArrayList<Point> waypoints = new ArrayList<Point>();
+        waypoints.add(new Point(60, 10));
+        waypoints.add(new Point(65.5f, 25.25f));
+        follow.setWaypoints(waypoints);
+        commands.add(follow);
+        rankCommands.put("A", commands);
+        move.setCommands(rankCommands);
+
+        HashMap<String, RankPosition> endPositions = new HashMap<String, RankPosition>();
+        endPositions.put("A", destination);
+        move.setEndPositions(endPositions);
+
+        expectedDrillInfo.getMoves().add(move);
+
+        //test the generator output with the parser
+        testGeneratorAndParser(expectedDrillInfo, new File(outputPath + "13-follow-the-leader-command.pnd"));
+    }
+
     private void testGeneratorAndParser(DrillInfo expectedDrillInfo, File outputFile) throws ParserConfigurationException, SAXException, IOException, DrillXMLException {
         //generate the xml
         XMLGenerator generator = new XMLGenerator();
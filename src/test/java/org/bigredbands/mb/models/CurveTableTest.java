@@ -0,0 +1,72 @@
+package org.bigredbands.mb.models;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CurveTableTest {
+
+    private static final float TOLERANCE = 1e-3f;
+
+    @Test
+    public void testLength() {
+        // the arc of the parabola y = x^2 from 0 to 1, of length (2 sqrt(5) + asinh(2)) / 4
+        CurveTable table = CurveTable.of(0, 0, 0.5f, 0, 1, 1);
+        double expected = (2 * Math.sqrt(5) + Math.log(2 + Math.sqrt(5))) / 4;
+        Assert.assertEquals(expected, table.getLength(), TOLERANCE);
+
+        // a straight curve is as long as its chord
+        Assert.assertEquals(10, CurveTable.ofRank(40, 20, 45, 20, 50, 20).getLength(), TOLERANCE);
+    }
+
+    @Test
+    public void testSharedByControlPoints() {
+        CurveTable table = CurveTable.ofRank(40, 20, 45, 24, 50, 20);
+        Assert.assertSame(table, CurveTable.ofRank(40, 20, 45, 24, 50, 20));
+        Assert.assertNotSame(table, CurveTable.ofRank(40, 20, 45, 25, 50, 20));
+    }
+
+    @Test
+    public void testEachThreadBuildsItsOwnTables() throws Exception {
+        final CurveTable table = CurveTable.ofRank(40, 20, 45, 24, 50, 20);
+        final CurveTable[] other = new CurveTable[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                other[0] = CurveTable.ofRank(40, 20, 45, 24, 50, 20);
+            }
+        };
+        thread.start();
+        thread.join();
+
+        Assert.assertNotSame(table, other[0]);
+        Assert.assertEquals(table.getLength(), other[0].getLength(), 0);
+        Assert.assertSame(table, CurveTable.ofRank(40, 20, 45, 24, 50, 20));
+    }
+
+    @Test
+    public void testPointAt() {
+        CurveTable table = CurveTable.ofRank(40, 20, 45, 24, 50, 20);
+        float[] out = new float[2];
+
+        // the curve is symmetric, so halfway along it is the midpoint of the rank
+        table.pointAt(table.getLength() / 2, out, 0);
+        Assert.assertEquals(45, out[0], TOLERANCE);
+        Assert.assertEquals(24, out[1], TOLERANCE);
+
+        table.pointAt(-1, out, 0);
+        Assert.assertEquals(40, out[0], TOLERANCE);
+        table.pointAt(table.getLength() + 1, out, 0);
+        Assert.assertEquals(50, out[0], TOLERANCE);
+    }
+
+    @Test
+    public void testDistanceTo() {
+        CurveTable table = CurveTable.ofRank(40, 20, 45, 24, 50, 20);
+        Assert.assertEquals(0, table.distanceTo(45, 24), TOLERANCE);
+        Assert.assertEquals(1, table.distanceTo(45, 25), TOLERANCE);
+
+        // a point between the curve and its chord is not on the rank
+        Assert.assertEquals(2, table.distanceTo(45, 22), 0.01f);
+        Assert.assertEquals(5, table.distanceTo(35, 20), TOLERANCE);
+    }
+}
@@ -0,0 +1,153 @@
+package org.bigredbands.mb.models;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DrillInfoTest {
+
+    private static final String[] RANKS = { "A", "B", "C", "D" };
+
+    private static final int MOVES = 12;
+
+    private DrillInfo createDrill() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        for (int i = 0; i < RANKS.length; i++) {
+            startPositions.put(RANKS[i], new RankPosition(new Point(40, 10 + 5 * i), new Point(50, 10 + 5 * i)));
+        }
+
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move(0, startPositions));
+        for (int i = 1; i < MOVES; i++) {
+            drillInfo.addMove(8, i);
+            for (String rankName : RANKS) {
+                int commandType = (i % 2 == 0) ? CommandPair.FM : CommandPair.GTCW_HEAD;
+                CommandPair command = new CommandPair(commandType, 8);
+                if (i == 5 && rankName.equals("D")) {
+                    command = new CommandPair(CommandPair.DTP, 8);
+                    command.setDestination(new RankPosition(new Point(60, 30), new Point(70, 30)));
+                }
+                Assert.assertEquals("", drillInfo.getMoves().get(i).addCommand(rankName, command));
+            }
+        }
+        // link every move to the end of the one before it
+        for (int i = 1; i < MOVES; i++) {
+            for (String rankName : RANKS) {
+                drillInfo.getMoves().get(i).updatePositions(rankName, drillInfo.getMoves().get(i - 1).getEndPositions().get(rankName));
+            }
+        }
+        return drillInfo;
+    }
+
+    @Test
+    public void testUpdatePositionsMatchesFullRecompute() {
+        DrillInfo expected = createDrill();
+        DrillInfo actual = createDrill();
+        for (DrillInfo drillInfo : new DrillInfo[] { expected, actual }) {
+            Assert.assertEquals("", drillInfo.getMoves().get(3).removeCommands("A", new int[] { 0 }));
+            Assert.assertEquals("", drillInfo.getMoves().get(3).addCommand("A", new CommandPair(CommandPair.RS, 8)));
+            Assert.assertEquals("", drillInfo.getMoves().get(3).removeCommands("B", new int[] { 0 }));
+        }
+
+        for (int i = 4; i < MOVES; i++) {
+            for (String rankName : new String[] { "A", "B" }) {
+                expected.getMoves().get(i).updatePositions(rankName, expected.getMoves().get(i - 1).getEndPositions().get(rankName));
+            }
+        }
+        actual.markDirty("A", 4);
+        actual.markDirty("B", 4);
+        actual.updatePositions();
+
+        Assert.assertEquals(expected.getMoves(), actual.getMoves());
+        assertLinked(actual);
+    }
+
+    @Test
+    public void testUpdatePositionsStopsAtRequestedMove() {
+        DrillInfo drillInfo = createDrill();
+        Assert.assertEquals("", drillInfo.getMoves().get(1).removeCommands("C", new int[] { 0 }));
+        drillInfo.markDirty("C", 2);
+
+        RankPosition laterEnd = drillInfo.getMoves().get(8).getEndPositions().get("C");
+        drillInfo.updatePositions(5);
+        Assert.assertSame(drillInfo.getMoves().get(4).getEndPositions().get("C"),
+                drillInfo.getMoves().get(5).getStartPositions().get("C"));
+        Assert.assertSame(laterEnd, drillInfo.getMoves().get(8).getEndPositions().get("C"));
+
+        drillInfo.updatePositions();
+        Assert.assertNotEquals(laterEnd, drillInfo.getMoves().get(8).getEndPositions().get("C"));
+        assertLinked(drillInfo);
+    }
+
+    @Test
+    public void testUpdatePositionsStopsWhenEndIsUnchanged() {
+        DrillInfo drillInfo = createDrill();
+
+        // a direct move ends in the same place wherever it starts, so nothing after it changes
+        RankPosition laterEnd = drillInfo.getMoves().get(9).getEndPositions().get("D");
+        Assert.assertEquals("", drillInfo.getMoves().get(2).removeCommands("D", new int[] { 0 }));
+        Assert.assertEquals("", drillInfo.getMoves().get(2).addCommand("D", new CommandPair(CommandPair.LS, 8)));
+        drillInfo.markDirty("D", 3);
+        drillInfo.updatePositions();
+
+        Assert.assertSame(laterEnd, drillInfo.getMoves().get(9).getEndPositions().get("D"));
+        assertLinked(drillInfo);
+    }
+
+    @Test
+    public void testSnapshotIsNotChangedByLaterEdits() {
+        DrillInfo drillInfo = createDrill();
+        DrillInfo snapshot = drillInfo.snapshot();
+        Assert.assertEquals(drillInfo, snapshot);
+
+        drillInfo.getMoves().get(3).setComments("Changed");
+        Assert.assertEquals("", drillInfo.getMoves().get(3).removeCommands("A", new int[] { 0 }));
+        drillInfo.getMoves().get(0).getStartPositions().put("A", new RankPosition(new Point(0, 0), new Point(10, 0)));
+        drillInfo.addMove(8, MOVES);
+        drillInfo.getTempoHashMap().put(1, 120);
+        drillInfo.updatePositions();
+
+        Assert.assertEquals(createDrill(), snapshot);
+    }
+
+    @Test
+    public void testSnapshotSharesUnchangedMoves() {
+        DrillInfo drillInfo = createDrill();
+        DrillInfo first = drillInfo.snapshot();
+        drillInfo.getMoves().get(3).setComments("Changed");
+        DrillInfo second = drillInfo.snapshot();
+
+        // the first move is always copied, as it is edited in place
+        Assert.assertNotSame(first.getMoves().get(0), second.getMoves().get(0));
+        Assert.assertNotSame(first.getMoves().get(3), second.getMoves().get(3));
+        for (int i = 1; i < MOVES; i++) {
+            if (i != 3) {
+                Assert.assertSame(first.getMoves().get(i), second.getMoves().get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testDeleteMoveLinksFollowingMove() {
+        DrillInfo drillInfo = createDrill();
+        drillInfo.deleteMove(4);
+        drillInfo.updatePositions();
+
+        Assert.assertEquals(MOVES - 1, drillInfo.getMoves().size());
+        assertLinked(drillInfo);
+    }
+
+    private void assertLinked(DrillInfo drillInfo) {
+        for (int i = 1; i < drillInfo.getMoves().size(); i++) {
+            Move move = drillInfo.getMoves().get(i);
+            for (String rankName : RANKS) {
+                Assert.assertSame("move " + i + " rank " + rankName,
+                        drillInfo.getMoves().get(i - 1).getEndPositions().get(rankName),
+                        move.getStartPositions().get(rankName));
+                Assert.assertEquals(move.computeEndPosition(rankName, move.getStartPositions().get(rankName)),
+                        move.getEndPositions().get(rankName));
+            }
+        }
+    }
+}
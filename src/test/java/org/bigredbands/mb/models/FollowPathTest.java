@@ -0,0 +1,124 @@
+package org.bigredbands.mb.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FollowPathTest {
+
+    private static final float TOLERANCE = 1e-3f;
+
+    // A rank facing the 50 that turns upfield at (60, 20) and finishes on the 60
+    private static FollowPath createPath() {
+        return new FollowPath(new RankPosition(new Point(50, 20), new Point(40, 20)),
+                Arrays.asList(new Point(60, 20)),
+                new RankPosition(new Point(60, 40), new Point(60, 30)));
+    }
+
+    @Test
+    public void testTrail() {
+        FollowPath path = createPath();
+        Assert.assertEquals(40, path.getLength(), TOLERANCE);
+        Assert.assertEquals(40, path.getX(0), TOLERANCE);
+        Assert.assertEquals(60, path.getX(path.getPointCount() - 1), TOLERANCE);
+        Assert.assertEquals(40, path.getY(path.getPointCount() - 1), TOLERANCE);
+
+        // the front covers the 30 yards from its start to its destination, as does the end
+        Assert.assertEquals(10, path.getDistance(1, 0), TOLERANCE);
+        Assert.assertEquals(40, path.getDistance(1, 1), TOLERANCE);
+        Assert.assertEquals(0, path.getDistance(0, 0), TOLERANCE);
+        Assert.assertEquals(30, path.getDistance(0, 1), TOLERANCE);
+    }
+
+    @Test
+    public void testEvaluate() {
+        FollowPath path = createPath();
+        float[] out = new float[RankProgram.STRIDE];
+
+        // halfway, the front has turned the corner and the middle marcher is standing on it
+        path.evaluate(0.5f, out, 0);
+        Assert.assertEquals(60, out[RankProgram.FRONT_X], TOLERANCE);
+        Assert.assertEquals(25, out[RankProgram.FRONT_Y], TOLERANCE);
+        Assert.assertEquals(60, out[RankProgram.MID_X], TOLERANCE);
+        Assert.assertEquals(20, out[RankProgram.MID_Y], TOLERANCE);
+        Assert.assertEquals(55, out[RankProgram.END_X], TOLERANCE);
+        Assert.assertEquals(20, out[RankProgram.END_Y], TOLERANCE);
+        Assert.assertEquals(RankPosition.CURVE, (int) out[RankProgram.LINE_TYPE]);
+
+        // still on the straight, the rank stays a line
+        path.evaluate(0.25f, out, 0);
+        Assert.assertEquals(RankPosition.LINE, (int) out[RankProgram.LINE_TYPE]);
+        Assert.assertEquals(57.5f, out[RankProgram.FRONT_X], TOLERANCE);
+
+        path.evaluate(1, out, 0);
+        Assert.assertEquals(60, out[RankProgram.FRONT_X], TOLERANCE);
+        Assert.assertEquals(40, out[RankProgram.FRONT_Y], TOLERANCE);
+    }
+
+    @Test
+    public void testMarchersFollowTheLeader() {
+        FollowPath path = createPath();
+        float[] marchers = new float[2 * 3];
+        float[] leader = new float[2 * 3];
+
+        // each marcher passes through the point the one ahead of it stood on 8 counts
+        // earlier, the marchers being 5 yards and so 8 counts apart
+        for (int count = 8; count <= 48; count++) {
+            path.place(count / 48.0f, 3, marchers, 0);
+            path.place((count - 8) / 48.0f, 3, leader, 0);
+            for (int k = 1; k < 3; k++) {
+                Assert.assertEquals(leader[2 * (k - 1)], marchers[2 * k], TOLERANCE);
+                Assert.assertEquals(leader[2 * (k - 1) + 1], marchers[2 * k + 1], TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testMoveFollowsPath() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(50, 20), new Point(40, 20)));
+        Move move = new Move(16, startPositions);
+        CommandPair follow = new CommandPair(CommandPair.FTA, 16);
+        follow.setDestination(new RankPosition(new Point(60, 40), new Point(60, 30)));
+        follow.setWaypoints(Arrays.asList(new Point(60, 20)));
+        Assert.assertEquals("", move.addCommand("A", follow));
+
+        RankPosition end = move.getEndPositions().get("A");
+        Assert.assertEquals(60, end.getFront().X(), TOLERANCE);
+        Assert.assertEquals(40, end.getFront().Y(), TOLERANCE);
+        Assert.assertEquals(1, move.getProgram("A").getFollowPaths().size());
+
+        // a follow the leader without a destination leaves the rank in place
+        move.removeCommands("A", new int[] { 0 });
+        Assert.assertEquals("", move.addCommand("A", new CommandPair(CommandPair.FTA, 16)));
+        Assert.assertEquals(50, move.getEndPositions().get("A").getFront().X(), TOLERANCE);
+    }
+
+    @Test
+    public void testMovePartWayUsesCompiledTrail() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(50, 20), new Point(40, 20)));
+        Move move = new Move(16, startPositions);
+        CommandPair follow = new CommandPair(CommandPair.FTA, 16);
+        follow.setDestination(new RankPosition(new Point(60, 40), new Point(60, 30)));
+        follow.setWaypoints(Arrays.asList(new Point(60, 20)));
+        Assert.assertEquals("", move.addCommand("A", follow));
+
+        FollowPath path = move.getProgram("A").getFollowPath(0);
+        RankPosition position = new RankPosition(startPositions.get("A"));
+        RankPosition built = new RankPosition(startPositions.get("A"));
+        position.FTAMove(path, 0.25f);
+        built.FTAMove(follow.getDestination(), follow.getWaypoints(), 0.25f);
+        Assert.assertEquals(position, move.getIntermediatePositions(4).get("A"));
+        Assert.assertEquals(built.getFront().X(), position.getFront().X(), TOLERANCE);
+        Assert.assertEquals(built.getFront().Y(), position.getFront().Y(), TOLERANCE);
+        Assert.assertEquals(built.getEnd().X(), position.getEnd().X(), TOLERANCE);
+        Assert.assertEquals(built.getEnd().Y(), position.getEnd().Y(), TOLERANCE);
+
+        // moving the whole way lands on the destination without building a trail
+        built.FTAMove(follow.getDestination(), follow.getWaypoints(), 1);
+        Assert.assertEquals(follow.getDestination(), built);
+    }
+}
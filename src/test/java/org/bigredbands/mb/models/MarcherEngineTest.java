@@ -0,0 +1,82 @@
+package org.bigredbands.mb.models;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MarcherEngineTest {
+
+    private static final float TOLERANCE = 1e-3f;
+
+    @Test
+    public void testLineAndCorner() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(40, 20), new Point(47, 20)));
+        startPositions.put("B", new RankPosition(new Point(40, 30), new Point(44, 30), new Point(44, 34), RankPosition.CORNER));
+        HashMap<String, Integer> marcherCounts = new HashMap<String, Integer>();
+        marcherCounts.put("A", 8);
+
+        MarcherEngine engine = new MarcherEngine(new Move(0, startPositions).getState(), marcherCounts, 5);
+        Assert.assertEquals(13, engine.getMarcherCount());
+        Assert.assertEquals(8, engine.getMarcherOffset(1));
+        float[] marchers = new float[engine.getValueCount()];
+        engine.evaluate(0, marchers);
+
+        for (int k = 0; k < 8; k++) {
+            Assert.assertEquals(40 + k, marchers[2 * k], TOLERANCE);
+            Assert.assertEquals(20, marchers[2 * k + 1], TOLERANCE);
+        }
+        // the corner is 8 yards long, so its 5 marchers are 2 yards apart around it
+        float[][] expected = { { 40, 30 }, { 42, 30 }, { 44, 30 }, { 44, 32 }, { 44, 34 } };
+        for (int k = 0; k < 5; k++) {
+            Assert.assertEquals(expected[k][0], marchers[16 + 2 * k], TOLERANCE);
+            Assert.assertEquals(expected[k][1], marchers[16 + 2 * k + 1], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testCurveIsEvenlySpaced() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(40, 20), new Point(45, 24), new Point(50, 20), RankPosition.CURVE));
+
+        MarcherEngine engine = new MarcherEngine(new Move(0, startPositions).getState(), new HashMap<String, Integer>(), 9);
+        float[] marchers = new float[engine.getValueCount()];
+        engine.evaluate(0, marchers);
+
+        Assert.assertEquals(40, marchers[0], TOLERANCE);
+        Assert.assertEquals(50, marchers[16], TOLERANCE);
+        // the middle marcher is at the apex of the curve
+        Assert.assertEquals(45, marchers[8], TOLERANCE);
+        Assert.assertEquals(24, marchers[9], 1e-2f);
+        float spacing = distance(marchers, 0, 1);
+        for (int k = 1; k < 8; k++) {
+            Assert.assertEquals(spacing, distance(marchers, k, k + 1), 0.02f);
+        }
+    }
+
+    @Test
+    public void testFollowsMove() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(40, 20), new Point(50, 20)));
+        Move move = new Move(8, startPositions);
+        Assert.assertEquals("", move.addCommand("A", new CommandPair(CommandPair.FM, 8)));
+
+        MarcherEngine engine = new MarcherEngine(move.getState(), new HashMap<String, Integer>(), 6);
+        float[] marchers = new float[engine.getValueCount()];
+        for (float count = 0; count <= 8; count += 0.5f) {
+            engine.evaluate(count, marchers);
+            RankPosition position = move.getIntermediatePositions(count).get("A");
+            Assert.assertEquals(position.getFront().X(), marchers[0], TOLERANCE);
+            Assert.assertEquals(position.getFront().Y(), marchers[1], TOLERANCE);
+            Assert.assertEquals(position.getEnd().X(), marchers[10], TOLERANCE);
+            Assert.assertEquals(position.getEnd().Y(), marchers[11], TOLERANCE);
+        }
+    }
+
+    private static float distance(float[] marchers, int a, int b) {
+        float dx = marchers[2 * b] - marchers[2 * a];
+        float dy = marchers[2 * b + 1] - marchers[2 * a + 1];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,109 @@
+package org.bigredbands.mb.models;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.bigredbands.mb.controllers.XMLParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MoveStateTest {
+
+    // The largest difference allowed between the state and Move, in feet
+    private static final float TOLERANCE = 1e-3f;
+
+    @Test
+    public void testMatchesIntermediatePositions() throws Exception {
+        DrillInfo drillInfo = new XMLParser().load(new File("test.pnd"));
+        for (Move move : drillInfo.getMoves()) {
+            MoveState state = move.getState();
+            float[] values = new float[state.getValueCount()];
+            for (int count = 0; count <= move.getCounts() + 1; count++) {
+                state.evaluate(count, values);
+                HashMap<String, RankPosition> positions = move.getIntermediatePositions(count);
+                Assert.assertEquals(positions.size(), state.getRankCount());
+                for (String rankName : positions.keySet()) {
+                    assertPosition(positions.get(rankName), values, state.getRankId(rankName) * RankProgram.STRIDE);
+                }
+            }
+
+            state.evaluateEnd(values);
+            for (String rankName : move.getEndPositions().keySet()) {
+                assertPosition(move.getEndPositions().get(rankName), values, state.getRankId(rankName) * RankProgram.STRIDE);
+            }
+        }
+    }
+
+    @Test
+    public void testRankIds() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("C", new RankPosition(new Point(10, 10), new Point(20, 10)));
+        startPositions.put("A", new RankPosition(new Point(10, 20), new Point(20, 20)));
+        startPositions.put("B", new RankPosition(new Point(10, 30), new Point(20, 30)));
+        MoveState state = new Move(16, startPositions).getState();
+
+        Assert.assertEquals(3, state.getRankCount());
+        Assert.assertEquals(3 * RankProgram.STRIDE, state.getValueCount());
+        for (int rankId = 0; rankId < state.getRankCount(); rankId++) {
+            Assert.assertEquals(rankId, state.getRankId(state.getRankName(rankId)));
+        }
+        Assert.assertEquals("A", state.getRankName(0));
+        Assert.assertEquals(-1, state.getRankId("D"));
+    }
+
+    @Test
+    public void testRebuiltAfterEdits() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(10, 10), new Point(20, 10)));
+        Move move = new Move(16, startPositions);
+        MoveState state = move.getState();
+        Assert.assertSame(state, move.getState());
+
+        Assert.assertEquals("", move.addCommand("A", new CommandPair(CommandPair.FM, 8)));
+        MoveState edited = move.getState();
+        Assert.assertNotSame(state, edited);
+
+        float[] values = new float[edited.getValueCount()];
+        edited.evaluate(8, values);
+        assertPosition(move.getIntermediatePositions(8).get("A"), values, 0);
+
+        move.addRank("B", new RankPosition(new Point(10, 20), new Point(20, 20)));
+        Assert.assertEquals(2, move.getState().getRankCount());
+        move.deleteRank("A");
+        Assert.assertEquals(1, move.getState().getRankCount());
+        Assert.assertEquals("B", move.getState().getRankName(0));
+    }
+
+    @Test
+    public void testRebuiltAfterEndPositionsAreSet() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", new RankPosition(new Point(10, 10), new Point(20, 10)));
+        Move move = new Move(16, startPositions);
+        Assert.assertEquals("", move.addCommand("A", new CommandPair(CommandPair.FM, 8)));
+        MoveState state = move.getState();
+        int revision = move.getRevision();
+
+        HashMap<String, RankPosition> endPositions = new HashMap<String, RankPosition>();
+        endPositions.put("A", new RankPosition(new Point(40, 30), new Point(50, 30)));
+        move.setEndPositions(endPositions);
+        Assert.assertNotSame(state, move.getState());
+        Assert.assertNotEquals(revision, move.getRevision());
+
+        // the commands still give the positions part way through, and the new end is held after them
+        float[] values = new float[move.getState().getValueCount()];
+        move.getState().evaluate(4.5f, values);
+        assertPosition(move.getIntermediatePositions(4.5f).get("A"), values, 0);
+        move.getState().evaluate(12, values);
+        assertPosition(endPositions.get("A"), values, 0);
+    }
+
+    private static void assertPosition(RankPosition expected, float[] values, int offset) {
+        Assert.assertEquals(expected.getFront().X(), values[offset + RankProgram.FRONT_X], TOLERANCE);
+        Assert.assertEquals(expected.getFront().Y(), values[offset + RankProgram.FRONT_Y], TOLERANCE);
+        Assert.assertEquals(expected.getMidpoint().X(), values[offset + RankProgram.MID_X], TOLERANCE);
+        Assert.assertEquals(expected.getMidpoint().Y(), values[offset + RankProgram.MID_Y], TOLERANCE);
+        Assert.assertEquals(expected.getEnd().X(), values[offset + RankProgram.END_X], TOLERANCE);
+        Assert.assertEquals(expected.getEnd().Y(), values[offset + RankProgram.END_Y], TOLERANCE);
+        Assert.assertEquals(expected.getLineType(), (int) values[offset + RankProgram.LINE_TYPE]);
+    }
+}
@@ -0,0 +1,124 @@
+package org.bigredbands.mb.models;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MoveTest {
+
+    private static final String RANK = "A";
+
+    private Move createMove(int counts) {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put(RANK, new RankPosition(new Point(40, 20), new Point(50, 20)));
+        return new Move(counts, startPositions);
+    }
+
+    @Test
+    public void testIntermediatePositionsWithinCommands() {
+        Move move = createMove(16);
+        Assert.assertEquals("", move.addCommand(RANK, new CommandPair(CommandPair.FM, 8)));
+        Assert.assertEquals("", move.addCommand(RANK, new CommandPair(CommandPair.RS, 8)));
+
+        RankPosition position = move.getIntermediatePositions(4).get(RANK);
+        Assert.assertEquals(new RankPosition(new Point(40, 22.5f), new Point(50, 22.5f)), position);
+
+        position = move.getIntermediatePositions(8).get(RANK);
+        Assert.assertEquals(new RankPosition(new Point(40, 25), new Point(50, 25)), position);
+
+        position = move.getIntermediatePositions(12).get(RANK);
+        Assert.assertEquals(new RankPosition(new Point(37.5f, 25), new Point(47.5f, 25)), position);
+
+        Assert.assertEquals(move.getEndPositions(), move.getIntermediatePositions(16));
+        Assert.assertEquals(move.getStartPositions(), move.getIntermediatePositions(0));
+    }
+
+    @Test
+    public void testIntermediatePositionsMatchTruncatedMoves() {
+        int[] commandTypes = { CommandPair.FM, CommandPair.GTCW_HEAD, CommandPair.PWCCW, CommandPair.EXPAND_BOTH,
+                CommandPair.CURVE_LEFT, CommandPair.LS, CommandPair.GTCCW_TAIL };
+        Move move = createMove(commandTypes.length * 4);
+        for (int commandType : commandTypes) {
+            Assert.assertEquals("", move.addCommand(RANK, new CommandPair(commandType, 4)));
+        }
+
+        //replaying the commands up to each count must give the same position as the checkpoints
+        for (int count = 0; count <= move.getCounts(); count++) {
+            Move truncated = createMove(count);
+            int remaining = count;
+            for (int commandType : commandTypes) {
+                if (remaining <= 0) {
+                    break;
+                }
+                truncated.addCommand(RANK, new CommandPair(commandType, Math.min(4, remaining)));
+                remaining = remaining - 4;
+            }
+            Assert.assertEquals("count " + count, truncated.getEndPositions().get(RANK),
+                    move.getIntermediatePositions(count).get(RANK));
+        }
+    }
+
+    @Test
+    public void testIntermediatePositionsAfterEdits() {
+        Move move = createMove(16);
+        Assert.assertEquals("", move.addCommand(RANK, new CommandPair(CommandPair.FM, 8)));
+        Assert.assertEquals("", move.addCommand(RANK, new CommandPair(CommandPair.LS, 8)));
+        RankPosition beforeSplit = move.getIntermediatePositions(6).get(RANK);
+
+        //splitting a command does not change where the rank is
+        Assert.assertEquals("", move.splitCommand(RANK, 0, 4));
+        Assert.assertEquals(beforeSplit, move.getIntermediatePositions(6).get(RANK));
+
+        //removing the first command must not reuse the old positions
+        Assert.assertEquals("", move.removeCommands(RANK, new int[] { 0 }));
+        Assert.assertEquals(new RankPosition(new Point(40, 21.25f), new Point(50, 21.25f)),
+                move.getIntermediatePositions(2).get(RANK));
+
+        //neither must moving the start position
+        move.updatePositions(RANK, new RankPosition(new Point(0, 0), new Point(10, 0)));
+        Assert.assertEquals(new RankPosition(new Point(0, 1.25f), new Point(10, 1.25f)),
+                move.getIntermediatePositions(2).get(RANK));
+        Assert.assertEquals(new RankPosition(new Point(2.5f, 2.5f), new Point(12.5f, 2.5f)),
+                move.getIntermediatePositions(8).get(RANK));
+    }
+
+    @Test
+    public void testIntermediatePositionsAreCopies() {
+        Move move = createMove(8);
+        Assert.assertEquals("", move.addCommand(RANK, new CommandPair(CommandPair.FM, 8)));
+
+        move.getIntermediatePositions(4).get(RANK).incrementPointsXValue(100);
+        move.getIntermediatePositions(8).get(RANK).incrementPointsXValue(100);
+
+        Assert.assertEquals(new RankPosition(new Point(40, 22.5f), new Point(50, 22.5f)),
+                move.getIntermediatePositions(4).get(RANK));
+        Assert.assertEquals(move.getEndPositions(), move.getIntermediatePositions(8));
+    }
+
+    @Test
+    public void testFractionalPositionsBetweenCounts() {
+        Move move = createMove(8);
+        Assert.assertEquals("", move.addCommand(RANK, new CommandPair(CommandPair.FM, 8)));
+
+        Assert.assertEquals(new RankPosition(new Point(40, 22.8125f), new Point(50, 22.8125f)),
+                move.getIntermediatePositions(4.5f).get(RANK));
+        Assert.assertEquals(move.getIntermediatePositions(4), move.getIntermediatePositions(4.0f));
+    }
+
+    @Test
+    public void testFractionalPositionsReuseMap() {
+        Move move = createMove(8);
+        Assert.assertEquals("", move.addCommand(RANK, new CommandPair(CommandPair.FM, 8)));
+
+        HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+        positions.put("B", new RankPosition(new Point(0, 0), new Point(10, 0)));
+        Assert.assertSame(positions, move.getIntermediatePositions(2.5f, positions));
+        Assert.assertEquals(1, positions.size());
+        RankPosition position = positions.get(RANK);
+
+        move.getIntermediatePositions(6.5f, positions);
+        Assert.assertSame(position, positions.get(RANK));
+        Assert.assertEquals(new RankPosition(new Point(40, 24.0625f), new Point(50, 24.0625f)), position);
+    }
+}
@@ -0,0 +1,136 @@
+package org.bigredbands.mb.models;
+
+import org.bigredbands.mb.models.MarchingConstants.PART;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RankPositionTest {
+
+    private static final float TOLERANCE = 1e-4f;
+
+    @Test
+    public void testMovesKeepTheirPoints() {
+        RankPosition position = new RankPosition(new Point(40, 20), new Point(50, 23));
+        Point front = position.getFront();
+        Point midpoint = position.getMidpoint();
+        Point end = position.getEnd();
+
+        position.gateTurnMove(MarchingConstants.STANDARD_GATE_TURN_RATIO * 4, PART.HEAD);
+        position.gateTurnMove(MarchingConstants.STANDARD_GATE_TURN_RATIO * 4, PART.TAIL);
+        position.expansionMove(2, 1);
+        position.curveMoveAuto(1, 0);
+        position.pinwheelMove(MarchingConstants.STANDARD_PINWHEEL_RATIO * 2);
+        position.directMove(new RankPosition(new Point(60, 30), new Point(70, 30)), 0.5f);
+
+        Assert.assertSame(front, position.getFront());
+        Assert.assertSame(midpoint, position.getMidpoint());
+        Assert.assertSame(end, position.getEnd());
+    }
+
+    @Test
+    public void testGateTurn() {
+        RankPosition position = new RankPosition(new Point(40, 20), new Point(50, 20));
+        position.gateTurnMove(MarchingConstants.STANDARD_GATE_TURN_RATIO * 16, PART.HEAD);
+
+        // a quarter turn of the front around the end
+        Assert.assertEquals(50, position.getFront().X(), TOLERANCE);
+        Assert.assertEquals(30, position.getFront().Y(), TOLERANCE);
+        Assert.assertEquals(50, position.getMidpoint().X(), TOLERANCE);
+        Assert.assertEquals(25, position.getMidpoint().Y(), TOLERANCE);
+        Assert.assertEquals(new Point(50, 20), position.getEnd());
+    }
+
+    @Test
+    public void testRotateLeavesMover() {
+        RankPosition position = new RankPosition(new Point(40, 20), new Point(50, 20));
+        Point mover = new Point(40, 20);
+        Point rotated = position.rotate(MarchingConstants.STANDARD_GATE_TURN_RATIO * 16, new Point(50, 20), mover);
+
+        Assert.assertEquals(new Point(40, 20), mover);
+        Assert.assertEquals(50, rotated.X(), TOLERANCE);
+        Assert.assertEquals(30, rotated.Y(), TOLERANCE);
+    }
+
+    @Test
+    public void testExpandCurveKeepsShape() {
+        RankPosition position = new RankPosition(new Point(40, 20), new Point(45, 24), new Point(50, 20), RankPosition.CURVE);
+        float length = position.getRankPositionLength();
+
+        // the length is measured along the curve, which bows out past the lines through the midpoint
+        Assert.assertTrue(length > (float) (2 * Math.sqrt(5 * 5 + 4 * 4)));
+
+        position.expansionMove(MarchingConstants.STANDARD_STEP_SIZE * 2, MarchingConstants.STANDARD_STEP_SIZE * 2);
+        Assert.assertEquals(length + MarchingConstants.STANDARD_STEP_SIZE * 4, position.getRankPositionLength(), 1e-3f);
+
+        // both ends grow about the midpoint, so the curve keeps its proportions
+        float scale = (length + MarchingConstants.STANDARD_STEP_SIZE * 4) / length;
+        Assert.assertEquals(45, position.getMidpoint().X(), 1e-3f);
+        Assert.assertEquals(24 - 4 * scale, position.getFront().Y(), 1e-3f);
+        Assert.assertEquals(45 - 5 * scale, position.getFront().X(), 1e-3f);
+        Assert.assertEquals(RankPosition.CURVE, position.getLineType());
+    }
+
+    @Test
+    public void testExpandCornerKeepsCorner() {
+        RankPosition position = new RankPosition(new Point(40, 20), new Point(50, 20), new Point(50, 30), RankPosition.CORNER);
+        position.expansionMove(0, 5);
+
+        // growing from the front scales the whole corner about it
+        Assert.assertEquals(25, position.getRankPositionLength(), TOLERANCE);
+        Assert.assertEquals(new Point(40, 20), position.getFront());
+        Assert.assertEquals(52.5f, position.getMidpoint().X(), TOLERANCE);
+        Assert.assertEquals(20, position.getMidpoint().Y(), TOLERANCE);
+        Assert.assertEquals(52.5f, position.getEnd().X(), TOLERANCE);
+        Assert.assertEquals(32.5f, position.getEnd().Y(), TOLERANCE);
+    }
+
+    @Test
+    public void testExpandLineMovesEachEndByItsExpansion() {
+        // a diagonal line 5 long, so each unit of expansion moves an end by (0.6, 0.8)
+        RankPosition position = new RankPosition(new Point(43, 24), new Point(40, 20));
+        position.expansionMove(2, 1);
+        Assert.assertEquals(44.2f, position.getFront().X(), TOLERANCE);
+        Assert.assertEquals(25.6f, position.getFront().Y(), TOLERANCE);
+        Assert.assertEquals(39.4f, position.getEnd().X(), TOLERANCE);
+        Assert.assertEquals(19.2f, position.getEnd().Y(), TOLERANCE);
+        Assert.assertEquals(41.8f, position.getMidpoint().X(), TOLERANCE);
+        Assert.assertEquals(22.4f, position.getMidpoint().Y(), TOLERANCE);
+
+        // condensing the front moves it back in along the line, leaving the end in place
+        position.expansionMove(-3, 0);
+        Assert.assertEquals(42.4f, position.getFront().X(), TOLERANCE);
+        Assert.assertEquals(23.2f, position.getFront().Y(), TOLERANCE);
+        Assert.assertEquals(39.4f, position.getEnd().X(), TOLERANCE);
+        Assert.assertEquals(19.2f, position.getEnd().Y(), TOLERANCE);
+        Assert.assertEquals(RankPosition.LINE, position.getLineType());
+    }
+
+    @Test
+    public void testRotationTableMatchesAngle() {
+        for (float counts = -20; counts <= 20; counts += 0.5f) {
+            RankPosition byAngle = new RankPosition(new Point(40, 20), new Point(50, 26));
+            RankPosition byTable = new RankPosition(new Point(40, 20), new Point(50, 26));
+            byAngle.gateTurnMove(MarchingConstants.STANDARD_GATE_TURN_RATIO * counts, PART.TAIL);
+            byTable.gateTurnMove(RotationTable.GATE_TURN, counts, PART.TAIL);
+            Assert.assertEquals(byAngle.getEnd().X(), byTable.getEnd().X(), TOLERANCE);
+            Assert.assertEquals(byAngle.getEnd().Y(), byTable.getEnd().Y(), TOLERANCE);
+
+            byAngle.pinwheelMove(MarchingConstants.STANDARD_PINWHEEL_RATIO * counts);
+            byTable.pinwheelMove(RotationTable.PINWHEEL, counts);
+            Assert.assertEquals(byAngle.getFront().X(), byTable.getFront().X(), TOLERANCE);
+            Assert.assertEquals(byAngle.getFront().Y(), byTable.getFront().Y(), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testPinwheelVerticalRank() {
+        // a rank with no horizontal extent turns like any other
+        RankPosition position = new RankPosition(new Point(50, 30), new Point(50, 20));
+        position.pinwheelMove(RotationTable.PINWHEEL, 8);
+
+        Assert.assertEquals(45, position.getFront().X(), TOLERANCE);
+        Assert.assertEquals(25, position.getFront().Y(), TOLERANCE);
+        Assert.assertEquals(55, position.getEnd().X(), TOLERANCE);
+        Assert.assertEquals(25, position.getEnd().Y(), TOLERANCE);
+    }
+}
@@ -0,0 +1,214 @@
+package org.bigredbands.mb.models;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.bigredbands.mb.controllers.XMLParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RankProgramTest {
+
+    // The largest difference allowed between the program and Move, in feet
+    private static final float TOLERANCE = 1e-3f;
+
+    // Commands the generated moves are built from
+    private static final int[] COMMAND_TYPES = { CommandPair.MT, CommandPair.HALT, CommandPair.FM, CommandPair.BM,
+            CommandPair.RS, CommandPair.LS, CommandPair.CURVE_LEFT, CommandPair.CURVE_RIGHT, CommandPair.FLAT_TO_ENDS,
+            CommandPair.FLAT_TO_MID, CommandPair.GTCW_HEAD, CommandPair.GTCW_TAIL, CommandPair.GTCCW_HEAD,
+            CommandPair.GTCCW_TAIL, CommandPair.PWCW, CommandPair.PWCCW, CommandPair.EXPAND_HEAD,
+            CommandPair.EXPAND_TAIL, CommandPair.EXPAND_BOTH, CommandPair.CONDENSE_HEAD, CommandPair.CONDENSE_TAIL,
+            CommandPair.CONDENSE_BOTH, CommandPair.DTP, CommandPair.FTA, CommandPair.CORNER_LB, CommandPair.CORNER_LF,
+            CommandPair.CORNER_RB, CommandPair.CORNER_RF, CommandPair.CORNER_FR, CommandPair.CORNER_FL,
+            CommandPair.CORNER_BR, CommandPair.CORNER_BL };
+
+    @Test
+    public void testMatchesMoveForSaveFile() throws Exception {
+        DrillInfo drillInfo = new XMLParser().load(new File("test.pnd"));
+        for (Move move : drillInfo.getMoves()) {
+            assertMatchesMove(move);
+        }
+    }
+
+    @Test
+    public void testMatchesMoveForEachCommand() {
+        for (int commandType : COMMAND_TYPES) {
+            for (int lineType = RankPosition.LINE; lineType <= RankPosition.CORNER; lineType++) {
+                Move move = createMove(lineType, 12);
+                CommandPair command = new CommandPair(commandType, 12);
+                if (commandType == CommandPair.DTP || commandType == CommandPair.FTA) {
+                    command.setDestination(new RankPosition(new Point(60, 30), new Point(64, 36), new Point(70, 30), RankPosition.CURVE));
+                }
+                if (commandType == CommandPair.FTA) {
+                    command.setWaypoints(Arrays.asList(new Point(40, 35), new Point(55, 40)));
+                }
+                Assert.assertEquals("", move.addCommand("A", command));
+                assertMatchesMove(move);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesMoveForGeneratedMoves() {
+        Random random = new Random(2718);
+        for (int i = 0; i < 200; i++) {
+            Move move = createMove(random.nextInt(3), 10000);
+            int commandCount = 1 + random.nextInt(12);
+            for (int j = 0; j < commandCount; j++) {
+                int commandType = COMMAND_TYPES[random.nextInt(COMMAND_TYPES.length)];
+                if (commandType >= CommandPair.CORNER_LB && commandType <= CommandPair.CORNER_BL
+                        && isNearlyAxisAligned(move)) {
+                    // which end pivots is decided by comparing coordinates, so the last bit of
+                    // rounding from a quarter turn decides it; skip these ill-conditioned corners
+                    commandType = CommandPair.MT;
+                }
+                int counts = 1 + random.nextInt(16);
+                if ((commandType == CommandPair.CONDENSE_HEAD || commandType == CommandPair.CONDENSE_TAIL
+                        || commandType == CommandPair.CONDENSE_BOTH)
+                        && getLength(move) - MarchingConstants.STANDARD_STEP_SIZE * counts < 1) {
+                    // condensing a rank through zero length leaves it without a direction
+                    commandType = CommandPair.MT;
+                }
+                CommandPair command = new CommandPair(commandType, counts);
+                if (commandType == CommandPair.DTP) {
+                    float x = 10 + random.nextFloat() * 100;
+                    float y = 10 + random.nextFloat() * 30;
+                    command.setDestination(new RankPosition(new Point(x, y), new Point(x + 5, y + random.nextFloat() * 5)));
+                }
+                Assert.assertEquals("", move.addCommand("A", command));
+            }
+            assertMatchesMove(move, false);
+        }
+    }
+
+    @Test
+    public void testEvaluateWritesAtOffset() {
+        Move move = createMove(RankPosition.LINE, 8);
+        Assert.assertEquals("", move.addCommand("A", new CommandPair(CommandPair.FM, 8)));
+
+        float[] out = new float[RankProgram.STRIDE * 2];
+        move.getProgram("A").evaluate(4, out, RankProgram.STRIDE);
+        Assert.assertEquals(0, out[RankProgram.FRONT_Y], 0);
+        Assert.assertEquals(22.5f, out[RankProgram.STRIDE + RankProgram.FRONT_Y], 0);
+        Assert.assertEquals(8, move.getProgram("A").getTotalCounts());
+    }
+
+    @Test
+    public void testContinuousBetweenCounts() {
+        float[] before = new float[RankProgram.STRIDE];
+        float[] after = new float[RankProgram.STRIDE];
+        for (int commandType : COMMAND_TYPES) {
+            for (int lineType = RankPosition.LINE; lineType <= RankPosition.CORNER; lineType++) {
+                Move move = createMove(lineType, 4);
+                CommandPair command = new CommandPair(commandType, 4);
+                if (commandType == CommandPair.DTP) {
+                    command.setDestination(new RankPosition(new Point(60, 30), new Point(64, 36), new Point(70, 30), RankPosition.CURVE));
+                }
+                Assert.assertEquals("", move.addCommand("A", command));
+                RankProgram program = move.getProgram("A");
+
+                // every fraction of a count must land close to the positions on either side of it.
+                // Start after the first fraction: as in Move, a pinwheel of a curve snaps its ends
+                // around the midpoint as soon as it starts
+                for (float count = 0.0625f; count < 4; count += 0.0625f) {
+                    program.evaluate(count, before, 0);
+                    program.evaluate(count + 0.0625f, after, 0);
+                    String message = "command " + commandType + " line type " + lineType + " at count " + count;
+                    for (int i = 0; i < RankProgram.LINE_TYPE; i++) {
+                        if ((i == RankProgram.MID_X || i == RankProgram.MID_Y)
+                                && after[RankProgram.LINE_TYPE] == RankPosition.LINE) {
+                            // the midpoint of a straight rank is not drawn, and flattening leaves it behind
+                            continue;
+                        }
+                        Assert.assertEquals(message, before[i], after[i], 1.0f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFractionalRotation() {
+        for (float counts = -3; counts < 20; counts += 0.25f) {
+            double angle = (double) MarchingConstants.STANDARD_GATE_TURN_RATIO * counts;
+            Assert.assertEquals(Math.cos(angle), RotationTable.GATE_TURN.cos(counts), 1e-5);
+            Assert.assertEquals(Math.sin(angle), RotationTable.GATE_TURN.sin(counts), 1e-5);
+        }
+    }
+
+    private boolean isNearlyAxisAligned(Move move) {
+        RankPosition position = move.getEndPositions().get("A");
+        float[] out = new float[RankProgram.STRIDE];
+        move.getProgram("A").evaluate(move.getCounts(), out, 0);
+        return isNearlyZero(position.getFront().X() - position.getEnd().X())
+                || isNearlyZero(position.getFront().Y() - position.getEnd().Y())
+                || isNearlyZero(out[RankProgram.FRONT_X] - out[RankProgram.END_X])
+                || isNearlyZero(out[RankProgram.FRONT_Y] - out[RankProgram.END_Y]);
+    }
+
+    private boolean isNearlyStraight(RankPosition position) {
+        float chordX = position.getEnd().X() - position.getFront().X();
+        float chordY = position.getEnd().Y() - position.getFront().Y();
+        float midX = position.getMidpoint().X() - position.getFront().X();
+        float midY = position.getMidpoint().Y() - position.getFront().Y();
+        float length = (float) Math.sqrt(chordX * chordX + chordY * chordY);
+        return position.getLineType() != RankPosition.CORNER && Math.abs(chordX * midY - chordY * midX) < TOLERANCE * length;
+    }
+
+    private float getLength(Move move) {
+        RankPosition position = move.getEndPositions().get("A");
+        return (float) position.getFront().distance(position.getEnd().X(), position.getEnd().Y());
+    }
+
+    private boolean isNearlyZero(float value) {
+        return value != 0 && Math.abs(value) < 0.01f;
+    }
+
+    private Move createMove(int lineType, int counts) {
+        RankPosition start;
+        if (lineType == RankPosition.LINE) {
+            start = new RankPosition(new Point(40, 20), new Point(50, 20));
+        }
+        else {
+            start = new RankPosition(new Point(40, 20), new Point(43, 24), new Point(50, 21), lineType);
+        }
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("A", start);
+        return new Move(counts, startPositions);
+    }
+
+    private void assertMatchesMove(Move move) {
+        assertMatchesMove(move, true);
+    }
+
+    private void assertMatchesMove(Move move, boolean strictLineType) {
+        float[] out = new float[RankProgram.STRIDE];
+        for (String rankName : move.getStartPositions().keySet()) {
+            RankProgram program = move.getProgram(rankName);
+            int totalCounts = program.getTotalCounts();
+            for (int count = 0; count <= totalCounts + 1; count++) {
+                RankPosition expected = move.getIntermediatePositions(count).get(rankName);
+                if (Float.isNaN(expected.getMidpoint().X()) || Float.isNaN(expected.getFront().X())
+                        || Float.isNaN(expected.getEnd().X())) {
+                    // RankPosition.rotate has no angle for a point sitting on the pivot, which
+                    // the program simply leaves in place
+                    break;
+                }
+                program.evaluate(count, out, 0);
+                String message = rankName + " at count " + count + " of " + move.getCommands().get(rankName);
+                if (strictLineType || !isNearlyStraight(expected)) {
+                    // otherwise whether the rank counts as straight depends on the last bit of rounding
+                    Assert.assertEquals(message, expected.getLineType(), (int) out[RankProgram.LINE_TYPE]);
+                }
+                Assert.assertEquals(message, expected.getFront().X(), out[RankProgram.FRONT_X], TOLERANCE);
+                Assert.assertEquals(message, expected.getFront().Y(), out[RankProgram.FRONT_Y], TOLERANCE);
+                Assert.assertEquals(message, expected.getMidpoint().X(), out[RankProgram.MID_X], TOLERANCE);
+                Assert.assertEquals(message, expected.getMidpoint().Y(), out[RankProgram.MID_Y], TOLERANCE);
+                Assert.assertEquals(message, expected.getEnd().X(), out[RankProgram.END_X], TOLERANCE);
+                Assert.assertEquals(message, expected.getEnd().Y(), out[RankProgram.END_Y], TOLERANCE);
+            }
+        }
+    }
+}
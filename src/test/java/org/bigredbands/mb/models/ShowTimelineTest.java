@@ -0,0 +1,165 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShowTimelineTest {
+
+    private static ArrayList<Move> createMoves(int... counts) {
+        ArrayList<Move> moves = new ArrayList<Move>();
+        for (int count : counts) {
+            moves.add(new Move(count, new HashMap<String, RankPosition>()));
+        }
+        return moves;
+    }
+
+    @Test
+    public void testMoveAt() {
+        ShowTimeline timeline = new ShowTimeline(createMoves(0, 8, 0, 16, 4),
+                new HashMap<Integer, Integer>(), new HashMap<Integer, Integer>());
+
+        Assert.assertEquals(28, timeline.getTotalCounts());
+        Assert.assertEquals(0, timeline.getMoveAt(0));
+        Assert.assertEquals(1, timeline.getMoveAt(1));
+        Assert.assertEquals(1, timeline.getMoveAt(8));
+        Assert.assertEquals(8, timeline.getLocalCount(8));
+        // the move with no counts is passed over
+        Assert.assertEquals(3, timeline.getMoveAt(9));
+        Assert.assertEquals(1, timeline.getLocalCount(9));
+        Assert.assertEquals(4, timeline.getMoveAt(28));
+        Assert.assertEquals(4, timeline.getLocalCount(28));
+    }
+
+    @Test
+    public void testMatchesMoveWalk() {
+        Random random = new Random(7);
+        int[] counts = new int[40];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = random.nextInt(12);
+        }
+        ShowTimeline timeline = new ShowTimeline(createMoves(counts),
+                new HashMap<Integer, Integer>(), new HashMap<Integer, Integer>());
+
+        int count = 0;
+        for (int move = 0; move < counts.length; move++) {
+            for (int local = 1; local <= counts[move]; local++) {
+                count++;
+                Assert.assertEquals(move, timeline.getMoveAt(count));
+                Assert.assertEquals(local, timeline.getLocalCount(count));
+            }
+        }
+    }
+
+    @Test
+    public void testMeasures() {
+        HashMap<Integer, Integer> countsHashMap = new HashMap<Integer, Integer>();
+        countsHashMap.put(3, 3);
+        countsHashMap.put(5, 2);
+        ShowTimeline timeline = new ShowTimeline(createMoves(0),
+                new HashMap<Integer, Integer>(), countsHashMap);
+
+        Assert.assertEquals(0, timeline.getMeasureAt(0));
+        Assert.assertEquals(1, timeline.getMeasureAt(1));
+        Assert.assertEquals(2, timeline.getMeasureAt(8));
+        Assert.assertEquals(3, timeline.getMeasureAt(9));
+        Assert.assertEquals(4, timeline.getMeasureAt(14));
+        Assert.assertEquals(5, timeline.getMeasureAt(15));
+        Assert.assertEquals(6, timeline.getMeasureAt(17));
+        for (int measure = 1; measure < 10; measure++) {
+            Assert.assertEquals(measure, timeline.getMeasureAt(timeline.getMeasureStart(measure)));
+            Assert.assertEquals(measure - 1, timeline.getMeasureAt(timeline.getMeasureStart(measure) - 1));
+        }
+    }
+
+    @Test
+    public void testMatchesMeasureAndTempoScan() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 50; trial++) {
+            HashMap<Integer, Integer> tempoHashMap = new HashMap<Integer, Integer>();
+            HashMap<Integer, Integer> countsHashMap = new HashMap<Integer, Integer>();
+            for (int i = random.nextInt(5); i > 0; i--) {
+                tempoHashMap.put(1 + random.nextInt(30), 60 + random.nextInt(120));
+            }
+            for (int i = random.nextInt(5); i > 0; i--) {
+                countsHashMap.put(1 + random.nextInt(30), 1 + random.nextInt(7));
+            }
+            ShowTimeline timeline = new ShowTimeline(createMoves(0), tempoHashMap, countsHashMap);
+
+            long millis = 0;
+            for (int count = 0; count < 200; count++) {
+                Assert.assertEquals(millis, timeline.getMillisAt(count));
+                int beatLength = scanBeatLength(tempoHashMap, countsHashMap, count);
+                Assert.assertEquals(beatLength, timeline.getBeatLength(count));
+                if (count > 0) {
+                    Assert.assertEquals(scanMeasure(countsHashMap, count), timeline.getMeasureAt(count));
+                }
+                millis += beatLength;
+            }
+        }
+    }
+
+    @Test
+    public void testUpdatedByDrillInfo() {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().addAll(createMoves(0, 8));
+        ShowTimeline timeline = drillInfo.getTimeline();
+        Assert.assertEquals(8, timeline.getTotalCounts());
+
+        drillInfo.addMove(4, 1);
+        Assert.assertSame(timeline, drillInfo.getTimeline());
+        Assert.assertEquals(12, timeline.getTotalCounts());
+        Assert.assertEquals(2, timeline.getMoveAt(5));
+
+        drillInfo.deleteMove(1);
+        Assert.assertEquals(8, timeline.getTotalCounts());
+        Assert.assertEquals(1, timeline.getMoveAt(5));
+
+        HashMap<Integer, Integer> countsHashMap = new HashMap<Integer, Integer>();
+        countsHashMap.put(1, 2);
+        drillInfo.setCountsHashMap(countsHashMap);
+        Assert.assertEquals(3, timeline.getMeasureAt(5));
+    }
+
+    // The measure of a count, found as playback did before the timeline
+    private static int scanMeasure(HashMap<Integer, Integer> countMap, int currentCount) {
+        Integer[] measCounts = countMap.keySet().toArray(new Integer[0]);
+        Arrays.sort(measCounts);
+        int prevM = 1;
+        int prevC = 4;
+        int meas = 1;
+        for (Integer measure : measCounts) {
+            int countDiff = (measure - prevM) * prevC;
+            if (currentCount - countDiff <= 0) {
+                break;
+            }
+            currentCount -= countDiff;
+            meas += (measure - prevM);
+            prevM = measure;
+            prevC = countMap.get(measure);
+        }
+        return meas + (Math.max(currentCount - 1, 0)) / prevC;
+    }
+
+    // The length of a count, found as playback did before the timeline
+    private static int scanBeatLength(HashMap<Integer, Integer> tempoMap, HashMap<Integer, Integer> countMap, int count) {
+        if (tempoMap.isEmpty()) {
+            return 500;
+        }
+        int meas = scanMeasure(countMap, count);
+        Integer[] measTempos = tempoMap.keySet().toArray(new Integer[0]);
+        Arrays.sort(measTempos);
+        int tempo = 120;
+        for (Integer measure : measTempos) {
+            if (meas < measure) {
+                break;
+            }
+            tempo = tempoMap.get(measure);
+        }
+        return 60000 / tempo;
+    }
+}
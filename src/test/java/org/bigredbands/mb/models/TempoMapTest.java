@@ -0,0 +1,66 @@
+package org.bigredbands.mb.models;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TempoMapTest {
+
+    private static TempoMap createTempoMap() {
+        HashMap<Integer, Integer> tempoHashMap = new HashMap<Integer, Integer>();
+        tempoHashMap.put(1, 120);
+        tempoHashMap.put(3, 60);
+        tempoHashMap.put(6, 150);
+        HashMap<Integer, Integer> countsHashMap = new HashMap<Integer, Integer>();
+        countsHashMap.put(2, 3);
+        countsHashMap.put(5, 2);
+        return new TempoMap(tempoHashMap, countsHashMap);
+    }
+
+    @Test
+    public void testCursorMatchesSeek() {
+        TempoMap tempoMap = createTempoMap();
+        TempoMap.Cursor cursor = tempoMap.cursor(0);
+        long millis = 0;
+        for (int count = 0; count < 100; count++) {
+            Assert.assertEquals(count, cursor.getCount());
+            Assert.assertEquals(millis, tempoMap.getMillisAt(count));
+            int beatLength = cursor.nextBeatLength();
+            Assert.assertEquals(tempoMap.getBeatLength(count), beatLength);
+            millis += beatLength;
+        }
+
+        // a cursor started partway through steps the same way
+        TempoMap.Cursor later = tempoMap.cursor(11);
+        for (int count = 11; count < 40; count++) {
+            Assert.assertEquals(tempoMap.getBeatLength(count), later.nextBeatLength());
+        }
+    }
+
+    @Test
+    public void testBeatLengths() {
+        TempoMap tempoMap = createTempoMap();
+        // measure 1 has 4 counts, measures 2 to 4 have 3 and the rest 2
+        Assert.assertEquals(500, tempoMap.getBeatLength(0));
+        Assert.assertEquals(500, tempoMap.getBeatLength(7));
+        Assert.assertEquals(3, tempoMap.getMeasureAt(8));
+        Assert.assertEquals(1000, tempoMap.getBeatLength(8));
+        Assert.assertEquals(14, tempoMap.getMeasureStart(5));
+        Assert.assertEquals(16, tempoMap.getMeasureStart(6));
+        Assert.assertEquals(1000, tempoMap.getBeatLength(15));
+        Assert.assertEquals(400, tempoMap.getBeatLength(16));
+
+        TempoMap empty = new TempoMap(new HashMap<Integer, Integer>(), new HashMap<Integer, Integer>());
+        Assert.assertEquals(TempoMap.DEFAULT_BEAT_LENGTH, empty.getBeatLength(1000));
+    }
+
+    @Test
+    public void testCountAtInvertsMillisAt() {
+        TempoMap tempoMap = createTempoMap();
+        for (float count = 0; count < 60; count += 0.25f) {
+            Assert.assertEquals(count, tempoMap.getCountAt(tempoMap.getMillisAt(count)), 1e-3f);
+        }
+        Assert.assertEquals(tempoMap.getMillisAt(8) + 500, tempoMap.getMillisAt(8.5f), 1e-6);
+    }
+}
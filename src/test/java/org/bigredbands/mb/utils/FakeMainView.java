@@ -1,5 +1,6 @@
 package org.bigredbands.mb.utils;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
 
@@ -8,6 +9,10 @@ import org.bigredbands.mb.views.ViewInterface;
 
 public class FakeMainView implements ViewInterface {
 
+    // What the save thread reported, read by tests once the saves have been waited for
+    private volatile int savesFinished = 0;
+    private volatile String saveError = null;
+
     @Override
     public void updateViewWithMoves(int numberOfMoves, int moveNumber, int countNumber) {
         // No-op
@@ -18,6 +23,29 @@ public class FakeMainView implements ViewInterface {
         // No-op
     }
 
+    @Override
+    public void updateSaveProgress(File file, int percent) {
+        // No-op
+    }
+
+    @Override
+    public void saveFinished(File file) {
+        savesFinished++;
+    }
+
+    @Override
+    public void saveFailed(File file, String errorMessage) {
+        saveError = errorMessage;
+    }
+
+    public int getSavesFinished() {
+        return savesFinished;
+    }
+
+    public String getSaveError() {
+        return saveError;
+    }
+
     @Override
     public void updateViewWithOneMove(int moveNumber, int countNumber) {
         // No-op
@@ -0,0 +1,109 @@
+package org.bigredbands.mb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.bigredbands.mb.controllers.XMLGenerator;
+import org.bigredbands.mb.controllers.XMLParser;
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class ShowGeneratorTest {
+
+    private static final String outputPath = "out/test/ShowGeneratorTest/";
+
+    @BeforeClass
+    public static void createOutputDir() {
+        // Create the output directory if it doesn't already exist
+        new File(outputPath).mkdirs();
+    }
+
+    @Test
+    public void testSameSeedGivesSameShow() {
+        DrillInfo first = new ShowGenerator(7).generate(30, 20);
+        DrillInfo second = new ShowGenerator(7).generate(30, 20);
+        Assert.assertEquals(first, second);
+        Assert.assertNotEquals(first, new ShowGenerator(8).generate(30, 20));
+    }
+
+    @Test
+    public void testShowHasRequestedSize() {
+        DrillInfo drillInfo = new ShowGenerator().generate(50, 12);
+        Assert.assertEquals(12, drillInfo.getMoves().size());
+        for (Move move : drillInfo.getMoves()) {
+            Assert.assertEquals(50, move.getStartPositions().size());
+            for (ArrayList<CommandPair> commands : move.getCommands().values()) {
+                int counts = 0;
+                for (CommandPair command : commands) {
+                    counts += command.getCounts();
+                }
+                Assert.assertEquals(move.getCounts(), counts);
+            }
+        }
+        Assert.assertEquals("A", ShowGenerator.getRankName(0));
+        Assert.assertEquals("Z", ShowGenerator.getRankName(25));
+        Assert.assertEquals("AA", ShowGenerator.getRankName(26));
+        Assert.assertEquals("AAA", ShowGenerator.getRankName(702));
+    }
+
+    @Test
+    public void testShowUsesEveryCommandAndSongChange() {
+        DrillInfo drillInfo = new ShowGenerator().generate(40, 80);
+        HashSet<Integer> types = new HashSet<Integer>();
+        for (Move move : drillInfo.getMoves()) {
+            for (Map.Entry<String, ArrayList<CommandPair>> entry : move.getCommands().entrySet()) {
+                for (CommandPair command : entry.getValue()) {
+                    types.add(command.getCommand());
+                }
+            }
+        }
+        for (int type = CommandPair.MT; type < CommandPair.EMPTY; type++) {
+            Assert.assertTrue("missing command " + type, types.contains(type));
+        }
+        Assert.assertTrue(drillInfo.getTempoHashMap().size() > 1);
+        Assert.assertTrue(drillInfo.getCountsHashMap().size() > 1);
+    }
+
+    @Test
+    public void testWrittenShowLoads() throws ParserConfigurationException, SAXException, IOException, DrillXMLException {
+        File outputFile = new File(outputPath + "generated-show.pnd");
+        DrillInfo expectedDrillInfo = new ShowGenerator().generate(40, 30);
+        int counts = new ShowGenerator().write(40, 30, outputFile);
+        DrillInfo actualDrillInfo = new XMLParser().load(outputFile);
+
+        // the midpoint of a straight rank is placed half way between its ends when loaded,
+        // so the commands and song are compared rather than every position
+        Assert.assertEquals(expectedDrillInfo.getSongName(), actualDrillInfo.getSongName());
+        Assert.assertEquals(expectedDrillInfo.getTempoHashMap(), actualDrillInfo.getTempoHashMap());
+        Assert.assertEquals(expectedDrillInfo.getCountsHashMap(), actualDrillInfo.getCountsHashMap());
+        Assert.assertEquals(expectedDrillInfo.getMoves().size(), actualDrillInfo.getMoves().size());
+        int expectedCounts = 0;
+        for (int i = 0; i < expectedDrillInfo.getMoves().size(); i++) {
+            expectedCounts += expectedDrillInfo.getMoves().get(i).getCounts();
+            Assert.assertEquals(expectedDrillInfo.getMoves().get(i).getCounts(), actualDrillInfo.getMoves().get(i).getCounts());
+            Assert.assertEquals(expectedDrillInfo.getMoves().get(i).getCommands(), actualDrillInfo.getMoves().get(i).getCommands());
+        }
+        Assert.assertEquals(expectedCounts, counts);
+    }
+
+    @Test
+    public void testWrittenMoveByMoveLikeWholeShow() throws IOException {
+        File wholeFile = new File(outputPath + "whole-show.pnd");
+        File streamedFile = new File(outputPath + "streamed-show.pnd");
+        new XMLGenerator().save(new ShowGenerator(11).generate(25, 15), wholeFile);
+        new ShowGenerator(11).write(25, 15, streamedFile);
+        Assert.assertArrayEquals(Files.readAllBytes(wholeFile.toPath()), Files.readAllBytes(streamedFile.toPath()));
+    }
+}